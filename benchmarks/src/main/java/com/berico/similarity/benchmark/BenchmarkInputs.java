@@ -0,0 +1,112 @@
+package com.berico.similarity.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates the strings the benchmarks run over.  Inputs are deterministic
+ * (fixed seed) so runs before and after a change see the same data.
+ *
+ * Length regimes:
+ *   name    - 5 to 20 characters (person and company names)
+ *   address - 50 to 100 characters (postal addresses)
+ *   text    - 1000 to 2000 characters (long descriptions)
+ *
+ * Character sets:
+ *   ascii   - lower case letters, digits and spaces
+ *   unicode - mostly ASCII, with accented Latin-1, CJK and supplementary
+ *             (surrogate pair) characters mixed in
+ * @author Richard C (Berico Technologies)
+ */
+public class BenchmarkInputs {
+
+	//Number of strings in each pool; enough to defeat branch prediction
+	//on a single pair without blowing the cache
+	public static final int POOL_SIZE = 1024;
+
+	private static final String ASCII =
+		"abcdefghijklmnopqrstuvwxyz0123456789     ";
+
+	/**
+	 * Build a pool of related strings.  Each string is a mutation of a
+	 * shared seed string, so pairs are neither identical nor disjoint.
+	 * @param regime "name", "address" or "text"
+	 * @param charset "ascii" or "unicode"
+	 * @return POOL_SIZE strings
+	 */
+	public static String[] pool(String regime, String charset){
+		Random random = new Random(regime.hashCode() * 31 + charset.hashCode());
+		int minimum, maximum;
+		if("name".equals(regime)){
+			minimum = 5; maximum = 20;
+		} else if("address".equals(regime)){
+			minimum = 50; maximum = 100;
+		} else if("text".equals(regime)){
+			minimum = 1000; maximum = 2000;
+		} else {
+			throw new IllegalArgumentException("Unknown length regime: " + regime);
+		}
+		boolean unicode;
+		if("ascii".equals(charset)){
+			unicode = false;
+		} else if("unicode".equals(charset)){
+			unicode = true;
+		} else {
+			throw new IllegalArgumentException("Unknown character set: " + charset);
+		}
+
+		String seed = randomString(random, maximum, unicode);
+		String[] pool = new String[POOL_SIZE];
+		for(int i = 0; i < POOL_SIZE; i++){
+			int length = minimum + random.nextInt(maximum - minimum + 1);
+			StringBuilder builder = new StringBuilder(length + 1);
+			//Keep roughly three quarters of the seed, replace the rest.  Both
+			//go a code point at a time so surrogate pairs stay whole (a
+			//string may end one char long rather than cut one)
+			for(int offset = 0; builder.length() < length; ){
+				int codePoint = seed.codePointAt(offset);
+				if(random.nextInt(4) == 0){
+					appendRandom(builder, random, unicode);
+				} else {
+					builder.appendCodePoint(codePoint);
+				}
+				offset += Character.charCount(codePoint);
+				if(offset >= seed.length()){
+					offset = 0;
+				}
+			}
+			pool[i] = builder.toString();
+		}
+		return pool;
+	}
+
+	private static String randomString(Random random, int length, boolean unicode){
+		StringBuilder builder = new StringBuilder(length + 1);
+		while(builder.length() < length){
+			appendRandom(builder, random, unicode);
+		}
+		return builder.toString();
+	}
+
+	private static void appendRandom(StringBuilder builder, Random random, boolean unicode){
+		if(unicode){
+			switch(random.nextInt(8)){
+			case 0:
+				//Accented Latin-1
+				builder.append((char) (0xC0 + random.nextInt(0x40)));
+				return;
+			case 1:
+				//CJK Unified Ideographs
+				builder.append((char) (0x4E00 + random.nextInt(0x200)));
+				return;
+			case 2:
+				//Supplementary plane (emoji and CJK Extension B)
+				builder.appendCodePoint(random.nextBoolean()?
+					0x1F600 + random.nextInt(0x40) : 0x20000 + random.nextInt(0x200));
+				return;
+			default:
+				break;
+			}
+		}
+		builder.append(ASCII.charAt(random.nextInt(ASCII.length())));
+	}
+}
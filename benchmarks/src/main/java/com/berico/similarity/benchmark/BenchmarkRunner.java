@@ -0,0 +1,178 @@
+package com.berico.similarity.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached (so every result comes
+ * with its allocation rate in bytes per operation), and optionally saves
+ * the scores as a baseline or compares them to a saved one.
+ *
+ * Usage:
+ *   BenchmarkRunner [pattern] [-save file] [-baseline file] [-tolerance fraction]
+ *
+ * pattern   - regular expression selecting benchmarks (default: all)
+ * save      - write "benchmark&lt;TAB&gt;ops/ms&lt;TAB&gt;bytes/op" lines to a file
+ * baseline  - compare to a saved file; the exit status is 1 if any
+ *             benchmark lost more than the tolerance in throughput or
+ *             allocates more per operation than before
+ * tolerance - allowed fractional throughput loss (default: 0.10)
+ *
+ * Build with benchmarks/pom.xml, which runs JMH's annotation processor
+ * to generate the benchmark classes, and run the jar it packages:
+ *   java -jar benchmarks/target/benchmarks.jar [arguments]
+ * @author Richard C (Berico Technologies)
+ */
+public class BenchmarkRunner {
+
+	//Allocation is compared with a little slack for the profiler's noise
+	private static final double ALLOCATION_SLACK_BYTES = 8;
+
+	/**
+	 * @param args see class comment
+	 */
+	public static void main(String[] args) throws RunnerException, IOException {
+		String pattern = BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+		String save = null, baseline = null;
+		double tolerance = 0.10;
+		for(int i = 0; i < args.length; i++){
+			boolean option = "-save".equals(args[i]) || "-baseline".equals(args[i])
+				|| "-tolerance".equals(args[i]);
+			if(option && i + 1 == args.length){
+				usage("Missing value for " + args[i]);
+			}
+			if("-save".equals(args[i])){
+				save = args[++i];
+			} else if("-baseline".equals(args[i])){
+				baseline = args[++i];
+			} else if("-tolerance".equals(args[i])){
+				try {
+					tolerance = Double.parseDouble(args[++i]);
+				} catch(NumberFormatException e){
+					usage("Not a fraction: " + args[i]);
+				}
+			} else {
+				pattern = args[i];
+			}
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder()
+			.include(pattern)
+			.addProfiler(GCProfiler.class);
+		Collection<RunResult> results = new Runner(options.build()).run();
+
+		Map<String, double[]> scores = new TreeMap<String, double[]>();
+		for(RunResult result : results){
+			scores.put(name(result.getParams()), new double[]{
+				result.getPrimaryResult().getScore(),
+				allocationPerOperation(result)
+			});
+		}
+		if(save != null){
+			PrintWriter writer = new PrintWriter(new FileWriter(save));
+			try {
+				for(Map.Entry<String, double[]> score : scores.entrySet()){
+					writer.println(score.getKey() + "\t" +
+						score.getValue()[0] + "\t" + score.getValue()[1]);
+				}
+			} finally {
+				writer.close();
+			}
+		}
+		if(baseline != null && regressions(load(baseline), scores, tolerance) > 0){
+			System.exit(1);
+		}
+	}
+
+	private static void usage(String problem){
+		System.err.println(problem);
+		System.err.println(
+			"Usage: BenchmarkRunner [pattern] [-save file] [-baseline file] [-tolerance fraction]");
+		System.exit(2);
+	}
+
+	/**
+	 * Print and count every benchmark that got slower or allocates more
+	 * than its baseline
+	 */
+	private static int regressions(Map<String, double[]> baseline,
+			Map<String, double[]> scores, double tolerance){
+		int regressions = 0;
+		for(Map.Entry<String, double[]> score : scores.entrySet()){
+			double[] before = baseline.get(score.getKey());
+			if(before == null){
+				continue;
+			}
+			double[] after = score.getValue();
+			if(after[0] < before[0] * (1 - tolerance)){
+				System.out.println(String.format(
+					"REGRESSION %s: %.1f -> %.1f ops/ms",
+					score.getKey(), before[0], after[0]));
+				regressions++;
+			}
+			if(after[1] > before[1] + ALLOCATION_SLACK_BYTES){
+				System.out.println(String.format(
+					"REGRESSION %s: %.1f -> %.1f bytes/op",
+					score.getKey(), before[1], after[1]));
+				regressions++;
+			}
+		}
+		System.out.println(regressions + " regression(s) against the baseline.");
+		return regressions;
+	}
+
+	private static Map<String, double[]> load(String file) throws IOException {
+		Map<String, double[]> scores = new TreeMap<String, double[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = reader.readLine()) != null){
+				String[] fields = line.split("\t");
+				scores.put(fields[0], new double[]{
+					Double.parseDouble(fields[1]), Double.parseDouble(fields[2]) });
+			}
+		} finally {
+			reader.close();
+		}
+		return scores;
+	}
+
+	/**
+	 * Name a result by its benchmark method and parameter values
+	 */
+	private static String name(BenchmarkParams params){
+		StringBuilder name = new StringBuilder(params.getBenchmark());
+		for(String key : params.getParamsKeys()){
+			name.append(':').append(key).append('=').append(params.getParam(key));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Find the GC profiler's normalized allocation rate
+	 * @return bytes allocated per operation, or NaN if not profiled
+	 */
+	private static double allocationPerOperation(RunResult result){
+		for(Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()){
+			if(secondary.getKey().endsWith("gc.alloc.rate.norm")){
+				return secondary.getValue().getScore();
+			}
+		}
+		return Double.NaN;
+	}
+}
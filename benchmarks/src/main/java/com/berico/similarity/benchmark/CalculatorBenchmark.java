@@ -0,0 +1,102 @@
+package com.berico.similarity.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.IProfile;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.LevenshteinSimilarity;
+import com.berico.similarity.OptimalStringAlignmentSimilarity;
+import com.berico.similarity.SorensenSimilarity;
+
+/**
+ * Throughput of every calculator, on raw strings and on prepared profiles,
+ * across the length regimes and character sets of BenchmarkInputs.
+ * @author Richard C (Berico Technologies)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+
+	@Param({ "cosine", "jaccard", "sorensen", "jarowinkler", "levenshtein", "osa" })
+	public String calculatorName;
+
+	@Param({ "name", "address", "text" })
+	public String regime;
+
+	@Param({ "ascii", "unicode" })
+	public String charset;
+
+	private ISimilarityCalculator calculator;
+	private String[] strings;
+	private IProfile[] profiles;
+	private int next = 0;
+
+	@Setup
+	public void setup(){
+		calculator = calculator(calculatorName);
+		strings = BenchmarkInputs.pool(regime, charset);
+		profiles = new IProfile[strings.length];
+		for(int i = 0; i < strings.length; i++){
+			profiles[i] = calculator.prepare(strings[i]);
+		}
+	}
+
+	@Benchmark
+	public double calculate(){
+		int i = advance();
+		return calculator.calculate(strings[i], strings[next]);
+	}
+
+	@Benchmark
+	public double calculateProfiles(){
+		int i = advance();
+		return calculator.calculate(profiles[i], profiles[next]);
+	}
+
+	@Benchmark
+	public IProfile prepare(){
+		return calculator.prepare(strings[advance()]);
+	}
+
+	private int advance(){
+		int i = next;
+		next = (i + 1) & (BenchmarkInputs.POOL_SIZE - 1);
+		return i;
+	}
+
+	static ISimilarityCalculator calculator(String name){
+		if("cosine".equals(name)){
+			return new CosineSimilarity();
+		} else if("jaccard".equals(name)){
+			return new JaccardSimilarity();
+		} else if("sorensen".equals(name)){
+			return new SorensenSimilarity();
+		} else if("jarowinkler".equals(name)){
+			return new JaroWinklerSimilarity();
+		} else if("levenshtein".equals(name)){
+			return new LevenshteinSimilarity();
+		} else if("osa".equals(name)){
+			return new OptimalStringAlignmentSimilarity();
+		}
+		throw new IllegalArgumentException("Unknown calculator: " + name);
+	}
+}
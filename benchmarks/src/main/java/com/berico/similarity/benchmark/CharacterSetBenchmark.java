@@ -0,0 +1,87 @@
+package com.berico.similarity.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.berico.similarity.CharacterSet;
+import com.berico.similarity.CharacterVectorUtils;
+
+/**
+ * Set operations of CharacterVectorUtils (boxed collections) side by side
+ * with their CharacterSet (primitive) equivalents.
+ * @author Richard C (Berico Technologies)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharacterSetBenchmark {
+
+	@Param({ "name", "address", "text" })
+	public String regime;
+
+	@Param({ "ascii", "unicode" })
+	public String charset;
+
+	private String[] strings;
+	private int next = 0;
+
+	@Setup
+	public void setup(){
+		strings = BenchmarkInputs.pool(regime, charset);
+	}
+
+	@Benchmark
+	public Collection<Character> vectorUnion(){
+		int i = advance();
+		return CharacterVectorUtils.union(strings[i], strings[next]);
+	}
+
+	@Benchmark
+	public Collection<Character> vectorIntersect(){
+		int i = advance();
+		return CharacterVectorUtils.intersect(strings[i], strings[next]);
+	}
+
+	@Benchmark
+	public Collection<Character> vectorStringToCharacterSet(){
+		return CharacterVectorUtils.stringToCharacterSet(strings[advance()]);
+	}
+
+	@Benchmark
+	public int setUnionSize(){
+		int i = advance();
+		return CharacterSet.unionSize(strings[i], strings[next]);
+	}
+
+	@Benchmark
+	public int setIntersectionSize(){
+		int i = advance();
+		return CharacterSet.intersectionSize(strings[i], strings[next]);
+	}
+
+	@Benchmark
+	public CharacterSet setOf(){
+		return CharacterSet.of(strings[advance()]);
+	}
+
+	private int advance(){
+		int i = next;
+		next = (i + 1) & (BenchmarkInputs.POOL_SIZE - 1);
+		return i;
+	}
+}
@@ -0,0 +1,116 @@
+package com.berico.similarity.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.berico.similarity.VectorMath;
+import com.berico.similarity.VectorMathException;
+
+/**
+ * Throughput of the VectorMath primitives on vectors about as wide as the
+ * character-frequency vectors of each length regime.
+ * @author Richard C (Berico Technologies)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorMathBenchmark {
+
+	@Param({ "16", "64", "1024" })
+	public int dimensions;
+
+	private Integer[] arrayOne, arrayTwo;
+	private Collection<Integer> vectorOne, vectorTwo;
+	private Collection<Double> doubleVectorOne, doubleVectorTwo;
+	private int[] primitiveOne, primitiveTwo;
+	private double[] primitiveDoubleOne, primitiveDoubleTwo;
+
+	@Setup
+	public void setup(){
+		Random random = new Random(dimensions);
+		arrayOne = new Integer[dimensions];
+		arrayTwo = new Integer[dimensions];
+		vectorOne = new ArrayList<Integer>();
+		vectorTwo = new ArrayList<Integer>();
+		doubleVectorOne = new ArrayList<Double>();
+		doubleVectorTwo = new ArrayList<Double>();
+		primitiveOne = new int[dimensions];
+		primitiveTwo = new int[dimensions];
+		primitiveDoubleOne = new double[dimensions];
+		primitiveDoubleTwo = new double[dimensions];
+		for(int i = 0; i < dimensions; i++){
+			arrayOne[i] = random.nextInt(10);
+			arrayTwo[i] = random.nextInt(10);
+			vectorOne.add(arrayOne[i]);
+			vectorTwo.add(arrayTwo[i]);
+			doubleVectorOne.add(random.nextDouble());
+			doubleVectorTwo.add(random.nextDouble());
+			primitiveOne[i] = arrayOne[i];
+			primitiveTwo[i] = arrayTwo[i];
+			primitiveDoubleOne[i] = random.nextDouble();
+			primitiveDoubleTwo[i] = random.nextDouble();
+		}
+	}
+
+	@Benchmark
+	public int dotpArray() throws VectorMathException {
+		return VectorMath.dotp(arrayOne, arrayTwo);
+	}
+
+	@Benchmark
+	public int dotpCollection() throws VectorMathException {
+		return VectorMath.dotp(vectorOne, vectorTwo);
+	}
+
+	@Benchmark
+	public double dotpdCollection() throws VectorMathException {
+		return VectorMath.dotpd(doubleVectorOne, doubleVectorTwo);
+	}
+
+	@Benchmark
+	public double magnitudeArray(){
+		return VectorMath.magnitude(arrayOne);
+	}
+
+	@Benchmark
+	public double magnitudeCollection(){
+		return VectorMath.magnitude(vectorOne);
+	}
+
+	@Benchmark
+	public long dotpPrimitive() throws VectorMathException {
+		return VectorMath.dotp(primitiveOne, primitiveTwo);
+	}
+
+	@Benchmark
+	public double dotpPrimitiveDouble() throws VectorMathException {
+		return VectorMath.dotp(primitiveDoubleOne, primitiveDoubleTwo);
+	}
+
+	@Benchmark
+	public double magnitudePrimitive(){
+		return VectorMath.magnitude(primitiveOne);
+	}
+
+	@Benchmark
+	public double cosinePrimitive() throws VectorMathException {
+		return VectorMath.cosine(primitiveOne, primitiveTwo);
+	}
+}
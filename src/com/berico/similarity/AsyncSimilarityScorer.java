@@ -0,0 +1,292 @@
+package com.berico.similarity;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Scores a pair, or a batch of pairs, with several calculators at once
+ * and returns the scores as a CompletableFuture, for callers serving
+ * many concurrent requests.  Every calculator (and, for batches, every
+ * slice of pairs) runs as its own task, so a request takes about as long
+ * as its slowest calculator rather than the sum of them.
+ *
+ * Requests have deadlines: when one passes, the future fails with a
+ * TimeoutException and the request's remaining tasks are cancelled.
+ * Cancelling the future does the same.  Tasks that have not started
+ * never run, and batch tasks stop between pairs; a single calculation
+ * already running is allowed to finish, but its result is discarded.
+ *
+ * By default tasks run one per virtual thread when the JVM has them
+ * (Java 21 and later), and on an unbounded pool of daemon threads
+ * otherwise, so no pool needs sizing for the request load.
+ * @author Richard C (Berico Technologies)
+ */
+public class AsyncSimilarityScorer implements AutoCloseable {
+
+	//Pairs scored by one batch task between cancellation checks
+	private static final int SLICE_SIZE = 256;
+
+	//Fires deadlines; holds no work besides those
+	private static final ScheduledThreadPoolExecutor DEADLINES = deadlines();
+
+	private final ISimilarityCalculator[] calculators;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * Score with the Cosine, Jaccard, Sorensen and Jaro-Winkler
+	 * calculators, on virtual threads when available
+	 */
+	public AsyncSimilarityScorer(){
+		this(new CosineSimilarity(), new JaccardSimilarity(),
+			new SorensenSimilarity(), new JaroWinklerSimilarity());
+	}
+
+	/**
+	 * Score with a chosen set of calculators, on virtual threads when
+	 * available
+	 * @param calculators calculators to score with, in result order
+	 */
+	public AsyncSimilarityScorer(ISimilarityCalculator... calculators){
+		this(newPerTaskExecutor(), true, calculators);
+	}
+
+	/**
+	 * Score with a chosen set of calculators on an executor the caller
+	 * manages (close will not shut it down)
+	 * @param executor executor tasks run on
+	 * @param calculators calculators to score with, in result order
+	 */
+	public AsyncSimilarityScorer(ExecutorService executor, ISimilarityCalculator... calculators){
+		this(executor, false, calculators);
+	}
+
+	private AsyncSimilarityScorer(ExecutorService executor, boolean ownsExecutor,
+			ISimilarityCalculator... calculators){
+		if(calculators.length == 0){
+			throw new IllegalArgumentException("Need at least one calculator");
+		}
+		this.calculators = calculators.clone();
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Get the number of scores produced per pair
+	 * @return number of calculators
+	 */
+	public int calculators(){
+		return calculators.length;
+	}
+
+	/**
+	 * Score one pair with every calculator
+	 * @param stringOne first string
+	 * @param stringTwo second string
+	 * @param timeout time allowed before the request fails
+	 * @param unit unit of the timeout
+	 * @return future of one score per calculator, in calculator order
+	 */
+	public CompletableFuture<double[]> score(final String stringOne, final String stringTwo,
+			long timeout, TimeUnit unit){
+		final Request request = new Request(calculators.length, calculators.length);
+		for(int c = 0; c < calculators.length; c++){
+			final int index = c;
+			request.submit(c, new Runnable(){
+				@Override
+				public void run(){
+					request.scores[index] = calculators[index].calculate(stringOne, stringTwo);
+				}
+			});
+		}
+		return request.start(timeout, unit);
+	}
+
+	/**
+	 * Score a batch of pairs with every calculator
+	 * @param stringsOne first string of each pair
+	 * @param stringsTwo second string of each pair
+	 * @param timeout time allowed before the request fails
+	 * @param unit unit of the timeout
+	 * @return future of the scores, row-major: the score of pair i by
+	 * calculator c is at index (i * calculators() + c)
+	 */
+	public CompletableFuture<double[]> score(final List<String> stringsOne,
+			final List<String> stringsTwo, long timeout, TimeUnit unit){
+		if(stringsOne.size() != stringsTwo.size()){
+			throw new IllegalArgumentException("Batches differ in size: "
+				+ stringsOne.size() + " and " + stringsTwo.size());
+		}
+		final int pairs = stringsOne.size();
+		final int columns = calculators.length;
+		if((long) pairs * columns > Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException(
+				"Scores exceed the maximum array size: " + pairs + " x " + columns);
+		}
+		int slices = (pairs + SLICE_SIZE - 1) / SLICE_SIZE;
+		final Request request = new Request(pairs * columns, slices * columns);
+		int task = 0;
+		for(int c = 0; c < columns; c++){
+			final ISimilarityCalculator calculator = calculators[c];
+			final int column = c;
+			for(int from = 0; from < pairs; from += SLICE_SIZE){
+				final int start = from;
+				final int end = Math.min(pairs, from + SLICE_SIZE);
+				request.submit(task++, new Runnable(){
+					@Override
+					public void run(){
+						for(int i = start; i < end && !request.future.isDone(); i++){
+							request.scores[i * columns + column] =
+								calculator.calculate(stringsOne.get(i), stringsTwo.get(i));
+						}
+					}
+				});
+			}
+		}
+		return request.start(timeout, unit);
+	}
+
+	/**
+	 * Shut down the executor if this scorer created it.  Requests still
+	 * running are cancelled.
+	 */
+	@Override
+	public void close(){
+		if(ownsExecutor){
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The tasks, scores and future of one request
+	 */
+	private final class Request implements Runnable {
+
+		final double[] scores;
+		final CompletableFuture<double[]> future = new CompletableFuture<double[]>();
+		final Future<?>[] tasks;
+		final AtomicInteger remaining;
+		volatile ScheduledFuture<?> deadline;
+
+		Request(int size, int tasks){
+			this.scores = new double[size];
+			this.tasks = new Future<?>[tasks];
+			this.remaining = new AtomicInteger(tasks);
+		}
+
+		/**
+		 * Submit one task, completing the request after the last one
+		 */
+		void submit(int task, final Runnable body){
+			tasks[task] = executor.submit(new Runnable(){
+				@Override
+				public void run(){
+					if(future.isDone()){
+						return;
+					}
+					try {
+						body.run();
+					} catch(Throwable throwable){
+						fail(throwable);
+						return;
+					}
+					if(remaining.decrementAndGet() == 0){
+						//Tasks' writes happen-before the decrement that reaches zero
+						future.complete(scores);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Arm the deadline and clean up once the future is done, however
+		 * it was completed
+		 */
+		CompletableFuture<double[]> start(long timeout, TimeUnit unit){
+			if(tasks.length == 0){
+				future.complete(scores);
+				return future;
+			}
+			deadline = DEADLINES.schedule(this, timeout, unit);
+			future.whenComplete(new BiConsumer<double[], Throwable>(){
+				@Override
+				public void accept(double[] scores, Throwable throwable){
+					ScheduledFuture<?> deadline = Request.this.deadline;
+					if(deadline != null){
+						deadline.cancel(false);
+					}
+					if(throwable != null){
+						cancelTasks();
+					}
+				}
+			});
+			return future;
+		}
+
+		/**
+		 * Deadline passed
+		 */
+		@Override
+		public void run(){
+			fail(new TimeoutException("Request missed its deadline"));
+		}
+
+		void fail(Throwable throwable){
+			if(future.completeExceptionally(throwable)){
+				cancelTasks();
+			}
+		}
+
+		void cancelTasks(){
+			for(Future<?> task : tasks){
+				if(task != null){
+					task.cancel(false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create an executor running each task on its own virtual thread if
+	 * this JVM has them (looked up reflectively, so this class still runs
+	 * on older JVMs), or else on a cached pool of daemon threads
+	 */
+	static ExecutorService newPerTaskExecutor(){
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch(ReflectiveOperationException e){
+			return Executors.newCachedThreadPool(daemonThreads("similarity-async-"));
+		}
+	}
+
+	private static ScheduledThreadPoolExecutor deadlines(){
+		ScheduledThreadPoolExecutor deadlines =
+			new ScheduledThreadPoolExecutor(1, daemonThreads("similarity-deadline-"));
+		deadlines.setRemoveOnCancelPolicy(true);
+		return deadlines;
+	}
+
+	private static ThreadFactory daemonThreads(final String prefix){
+		return new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable){
+				Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,313 @@
+package com.berico.similarity;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores many strings at once with any ISimilarityCalculator, spreading the
+ * work over a ForkJoinPool.  Every string is prepared exactly once, and
+ * pairs are visited in square blocks (BLOCK_SIZE x BLOCK_SIZE) so the
+ * profiles a worker is comparing stay in cache while it sweeps the block.
+ *
+ * Results are either written to a primitive double[] or handed to an
+ * IScoreListener as they are produced (which is the only option once the
+ * result would not fit in an array).  With an instrumented calculator,
+ * each batch is recorded as one search that compared every pair.
+ * @author Richard C (Berico Technologies)
+ */
+public class BatchScorer {
+
+	//Edge length of the square blocks of pairs scored by one task
+	public static final int BLOCK_SIZE = 64;
+
+	//Minimum number of strings prepared by one task
+	private static final int PREPARE_THRESHOLD = 1024;
+
+	//Largest array we are willing to allocate for results
+	private static final long MAX_RESULTS = Integer.MAX_VALUE - 8;
+
+	private final ISimilarityCalculator calculator;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Score with the common fork/join pool
+	 * @param calculator calculator used to score every pair
+	 */
+	public BatchScorer(ISimilarityCalculator calculator){
+		this(calculator, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Score on a specific fork/join pool
+	 * @param calculator calculator used to score every pair
+	 * @param pool pool to run on
+	 */
+	public BatchScorer(ISimilarityCalculator calculator, ForkJoinPool pool){
+		this.calculator = calculator;
+		this.pool = pool;
+	}
+
+	/**
+	 * Score one query against every reference string
+	 * @param query query string
+	 * @param references strings to compare with
+	 * @return score of the query against references[i], at index i
+	 */
+	public double[] scoreOne(String query, List<String> references){
+		final IProfile queryProfile = calculator.prepare(query);
+		final IProfile[] referenceProfiles = prepare(references);
+		final double[] scores = new double[referenceProfiles.length];
+		pool.invoke(new RangeTask(new RangeBody(){
+			@Override
+			public void compute(int from, int to){
+				for(int i = from; i < to; i++){
+					scores[i] = calculator.calculate(queryProfile, referenceProfiles[i]);
+				}
+			}
+		}, 0, referenceProfiles.length, BLOCK_SIZE * BLOCK_SIZE));
+		record(referenceProfiles.length);
+		return scores;
+	}
+
+	/**
+	 * Score every query against every reference string
+	 * @param queries row strings
+	 * @param references column strings
+	 * @return row-major matrix: the score of queries[i] against
+	 * references[j] is at index (i * references.size() + j)
+	 */
+	public double[] scoreCrossProduct(List<String> queries, List<String> references){
+		final int columns = references.size();
+		final double[] scores =
+			new double[checkedSize((long) queries.size() * columns)];
+		scoreCrossProduct(queries, references, new IScoreListener(){
+			@Override
+			public void score(int one, int two, double score){
+				scores[one * columns + two] = score;
+			}
+		});
+		return scores;
+	}
+
+	/**
+	 * Score every query against every reference string, streaming
+	 * each result to a listener
+	 * @param queries row strings
+	 * @param references column strings
+	 * @param listener receives (query index, reference index, score)
+	 */
+	public void scoreCrossProduct(
+			List<String> queries, List<String> references, IScoreListener listener){
+		IProfile[] rows = prepare(queries);
+		IProfile[] columns = prepare(references);
+		pool.invoke(new BlockTask(rows, columns, false, listener,
+				0, blocks(rows.length), 0, blocks(columns.length)));
+		record((long) rows.length * columns.length);
+	}
+
+	/**
+	 * Score every distinct pair within a set of strings (the upper
+	 * triangle of the all-pairs matrix, diagonal excluded)
+	 * @param strings strings to compare with each other
+	 * @return packed upper triangle; the score of (i, j), i &lt; j,
+	 * is at index triangleIndex(i, j, strings.size())
+	 */
+	public double[] scoreAllPairs(List<String> strings){
+		final int n = strings.size();
+		final double[] scores =
+			new double[checkedSize((long) n * (n - 1) / 2)];
+		scoreAllPairs(strings, new IScoreListener(){
+			@Override
+			public void score(int one, int two, double score){
+				scores[triangleIndex(one, two, n)] = score;
+			}
+		});
+		return scores;
+	}
+
+	/**
+	 * Score every distinct pair within a set of strings, streaming
+	 * each result to a listener.  Each pair is reported once, with
+	 * the smaller index first.
+	 * @param strings strings to compare with each other
+	 * @param listener receives (i, j, score) with i &lt; j
+	 */
+	public void scoreAllPairs(List<String> strings, IScoreListener listener){
+		IProfile[] profiles = prepare(strings);
+		int blocks = blocks(profiles.length);
+		pool.invoke(new BlockTask(profiles, profiles, true, listener,
+				0, blocks, 0, blocks));
+		record((long) profiles.length * (profiles.length - 1) / 2);
+	}
+
+	/**
+	 * Get the position of pair (i, j), i &lt; j, in the packed
+	 * upper triangle returned by scoreAllPairs
+	 * @param i smaller index
+	 * @param j larger index
+	 * @param n number of strings
+	 * @return index into the packed triangle
+	 */
+	public static int triangleIndex(int i, int j, int n){
+		return (int) ((long) i * n - (long) i * (i + 1) / 2 + (j - i - 1));
+	}
+
+	/**
+	 * Prepare every string in parallel
+	 * @param strings strings to profile
+	 * @return profiles, in the same order
+	 */
+	private IProfile[] prepare(final List<String> strings){
+		final IProfile[] profiles = new IProfile[strings.size()];
+		pool.invoke(new RangeTask(new RangeBody(){
+			@Override
+			public void compute(int from, int to){
+				for(int i = from; i < to; i++){
+					profiles[i] = calculator.prepare(strings.get(i));
+				}
+			}
+		}, 0, profiles.length, PREPARE_THRESHOLD));
+		return profiles;
+	}
+
+	/**
+	 * Record a batch if the calculator is instrumented; batches score
+	 * every pair, so nothing is pruned
+	 */
+	private void record(long comparisons){
+		SimilarityMetrics metrics = SimilarityMetrics.of(calculator);
+		if(metrics != null){
+			metrics.recordSearch(comparisons, 0, false);
+		}
+	}
+
+	private static int blocks(int length){
+		return (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+
+	private static int checkedSize(long size){
+		if(size > MAX_RESULTS){
+			throw new IllegalArgumentException(
+				size + " results will not fit in an array; use an IScoreListener instead.");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Work done on a contiguous range of indexes
+	 */
+	interface RangeBody {
+		void compute(int from, int to);
+	}
+
+	/**
+	 * Splits an index range in half until it is below a threshold,
+	 * then hands it to the body directly.
+	 */
+	static final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RangeBody body;
+		private final int from, to, threshold;
+
+		RangeTask(RangeBody body, int from, int to, int threshold){
+			this.body = body;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute(){
+			if(to - from <= threshold){
+				body.compute(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(
+				new RangeTask(body, from, middle, threshold),
+				new RangeTask(body, middle, to, threshold));
+		}
+	}
+
+	/**
+	 * Scores a rectangle of the (rows x columns) block grid, given as
+	 * ranges of block rows and block columns.  The longer side is halved
+	 * until a single block remains.  In triangle mode rectangles entirely
+	 * below the diagonal are never created, and only pairs with row &lt;
+	 * column are scored.
+	 */
+	private final class BlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IProfile[] rows, columns;
+		private final boolean triangle;
+		private final IScoreListener listener;
+		private final int fromRow, toRow, fromColumn, toColumn;
+
+		BlockTask(IProfile[] rows, IProfile[] columns, boolean triangle,
+				IScoreListener listener, int fromRow, int toRow, int fromColumn, int toColumn){
+			this.rows = rows;
+			this.columns = columns;
+			this.triangle = triangle;
+			this.listener = listener;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.fromColumn = fromColumn;
+			this.toColumn = toColumn;
+		}
+
+		@Override
+		protected void compute(){
+			if(toRow - fromRow > 1 || toColumn - fromColumn > 1){
+				BlockTask first, second;
+				if(toRow - fromRow >= toColumn - fromColumn){
+					int middle = (fromRow + toRow) >>> 1;
+					first = task(fromRow, middle, fromColumn, toColumn);
+					second = task(middle, toRow, fromColumn, toColumn);
+				} else {
+					int middle = (fromColumn + toColumn) >>> 1;
+					first = task(fromRow, toRow, fromColumn, middle);
+					second = task(fromRow, toRow, middle, toColumn);
+				}
+				if(first == null){
+					second.compute();
+				} else if(second == null){
+					first.compute();
+				} else {
+					invokeAll(first, second);
+				}
+				return;
+			}
+			if(toRow == fromRow || toColumn == fromColumn){
+				return;
+			}
+			int rowEnd = Math.min(rows.length, (fromRow + 1) * BLOCK_SIZE);
+			int columnStart = fromColumn * BLOCK_SIZE;
+			int columnEnd = Math.min(columns.length, columnStart + BLOCK_SIZE);
+			for(int i = fromRow * BLOCK_SIZE; i < rowEnd; i++){
+				IProfile row = rows[i];
+				int start = triangle? Math.max(columnStart, i + 1) : columnStart;
+				for(int j = start; j < columnEnd; j++){
+					listener.score(i, j, calculator.calculate(row, columns[j]));
+				}
+			}
+		}
+
+		/**
+		 * Create the task for a sub-rectangle, or null if it holds no block
+		 * worth scoring (in triangle mode, every block row exceeds every
+		 * block column)
+		 */
+		private BlockTask task(int fromRow, int toRow, int fromColumn, int toColumn){
+			if(triangle && fromRow >= toColumn){
+				return null;
+			}
+			return new BlockTask(rows, columns, triangle, listener,
+				fromRow, toRow, fromColumn, toColumn);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.berico.similarity;
+
+/**
+ * Decorates a calculator with two opt-in caches: one of pair scores and
+ * one of per-string profiles.  All of the calculators in this package are
+ * symmetric, so pairs are stored in a fixed order and (A, B) hits the
+ * entry created by (B, A).  Score misses are computed from (cached)
+ * profiles, so the two layers work together.
+ * @author Richard C (Berico Technologies)
+ */
+public class CachingSimilarityCalculator implements ISimilarityCalculator {
+
+	//Default number of lock stripes per cache
+	private static final int CONCURRENCY = 64;
+
+	private final ISimilarityCalculator calculator;
+	private final LruCache<Pair, Double> scores;
+	private final LruCache<String, IProfile> profiles;
+
+	/**
+	 * @param calculator calculator to decorate (must be symmetric)
+	 * @param maxScores maximum number of pair scores to cache (0 disables)
+	 * @param maxProfiles maximum number of profiles to cache (0 disables)
+	 */
+	public CachingSimilarityCalculator(
+			ISimilarityCalculator calculator, int maxScores, int maxProfiles){
+		this.calculator = calculator;
+		this.scores = (maxScores > 0)?
+			new LruCache<Pair, Double>(maxScores, CONCURRENCY) : null;
+		this.profiles = (maxProfiles > 0)?
+			new LruCache<String, IProfile>(maxProfiles, CONCURRENCY) : null;
+	}
+
+	/**
+	 * Calculate the similarity of two strings, from the cache if possible
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return similarity of the strings
+	 */
+	@Override
+	public double calculate(String stringOne, String stringTwo) {
+		if(scores == null){
+			return score(stringOne, stringTwo);
+		}
+		Pair pair = new Pair(stringOne, stringTwo);
+		Double cached = scores.get(pair);
+		if(cached != null){
+			return cached;
+		}
+		double score = score(stringOne, stringTwo);
+		scores.put(pair, score);
+		return score;
+	}
+
+	/**
+	 * Get the profile of a string, from the cache if possible
+	 * @param string String to profile
+	 * @return the decorated calculator's profile of the string
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		if(profiles == null){
+			return calculator.prepare(string);
+		}
+		IProfile profile = profiles.get(string);
+		if(profile == null){
+			profile = calculator.prepare(string);
+			profiles.put(string, profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * Calculate the similarity of two profiles, caching the score
+	 * under the profiles' strings
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return similarity of the profiled strings
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		if(scores == null){
+			return calculator.calculate(profileOne, profileTwo);
+		}
+		Pair pair = new Pair(profileOne.getString(), profileTwo.getString());
+		Double cached = scores.get(pair);
+		if(cached != null){
+			return cached;
+		}
+		double score = calculator.calculate(profileOne, profileTwo);
+		scores.put(pair, score);
+		return score;
+	}
+
+	/**
+	 * Get the pair score cache (for its hit, miss and eviction counts)
+	 * @return score cache, or null if disabled
+	 */
+	public LruCache<?, Double> getScoreCache(){
+		return scores;
+	}
+
+	/**
+	 * Get the profile cache (for its hit, miss and eviction counts)
+	 * @return profile cache, or null if disabled
+	 */
+	public LruCache<String, IProfile> getProfileCache(){
+		return profiles;
+	}
+
+	/**
+	 * Compute a score that was not cached, going through the
+	 * profile cache when there is one
+	 */
+	private double score(String stringOne, String stringTwo){
+		if(profiles == null){
+			return calculator.calculate(stringOne, stringTwo);
+		}
+		return calculator.calculate(prepare(stringOne), prepare(stringTwo));
+	}
+
+	/**
+	 * An order-normalized pair of strings
+	 */
+	private static final class Pair {
+
+		private final String first, second;
+		private final int hash;
+
+		Pair(String one, String two){
+			if(one.compareTo(two) <= 0){
+				first = one;
+				second = two;
+			} else {
+				first = two;
+				second = one;
+			}
+			hash = 31 * first.hashCode() + second.hashCode();
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other){
+			if(!(other instanceof Pair)){
+				return false;
+			}
+			Pair pair = (Pair) other;
+			return hash == pair.hash
+				&& first.equals(pair.first)
+				&& second.equals(pair.second);
+		}
+	}
+}
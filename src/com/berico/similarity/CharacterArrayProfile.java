@@ -0,0 +1,53 @@
+package com.berico.similarity;
+
+/**
+ * Profile used by JaroWinklerSimilarity and the edit distance
+ * similarities: the string's characters, copied out once so the
+ * matching loops can index them directly.
+ * @author Richard C (Berico Technologies)
+ */
+public final class CharacterArrayProfile implements IProfile {
+
+	private final String string;
+	private final char[] characters;
+
+	public CharacterArrayProfile(String string){
+		this.string = string;
+		this.characters = string.toCharArray();
+	}
+
+	@Override
+	public String getString(){
+		return string;
+	}
+
+	/**
+	 * Get the number of characters in the string
+	 * @return length
+	 */
+	public int length(){
+		return characters.length;
+	}
+
+	/**
+	 * Get the characters of the string.  The array is shared, not copied,
+	 * and must not be modified.
+	 * @return characters
+	 */
+	char[] characters(){
+		return characters;
+	}
+
+	/**
+	 * Ensure a profile is a CharacterArrayProfile
+	 * @param profile profile handed to a character array calculator
+	 * @return the profile, cast
+	 */
+	static CharacterArrayProfile cast(IProfile profile){
+		if(!(profile instanceof CharacterArrayProfile)){
+			throw new IllegalArgumentException(
+				"Profile was not prepared by a character array calculator: " + profile);
+		}
+		return (CharacterArrayProfile) profile;
+	}
+}
@@ -0,0 +1,121 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Profile used by CosineSimilarity: a sparse character frequency
+ * histogram (sorted characters with their counts) and its precomputed
+ * magnitude.
+ * @author Richard C (Berico Technologies)
+ */
+public final class CharacterHistogram implements IProfile {
+
+	private final String string;
+
+	//Sorted, distinct characters of the string
+	private final char[] characters;
+
+	//Number of occurrences of the character at the same index
+	private final int[] counts;
+
+	private final long squaredNorm;
+	private final double magnitude;
+
+	public CharacterHistogram(String string){
+		this.string = string;
+		char[] sorted = string.toCharArray();
+		Arrays.sort(sorted);
+		//Collapse the sorted characters into (character, count) runs
+		char[] characters = new char[sorted.length];
+		int[] counts = new int[sorted.length];
+		int distinct = 0;
+		long squaredNorm = 0;
+		for(int i = 0; i < sorted.length; ){
+			int start = i;
+			while(i < sorted.length && sorted[i] == sorted[start]){ i++; }
+			long count = i - start;
+			characters[distinct] = sorted[start];
+			counts[distinct++] = (int) count;
+			squaredNorm += count * count;
+		}
+		this.characters = Arrays.copyOf(characters, distinct);
+		this.counts = Arrays.copyOf(counts, distinct);
+		this.squaredNorm = squaredNorm;
+		this.magnitude = Math.sqrt(squaredNorm);
+	}
+
+	@Override
+	public String getString(){
+		return string;
+	}
+
+	/**
+	 * Get the number of distinct characters in the histogram
+	 * @return number of non-zero dimensions
+	 */
+	public int size(){
+		return characters.length;
+	}
+
+	/**
+	 * Get the number of times a character occurs in the string
+	 * @param c character
+	 * @return frequency of occurrence
+	 */
+	public int count(char c){
+		int index = Arrays.binarySearch(characters, c);
+		return (index < 0)? 0 : counts[index];
+	}
+
+	/**
+	 * Get the sum of the squared frequencies
+	 * @return squared magnitude
+	 */
+	public long squaredNorm(){
+		return squaredNorm;
+	}
+
+	/**
+	 * Get the magnitude (Euclidean norm) of the frequency vector
+	 * @return magnitude
+	 */
+	public double magnitude(){
+		return magnitude;
+	}
+
+	/**
+	 * Calculate the dot product of two histograms by walking their
+	 * sorted characters side by side.
+	 * @param other other histogram
+	 * @return dot product of the frequency vectors
+	 */
+	public long dotProduct(CharacterHistogram other){
+		char[] otherCharacters = other.characters;
+		int[] otherCounts = other.counts;
+		long dotProduct = 0;
+		int i = 0, j = 0;
+		while(i < characters.length && j < otherCharacters.length){
+			if(characters[i] < otherCharacters[j]){
+				i++;
+			} else if(characters[i] > otherCharacters[j]){
+				j++;
+			} else {
+				dotProduct += (long) counts[i++] * otherCounts[j++];
+			}
+		}
+		return dotProduct;
+	}
+
+	/**
+	 * Ensure a profile is a CharacterHistogram
+	 * @param profile profile handed to CosineSimilarity
+	 * @return the profile, cast
+	 */
+	static CharacterHistogram cast(IProfile profile){
+		if(!(profile instanceof CharacterHistogram)){
+			throw new IllegalArgumentException(
+				"Profile was not prepared by CosineSimilarity: " + profile);
+		}
+		return (CharacterHistogram) profile;
+	}
+}
@@ -0,0 +1,95 @@
+package com.berico.similarity;
+
+/**
+ * Tokenizes a string into its overlapping character n-grams (q-grams).
+ * With padding, the string is treated as if n - 1 pad characters were
+ * added to both ends, so that every character (and in particular the
+ * first and last) appears in exactly n grams.  Without padding, a
+ * non-empty string shorter than n is a single token.
+ *
+ * Unigrams and bigrams are packed into their ids exactly; longer grams
+ * are hashed.
+ * @author Richard C (Berico Technologies)
+ */
+public class CharacterNGramTokenizer implements ITokenizer {
+
+	//Pad character: a Unicode noncharacter, so it never occurs in text
+	public static final char PAD = '\uFFFF';
+
+	//Unigrams, whose ids are the characters themselves: stands in for
+	//calculators that compare characters directly
+	static final CharacterNGramTokenizer UNIGRAMS = new CharacterNGramTokenizer(1, false);
+
+	private final int n;
+	private final boolean padded;
+
+	/**
+	 * @param n number of characters per gram
+	 * @param padded whether to pad both ends of the string
+	 */
+	public CharacterNGramTokenizer(int n, boolean padded){
+		if(n < 1){
+			throw new IllegalArgumentException("Gram size must be at least 1: " + n);
+		}
+		this.n = n;
+		this.padded = padded;
+	}
+
+	/**
+	 * Get the number of characters per gram
+	 * @return n
+	 */
+	public int getN(){
+		return n;
+	}
+
+	/**
+	 * Get whether the string's ends are padded
+	 * @return true if padded
+	 */
+	public boolean isPadded(){
+		return padded;
+	}
+
+	@Override
+	public int[] tokenize(String string){
+		int length = string.length();
+		int[] tokens = new int[maximumTokens(length)];
+		if(length == 0){
+			return tokens;
+		}
+		if(!padded && length < n){
+			tokens[0] = TokenHash.hash(string, 0, length);
+			return tokens;
+		}
+		//Gram i covers positions start .. start + n - 1 of the (possibly
+		//padded) string, where padding sits at positions < 0 and >= length
+		int start = padded? 1 - n : 0;
+		for(int i = 0; i < tokens.length; i++, start++){
+			if(n == 1){
+				tokens[i] = string.charAt(start);
+			} else if(n == 2){
+				tokens[i] = (charAt(string, start) << 16) | charAt(string, start + 1);
+			} else {
+				int hash = TokenHash.START;
+				for(int j = start; j < start + n; j++){
+					hash = TokenHash.add(hash, charAt(string, j));
+				}
+				tokens[i] = TokenHash.finish(hash);
+			}
+		}
+		return tokens;
+	}
+
+	@Override
+	public int maximumTokens(int length){
+		if(length == 0){
+			return 0;
+		}
+		return padded? length + n - 1 : Math.max(1, length - n + 1);
+	}
+
+	private static char charAt(String string, int position){
+		return (position < 0 || position >= string.length())? PAD : string.charAt(position);
+	}
+}
@@ -0,0 +1,344 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * A primitive, immutable set of characters.  Characters in the
+ * ASCII/Latin-1 range (0 - 255) are kept in a 256 bit bitset (four longs);
+ * anything wider is kept in a sorted, de-duplicated char array.  Most of
+ * the strings we compare never leave Latin-1, so in practice set operations
+ * are a handful of AND/OR and Long.bitCount calls.
+ *
+ * The static String-based operations do not allocate: they borrow per-thread
+ * scratch buffers, which only grow when a longer string than any seen before
+ * (on that thread) comes through.  These are what JaccardSimilarity and
+ * SorensenSimilarity use instead of the Collection-based methods of
+ * CharacterVectorUtils.
+ * @author Richard C (Berico Technologies)
+ */
+public final class CharacterSet {
+
+	//Number of longs needed to hold a bit for every Latin-1 character
+	private static final int LATIN1_WORDS = 4;
+
+	//Characters below this value live in the bitset
+	private static final int LATIN1_LIMIT = LATIN1_WORDS * 64;
+
+	private static final char[] NO_CHARACTERS = new char[0];
+
+	//Latin-1 membership bits
+	private final long[] latin1;
+
+	//Sorted, distinct characters outside of Latin-1
+	private final char[] wide;
+
+	//Number of distinct characters in the set
+	private final int size;
+
+	private CharacterSet(long[] latin1, char[] wide){
+		this.latin1 = latin1;
+		this.wide = wide;
+		this.size = bitCount(latin1) + wide.length;
+	}
+
+	/**
+	 * Build the set of unique characters occurring in a string.
+	 * @param string input string
+	 * @return set of characters
+	 */
+	public static CharacterSet of(String string){
+		long[] latin1 = new long[LATIN1_WORDS];
+		char[] wide = null;
+		int wideCount = 0;
+		for(int i = 0; i < string.length(); i++){
+			char c = string.charAt(i);
+			if(c < LATIN1_LIMIT){
+				latin1[c >>> 6] |= 1L << c;
+			} else {
+				if(wide == null){
+					wide = new char[string.length() - i];
+				}
+				wide[wideCount++] = c;
+			}
+		}
+		if(wide == null){
+			return new CharacterSet(latin1, NO_CHARACTERS);
+		}
+		return new CharacterSet(latin1,
+				Arrays.copyOf(wide, sortDistinct(wide, wideCount)));
+	}
+
+	/**
+	 * Get the number of distinct characters in the set
+	 * @return cardinality of the set
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Determine whether the set contains a character
+	 * @param c character to look for
+	 * @return true if the character is a member of the set
+	 */
+	public boolean contains(char c){
+		if(c < LATIN1_LIMIT){
+			return (latin1[c >>> 6] & (1L << c)) != 0;
+		}
+		return Arrays.binarySearch(wide, c) >= 0;
+	}
+
+	/**
+	 * Get the number of characters this set shares with another
+	 * @param other set to intersect with
+	 * @return |A intersect B|
+	 */
+	public int intersectionSize(CharacterSet other){
+		int count = 0;
+		for(int w = 0; w < LATIN1_WORDS; w++){
+			count += Long.bitCount(latin1[w] & other.latin1[w]);
+		}
+		return count +
+			intersectSorted(wide, wide.length, other.wide, other.wide.length);
+	}
+
+	/**
+	 * Get the number of distinct characters in either set
+	 * @param other set to union with
+	 * @return |A union B|
+	 */
+	public int unionSize(CharacterSet other){
+		return size + other.size - intersectionSize(other);
+	}
+
+	/**
+	 * Get the number of distinct characters shared by two strings
+	 * without allocating any intermediate sets.
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return the size of the intersection of the strings' character sets
+	 */
+	public static int intersectionSize(String stringOne, String stringTwo){
+		return intersection(intersectionAndUnion(stringOne, stringTwo));
+	}
+
+	/**
+	 * Get the number of distinct characters occurring in either of two
+	 * strings without allocating any intermediate sets.
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return the size of the union of the strings' character sets
+	 */
+	public static int unionSize(String stringOne, String stringTwo){
+		return union(intersectionAndUnion(stringOne, stringTwo));
+	}
+
+	/**
+	 * Compute both the intersection and union sizes of two strings'
+	 * character sets in a single pass.  The two counts are packed into
+	 * one long (intersection in the high word, union in the low word) so
+	 * that callers needing both do not have to allocate a result holder;
+	 * unpack them with intersection(long) and union(long).
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return packed intersection and union sizes
+	 */
+	static long intersectionAndUnion(String stringOne, String stringTwo){
+		Scratch scratch = SCRATCH.get();
+		Arrays.fill(scratch.bitsOne, 0L);
+		Arrays.fill(scratch.bitsTwo, 0L);
+		int wideOne = fill(stringOne, scratch.bitsOne, scratch.wideOne(stringOne.length()));
+		int wideTwo = fill(stringTwo, scratch.bitsTwo, scratch.wideTwo(stringTwo.length()));
+		return intersectionAndUnion(scratch, wideOne, wideTwo);
+	}
+
+	/**
+	 * Compute the packed intersection and union sizes of the character
+	 * sets of the first characters of two arrays, as intersectionAndUnion
+	 * does for Strings
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @return packed intersection and union sizes
+	 */
+	static long intersectionAndUnion(char[] one, int oneLength, char[] two, int twoLength){
+		Scratch scratch = SCRATCH.get();
+		Arrays.fill(scratch.bitsOne, 0L);
+		Arrays.fill(scratch.bitsTwo, 0L);
+		int wideOne = fill(one, oneLength, scratch.bitsOne, scratch.wideOne(oneLength));
+		int wideTwo = fill(two, twoLength, scratch.bitsTwo, scratch.wideTwo(twoLength));
+		return intersectionAndUnion(scratch, wideOne, wideTwo);
+	}
+
+	/**
+	 * Combine the filled scratch sets of two strings
+	 * @param scratch scratch holding both strings' bits and wide characters
+	 * @param wideOne number of wide characters of the first string
+	 * @param wideTwo number of wide characters of the second string
+	 * @return packed intersection and union sizes
+	 */
+	private static long intersectionAndUnion(Scratch scratch, int wideOne, int wideTwo){
+		long[] bitsOne = scratch.bitsOne;
+		long[] bitsTwo = scratch.bitsTwo;
+		int intersection = 0;
+		int union = 0;
+		for(int w = 0; w < LATIN1_WORDS; w++){
+			intersection += Long.bitCount(bitsOne[w] & bitsTwo[w]);
+			union += Long.bitCount(bitsOne[w] | bitsTwo[w]);
+		}
+		//Only strings that leave Latin-1 pay for the sorted fallback
+		if(wideOne > 0 || wideTwo > 0){
+			wideOne = sortDistinct(scratch.wideOne, wideOne);
+			wideTwo = sortDistinct(scratch.wideTwo, wideTwo);
+			int wideIntersection =
+				intersectSorted(scratch.wideOne, wideOne, scratch.wideTwo, wideTwo);
+			intersection += wideIntersection;
+			union += wideOne + wideTwo - wideIntersection;
+		}
+		return ((long) intersection << 32) | (union & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Unpack the intersection size from intersectionAndUnion
+	 * @param packed packed sizes
+	 * @return intersection size
+	 */
+	static int intersection(long packed){
+		return (int) (packed >>> 32);
+	}
+
+	/**
+	 * Unpack the union size from intersectionAndUnion
+	 * @param packed packed sizes
+	 * @return union size
+	 */
+	static int union(long packed){
+		return (int) packed;
+	}
+
+	/**
+	 * Set the Latin-1 bits for a string and copy out every wider
+	 * character (unsorted, possibly duplicated).
+	 * @param string input string
+	 * @param bits Latin-1 bitset to populate
+	 * @param wide buffer for the wider characters
+	 * @return number of wide characters copied
+	 */
+	private static int fill(String string, long[] bits, char[] wide){
+		int wideCount = 0;
+		for(int i = 0; i < string.length(); i++){
+			char c = string.charAt(i);
+			if(c < LATIN1_LIMIT){
+				bits[c >>> 6] |= 1L << c;
+			} else {
+				wide[wideCount++] = c;
+			}
+		}
+		return wideCount;
+	}
+
+	/**
+	 * Set the Latin-1 bits for the first characters of an array and copy
+	 * out every wider character (unsorted, possibly duplicated).
+	 * @param chars input characters
+	 * @param length number of characters to use
+	 * @param bits Latin-1 bitset to populate
+	 * @param wide buffer for the wider characters
+	 * @return number of wide characters copied
+	 */
+	private static int fill(char[] chars, int length, long[] bits, char[] wide){
+		int wideCount = 0;
+		for(int i = 0; i < length; i++){
+			char c = chars[i];
+			if(c < LATIN1_LIMIT){
+				bits[c >>> 6] |= 1L << c;
+			} else {
+				wide[wideCount++] = c;
+			}
+		}
+		return wideCount;
+	}
+
+	/**
+	 * Sort the first count characters of an array in place and
+	 * squeeze out duplicates.
+	 * @param chars characters
+	 * @param count number of valid characters
+	 * @return number of distinct characters now at the front of the array
+	 */
+	private static int sortDistinct(char[] chars, int count){
+		if(count < 2){
+			return count;
+		}
+		Arrays.sort(chars, 0, count);
+		int distinct = 1;
+		for(int i = 1; i < count; i++){
+			if(chars[i] != chars[distinct - 1]){
+				chars[distinct++] = chars[i];
+			}
+		}
+		return distinct;
+	}
+
+	/**
+	 * Count the characters two sorted, distinct arrays have in common
+	 * by walking them side by side.
+	 */
+	private static int intersectSorted(
+			char[] one, int oneLength, char[] two, int twoLength){
+		int count = 0;
+		int i = 0, j = 0;
+		while(i < oneLength && j < twoLength){
+			if(one[i] < two[j]){
+				i++;
+			} else if(one[i] > two[j]){
+				j++;
+			} else {
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	private static int bitCount(long[] bits){
+		int count = 0;
+		for(long word : bits){
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Per-thread buffers backing the allocation-free String operations.
+	 */
+	private static final class Scratch {
+		final long[] bitsOne = new long[LATIN1_WORDS];
+		final long[] bitsTwo = new long[LATIN1_WORDS];
+		char[] wideOne = new char[64];
+		char[] wideTwo = new char[64];
+
+		char[] wideOne(int capacity){
+			if(wideOne.length < capacity){
+				wideOne = new char[capacity];
+			}
+			return wideOne;
+		}
+
+		char[] wideTwo(int capacity){
+			if(wideTwo.length < capacity){
+				wideTwo = new char[capacity];
+			}
+			return wideTwo;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
+}
@@ -0,0 +1,51 @@
+package com.berico.similarity;
+
+/**
+ * Profile used by the set-based calculators (Jaccard and Sorensen):
+ * the string's length along with its primitive character set.
+ * @author Richard C (Berico Technologies)
+ */
+public final class CharacterSetProfile implements IProfile {
+
+	private final String string;
+	private final CharacterSet characterSet;
+
+	public CharacterSetProfile(String string){
+		this.string = string;
+		this.characterSet = CharacterSet.of(string);
+	}
+
+	@Override
+	public String getString(){
+		return string;
+	}
+
+	/**
+	 * Get the number of characters (not unique characters) in the string
+	 * @return length of the original string
+	 */
+	public int length(){
+		return string.length();
+	}
+
+	/**
+	 * Get the set of unique characters in the string
+	 * @return character set
+	 */
+	public CharacterSet getCharacterSet(){
+		return characterSet;
+	}
+
+	/**
+	 * Ensure a profile is a CharacterSetProfile
+	 * @param profile profile handed to a set-based calculator
+	 * @return the profile, cast
+	 */
+	static CharacterSetProfile cast(IProfile profile){
+		if(!(profile instanceof CharacterSetProfile)){
+			throw new IllegalArgumentException(
+				"Profile was not prepared by a set-based calculator: " + profile);
+		}
+		return (CharacterSetProfile) profile;
+	}
+}
@@ -33,16 +33,9 @@ public class CharacterVectorUtils {
 	 * @return the set of characters that occur in both strings
 	 */
 	public static Collection<Character> intersect(String string1, String string2){
-		 Collection<Character> vector1 = uniqueCharacters(stringToCharacterSet(string1));
-		 Collection<Character> vector2 = uniqueCharacters(stringToCharacterSet(string2));
-		 Collection<Character> intersectVector = new TreeSet<Character>();
-		 for(Character c1 : vector1){
-			 for(Character c2 : vector2){
-				 if(c1.equals(c2)){
-					 intersectVector.add(c1);
-				 }
-			 }
-		 }
+		 Collection<Character> intersectVector = new TreeSet<Character>(stringToCharacterSet(string1));
+		 //Hash lookups instead of comparing every pair of characters
+		 intersectVector.retainAll(stringToCharacterSet(string2));
 		 return intersectVector;
 	}
 	
@@ -84,7 +77,10 @@ public class CharacterVectorUtils {
 	}
 	
 	/**
-	 * Convert a string to a set of characters
+	 * Convert a string to a set of characters.  These are UTF-16 chars, so
+	 * a character outside the BMP contributes both halves of its surrogate
+	 * pair (StringNormalizer keeps such pairs together); use
+	 * stringToCodePointSet to keep it whole.
 	 * @param string input string
 	 * @return set of characters
 	 */
@@ -96,6 +92,23 @@ public class CharacterVectorUtils {
 		return charSet;
 	}
 
+	/**
+	 * Convert a string to its set of Unicode code points, so a character
+	 * outside the BMP is one member rather than two surrogates.  An
+	 * unpaired surrogate is kept as a code point of its own.
+	 * @param string input string
+	 * @return set of code points
+	 */
+	public static Collection<Integer> stringToCodePointSet(String string){
+		Collection<Integer> codePointSet = new HashSet<Integer>();
+		for(int i = 0; i < string.length(); ){
+			int codePoint = string.codePointAt(i);
+			codePointSet.add(codePoint);
+			i += Character.charCount(codePoint);
+		}
+		return codePointSet;
+	}
+
 	/**
 	 * Utility function to change a character array into a set.
 	 * @param charArray Input Character Array
@@ -0,0 +1,346 @@
+package com.berico.similarity;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Combines several calculators into one weighted score,
+ * sum(w_i * s_i) / sum(w_i), and decides whether pairs reach a threshold
+ * without evaluating every calculator when it can avoid it.
+ *
+ * Pairs scoring below the threshold score 0, like the minimum score of
+ * the other calculators, so the calculators are evaluated one at a time
+ * and a pair is rejected as soon as the score so far plus the largest
+ * contribution the rest could make falls short of the threshold.  Pairs
+ * that reach it get their exact weighted score.  accepts only needs the
+ * decision, so it also stops as soon as the score so far reaches the
+ * threshold (the rest can only add to it).  With profiles, bounded
+ * calculators also offer their upperBound in place of the maximum of 1,
+ * which often rejects a pair before anything is scored.  Every
+ * calculator must score in [0, 1].
+ *
+ * Calculators are evaluated in order of measured cost per unit of
+ * weight, cheapest first, so the decision is settled with as little work
+ * as possible.  Costs are learned from timing a sample of evaluations and
+ * follow changes in the workload: every ADAPT_SAMPLES timed evaluations,
+ * the costs move halfway towards the latest averages and the order is
+ * recomputed.  Until then, calculators are tried in the order given.
+ * @author Richard C (Berico Technologies)
+ */
+public class CompositeSimilarityCalculator implements ISimilarityCalculator {
+
+	//One evaluation in SAMPLE_EVERY is timed (a power of two)
+	private static final int SAMPLE_EVERY = 32;
+
+	//Timed evaluations between re-orderings
+	private static final int ADAPT_SAMPLES = 1024;
+
+	//Slack added to upper bounds to absorb floating point error
+	private static final double BOUND_TOLERANCE = 1e-9;
+
+	//Returned by evaluate for pairs below the threshold
+	private static final double REJECTED = -1d;
+
+	private final ISimilarityCalculator[] calculators;
+	private final IBoundedSimilarityCalculator[] bounded;
+	private final double[] weights;
+	private final double totalWeight;
+	private final double threshold;
+
+	//Timings since the last re-ordering
+	private final LongAdder[] nanos;
+	private final LongAdder[] samples;
+	private final LongAdder sampled = new LongAdder();
+	private final AtomicBoolean adapting = new AtomicBoolean();
+
+	//Smoothed nanoseconds per evaluation (NaN until measured); guarded by adapting
+	private final double[] costs;
+
+	//Indexes of the calculators, in evaluation order; replaced, never modified
+	private volatile int[] order;
+
+	/**
+	 * @param calculators calculators to combine, each scoring in [0, 1]
+	 * @param weights weight of each calculator's score (positive)
+	 * @param threshold weighted score a pair needs to be accepted
+	 */
+	public CompositeSimilarityCalculator(ISimilarityCalculator[] calculators, double[] weights,
+			double threshold){
+		if(calculators.length == 0 || calculators.length != weights.length){
+			throw new IllegalArgumentException("Need one weight per calculator: "
+				+ calculators.length + " calculators, " + weights.length + " weights");
+		}
+		int n = calculators.length;
+		this.calculators = calculators.clone();
+		this.bounded = new IBoundedSimilarityCalculator[n];
+		this.weights = weights.clone();
+		double totalWeight = 0;
+		for(int i = 0; i < n; i++){
+			if(!(weights[i] > 0)){
+				throw new IllegalArgumentException("Weights must be positive: " + weights[i]);
+			}
+			totalWeight += weights[i];
+			if(calculators[i] instanceof IBoundedSimilarityCalculator){
+				bounded[i] = (IBoundedSimilarityCalculator) calculators[i];
+			}
+		}
+		this.totalWeight = totalWeight;
+		this.threshold = threshold;
+		this.nanos = new LongAdder[n];
+		this.samples = new LongAdder[n];
+		this.costs = new double[n];
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++){
+			nanos[i] = new LongAdder();
+			samples[i] = new LongAdder();
+			costs[i] = Double.NaN;
+			order[i] = i;
+		}
+		this.order = order;
+	}
+
+	/**
+	 * Get the weighted score a pair needs to be accepted
+	 * @return threshold
+	 */
+	public double getThreshold(){
+		return threshold;
+	}
+
+	/**
+	 * Get the current evaluation order
+	 * @return indexes of the calculators, cheapest per unit of weight first
+	 */
+	public int[] getOrder(){
+		return order.clone();
+	}
+
+	/**
+	 * Calculate the weighted score of two strings
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return weighted mean of every calculator's score, or 0 if it is
+	 * below the threshold
+	 */
+	@Override
+	public double calculate(String stringOne, String stringTwo) {
+		return Math.max(0d, evaluate(stringOne, stringTwo, false));
+	}
+
+	/**
+	 * Profile a string for every calculator
+	 * @param string String to profile
+	 * @return a profile holding each calculator's profile
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		IProfile[] profiles = new IProfile[calculators.length];
+		for(int i = 0; i < calculators.length; i++){
+			profiles[i] = calculators[i].prepare(string);
+		}
+		return new CompositeProfile(string, profiles);
+	}
+
+	/**
+	 * Calculate the weighted score of two prepared strings
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return weighted mean of every calculator's score, or 0 if it is
+	 * below the threshold
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		return Math.max(0d, evaluate(profileOne, profileTwo, false));
+	}
+
+	/**
+	 * Decide whether two strings' weighted score reaches the threshold,
+	 * evaluating only as many calculators as it takes
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return true if the weighted score reaches the threshold
+	 */
+	public boolean accepts(String stringOne, String stringTwo){
+		return evaluate(stringOne, stringTwo, true) >= 0;
+	}
+
+	/**
+	 * Decide whether two prepared strings' weighted score reaches the
+	 * threshold, evaluating only as many calculators as it takes
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return true if the weighted score reaches the threshold
+	 */
+	public boolean accepts(IProfile profileOne, IProfile profileTwo){
+		return evaluate(profileOne, profileTwo, true) >= 0;
+	}
+
+	/**
+	 * Evaluate calculators until the decision is settled
+	 * @param decisionOnly stop as soon as the pair is known to be accepted
+	 * @return REJECTED, or a score reaching the threshold (exact unless
+	 * decisionOnly)
+	 */
+	private double evaluate(String stringOne, String stringTwo, boolean decisionOnly){
+		boolean timed = sample();
+		double sum = 0, remaining = totalWeight;
+		for(int i : order){
+			if(decisionOnly && reaches(sum)){
+				return sum / totalWeight;
+			}
+			if(!reaches(sum + remaining + BOUND_TOLERANCE)){
+				return REJECTED;
+			}
+			sum += weights[i] * score(i, stringOne, stringTwo, timed);
+			remaining -= weights[i];
+		}
+		return reaches(sum)? sum / totalWeight : REJECTED;
+	}
+
+	private double evaluate(IProfile profileOne, IProfile profileTwo, boolean decisionOnly){
+		IProfile[] one = cast(profileOne).profiles;
+		IProfile[] two = cast(profileTwo).profiles;
+		boolean timed = sample();
+		//Cheap per-calculator bounds tighten the best case before any scoring
+		double[] maximum = new double[calculators.length];
+		double remaining = 0;
+		for(int i = 0; i < calculators.length; i++){
+			maximum[i] = (bounded[i] == null)? 1d : Math.min(1d,
+				bounded[i].upperBound(one[i], bounded[i].boundKey(two[i])) + BOUND_TOLERANCE);
+			remaining += weights[i] * maximum[i];
+		}
+		double sum = 0;
+		for(int i : order){
+			if(decisionOnly && reaches(sum)){
+				return sum / totalWeight;
+			}
+			if(!reaches(sum + remaining)){
+				return REJECTED;
+			}
+			sum += weights[i] * score(i, one[i], two[i], timed);
+			remaining -= weights[i] * maximum[i];
+		}
+		return reaches(sum)? sum / totalWeight : REJECTED;
+	}
+
+	/**
+	 * The one comparison every decision is made with
+	 * @param weightedSum sum of weighted scores (achieved or achievable)
+	 * @return true if that sum reaches the threshold
+	 */
+	private boolean reaches(double weightedSum){
+		return weightedSum / totalWeight >= threshold;
+	}
+
+	/**
+	 * Decide whether the current evaluation should be timed
+	 */
+	private static boolean sample(){
+		return (ThreadLocalRandom.current().nextInt() & (SAMPLE_EVERY - 1)) == 0;
+	}
+
+	private double score(int i, String stringOne, String stringTwo, boolean timed){
+		if(!timed){
+			return calculators[i].calculate(stringOne, stringTwo);
+		}
+		long start = System.nanoTime();
+		double score = calculators[i].calculate(stringOne, stringTwo);
+		record(i, System.nanoTime() - start);
+		return score;
+	}
+
+	private double score(int i, IProfile profileOne, IProfile profileTwo, boolean timed){
+		if(!timed){
+			return calculators[i].calculate(profileOne, profileTwo);
+		}
+		long start = System.nanoTime();
+		double score = calculators[i].calculate(profileOne, profileTwo);
+		record(i, System.nanoTime() - start);
+		return score;
+	}
+
+	/**
+	 * Record one timed evaluation, re-ordering once enough have been
+	 */
+	private void record(int i, long elapsed){
+		nanos[i].add(elapsed);
+		samples[i].increment();
+		sampled.increment();
+		if(sampled.sum() >= ADAPT_SAMPLES && adapting.compareAndSet(false, true)){
+			try {
+				adapt();
+			} finally {
+				adapting.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Fold the latest timings into the costs and re-order by cost per
+	 * unit of weight (the weight being how much of the decision a
+	 * calculator settles).  Calculators never timed keep their place
+	 * ahead of the rest, so they get measured.
+	 */
+	private void adapt(){
+		int n = calculators.length;
+		sampled.reset();
+		for(int i = 0; i < n; i++){
+			long count = samples[i].sumThenReset();
+			long total = nanos[i].sumThenReset();
+			if(count > 0){
+				double latest = (double) total / count;
+				costs[i] = Double.isNaN(costs[i])? latest : (costs[i] + latest) / 2;
+			}
+		}
+		//Insertion sort: there are only ever a handful of calculators
+		int[] order = this.order.clone();
+		for(int a = 1; a < n; a++){
+			int current = order[a];
+			int b = a - 1;
+			while(b >= 0 && before(current, order[b])){
+				order[b + 1] = order[b];
+				b--;
+			}
+			order[b + 1] = current;
+		}
+		this.order = order;
+	}
+
+	/**
+	 * Check whether calculator one should be evaluated before two
+	 */
+	private boolean before(int one, int two){
+		if(Double.isNaN(costs[one]) || Double.isNaN(costs[two])){
+			return Double.isNaN(costs[one]) && !Double.isNaN(costs[two]);
+		}
+		return costs[one] / weights[one] < costs[two] / weights[two];
+	}
+
+	static CompositeProfile cast(IProfile profile){
+		if(!(profile instanceof CompositeProfile)){
+			throw new IllegalArgumentException(
+				"Profile was not prepared by a CompositeSimilarityCalculator: " + profile);
+		}
+		return (CompositeProfile) profile;
+	}
+
+	/**
+	 * One profile per combined calculator
+	 */
+	static final class CompositeProfile implements IProfile {
+
+		private final String string;
+		final IProfile[] profiles;
+
+		CompositeProfile(String string, IProfile[] profiles){
+			this.string = string;
+			this.profiles = profiles;
+		}
+
+		@Override
+		public String getString() {
+			return string;
+		}
+	}
+}
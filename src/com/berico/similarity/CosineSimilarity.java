@@ -1,14 +1,44 @@
 package com.berico.similarity;
 
-import static com.berico.similarity.CharacterVectorUtils.*;
-import static com.berico.similarity.VectorMath.*;
-
-import java.util.Collection;
-import java.util.Vector;
+import java.util.Arrays;
 
+/**
+ * Calculate the Cosine Similarity of two strings, treating each string as
+ * a vector of character frequencies, or of token frequencies when given
+ * a tokenizer.
+ * @author Richard C (Berico Technologies)
+ */
 public class CosineSimilarity implements ISimilarityCalculator {
 
-	
+	//Characters below this value are counted in a dense histogram
+	private static final int LATIN1_LIMIT = 256;
+
+	//Null to compare characters
+	private final ITokenizer tokenizer;
+
+	/**
+	 * Compare strings as character frequency vectors
+	 */
+	public CosineSimilarity(){
+		this(null);
+	}
+
+	/**
+	 * Compare strings as token frequency vectors
+	 * @param tokenizer tokenizer to split strings with, or null for characters
+	 */
+	public CosineSimilarity(ITokenizer tokenizer){
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Get the tokenizer strings are split with
+	 * @return tokenizer, or null if strings are compared by character
+	 */
+	public ITokenizer getTokenizer(){
+		return tokenizer;
+	}
+
 	/**
 	 * Calculate the similarity of two strings using Cosine Similarity
 	 * @param stringOne First input string
@@ -17,56 +47,190 @@ public class CosineSimilarity implements ISimilarityCalculator {
 	 */
 	@Override
 	public double calculate(String stringOne, String stringTwo) {
-		Collection<Character> unionOfStringsOneAndTwo = union(stringOne, stringTwo);
-		Collection<Integer> stringOneOccurrenceVector = createFrequencyOfOccurrenceVector(stringOne, unionOfStringsOneAndTwo);
-		Collection<Integer> stringTwoOccurrenceVector = createFrequencyOfOccurrenceVector(stringTwo, unionOfStringsOneAndTwo);
-
-		int dotProduct = 0;
-		//This should be an unnecessary exception since we're submitting the union
-		//of both strings
-		try {
-			dotProduct = dotp(stringOneOccurrenceVector, stringTwoOccurrenceVector);
-		} catch (VectorMathException e){
-			e.printStackTrace();
-			System.out.println(stringOneOccurrenceVector);
-			System.out.println(stringTwoOccurrenceVector);
-			return -2;
+		if(tokenizer != null){
+			return calculate(prepare(stringOne), prepare(stringTwo));
 		}
-		
-		double vectorOneMagnitude = magnitude(stringOneOccurrenceVector);
-		double vectorTwoMagnitude = magnitude(stringTwoOccurrenceVector);
-			
+		//Copy the strings into this thread's buffers rather than
+		//allocating new arrays with toCharArray
+		Scratch scratch = SCRATCH.get();
+		char[] one = scratch.charactersOne(stringOne.length());
+		char[] two = scratch.charactersTwo(stringTwo.length());
+		stringOne.getChars(0, stringOne.length(), one, 0);
+		stringTwo.getChars(0, stringTwo.length(), two, 0);
+		return calculate(one, stringOne.length(), two, stringTwo.length());
+	}
+
+	/**
+	 * Calculate the Cosine Similarity of the character frequencies of the
+	 * first characters of two arrays (characters only: the tokenizer is
+	 * not consulted)
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @return cosine of the two angles (percentage of similarity)
+	 */
+	double calculate(char[] one, int oneLength, char[] two, int twoLength){
+		Scratch scratch = SCRATCH.get();
+		int[] histogramOne = scratch.histogramOne;
+		int[] histogramTwo = scratch.histogramTwo;
+		char[] wideOne = scratch.wideOne(oneLength);
+		char[] wideTwo = scratch.wideTwo(twoLength);
+		int wideOneCount = 0, wideTwoCount = 0;
+
+		//Each histogram is built in a single pass.  Squared norms are kept
+		//up to date as we go (raising a count from k to k + 1 adds 2k + 1
+		//to the sum of squares), and because string one's histogram is
+		//complete before string two is scanned, every occurrence of c in
+		//string two adds count1(c) to the dot product.
+		long squaredNormOne = 0;
+		for(int i = 0; i < oneLength; i++){
+			char c = one[i];
+			if(c < LATIN1_LIMIT){
+				squaredNormOne += (histogramOne[c]++ << 1) + 1;
+			} else {
+				wideOne[wideOneCount++] = c;
+			}
+		}
+		long squaredNormTwo = 0;
+		long dotProduct = 0;
+		for(int i = 0; i < twoLength; i++){
+			char c = two[i];
+			if(c < LATIN1_LIMIT){
+				squaredNormTwo += (histogramTwo[c]++ << 1) + 1;
+				dotProduct += histogramOne[c];
+			} else {
+				wideTwo[wideTwoCount++] = c;
+			}
+		}
+		clear(histogramOne, one, oneLength);
+		clear(histogramTwo, two, twoLength);
+
+		//Characters outside of Latin-1 are sorted and counted as runs,
+		//merging the two sparse histograms side by side.
+		if(wideOneCount > 0 || wideTwoCount > 0){
+			Arrays.sort(wideOne, 0, wideOneCount);
+			Arrays.sort(wideTwo, 0, wideTwoCount);
+			int i = 0, j = 0;
+			while(i < wideOneCount || j < wideTwoCount){
+				char c = (j == wideTwoCount
+						|| (i < wideOneCount && wideOne[i] < wideTwo[j]))?
+								wideOne[i] : wideTwo[j];
+				long countOne = 0, countTwo = 0;
+				while(i < wideOneCount && wideOne[i] == c){ countOne++; i++; }
+				while(j < wideTwoCount && wideTwo[j] == c){ countTwo++; j++; }
+				squaredNormOne += countOne * countOne;
+				squaredNormTwo += countTwo * countTwo;
+				dotProduct += countOne * countTwo;
+			}
+		}
+
+		//Magnitudes are taken separately (rather than as the root of the
+		//product) to stay bit-for-bit identical with the vector version.
+		double vectorOneMagnitude = Math.sqrt(squaredNormOne);
+		double vectorTwoMagnitude = Math.sqrt(squaredNormTwo);
+
 		return dotProduct / (vectorOneMagnitude * vectorTwoMagnitude);
 	}
-	
+
 	/**
-	 * Get the Frequency of Occurrence Vector from the Union Set and
-	 * target string
-	 * @param string Input String
-	 * @param unionSet Set of all Character-dimensions
-	 * @return Frequency of Occurrence Vector
+	 * Profile a string as its character (or token) frequency histogram
+	 * @param string input string
+	 * @return a CharacterHistogram, or a TokenProfile if tokenized, with
+	 * its magnitude precomputed
 	 */
-	private static Collection<Integer> createFrequencyOfOccurrenceVector(String string, Collection<Character> unionSet){
-		Collection<Integer> occurrenceVector = new Vector<Integer>();
-		for(Character c : unionSet){
-			occurrenceVector.add((Integer)countCharacter(string, c));
+	@Override
+	public IProfile prepare(String string) {
+		if(tokenizer != null){
+			return new TokenProfile(string, tokenizer);
 		}
-		return occurrenceVector;
+		return new CharacterHistogram(string);
 	}
 
 	/**
-	 * Count the number of times a character occurs in a string
-	 * @param string Input String
-	 * @param character Character to be counted
-	 * @return Frequency of Occurrence
+	 * Calculate the Cosine Similarity of two profiled strings
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return cosine of the two angles (percentage of similarity)
 	 */
-	private static int countCharacter(String string, Character character){
-		int count = 0;
-		for(Character c : string.toCharArray()){
-			if(c.equals(character)){
-				count++;
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		if(tokenizer != null){
+			TokenProfile tokensOne = TokenProfile.cast(profileOne);
+			TokenProfile tokensTwo = TokenProfile.cast(profileTwo);
+			return tokensOne.dotProduct(tokensTwo) /
+				(tokensOne.magnitude() * tokensTwo.magnitude());
+		}
+		CharacterHistogram histogramOne = CharacterHistogram.cast(profileOne);
+		CharacterHistogram histogramTwo = CharacterHistogram.cast(profileTwo);
+		return histogramOne.dotProduct(histogramTwo) /
+			(histogramOne.magnitude() * histogramTwo.magnitude());
+	}
+
+	/**
+	 * Reset the histogram entries a string touched.  Long strings
+	 * are cheaper to clear wholesale.
+	 * @param histogram Latin-1 histogram
+	 * @param chars characters that were counted into it
+	 * @param length number of characters counted
+	 */
+	private static void clear(int[] histogram, char[] chars, int length){
+		if(length >= LATIN1_LIMIT){
+			Arrays.fill(histogram, 0);
+			return;
+		}
+		for(int i = 0; i < length; i++){
+			char c = chars[i];
+			if(c < LATIN1_LIMIT){
+				histogram[c] = 0;
 			}
 		}
-		return count;
 	}
+
+	/**
+	 * Per-thread histograms and buffers, so calculate does not allocate.
+	 */
+	private static final class Scratch {
+		final int[] histogramOne = new int[LATIN1_LIMIT];
+		final int[] histogramTwo = new int[LATIN1_LIMIT];
+		char[] charactersOne = new char[64];
+		char[] charactersTwo = new char[64];
+		char[] wideOne = new char[64];
+		char[] wideTwo = new char[64];
+
+		char[] charactersOne(int capacity){
+			if(charactersOne.length < capacity){
+				charactersOne = new char[capacity];
+			}
+			return charactersOne;
+		}
+
+		char[] charactersTwo(int capacity){
+			if(charactersTwo.length < capacity){
+				charactersTwo = new char[capacity];
+			}
+			return charactersTwo;
+		}
+
+		char[] wideOne(int capacity){
+			if(wideOne.length < capacity){
+				wideOne = new char[capacity];
+			}
+			return wideOne;
+		}
+
+		char[] wideTwo(int capacity){
+			if(wideTwo.length < capacity){
+				wideTwo = new char[capacity];
+			}
+			return wideTwo;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
 }
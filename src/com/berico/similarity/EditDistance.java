@@ -0,0 +1,388 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Bit-parallel kernels computing the Levenshtein and optimal string
+ * alignment (restricted Damerau-Levenshtein) distances of two character
+ * arrays, without the O(n m) dynamic programming matrix.
+ *
+ * The shorter string is the pattern: one bit per character, 64 to a
+ * long.  Each column of the matrix (one character of the longer string)
+ * is then computed from the previous one in a handful of word operations
+ * per 64 pattern characters (Myers 1999; Hyyro 2003 for multiple words
+ * and for transpositions).  Patterns of up to 64 characters take a single
+ * word per column.
+ *
+ * Longer patterns are processed in 64-row blocks, and a maximum distance
+ * k limits them to the diagonal band of rows j - k to j + k of column j:
+ * a cell outside the band costs more than k, so no alignment within k
+ * passes through it.  Every 64 columns the band is also checked against
+ * the smallest distance any alignment through it could still end with,
+ * and the computation stops as soon as that exceeds k.
+ * @author Richard C (Berico Technologies)
+ */
+final class EditDistance {
+
+	//Columns between checks for an early exit
+	private static final int CHECK_INTERVAL = 64;
+
+	//Single-word patterns index characters below this directly
+	private static final int LATIN_SIZE = 256;
+
+	private EditDistance(){}
+
+	/**
+	 * Compute the Levenshtein distance of two character arrays, up to a
+	 * maximum
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @param maxDistance largest distance of interest, k
+	 * @return the distance if at most k, otherwise k + 1
+	 */
+	static int levenshtein(char[] one, int oneLength, char[] two, int twoLength,
+			int maxDistance){
+		return distance(one, oneLength, two, twoLength, maxDistance, false);
+	}
+
+	/**
+	 * Compute the optimal string alignment distance of two character
+	 * arrays (Levenshtein plus transpositions of adjacent characters,
+	 * editing no substring more than once), up to a maximum
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @param maxDistance largest distance of interest, k
+	 * @return the distance if at most k, otherwise k + 1
+	 */
+	static int optimalStringAlignment(char[] one, int oneLength, char[] two, int twoLength,
+			int maxDistance){
+		return distance(one, oneLength, two, twoLength, maxDistance, true);
+	}
+
+	private static int distance(char[] one, int oneLength, char[] two, int twoLength,
+			int maxDistance, boolean transpositions){
+		//The shorter string is the pattern, so there are as few words as possible
+		char[] pattern = one, text = two;
+		int n = oneLength, m = twoLength;
+		if(n > m){
+			pattern = two;
+			text = one;
+			n = twoLength;
+			m = oneLength;
+		}
+		//The distance is at least the difference in length
+		if(m - n > maxDistance){
+			return maxDistance + 1;
+		}
+		if(n == 0){
+			return m;
+		}
+		Scratch scratch = SCRATCH.get();
+		int words = (n + 63) >>> 6;
+		scratch.index(pattern, n, words);
+		try {
+			int distance = (words == 1)?
+				singleWord(scratch, n, text, m, transpositions)
+				: blocks(scratch, n, words, text, m, maxDistance, transpositions);
+			return Math.min(distance, maxDistance + 1);
+		} finally {
+			scratch.clear(pattern, n);
+		}
+	}
+
+	/**
+	 * Patterns of at most 64 characters: the whole column is one word
+	 */
+	private static int singleWord(Scratch scratch, int n, char[] text, int m,
+			boolean transpositions){
+		long[] latin = scratch.latin, masks = scratch.masks;
+		long vp = -1L, vn = 0L, d0 = -1L, previous = 0L;
+		long last = 1L << (n - 1);
+		int score = n;
+		for(int j = 0; j < m; j++){
+			char c = text[j];
+			long eq;
+			if(c < LATIN_SIZE){
+				eq = latin[c];
+			} else {
+				int entry = scratch.lookup(c);
+				eq = (entry < 0)? 0L : masks[entry];
+			}
+			//Cells equal to their upper-left neighbour
+			long next = (((eq & vp) + vp) ^ vp) | eq | vn;
+			if(transpositions){
+				next |= ((~d0 & eq) << 1) & previous;
+			}
+			long hp = vn | ~(next | vp);
+			long hn = vp & next;
+			if((hp & last) != 0){
+				score++;
+			} else if((hn & last) != 0){
+				score--;
+			}
+			//The top row grows by one per column
+			hp = (hp << 1) | 1L;
+			hn <<= 1;
+			vp = hn | ~(next | hp);
+			vn = hp & next;
+			d0 = next;
+			previous = eq;
+		}
+		return score;
+	}
+
+	/**
+	 * Longer patterns: one word per 64-row block, only the blocks
+	 * overlapping the band
+	 */
+	private static int blocks(Scratch scratch, int n, int words, char[] text, int m,
+			int maxDistance, boolean transpositions){
+		scratch.blocks(words);
+		long[] masks = scratch.masks;
+		long[] vps = scratch.vps, vns = scratch.vns, d0s = scratch.d0s;
+		//Score of each block's bottom row in the current column
+		int[] scores = scratch.scores;
+		int k = maxDistance;
+		boolean banded = k < m;
+		int lastRow = (n - 1) & 63;
+		int first = 0, last = -1;
+		int previousEntry = -1;
+		boolean exceeded = false;
+		for(int j = 1; j <= m; j++){
+			//Bring the blocks that enter the band into column j - 1 as if
+			//every cell were one more than the one above it: an
+			//overestimate, and only of cells costing more than k
+			int lastNeeded = (Math.min(n, j + k) - 1) >>> 6;
+			while(last < lastNeeded){
+				last++;
+				vps[last] = -1L;
+				vns[last] = 0L;
+				d0s[last] = -1L;
+				int bottom = Math.min(n, (last + 1) << 6);
+				scores[last] = (last == 0)? bottom
+					: scores[last - 1] + bottom - (last << 6);
+			}
+			//Drop the blocks entirely above the band.  The row above the
+			//first block then stands in for row 0, growing by one per column
+			//(again an overestimate of cells costing more than k)
+			if(banded){
+				while(first < last && ((first + 1) << 6) < j - k){
+					first++;
+				}
+			}
+			int entry = scratch.lookup(text[j - 1]);
+			int base = entry * words, previousBase = previousEntry * words;
+			int hin = 1;
+			long carry = 0L;
+			if(first > 0){
+				scores[first - 1]++;
+			}
+			for(int block = first; block <= last; block++){
+				long eq = (entry < 0)? 0L : masks[base + block];
+				long vp = vps[block], vn = vns[block];
+				long adjusted = (hin < 0)? eq | 1L : eq;
+				long next = (((adjusted & vp) + vp) ^ vp) | adjusted | vn;
+				if(transpositions){
+					long previous = (previousEntry < 0)? 0L : masks[previousBase + block];
+					long transposable = ~d0s[block] & eq;
+					next |= ((transposable << 1) | carry) & previous;
+					carry = transposable >>> 63;
+					d0s[block] = next;
+				}
+				long hp = vn | ~(next | vp);
+				long hn = vp & next;
+				int bit = (block == words - 1)? lastRow : 63;
+				int hout = (int) ((hp >>> bit) & 1L) - (int) ((hn >>> bit) & 1L);
+				hp <<= 1;
+				hn <<= 1;
+				if(hin > 0){
+					hp |= 1L;
+				} else if(hin < 0){
+					hn |= 1L;
+				}
+				vps[block] = hn | ~(next | hp);
+				vns[block] = hp & next;
+				scores[block] += hout;
+				hin = hout;
+			}
+			previousEntry = entry;
+			//An alignment crosses column j or, with a transposition,
+			//jumps from j - 1 to j + 1: stop once neither can stay within k
+			if(banded && (j % CHECK_INTERVAL == 0 || (transpositions && exceeded))){
+				boolean bound = cheapestThrough(scratch, first, last, n, words, j, m, k) > k;
+				if(bound && (!transpositions || exceeded)){
+					return k + 1;
+				}
+				exceeded = bound;
+			}
+		}
+		return scores[words - 1];
+	}
+
+	/**
+	 * Find the smallest distance an alignment through column j could end
+	 * with: min over the band of D[i][j] + |(n - i) - (m - j)|
+	 */
+	private static int cheapestThrough(Scratch scratch, int first, int last, int n, int words,
+			int j, int m, int k){
+		long[] vps = scratch.vps, vns = scratch.vns;
+		int[] scores = scratch.scores;
+		int cheapest = Integer.MAX_VALUE;
+		//Row 0
+		int value = (first == 0)? j : scores[first - 1];
+		int row = first << 6;
+		if(Math.abs(row - j) <= k){
+			cheapest = value + Math.abs((n - row) - (m - j));
+		}
+		for(int block = first; block <= last; block++){
+			long vp = vps[block], vn = vns[block];
+			int rows = (block == words - 1)? n - (block << 6) : 64;
+			for(int r = 0; r < rows; r++){
+				value += (int) ((vp >>> r) & 1L) - (int) ((vn >>> r) & 1L);
+				row++;
+				if(Math.abs(row - j) <= k){
+					cheapest = Math.min(cheapest, value + Math.abs((n - row) - (m - j)));
+				}
+			}
+		}
+		return cheapest;
+	}
+
+	/**
+	 * Per-thread pattern masks and block state, so the kernels never
+	 * allocate once they have grown to the longest strings seen
+	 */
+	private static final class Scratch {
+
+		//Open-addressed table of the pattern's characters
+		char[] keys = new char[128];
+		int[] entries = new int[128];
+		int[] used = new int[64];
+		int distinct;
+
+		//Per distinct character: one match mask per block
+		long[] masks = new long[64];
+
+		//Single-word masks of the characters below LATIN_SIZE
+		final long[] latin = new long[LATIN_SIZE];
+		boolean singleWord;
+
+		//Largest mask array (longs) kept between calls, and at all
+		static final int RETAINED_MASKS = 1 << 20;
+		static final int MAX_MASKS = Integer.MAX_VALUE - 8;
+
+		long[] vps = new long[0], vns = new long[0], d0s = new long[0];
+		int[] scores = new int[0];
+
+		/**
+		 * Build the match masks of a pattern.  Masks are kept per distinct
+		 * character (at most min(n, 65536) of them), grown as characters
+		 * are met.
+		 */
+		void index(char[] pattern, int n, int words){
+			int capacity = Integer.highestOneBit(Math.min(Math.max(64, n), 1 << 16)) << 2;
+			if(keys.length < capacity){
+				keys = new char[capacity];
+				entries = new int[capacity];
+			}
+			this.distinct = 0;
+			this.singleWord = (words == 1);
+			for(int i = 0; i < n; i++){
+				char c = pattern[i];
+				if(singleWord && c < LATIN_SIZE){
+					latin[c] |= 1L << i;
+					continue;
+				}
+				int slot = slot(c);
+				int entry = entries[slot] - 1;
+				if(entry < 0){
+					entry = distinct++;
+					reserve(distinct, words);
+					used[entry] = slot;
+					keys[slot] = c;
+					entries[slot] = entry + 1;
+					Arrays.fill(masks, entry * words, entry * words + words, 0L);
+				}
+				masks[entry * words + (i >>> 6)] |= 1L << (i & 63);
+			}
+		}
+
+		/**
+		 * Make room for the masks of a number of distinct characters
+		 */
+		private void reserve(int characters, int words){
+			if(used.length < characters){
+				used = Arrays.copyOf(used, Math.min(1 << 16, used.length * 2));
+			}
+			long needed = (long) characters * words;
+			if(masks.length < needed){
+				if(needed > MAX_MASKS){
+					throw new IllegalArgumentException("Pattern of " + (words << 6)
+						+ " characters has too many distinct characters: " + characters);
+				}
+				masks = Arrays.copyOf(masks, (int) Math.min(MAX_MASKS, Math.max(needed, 2L * masks.length)));
+			}
+		}
+
+		/**
+		 * Find a character's entry
+		 * @return index of its masks (divided by words), or -1 if the
+		 * pattern does not contain it
+		 */
+		int lookup(char c){
+			return entries[slot(c)] - 1;
+		}
+
+		/**
+		 * Find a character's slot, or the empty slot it would go in
+		 */
+		private int slot(char c){
+			int mask = keys.length - 1;
+			int slot = ((c * 0x9E3779B1) >>> 15) & mask;
+			while(entries[slot] != 0 && keys[slot] != c){
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * Empty the table for the next pattern
+		 */
+		void clear(char[] pattern, int n){
+			for(int i = 0; i < distinct; i++){
+				entries[used[i]] = 0;
+			}
+			//Don't keep an unusually long pattern's arrays alive in the thread
+			if(masks.length > RETAINED_MASKS){
+				masks = new long[64];
+			}
+			if(singleWord){
+				for(int i = 0; i < n; i++){
+					if(pattern[i] < LATIN_SIZE){
+						latin[pattern[i]] = 0L;
+					}
+				}
+			}
+		}
+
+		void blocks(int words){
+			if(vps.length < words){
+				vps = new long[words];
+				vns = new long[words];
+				d0s = new long[words];
+				scores = new int[words];
+			}
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
+}
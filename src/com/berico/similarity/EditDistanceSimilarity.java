@@ -0,0 +1,216 @@
+package com.berico.similarity;
+
+/**
+ * Base of the similarities derived from an edit distance d: the score of
+ * two strings is 1 - d / max(|A|, |B|), so 1 for equal strings and 0 for
+ * strings with nothing in common.  Two empty strings score 1.
+ *
+ * Distances are computed bit-parallel (see EditDistance), a word
+ * operation per 64 characters of the shorter string for each character
+ * of the longer one.  Given a minimum score, a calculator turns it into
+ * the largest distance that still reaches it, only computes the diagonal
+ * band that distance allows, and stops as soon as the pair can no longer
+ * reach it.  Pairs below the minimum score 0, as with
+ * JaroWinklerSimilarity.
+ *
+ * Instances are immutable, and so safe to share between threads.
+ * @author Richard C (Berico Technologies)
+ */
+public abstract class EditDistanceSimilarity implements IBoundedSimilarityCalculator {
+
+	//Slack so rounding never turns a score that reaches the minimum
+	//into a distance that doesn't
+	private static final double TOLERANCE = 1e-9;
+
+	private final double minimumScore;
+
+	/**
+	 * @param minimumScore pairs that can't reach this score are
+	 * abandoned as early as possible and score 0
+	 */
+	EditDistanceSimilarity(double minimumScore){
+		this.minimumScore = minimumScore;
+	}
+
+	public double getMinimumScore(){
+		return minimumScore;
+	}
+
+	/**
+	 * Compute the edit distance of two strings
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return number of edits turning one into the other
+	 */
+	public int distance(String stringOne, String stringTwo){
+		return distance(stringOne, stringTwo, Math.max(stringOne.length(), stringTwo.length()));
+	}
+
+	/**
+	 * Compute the edit distance of two strings if it is at most some
+	 * maximum, giving up as soon as it is known to be greater
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @param maxDistance largest distance of interest, k
+	 * @return the distance if at most k, otherwise k + 1
+	 */
+	public int distance(String stringOne, String stringTwo, int maxDistance){
+		if(maxDistance < 0){
+			throw new IllegalArgumentException("Maximum distance is negative: " + maxDistance);
+		}
+		Scratch scratch = SCRATCH.get();
+		char[] one = scratch.charactersOne(stringOne);
+		char[] two = scratch.charactersTwo(stringTwo);
+		return distance(one, stringOne.length(), two, stringTwo.length(), maxDistance);
+	}
+
+	/**
+	 * Calculate the edit-distance similarity of two strings
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return 1 - distance / longest length (0 if below the minimum score)
+	 */
+	@Override
+	public double calculate(String stringOne, String stringTwo) {
+		//Copy the strings into this thread's buffers rather than
+		//allocating new arrays with toCharArray
+		Scratch scratch = SCRATCH.get();
+		char[] one = scratch.charactersOne(stringOne);
+		char[] two = scratch.charactersTwo(stringTwo);
+		return calculate(one, stringOne.length(), two, stringTwo.length());
+	}
+
+	/**
+	 * Profile a string as its character array, so the copy is made
+	 * once rather than on every comparison
+	 * @param string String to profile
+	 * @return a CharacterArrayProfile of the string
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		return new CharacterArrayProfile(string);
+	}
+
+	/**
+	 * Calculate the edit-distance similarity of two profiled strings
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return 1 - distance / longest length (0 if below the minimum score)
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		char[] one = CharacterArrayProfile.cast(profileOne).characters();
+		char[] two = CharacterArrayProfile.cast(profileTwo).characters();
+		return calculate(one, one.length, two, two.length);
+	}
+
+	/**
+	 * The bound key is the length of the string
+	 * @param profile profile prepared by this calculator
+	 * @return length of the profiled string
+	 */
+	@Override
+	public int boundKey(IProfile profile) {
+		return CharacterArrayProfile.cast(profile).length();
+	}
+
+	/**
+	 * The bound key is the length itself
+	 * @param length length of a string
+	 * @return the length
+	 */
+	@Override
+	public int maximumKey(int length) {
+		return length;
+	}
+
+	/**
+	 * Every character of the longer string beyond the shorter one's
+	 * length costs an edit, so d >= ||A| - |B||.
+	 * Equation: min(|A|, |B|) / max(|A|, |B|)
+	 * @param query profile of the query
+	 * @param key length of a reference
+	 * @return upper bound on the edit-distance similarity
+	 */
+	@Override
+	public double upperBound(IProfile query, int key) {
+		int length = boundKey(query);
+		int longest = Math.max(length, key);
+		if(longest == 0){
+			return 1d;
+		}
+		return (double) Math.min(length, key) / (double) longest;
+	}
+
+	/**
+	 * Calculate the edit-distance similarity of the first characters of
+	 * two character arrays
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @return 1 - distance / longest length (0 if below the minimum score)
+	 */
+	double calculate(char[] one, int oneLength, char[] two, int twoLength){
+		int longest = Math.max(oneLength, twoLength);
+		if(longest == 0){
+			return 1d;
+		}
+		//The largest distance that still reaches the minimum score
+		int maxDistance = longest;
+		if(minimumScore > 0){
+			maxDistance = (int) Math.floor((1d - minimumScore) * longest + TOLERANCE);
+			if(maxDistance < 0){
+				return 0d;
+			}
+		}
+		int distance = distance(one, oneLength, two, twoLength, maxDistance);
+		if(distance > maxDistance){
+			return 0d;
+		}
+		return 1d - (double) distance / (double) longest;
+	}
+
+	/**
+	 * Compute the edit distance of the first characters of two
+	 * character arrays, up to a maximum
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @param maxDistance largest distance of interest, k
+	 * @return the distance if at most k, otherwise k + 1
+	 */
+	abstract int distance(char[] one, int oneLength, char[] two, int twoLength, int maxDistance);
+
+	/**
+	 * Per-thread copies of the strings being compared
+	 */
+	private static final class Scratch {
+		char[] charactersOne = new char[64];
+		char[] charactersTwo = new char[64];
+
+		char[] charactersOne(String string){
+			if(charactersOne.length < string.length()){
+				charactersOne = new char[string.length()];
+			}
+			string.getChars(0, string.length(), charactersOne, 0);
+			return charactersOne;
+		}
+
+		char[] charactersTwo(String string){
+			if(charactersTwo.length < string.length()){
+				charactersTwo = new char[string.length()];
+			}
+			string.getChars(0, string.length(), charactersTwo, 0);
+			return charactersTwo;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
+}
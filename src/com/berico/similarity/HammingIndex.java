@@ -0,0 +1,181 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Finds fingerprints within a Hamming distance of one another without
+ * comparing every pair, by multi-index hashing.  The bits are cut into
+ * m >= k + 1 blocks: if two fingerprints differ in at most k bits, at
+ * least one block must be identical (pigeonhole), so only fingerprints
+ * sharing a block value with the query need their full distance checked.
+ *
+ * Every block is kept as a sorted array of (block value, id) longs, so
+ * lookups are binary searches and an index costs 8 bytes per fingerprint
+ * per block.  Blocks are at most 32 bits wide.
+ * @author Richard C (Berico Technologies)
+ */
+public class HammingIndex {
+
+	private final long[] fingerprints;
+	private final int bits, words, maxDistance;
+
+	//First bit of each block, plus bits at the end
+	private final int[] blockStarts;
+
+	//Per block: (block value << 32 | id), sorted
+	private final long[][] tables;
+
+	/**
+	 * Index fingerprints
+	 * @param fingerprints fingerprints back to back (see SimHash.fingerprints)
+	 * @param bits bits per fingerprint, a multiple of 64
+	 * @param maxDistance largest Hamming distance searched for, k
+	 */
+	public HammingIndex(long[] fingerprints, int bits, int maxDistance){
+		if(bits < 64 || bits % 64 != 0 || maxDistance < 0 || maxDistance >= bits){
+			throw new IllegalArgumentException(
+				"Need 64-bit multiple fingerprints and 0 <= k < bits: bits = "
+				+ bits + ", k = " + maxDistance);
+		}
+		this.fingerprints = fingerprints;
+		this.bits = bits;
+		this.words = bits / 64;
+		this.maxDistance = maxDistance;
+		int blocks = Math.max(maxDistance + 1, bits / 32);
+		this.blockStarts = new int[blocks + 1];
+		for(int block = 0; block <= blocks; block++){
+			blockStarts[block] = (int) ((long) block * bits / blocks);
+		}
+		int n = size();
+		this.tables = new long[blocks][];
+		for(int block = 0; block < blocks; block++){
+			long[] table = new long[n];
+			for(int id = 0; id < n; id++){
+				table[id] = (blockValue(fingerprints, id * words, block) << 32) | id;
+			}
+			Arrays.parallelSort(table);
+			tables[block] = table;
+		}
+	}
+
+	/**
+	 * Get the number of indexed fingerprints
+	 * @return number of fingerprints
+	 */
+	public int size(){
+		return fingerprints.length / words;
+	}
+
+	/**
+	 * Get the number of blocks the bits are cut into
+	 * @return number of tables
+	 */
+	public int blocks(){
+		return tables.length;
+	}
+
+	/**
+	 * Get the Hamming distance between two indexed fingerprints
+	 * @param one id of the first fingerprint
+	 * @param two id of the second fingerprint
+	 * @return number of differing bits
+	 */
+	public int distance(int one, int two){
+		return SimHash.distance(fingerprints, one * words, fingerprints, two * words, words);
+	}
+
+	/**
+	 * Find every indexed fingerprint within maxDistance bits of a query
+	 * @param query array holding the query fingerprint
+	 * @param offset index of the query's first word
+	 * @return ascending ids of the matches
+	 */
+	public int[] within(long[] query, int offset){
+		int[] matches = new int[16];
+		int count = 0;
+		for(int block = 0; block < tables.length; block++){
+			long[] table = tables[block];
+			long value = blockValue(query, offset, block);
+			int index = Arrays.binarySearch(table, value << 32);
+			if(index < 0){
+				index = -index - 1;
+			}
+			for(; index < table.length && (table[index] >>> 32) == value; index++){
+				int id = (int) table[index];
+				//Report a match from the first block it shares only
+				if(sharesEarlierBlock(query, offset, fingerprints, id * words, block)){
+					continue;
+				}
+				if(SimHash.distance(query, offset, fingerprints, id * words, words) <= maxDistance){
+					if(count == matches.length){
+						matches = Arrays.copyOf(matches, count * 2);
+					}
+					matches[count++] = id;
+				}
+			}
+		}
+		Arrays.sort(matches, 0, count);
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * Report every pair of indexed fingerprints within maxDistance bits,
+	 * once each, with the Cosine Similarity their distance estimates
+	 * (SimHash.estimate)
+	 * @param listener receives (lower id, higher id, estimate) per pair
+	 */
+	public void pairs(IScoreListener listener){
+		for(int block = 0; block < tables.length; block++){
+			long[] table = tables[block];
+			for(int start = 0; start < table.length; ){
+				int end = start + 1;
+				while(end < table.length && (table[end] >>> 32) == (table[start] >>> 32)){
+					end++;
+				}
+				for(int i = start; i < end; i++){
+					//Ids within a run are ascending
+					int one = (int) table[i];
+					for(int j = i + 1; j < end; j++){
+						int two = (int) table[j];
+						if(sharesEarlierBlock(fingerprints, one * words, fingerprints, two * words, block)){
+							continue;
+						}
+						int distance = distance(one, two);
+						if(distance <= maxDistance){
+							listener.score(one, two, SimHash.estimate(distance, bits));
+						}
+					}
+				}
+				start = end;
+			}
+		}
+	}
+
+	/**
+	 * Check whether two fingerprints have an identical block before this one
+	 */
+	private boolean sharesEarlierBlock(long[] one, int offsetOne, long[] two, int offsetTwo,
+			int block){
+		for(int earlier = 0; earlier < block; earlier++){
+			if(blockValue(one, offsetOne, earlier) == blockValue(two, offsetTwo, earlier)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Extract one block of a fingerprint as an unsigned value
+	 */
+	private long blockValue(long[] fingerprints, int offset, int block){
+		int start = blockStarts[block];
+		int width = blockStarts[block + 1] - start;
+		int word = start >>> 6;
+		int shift = start & 63;
+		long value = fingerprints[offset + word] >>> shift;
+		if(shift + width > 64){
+			value |= fingerprints[offset + word + 1] << (64 - shift);
+		}
+		return value & ((1L << width) - 1);
+	}
+}
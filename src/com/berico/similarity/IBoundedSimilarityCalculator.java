@@ -0,0 +1,39 @@
+package com.berico.similarity;
+
+/**
+ * A calculator that can cheaply bound its own score from a single number
+ * summarizing each string (its length, its number of unique characters,
+ * etc.), without looking at the strings' contents.  Searches use this to
+ * visit candidates from the most to the least promising and to stop as
+ * soon as nothing left can reach the score they need.
+ * @author Richard C (Berico Technologies)
+ */
+public interface IBoundedSimilarityCalculator extends ISimilarityCalculator {
+
+	/**
+	 * Get the number a profile's score bound is derived from
+	 * @param profile profile prepared by this calculator
+	 * @return bound key (never negative)
+	 */
+	int boundKey(IProfile profile);
+
+	/**
+	 * Get the largest bound key a string of some length can have, so that
+	 * strings can be ruled out before they are even decoded.  Must never
+	 * decrease as the length grows.
+	 * @param length length of a string
+	 * @return upper bound on the string's bound key
+	 */
+	int maximumKey(int length);
+	
+	/**
+	 * Get an upper bound on calculate(query, reference) for any reference
+	 * whose boundKey is key.  The bound must never increase as key moves
+	 * away from boundKey(query) in either direction.
+	 * @param query profile of the query
+	 * @param key bound key of a reference
+	 * @return the highest score such a reference could achieve
+	 */
+	double upperBound(IProfile query, int key);
+	
+}
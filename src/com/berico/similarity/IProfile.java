@@ -0,0 +1,16 @@
+package com.berico.similarity;
+
+/**
+ * The pre-compiled representation of a string produced by
+ * ISimilarityCalculator.prepare.  Implementations are immutable.
+ * @author Richard C (Berico Technologies)
+ */
+public interface IProfile {
+
+	/**
+	 * Get the string this profile was built from
+	 * @return original string
+	 */
+	String getString();
+	
+}
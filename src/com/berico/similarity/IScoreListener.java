@@ -0,0 +1,18 @@
+package com.berico.similarity;
+
+/**
+ * Receives scores as a batch job produces them.  Scores arrive from many
+ * worker threads at once, so implementations must be thread-safe.
+ * @author Richard C (Berico Technologies)
+ */
+public interface IScoreListener {
+
+	/**
+	 * Called once for every pair that was scored
+	 * @param one index of the first string (query / row)
+	 * @param two index of the second string (reference / column)
+	 * @param score similarity of the pair
+	 */
+	void score(int one, int two, double score);
+	
+}
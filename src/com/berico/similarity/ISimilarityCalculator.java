@@ -4,4 +4,26 @@ public interface ISimilarityCalculator {
 
 	double calculate(String stringOne, String stringTwo);
 	
+	/**
+	 * Pre-compute everything this calculator needs to know about a string
+	 * (character set, frequency histogram, etc.) so that it can be scored
+	 * against many others without being re-analyzed each time.  Profiles are
+	 * immutable and may be shared freely between threads.
+	 * @param string String to profile
+	 * @return Profile of the string, usable only with this type of calculator
+	 */
+	IProfile prepare(String string);
+	
+	/**
+	 * Calculate the similarity of two strings that were prepared by this
+	 * calculator.  The result is the same as calculate(String, String) on
+	 * the original strings.
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return similarity of the two profiled strings
+	 * @throws IllegalArgumentException if a profile was prepared by a
+	 * different kind of calculator
+	 */
+	double calculate(IProfile profileOne, IProfile profileTwo);
+	
 }
@@ -0,0 +1,29 @@
+package com.berico.similarity;
+
+/**
+ * Splits a string into tokens (character n-grams, words, etc.) for the
+ * set and vector based calculators.  Tokens are hashed to primitive int
+ * ids, so calculators compare sorted int arrays rather than collections
+ * of strings.  Two different tokens may, rarely, share an id.
+ *
+ * Implementations are immutable and may be shared between threads.
+ * @author Richard C (Berico Technologies)
+ */
+public interface ITokenizer {
+
+	/**
+	 * Tokenize a string
+	 * @param string string to tokenize
+	 * @return ids of the string's tokens in order, repeats included
+	 */
+	int[] tokenize(String string);
+
+	/**
+	 * Get the most tokens a string of some length can produce.  Never
+	 * decreases as the length grows.
+	 * @param length length of a string
+	 * @return upper bound on the size of tokenize's result
+	 */
+	int maximumTokens(int length);
+
+}
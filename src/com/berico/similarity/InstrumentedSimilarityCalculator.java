@@ -0,0 +1,132 @@
+package com.berico.similarity;
+
+/**
+ * Decorates a calculator to record what it does in a SimilarityMetrics:
+ * every call is counted, and sampled calls are timed along with their
+ * input lengths and scores.  Searches run with an instrumented calculator
+ * (TopKSearcher, InvertedIndex, JaroWinklerDictionary, the stores' and
+ * joins' searches, BatchScorer's batches) also record how much they
+ * compared and pruned.  Those that only work with particular calculators
+ * look through the decoration to the calculator underneath.
+ *
+ * Use wrap to decorate: the result keeps the decorated calculator's
+ * bounds (it is an IBoundedSimilarityCalculator whenever the decorated
+ * calculator is), so searches stay as efficient as without it.
+ * @author Richard C (Berico Technologies)
+ */
+public class InstrumentedSimilarityCalculator implements ISimilarityCalculator {
+
+	private final ISimilarityCalculator calculator;
+	private final SimilarityMetrics metrics;
+
+	private InstrumentedSimilarityCalculator(ISimilarityCalculator calculator,
+			SimilarityMetrics metrics){
+		this.calculator = calculator;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Decorate a calculator
+	 * @param calculator calculator to instrument
+	 * @param metrics metrics to record into (may be shared)
+	 * @return the instrumented calculator, bounded if calculator is
+	 */
+	public static InstrumentedSimilarityCalculator wrap(ISimilarityCalculator calculator,
+			SimilarityMetrics metrics){
+		if(calculator instanceof IBoundedSimilarityCalculator){
+			return new Bounded((IBoundedSimilarityCalculator) calculator, metrics);
+		}
+		return new InstrumentedSimilarityCalculator(calculator, metrics);
+	}
+
+	/**
+	 * Get the decorated calculator
+	 * @return calculator
+	 */
+	public ISimilarityCalculator getCalculator(){
+		return calculator;
+	}
+
+	/**
+	 * Look through an instrumented calculator to the one it decorates
+	 * @param calculator any calculator
+	 * @return the decorated calculator if calculator is instrumented,
+	 * otherwise calculator itself
+	 */
+	static ISimilarityCalculator unwrap(ISimilarityCalculator calculator){
+		return (calculator instanceof InstrumentedSimilarityCalculator)?
+			((InstrumentedSimilarityCalculator) calculator).getCalculator() : calculator;
+	}
+
+	/**
+	 * Get the metrics calls are recorded into
+	 * @return metrics
+	 */
+	public SimilarityMetrics getMetrics(){
+		return metrics;
+	}
+
+	@Override
+	public double calculate(String stringOne, String stringTwo) {
+		if(!metrics.sample()){
+			double score = calculator.calculate(stringOne, stringTwo);
+			metrics.recordCalculate(-1, 0, 0, score);
+			return score;
+		}
+		long start = System.nanoTime();
+		double score = calculator.calculate(stringOne, stringTwo);
+		metrics.recordCalculate(System.nanoTime() - start,
+			stringOne.length(), stringTwo.length(), score);
+		return score;
+	}
+
+	@Override
+	public IProfile prepare(String string) {
+		metrics.recordPrepare(metrics.sample()? string.length() : -1);
+		return calculator.prepare(string);
+	}
+
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		if(!metrics.sample()){
+			double score = calculator.calculate(profileOne, profileTwo);
+			metrics.recordCalculate(-1, 0, 0, score);
+			return score;
+		}
+		long start = System.nanoTime();
+		double score = calculator.calculate(profileOne, profileTwo);
+		metrics.recordCalculate(System.nanoTime() - start,
+			profileOne.getString().length(), profileTwo.getString().length(), score);
+		return score;
+	}
+
+	/**
+	 * Instrumented bounded calculator: bounds pass straight through and
+	 * are not recorded
+	 */
+	private static final class Bounded extends InstrumentedSimilarityCalculator
+			implements IBoundedSimilarityCalculator {
+
+		private final IBoundedSimilarityCalculator bounded;
+
+		Bounded(IBoundedSimilarityCalculator calculator, SimilarityMetrics metrics){
+			super(calculator, metrics);
+			this.bounded = calculator;
+		}
+
+		@Override
+		public int boundKey(IProfile profile) {
+			return bounded.boundKey(profile);
+		}
+
+		@Override
+		public int maximumKey(int length) {
+			return bounded.maximumKey(length);
+		}
+
+		@Override
+		public double upperBound(IProfile query, int key) {
+			return bounded.upperBound(query, key);
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An inverted index from tokens to the reference strings containing
+ * them, used to generate candidates for JaccardSimilarity,
+ * SorensenSimilarity and CosineSimilarity searches without scanning the
+ * whole reference set.  Candidates are then scored with the calculator
+ * itself.  Tokens are whatever the calculator compares: characters by
+ * default, or the ids of its tokenizer's tokens.
+ *
+ * Token ids are mapped onto dense term numbers through a sorted
+ * dictionary.  Posting lists hold ascending reference ids, delta-encoded
+ * as variable-length integers (seven bits per byte) in one shared byte
+ * array.
+ *
+ * Candidates are found by prefix filtering: the query's tokens are
+ * ordered from rarest to most common, and only the rarest few are looked
+ * up.  For each metric, the prefix is made just long enough that any
+ * reference reaching the threshold must share at least one of its
+ * tokens; references are also filtered on their size before they are
+ * returned.
+ * @author Richard C (Berico Technologies)
+ */
+public class InvertedIndex {
+
+	//Slack so that rounding cannot make a filter stricter than the metric
+	private static final double TOLERANCE = 1e-9;
+
+	private final ISimilarityCalculator calculator;
+
+	//The calculator, or the one it decorates if it is instrumented
+	private final ISimilarityCalculator metric;
+
+	private final ITokenizer tokenizer;
+	private final List<String> references;
+
+	//Number of tokens and number of unique tokens of each reference
+	private final int[] lengths;
+	private final int[] setSizes;
+
+	//Sorted, distinct token ids of every reference; a token's term
+	//number is its index here
+	private final int[] terms;
+
+	//Number of references containing each term
+	private final int[] documentFrequency;
+
+	//Start of each term's posting list in postings (length terms + 1)
+	private final int[] offsets;
+
+	//Delta / varint encoded posting lists
+	private final byte[] postings;
+
+	/**
+	 * Index a set of reference strings
+	 * @param calculator a JaccardSimilarity, SorensenSimilarity or
+	 * CosineSimilarity (or an instrumented one), used to score candidates
+	 * @param references strings to index
+	 */
+	public InvertedIndex(ISimilarityCalculator calculator, List<String> references){
+		ISimilarityCalculator metric = InstrumentedSimilarityCalculator.unwrap(calculator);
+		ITokenizer tokenizer;
+		if(metric instanceof JaccardSimilarity){
+			tokenizer = ((JaccardSimilarity) metric).getTokenizer();
+		} else if(metric instanceof SorensenSimilarity){
+			tokenizer = ((SorensenSimilarity) metric).getTokenizer();
+		} else if(metric instanceof CosineSimilarity){
+			tokenizer = ((CosineSimilarity) metric).getTokenizer();
+		} else {
+			throw new IllegalArgumentException(
+				"Prefix filtering is only defined for the Jaccard, Sorensen and Cosine calculators: "
+				+ metric.getClass().getSimpleName());
+		}
+		this.calculator = calculator;
+		this.metric = metric;
+		this.tokenizer = (tokenizer == null)? CharacterNGramTokenizer.UNIGRAMS : tokenizer;
+		this.references = references;
+		int n = references.size();
+		this.lengths = new int[n];
+		this.setSizes = new int[n];
+
+		//Gather the distinct tokens of every reference, back to back
+		int[] tokens = new int[Math.max(16, n)];
+		int total = 0;
+		for(int id = 0; id < n; id++){
+			TokenProfile profile = new TokenProfile(references.get(id), this.tokenizer);
+			lengths[id] = profile.length();
+			setSizes[id] = profile.size();
+			if(tokens.length - total < profile.size()){
+				long capacity = Math.max((long) tokens.length * 2, (long) total + profile.size());
+				if(capacity > Integer.MAX_VALUE - 8){
+					throw new IllegalStateException("Too many postings to index.");
+				}
+				tokens = Arrays.copyOf(tokens, (int) capacity);
+			}
+			System.arraycopy(profile.tokens(), 0, tokens, total, profile.size());
+			total += profile.size();
+		}
+
+		//Build the dictionary, then swap every token for its term number
+		int[] sorted = Arrays.copyOf(tokens, total);
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for(int i = 0; i < total; i++){
+			if(distinct == 0 || sorted[i] != sorted[distinct - 1]){
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		this.terms = Arrays.copyOf(sorted, distinct);
+		this.documentFrequency = new int[distinct];
+		for(int i = 0; i < total; i++){
+			tokens[i] = Arrays.binarySearch(terms, tokens[i]);
+			documentFrequency[tokens[i]]++;
+		}
+
+		//First pass: the encoded size of every posting list.  lastSeen
+		//holds (id + 1) of the last reference each term was seen in, which
+		//gives us the delta to encode.
+		int[] lastSeen = new int[distinct];
+		long[] encodedSize = new long[distinct];
+		for(int id = 0, position = 0; id < n; id++){
+			for(int end = position + setSizes[id]; position < end; position++){
+				int term = tokens[position];
+				encodedSize[term] += varintSize(id + 1 - lastSeen[term]);
+				lastSeen[term] = id + 1;
+			}
+		}
+		this.offsets = new int[distinct + 1];
+		long size = 0;
+		for(int term = 0; term < distinct; term++){
+			offsets[term] = (int) size;
+			size += encodedSize[term];
+			if(size > Integer.MAX_VALUE){
+				throw new IllegalStateException("Posting lists exceed 2GB.");
+			}
+		}
+		offsets[distinct] = (int) size;
+
+		//Second pass: write the posting lists
+		this.postings = new byte[(int) size];
+		int[] cursor = Arrays.copyOf(offsets, distinct);
+		Arrays.fill(lastSeen, 0);
+		for(int id = 0, position = 0; id < n; id++){
+			for(int end = position + setSizes[id]; position < end; position++){
+				int term = tokens[position];
+				cursor[term] = writeVarint(postings, cursor[term], id + 1 - lastSeen[term]);
+				lastSeen[term] = id + 1;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of indexed references
+	 * @return number of references
+	 */
+	public int size(){
+		return references.size();
+	}
+
+	/**
+	 * Find every reference that could score at least the threshold
+	 * against a query.  Some candidates may not qualify; no reference that
+	 * qualifies is left out.
+	 * @param query query string
+	 * @param threshold minimum score
+	 * @return ascending ids of candidate references
+	 */
+	public int[] candidates(String query, double threshold){
+		int n = references.size();
+		if(threshold <= 0){
+			//Even references sharing nothing with the query qualify
+			int[] everything = new int[n];
+			for(int id = 0; id < n; id++){
+				everything[id] = id;
+			}
+			return everything;
+		}
+
+		//Distinct query tokens with their counts and term numbers (-1 for
+		//tokens no reference has), rarest first
+		TokenProfile profile = new TokenProfile(query, tokenizer);
+		int distinct = profile.size();
+		int[] counts = profile.counts();
+		int[] queryTerms = new int[distinct];
+		long[] order = new long[distinct];
+		for(int i = 0; i < distinct; i++){
+			int term = Arrays.binarySearch(terms, profile.tokens()[i]);
+			queryTerms[i] = (term < 0)? -1 : term;
+			long frequency = (term < 0)? 0 : documentFrequency[term];
+			order[i] = (frequency << 32) | i;
+		}
+		Arrays.sort(order);
+
+		int prefix;
+		int minimumSetSize = 0;
+		int maximumSetSize = Integer.MAX_VALUE;
+		int maximumLength = Integer.MAX_VALUE;
+		if(metric instanceof JaccardSimilarity){
+			//J >= t requires an overlap of at least t|A|, and t|A| <= |B| <= |A|/t
+			int overlap = ceil(threshold * distinct);
+			prefix = distinct - overlap + 1;
+			minimumSetSize = overlap;
+			maximumSetSize = (int) Math.floor(distinct / threshold + TOLERANCE);
+		} else if(metric instanceof SorensenSimilarity){
+			//2o / (|A| + |B|) >= t with o <= |B| requires o >= t|A| / (2 - t),
+			//and o <= |set(A)| limits |B| to 2|set(A)| / t - |A|
+			int overlap = ceil(threshold * profile.length() / (2 - threshold));
+			prefix = distinct - overlap + 1;
+			minimumSetSize = overlap;
+			maximumLength = (int) Math.floor(
+				2 * distinct / threshold - profile.length() + TOLERANCE);
+		} else {
+			//By Cauchy-Schwarz, tokens past the prefix contribute at most
+			//|suffix| / |A| to the cosine, so stop once that falls below t
+			double limit = threshold * threshold * profile.squaredNorm();
+			long suffix = profile.squaredNorm();
+			prefix = 0;
+			while(prefix < distinct && suffix >= limit - TOLERANCE){
+				int count = counts[(int) order[prefix++]];
+				suffix -= (long) count * count;
+			}
+		}
+		prefix = Math.min(prefix, distinct);
+		if(prefix <= 0){
+			return new int[0];
+		}
+
+		//Gather the posting lists of the prefix tokens
+		int total = 0;
+		for(int i = 0; i < prefix; i++){
+			total += (int) (order[i] >>> 32);
+		}
+		int[] candidates = new int[total];
+		int count = 0;
+		for(int i = 0; i < prefix; i++){
+			int term = queryTerms[(int) order[i]];
+			if(term < 0){
+				continue;
+			}
+			int position = offsets[term];
+			int end = offsets[term + 1];
+			int id = -1;
+			while(position < end){
+				//Decode one varint delta
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = postings[position++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while(b < 0);
+				id += delta;
+				if(setSizes[id] >= minimumSetSize
+						&& setSizes[id] <= maximumSetSize
+						&& lengths[id] <= maximumLength){
+					candidates[count++] = id;
+				}
+			}
+		}
+
+		//A reference sharing several prefix tokens appears once per
+		//token; sort and squeeze out the repeats
+		Arrays.sort(candidates, 0, count);
+		int unique = 0;
+		for(int i = 0; i < count; i++){
+			if(unique == 0 || candidates[i] != candidates[unique - 1]){
+				candidates[unique++] = candidates[i];
+			}
+		}
+		return Arrays.copyOf(candidates, unique);
+	}
+
+	/**
+	 * Find the best matches for a query among the candidates
+	 * @param query query string
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum score of a match
+	 * @return up to k matches, best first
+	 */
+	public SearchResults search(String query, int k, double threshold){
+		int[] candidates = candidates(query, threshold);
+		TopKHeap heap = new TopKHeap(k);
+		for(int id : candidates){
+			double score = calculator.calculate(query, references.get(id));
+			if(score >= threshold){
+				heap.offer(id, score);
+			}
+		}
+		//The filter skips references one by one; it never stops early
+		return SimilarityMetrics.recordSearch(calculator,
+			heap.toResults(candidates.length, references.size() - candidates.length), false);
+	}
+
+	private static int ceil(double value){
+		return (int) Math.ceil(value - TOLERANCE);
+	}
+
+	private static int varintSize(int value){
+		int size = 1;
+		while((value >>>= 7) != 0){
+			size++;
+		}
+		return size;
+	}
+
+	private static int writeVarint(byte[] buffer, int position, int value){
+		while((value & ~0x7F) != 0){
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+}
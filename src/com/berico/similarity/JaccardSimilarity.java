@@ -1,12 +1,38 @@
 package com.berico.similarity;
 
-import static com.berico.similarity.CharacterVectorUtils.*;
-
 /**
- * Calculate the Jaccard Similarity of two strings.
+ * Calculate the Jaccard Similarity of two strings.  By default strings
+ * are compared as sets of characters; given a tokenizer, they are
+ * compared as sets of its tokens instead.
  * @author Richard C (Berico Technologies)
  */
-public class JaccardSimilarity implements ISimilarityCalculator {
+public class JaccardSimilarity implements IBoundedSimilarityCalculator {
+
+	//Null to compare characters
+	private final ITokenizer tokenizer;
+
+	/**
+	 * Compare strings as sets of characters
+	 */
+	public JaccardSimilarity(){
+		this(null);
+	}
+
+	/**
+	 * Compare strings as sets of tokens
+	 * @param tokenizer tokenizer to split strings with, or null for characters
+	 */
+	public JaccardSimilarity(ITokenizer tokenizer){
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Get the tokenizer strings are split with
+	 * @return tokenizer, or null if strings are compared by character
+	 */
+	public ITokenizer getTokenizer(){
+		return tokenizer;
+	}
 
 	/**
 	 * Find the Jaccard Similarity of two strings
@@ -16,8 +42,105 @@ public class JaccardSimilarity implements ISimilarityCalculator {
 	 */
 	@Override
 	public double calculate(String stringOne, String stringTwo) {
-		return (double) intersect(stringOne, stringTwo).size() /
-			   (double) union(stringOne, stringTwo).size();
+		if(tokenizer != null){
+			return calculate(prepare(stringOne), prepare(stringTwo));
+		}
+		//Intersection and union come back together from a single,
+		//allocation-free pass over both strings
+		long sizes = CharacterSet.intersectionAndUnion(stringOne, stringTwo);
+		return (double) CharacterSet.intersection(sizes) /
+			   (double) CharacterSet.union(sizes);
+	}
+
+	/**
+	 * Find the Jaccard Similarity of the character sets of the first
+	 * characters of two arrays (characters only: the tokenizer is not
+	 * consulted)
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @return the Jaccard Similarity (intersect(A,B) / union(A, B))
+	 */
+	double calculate(char[] one, int oneLength, char[] two, int twoLength){
+		long sizes = CharacterSet.intersectionAndUnion(one, oneLength, two, twoLength);
+		return (double) CharacterSet.intersection(sizes) /
+			   (double) CharacterSet.union(sizes);
+	}
+
+	/**
+	 * Profile a string as its character (or token) set
+	 * @param string the string to profile
+	 * @return a CharacterSetProfile, or a TokenProfile if tokenized
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		if(tokenizer != null){
+			return new TokenProfile(string, tokenizer);
+		}
+		return new CharacterSetProfile(string);
+	}
+
+	/**
+	 * Find the Jaccard Similarity of two profiled strings
+	 * @param profileOne the first profile to compare
+	 * @param profileTwo the second profile to compare
+	 * @return the Jaccard Similarity (intersect(A,B) / union(A, B))
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		if(tokenizer != null){
+			TokenProfile tokensOne = TokenProfile.cast(profileOne);
+			TokenProfile tokensTwo = TokenProfile.cast(profileTwo);
+			int intersection = tokensOne.intersectionSize(tokensTwo);
+			return (double) intersection /
+				   (double) (tokensOne.size() + tokensTwo.size() - intersection);
+		}
+		CharacterSet setOne = CharacterSetProfile.cast(profileOne).getCharacterSet();
+		CharacterSet setTwo = CharacterSetProfile.cast(profileTwo).getCharacterSet();
+		int intersection = setOne.intersectionSize(setTwo);
+		return (double) intersection /
+			   (double) (setOne.size() + setTwo.size() - intersection);
+	}
+
+	/**
+	 * The bound key is the number of unique characters (or tokens) in
+	 * the string
+	 * @param profile profile prepared by this calculator
+	 * @return size of the profile's character or token set
+	 */
+	@Override
+	public int boundKey(IProfile profile) {
+		if(tokenizer != null){
+			return TokenProfile.cast(profile).size();
+		}
+		return CharacterSetProfile.cast(profile).getCharacterSet().size();
+	}
+
+	/**
+	 * A string has no more unique characters than characters, or unique
+	 * tokens than tokens
+	 * @param length length of a string
+	 * @return most unique characters or tokens it can have
+	 */
+	@Override
+	public int maximumKey(int length) {
+		return (tokenizer != null)? tokenizer.maximumTokens(length) : length;
+	}
+
+	/**
+	 * The intersection can be no larger than the smaller set, and the
+	 * union no smaller than the larger one.
+	 * Equation: min(|A|, |B|) / max(|A|, |B|)
+	 * @param query profile of the query
+	 * @param key number of unique characters (or tokens) in a reference
+	 * @return upper bound on the Jaccard Similarity
+	 */
+	@Override
+	public double upperBound(IProfile query, int key) {
+		int size = boundKey(query);
+		int larger = Math.max(size, key);
+		return (larger == 0)? 1d : (double) Math.min(size, key) / (double) larger;
 	}
 
 }
@@ -0,0 +1,461 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A dictionary searched by Jaro-Winkler Similarity, stored as one prefix
+ * trie per entry length so that the work of matching a query against a
+ * prefix is done once for every entry sharing it.
+ *
+ * Within one trie the entry length is fixed, so the matching window and
+ * which string drives the matching are too, and the matching kernel of
+ * JaroWinklerSimilarity can be run one trie level at a time: when the
+ * entries are shorter than the query, each entry character is matched
+ * as soon as it is read; otherwise each query character is matched as
+ * soon as the trie has revealed every entry character in its window.
+ * The matched positions, match count and Winkler common prefix of a node
+ * are then shared by every entry below it.
+ *
+ * Each node also bounds the best score below it: at most one more match
+ * per character still to be matched, no transposes, and the longest
+ * prefix still possible.  Whole subtrees are skipped as soon as that
+ * bound cannot reach the threshold or beat the k-th best score so far,
+ * and tries are visited nearest the query's length first so good scores
+ * are found early.  The bound of a whole trie falls as its length moves
+ * away from the query's, so once a trie is ruled out on one side every
+ * trie beyond it is too, and the search stops walking that way.  Scores
+ * are exactly those of the calculator.
+ *
+ * The masks are single longs, so the tries hold entries of up to 64
+ * characters and serve queries of up to 64 characters; longer entries and
+ * queries are compared one by one.
+ * @author Richard C (Berico Technologies)
+ */
+public class JaroWinklerDictionary {
+
+	//Longest entry (and query) held in the tries
+	public static final int MAX_TRIE_LENGTH = 64;
+
+	//A trie's bound and the scores of its entries come from separately
+	//rounded arithmetic, so a bound may land a hair under an entry that
+	//exactly reaches the threshold; this keeps such tries in play
+	private static final double BOUND_TOLERANCE = 1e-9;
+
+	private static final int OCCURRENCE_TABLE_SIZE =
+		JaroWinklerSimilarity.OCCURRENCE_TABLE_SIZE;
+
+	private final JaroWinklerSimilarity calculator;
+	private final List<String> entries;
+
+	//Where searches are recorded (null unless the calculator is instrumented)
+	private final SimilarityMetrics metrics;
+
+	//Entry ids in trie order: by length, then by characters
+	private final int[] ids;
+
+	//Per node: character, first child, next sibling, and the run of ids
+	//(first position, count) of the entries below it
+	private final char[] labels;
+	private final int[] firstChild;
+	private final int[] nextSibling;
+	private final int[] start;
+	private final int[] count;
+
+	//First child of each length's root (-1 if no entries have that length)
+	private final int[] roots;
+
+	//Entries too long for the tries
+	private final int[] longIds;
+
+	/**
+	 * Build the tries of a dictionary
+	 * @param calculator JaroWinklerSimilarity (or an instrumented one) whose
+	 * scores are searched by
+	 * @param entries dictionary entries
+	 * @throws IllegalArgumentException if the calculator isn't exactly a
+	 * JaroWinklerSimilarity
+	 */
+	public JaroWinklerDictionary(ISimilarityCalculator calculator, final List<String> entries){
+		ISimilarityCalculator metric = InstrumentedSimilarityCalculator.unwrap(calculator);
+		//Exact class only: the tries reproduce the calculator's own
+		//scoring, which a subclass may have overridden
+		if(metric.getClass() != JaroWinklerSimilarity.class){
+			throw new IllegalArgumentException(
+				"Not a Jaro-Winkler calculator: " + metric.getClass().getSimpleName());
+		}
+		this.calculator = (JaroWinklerSimilarity) metric;
+		this.metrics = SimilarityMetrics.of(calculator);
+		this.entries = entries;
+		int n = entries.size();
+		int longCount = 0;
+		for(int i = 0; i < n; i++){
+			if(entries.get(i).length() > MAX_TRIE_LENGTH){
+				longCount++;
+			}
+		}
+		this.longIds = new int[longCount];
+		Integer[] sorted = new Integer[n - longCount];
+		for(int i = 0, s = 0, l = 0; i < n; i++){
+			if(entries.get(i).length() > MAX_TRIE_LENGTH){
+				longIds[l++] = i;
+			} else {
+				sorted[s++] = i;
+			}
+		}
+		Arrays.parallelSort(sorted, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer one, Integer two){
+				String a = entries.get(one), b = entries.get(two);
+				if(a.length() != b.length()){
+					return a.length() - b.length();
+				}
+				return a.compareTo(b);
+			}
+		});
+		this.ids = new int[sorted.length];
+		for(int i = 0; i < sorted.length; i++){
+			ids[i] = sorted[i];
+		}
+
+		Builder builder = new Builder(sorted.length);
+		this.roots = new int[MAX_TRIE_LENGTH + 1];
+		Arrays.fill(roots, -1);
+		//Nodes of the current path, by depth (index 0 is the length's root)
+		int[] path = new int[MAX_TRIE_LENGTH + 1];
+		String previous = null;
+		for(int position = 0; position < ids.length; position++){
+			String entry = entries.get(ids[position]);
+			int length = entry.length();
+			int shared = 0;
+			if(previous == null || previous.length() != length){
+				path[0] = builder.node('\0', position);
+				previous = null;
+			} else {
+				while(shared < length && previous.charAt(shared) == entry.charAt(shared)){
+					shared++;
+				}
+			}
+			for(int depth = shared; depth < length; depth++){
+				int node = builder.node(entry.charAt(depth), position);
+				builder.addChild(path[depth], node);
+				path[depth + 1] = node;
+			}
+			for(int depth = 0; depth <= length; depth++){
+				builder.count[path[depth]]++;
+			}
+			if(previous == null){
+				roots[length] = path[0];
+			}
+			previous = entry;
+		}
+		this.labels = Arrays.copyOf(builder.labels, builder.size);
+		this.firstChild = Arrays.copyOf(builder.firstChild, builder.size);
+		this.nextSibling = Arrays.copyOf(builder.nextSibling, builder.size);
+		this.start = Arrays.copyOf(builder.start, builder.size);
+		this.count = Arrays.copyOf(builder.count, builder.size);
+	}
+
+	/**
+	 * Get the number of entries
+	 * @return number of entries
+	 */
+	public int size(){
+		return entries.size();
+	}
+
+	/**
+	 * Get the number of trie nodes (a measure of how much prefixes are
+	 * shared)
+	 * @return number of nodes
+	 */
+	public int nodes(){
+		return labels.length;
+	}
+
+	/**
+	 * Find the entries most similar to a query
+	 * @param query query string
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum score of a match
+	 * @return up to k matches (indexes into the entries), best first;
+	 * comparisons counts the entries reached, pruned the rest
+	 */
+	public SearchResults search(String query, int k, double threshold){
+		TopKHeap heap = new TopKHeap(k);
+		int length = query.length();
+		if(length > MAX_TRIE_LENGTH){
+			for(int id = 0; id < entries.size(); id++){
+				offer(heap, id, calculator.calculate(query, entries.get(id)), threshold);
+			}
+			return record(heap.toResults(entries.size(), 0), false);
+		}
+		Search search = new Search(query, heap, threshold);
+		//Nearest lengths first: they have the highest bounds.  Each side
+		//is walked until a trie's bound rules it out.
+		boolean shorter = true, longer = true;
+		for(int distance = 0; distance <= MAX_TRIE_LENGTH && (shorter || longer); distance++){
+			if(shorter){
+				shorter = search.trie(length - distance);
+			}
+			if(longer && distance > 0){
+				longer = search.trie(length + distance);
+			}
+		}
+		search.close();
+		for(int id : longIds){
+			offer(heap, id, calculator.calculate(query, entries.get(id)), threshold);
+		}
+		int comparisons = search.comparisons + longIds.length;
+		return record(heap.toResults(comparisons, entries.size() - comparisons),
+			!(shorter && longer));
+	}
+
+	private SearchResults record(SearchResults results, boolean stoppedEarly){
+		if(metrics != null){
+			metrics.recordSearch(results, stoppedEarly);
+		}
+		return results;
+	}
+
+	private static void offer(TopKHeap heap, int id, double score, double threshold){
+		if(score >= threshold){
+			heap.offer(id, score);
+		}
+	}
+
+	/**
+	 * The state of one query's walk over the tries
+	 */
+	private final class Search {
+
+		final char[] query;
+		final int queryLength;
+		final TopKHeap heap;
+		final double threshold;
+		final long[] occurrences;
+
+		//Entry characters of the current path
+		final char[] path = new char[MAX_TRIE_LENGTH];
+
+		final double prefixScale = calculator.getPrefixScale();
+		final int maxPrefixLength = calculator.getMaxPrefixLength();
+		final double boostThreshold = calculator.getBoostThreshold();
+
+		//Parameters of the current trie
+		int length, window, prefixLimit;
+		boolean entryDrives;
+
+		int comparisons;
+
+		Search(String query, TopKHeap heap, double threshold){
+			this.query = query.toCharArray();
+			this.queryLength = this.query.length;
+			this.heap = heap;
+			this.threshold = threshold;
+			this.occurrences = OCCURRENCES.get();
+			for(int i = 0; i < queryLength; i++){
+				char c = this.query[i];
+				if(c < OCCURRENCE_TABLE_SIZE){
+					occurrences[c] |= 1L << i;
+				}
+			}
+		}
+
+		/**
+		 * Walk the trie of one entry length
+		 * @return false if the trie's bound ruled it out, and with it every
+		 * trie further from the query's length
+		 */
+		boolean trie(int length){
+			if(length < 0 || length > MAX_TRIE_LENGTH || roots[length] < 0){
+				return true;
+			}
+			this.length = length;
+			this.window = Math.max(0, JaroWinklerSimilarity.matchingWindow(queryLength, length));
+			//As in the calculator, the shorter string (the query on a tie)
+			//drives the matching
+			this.entryDrives = length < queryLength;
+			this.prefixLimit = Math.min(maxPrefixLength, Math.min(queryLength, length));
+			int root = roots[length];
+			if(length == 0){
+				score(root, 0, 0L, 0L, 0);
+				return true;
+			}
+			//The length alone may already rule the whole trie out
+			double bound = bound(length, 0, 0) + BOUND_TOLERANCE;
+			if(bound < threshold || !heap.accepts(bound)){
+				return false;
+			}
+			for(int child = firstChild[root]; child >= 0; child = nextSibling[child]){
+				visit(child, 0, 0L, 0L, 0, 0, 0);
+			}
+			return true;
+		}
+
+		/**
+		 * Extend the path by a node's character at depth d
+		 * @param matchedQuery matched query positions
+		 * @param matchedEntry matched entry positions
+		 * @param matches number of matches
+		 * @param done query characters already matched (query drives)
+		 * @param prefix common prefix length
+		 */
+		void visit(int node, int d, long matchedQuery, long matchedEntry, int matches,
+				int done, int prefix){
+			char c = labels[node];
+			path[d] = c;
+			int depth = d + 1;
+			if(prefix == d && d < prefixLimit && query[d] == c){
+				prefix++;
+			}
+			int remaining;
+			if(entryDrives){
+				//Match entry character d with the first free query character
+				//in its window
+				int from = Math.max(0, d - window);
+				int to = Math.min(queryLength - 1, d + window);
+				if(from <= to){
+					long occurrence = (c < OCCURRENCE_TABLE_SIZE)? occurrences[c] :
+						JaroWinklerSimilarity.occurrenceMask(query, c, from, to);
+					long available = occurrence &
+						JaroWinklerSimilarity.windowMask(from, to) & ~matchedQuery;
+					if(available != 0){
+						matchedQuery |= available & -available;
+						matchedEntry |= 1L << d;
+						matches++;
+					}
+				}
+				remaining = length - depth;
+			} else {
+				//Match every query character whose window is now fully known
+				while(done < queryLength && Math.min(length, done + window + 1) <= depth){
+					int from = Math.max(0, done - window);
+					int to = Math.min(length - 1, done + window);
+					if(from <= to){
+						long available = ~matchedEntry &
+							JaroWinklerSimilarity.occurrenceMask(path, query[done], from, to);
+						if(available != 0){
+							matchedEntry |= available & -available;
+							matchedQuery |= 1L << done;
+							matches++;
+						}
+					}
+					done++;
+				}
+				remaining = queryLength - done;
+			}
+			if(depth == length){
+				score(node, length, matchedQuery, matchedEntry, prefix);
+				return;
+			}
+			double bound = bound(matches + remaining, depth, prefix) + BOUND_TOLERANCE;
+			if(bound < threshold || !heap.accepts(bound)){
+				return;
+			}
+			for(int child = firstChild[node]; child >= 0; child = nextSibling[child]){
+				visit(child, depth, matchedQuery, matchedEntry, matches, done, prefix);
+			}
+		}
+
+		/**
+		 * Score the entries ending at a leaf, exactly as the calculator
+		 * would
+		 */
+		void score(int node, int length, long matchedQuery, long matchedEntry, int prefix){
+			double score = calculator.score(Long.bitCount(matchedQuery), 
+				JaroWinklerSimilarity.transposes(query, matchedQuery, path, matchedEntry), 
+				queryLength, length, prefix);
+			comparisons += count[node];
+			if(score >= threshold){
+				for(int p = start[node], end = p + count[node]; p < end; p++){
+					heap.offer(ids[p], score);
+				}
+			}
+		}
+
+		/**
+		 * Bound the score of any entry below a node: no transposes and
+		 * the longest prefix still possible
+		 */
+		double bound(int possibleMatches, int depth, int prefix){
+			int matches = Math.min(possibleMatches, Math.min(queryLength, length));
+			if(matches == 0){
+				return 0d;
+			}
+			double jaro = (1d / 3d) *
+				((double) matches / queryLength + (double) matches / length + 1d);
+			int longestPrefix = (prefix == depth)? prefixLimit : prefix;
+			return (jaro > boostThreshold)?
+				jaro + longestPrefix * prefixScale * (1 - jaro) : jaro;
+		}
+
+		/**
+		 * Clear the occurrence table for the next search
+		 */
+		void close(){
+			for(int i = 0; i < queryLength; i++){
+				char c = query[i];
+				if(c < OCCURRENCE_TABLE_SIZE){
+					occurrences[c] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Growable node arrays, used while building
+	 */
+	private static final class Builder {
+
+		char[] labels;
+		int[] firstChild, nextSibling, lastChild, start, count;
+		int size;
+
+		Builder(int capacity){
+			capacity = Math.max(16, capacity);
+			labels = new char[capacity];
+			firstChild = new int[capacity];
+			nextSibling = new int[capacity];
+			lastChild = new int[capacity];
+			start = new int[capacity];
+			count = new int[capacity];
+		}
+
+		int node(char label, int position){
+			if(size == labels.length){
+				int capacity = size * 2;
+				labels = Arrays.copyOf(labels, capacity);
+				firstChild = Arrays.copyOf(firstChild, capacity);
+				nextSibling = Arrays.copyOf(nextSibling, capacity);
+				lastChild = Arrays.copyOf(lastChild, capacity);
+				start = Arrays.copyOf(start, capacity);
+				count = Arrays.copyOf(count, capacity);
+			}
+			labels[size] = label;
+			firstChild[size] = -1;
+			nextSibling[size] = -1;
+			lastChild[size] = -1;
+			start[size] = position;
+			count[size] = 0;
+			return size++;
+		}
+
+		void addChild(int parent, int child){
+			if(lastChild[parent] < 0){
+				firstChild[parent] = child;
+			} else {
+				nextSibling[lastChild[parent]] = child;
+			}
+			lastChild[parent] = child;
+		}
+	}
+
+	private static final ThreadLocal<long[]> OCCURRENCES = new ThreadLocal<long[]>(){
+		@Override
+		protected long[] initialValue(){
+			return new long[OCCURRENCE_TABLE_SIZE];
+		}
+	};
+}
@@ -4,13 +4,135 @@ package com.berico.similarity;
  * Find the similarity of two strings using the Jaro-Winkler
  * distance algorithm.
  * http://en.wikipedia.org/wiki/Jaro%E2%80%93Winkler_distance
+ * 
+ * Instances are immutable (and so safe to share between threads);
+ * use the Builder to change the prefix scale, the maximum prefix
+ * length, the boost threshold or to set a minimum score.
  * @author Richard C. (Berico Technologies)
  */
-public class JaroWinklerSimilarity implements ISimilarityCalculator {
+public class JaroWinklerSimilarity implements IBoundedSimilarityCalculator {
 
-	//Bonus weighting for string starting with the same characters
+	//Default bonus weighting for string starting with the same characters
 	//(e.g.: prefix scaling factor)
-	public static double PREFIX_SCALING_FACTOR = 0.1;
+	public static final double PREFIX_SCALING_FACTOR = 0.1;
+	
+	//Default maximum number of prefix characters that earn the bonus
+	public static final int MAX_PREFIX_LENGTH = 4;
+	
+	//Slack so rounding in the early-exit arithmetic never rejects
+	//a pair that reaches the minimum score
+	private static final double TOLERANCE = 1e-9;
+	
+	private final double prefixScale;
+	private final int maxPrefixLength;
+	private final double boostThreshold;
+	private final double minimumScore;
+	
+	/**
+	 * Create a calculator with the standard Winkler parameters
+	 * (prefix scale of 0.1, prefix of up to 4 characters, bonus
+	 * always applied, no minimum score)
+	 */
+	public JaroWinklerSimilarity(){
+		this(new Builder());
+	}
+	
+	private JaroWinklerSimilarity(Builder builder){
+		this.prefixScale = builder.prefixScale;
+		this.maxPrefixLength = builder.maxPrefixLength;
+		this.boostThreshold = builder.boostThreshold;
+		this.minimumScore = builder.minimumScore;
+	}
+	
+	/**
+	 * Start configuring a calculator
+	 * @return a Builder holding the default parameters
+	 */
+	public static Builder builder(){
+		return new Builder();
+	}
+	
+	/**
+	 * Collects the parameters of an (immutable) JaroWinklerSimilarity
+	 */
+	public static class Builder {
+		
+		private double prefixScale = PREFIX_SCALING_FACTOR;
+		private int maxPrefixLength = MAX_PREFIX_LENGTH;
+		private double boostThreshold = 0;
+		private double minimumScore = 0;
+		
+		/**
+		 * @param prefixScale weight of each common prefix character
+		 * (Winkler's p, 0.1 by default)
+		 * @return this builder
+		 */
+		public Builder prefixScale(double prefixScale){
+			this.prefixScale = prefixScale;
+			return this;
+		}
+		
+		/**
+		 * @param maxPrefixLength maximum number of common prefix
+		 * characters earning the bonus (4 by default)
+		 * @return this builder
+		 */
+		public Builder maxPrefixLength(int maxPrefixLength){
+			this.maxPrefixLength = maxPrefixLength;
+			return this;
+		}
+		
+		/**
+		 * @param boostThreshold only add the prefix bonus to Jaro
+		 * Distances above this (0 by default; Winkler used 0.7)
+		 * @return this builder
+		 */
+		public Builder boostThreshold(double boostThreshold){
+			this.boostThreshold = boostThreshold;
+			return this;
+		}
+		
+		/**
+		 * @param minimumScore pairs that can't reach this score are
+		 * abandoned as early as possible and score 0 (0 by default)
+		 * @return this builder
+		 */
+		public Builder minimumScore(double minimumScore){
+			this.minimumScore = minimumScore;
+			return this;
+		}
+		
+		/**
+		 * @return a calculator with these parameters
+		 * @throws IllegalArgumentException if the prefix bonus could
+		 * push a score above 1
+		 */
+		public JaroWinklerSimilarity build(){
+			if(prefixScale < 0 || maxPrefixLength < 0 
+					|| prefixScale * maxPrefixLength > 1){
+				throw new IllegalArgumentException(
+					"Prefix scale times max prefix length must be between 0 and 1: "
+					+ prefixScale + " * " + maxPrefixLength);
+			}
+			return new JaroWinklerSimilarity(this);
+		}
+	}
+	
+	public double getPrefixScale(){
+		return prefixScale;
+	}
+	
+	public int getMaxPrefixLength(){
+		return maxPrefixLength;
+	}
+	
+	public double getBoostThreshold(){
+		return boostThreshold;
+	}
+	
+	public double getMinimumScore(){
+		return minimumScore;
+	}
 	
 	/**
 	 * Instead of making two seperate functions for matching
@@ -31,26 +153,163 @@ public class JaroWinklerSimilarity implements ISimilarityCalculator {
 	 */
 	@Override
 	public double calculate(String stringOne, String stringTwo) {
-		//Get Matches and Transposes
-		MatchResults matchResults = 
-			determineMatchesAndTransposes(stringOne, stringTwo);
+		//Copy the strings into this thread's buffers rather than
+		//allocating new arrays with toCharArray
+		Scratch scratch = SCRATCH.get();
+		char[] one = scratch.charactersOne(stringOne.length());
+		char[] two = scratch.charactersTwo(stringTwo.length());
+		stringOne.getChars(0, stringOne.length(), one, 0);
+		stringTwo.getChars(0, stringTwo.length(), two, 0);
+		return calculate(one, stringOne.length(), two, stringTwo.length());
+	}
+	
+	/**
+	 * Profile a string as its character array, so the copy is made
+	 * once rather than on every comparison
+	 * @param string String to profile
+	 * @return a CharacterArrayProfile of the string
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		return new CharacterArrayProfile(string);
+	}
+	
+	/**
+	 * Calculate the Jaro-Winkler Similarity of two profiled strings
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return Jaro-Winkler similarity value
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		char[] one = CharacterArrayProfile.cast(profileOne).characters();
+		char[] two = CharacterArrayProfile.cast(profileTwo).characters();
+		return calculate(one, one.length, two, two.length);
+	}
+	
+	/**
+	 * The bound key is the length of the string
+	 * @param profile profile prepared by this calculator
+	 * @return length of the profiled string
+	 */
+	@Override
+	public int boundKey(IProfile profile) {
+		return CharacterArrayProfile.cast(profile).length();
+	}
+
+	/**
+	 * The bound key is the length itself
+	 * @param length length of a string
+	 * @return the length
+	 */
+	@Override
+	public int maximumKey(int length) {
+		return length;
+	}
+	
+	/**
+	 * There can be no more matches than characters in the shorter string,
+	 * and no fewer transposes than zero, which bounds the Jaro Distance by
+	 * the ratio of the lengths.  Assume the full prefix bonus.
+	 * Equation: 1/3 * (min / |A| + min / |B| + 1), min = Min(|A|, |B|)
+	 * @param query profile of the query
+	 * @param key length of a reference
+	 * @return upper bound on the Jaro-Winkler similarity
+	 */
+	@Override
+	public double upperBound(IProfile query, int key) {
+		int length = boundKey(query);
+		int shortest = Math.min(length, key);
+		if(shortest == 0){
+			return 0d;
+		}
+		double jaroBound = (1d / 3d) *
+			((double) shortest / (double) length + (double) shortest / (double) key + 1d);
+		return jaroBound + (maxPrefixLength * prefixScale) * (1 - jaroBound);
+	}
+	
+	/**
+	 * Calculate the Jaro-Winkler Similarity of the first characters
+	 * of two character arrays
+	 * @param stringOne First String's characters
+	 * @param stringOneLength number of characters of stringOne to use
+	 * @param stringTwo Second String's characters
+	 * @param stringTwoLength number of characters of stringTwo to use
+	 * @return Jaro-Winkler similarity value (0 if below the minimum score)
+	 */
+	double calculate(
+			char[] stringOne, int stringOneLength, 
+			char[] stringTwo, int stringTwoLength) {
+		//Find the Winkler common prefix length (maxes at maxPrefixLength
+		//characters).  It's cheap, and tells us how big a bonus is possible
+		int winklerCommonPrefix = 
+			winklerCommonPrefix(stringOne, stringOneLength, 
+				stringTwo, stringTwoLength, maxPrefixLength);
+		double bonus = winklerCommonPrefix * prefixScale;
+		//Find the fewest matches that could still reach the minimum
+		//score, giving up now if the strings are too short for that
+		int minimumMatches = 0;
+		if(minimumScore > 0){
+			minimumMatches = minimumMatches(stringOneLength, stringTwoLength, bonus);
+			if(minimumMatches > Math.min(stringOneLength, stringTwoLength)){
+				return 0d;
+			}
+		}
+		//Get Matches and Transposes (packed into a single long)
+		long matchesAndTransposes = 
+			matchesAndTransposes(stringOne, stringOneLength, 
+				stringTwo, stringTwoLength, minimumMatches);
+		return score(
+			matches(matchesAndTransposes), 
+			transposes(matchesAndTransposes), 
+			stringOneLength, 
+			stringTwoLength, 
+			winklerCommonPrefix);
+	}
+	
+	/**
+	 * Score a pair from its matches, transposes and common prefix
+	 * (shared with the JaroWinklerDictionary, which finds those itself).
+	 * @param matches number of matching characters
+	 * @param transposes number of transposes
+	 * @param stringOneLength length of the first string
+	 * @param stringTwoLength length of the second string
+	 * @param winklerCommonPrefix common prefix length, at most maxPrefixLength
+	 * @return Jaro-Winkler similarity value (0 if below the minimum score)
+	 */
+	double score(int matches, int transposes, 
+			int stringOneLength, int stringTwoLength, int winklerCommonPrefix){
 		//Get the Jaro Distance
 		double jaroDistance = 
-			jaroDistance(
-				matchResults.numberOfMatches, 
-				matchResults.numberOfTransposes, 
-				stringOne.length(), 
-				stringTwo.length());
-		//Find the Winkler common prefix length (maxes at 4 characters)
-		int winklerCommonPrefix = 
-			winklerCommonPrefix(stringOne, stringTwo);
+			jaroDistance(matches, transposes, stringOneLength, stringTwoLength);
 		//Find the Jaro-Winkler Distance
 		// = Jd + (l * p * ( 1 - Jd));
-		double jaroWinklerDistance = 
-			jaroDistance + (winklerCommonPrefix * PREFIX_SCALING_FACTOR)
-				* (1 - jaroDistance);
+		double bonus = winklerCommonPrefix * prefixScale;
+		double jaroWinklerDistance = (jaroDistance > boostThreshold)?
+			jaroDistance + bonus * (1 - jaroDistance) : jaroDistance;
 		//Return the distance
-		return jaroWinklerDistance;
+		return (jaroWinklerDistance < minimumScore)? 0d : jaroWinklerDistance;
+	}
+	
+	/**
+	 * Find the fewest matches with which two strings could reach the
+	 * minimum score, assuming no transposes and the prefix bonus.
+	 * From Jd + b(1 - Jd) &gt;= s we need Jd &gt;= (s - b) / (1 - b), and
+	 * from 1/3 * (m / |A| + m / |B| + 1) &gt;= Jd we need
+	 * m &gt;= (3Jd - 1) / (1 / |A| + 1 / |B|).
+	 * @param stringOneLength Length of String one
+	 * @param stringTwoLength Length of String two
+	 * @param bonus prefix bonus (l * p) the pair earns
+	 * @return minimum number of matches
+	 */
+	private int minimumMatches(int stringOneLength, int stringTwoLength, double bonus){
+		if(stringOneLength == 0 || stringTwoLength == 0){
+			return 1;
+		}
+		double jaroNeeded = (bonus >= 1)? 0d : (minimumScore - bonus) / (1 - bonus);
+		double matchesNeeded = (3 * jaroNeeded - 1) /
+			(1d / stringOneLength + 1d / stringTwoLength);
+		return Math.max(1, (int) Math.ceil(matchesNeeded - TOLERANCE));
 	}
 	
 	/**
@@ -63,81 +322,244 @@ public class JaroWinklerSimilarity implements ISimilarityCalculator {
 	 */
 	public static MatchResults determineMatchesAndTransposes(
 						String stringOne, String stringTwo){
-		//Create the match result instance
+		return determineMatchesAndTransposes(
+			stringOne.toCharArray(), stringTwo.toCharArray());
+	}
+	
+	/**
+	 * Find the all of the matching and transposed characters in 
+	 * two character arrays
+	 * @param stringOne First String's characters
+	 * @param stringTwo Second String's characters
+	 * @return A Match Result with both the number of matches and
+	 * number of transposed characters
+	 */
+	public static MatchResults determineMatchesAndTransposes(
+						char[] stringOne, char[] stringTwo){
+		long matchesAndTransposes = matchesAndTransposes(
+			stringOne, stringOne.length, stringTwo, stringTwo.length, 0);
 		MatchResults matchResults = new MatchResults();
+		matchResults.numberOfMatches = matches(matchesAndTransposes);
+		matchResults.numberOfTransposes = transposes(matchesAndTransposes);
+		return matchResults;
+	}
+	
+	/**
+	 * The matching kernel.  Two characters match if they are equal and
+	 * no further apart than the matching window; every character of
+	 * either string can be matched at most once, each character of the
+	 * shorter string taking the first unmatched equal character of the
+	 * longer one.  The number of transposes is half the number of
+	 * matched characters that differ when the matches of both strings
+	 * are read in order.
+	 * 
+	 * Nothing is allocated.  When the longer string fits in 64
+	 * characters the matches are found bit-parallel; otherwise this
+	 * thread's reusable flag arrays are used.
+	 * 
+	 * Matching stops early, reporting no matches at all, as soon as
+	 * too few characters are left to reach minimumMatches.
+	 * @param stringOne First String's characters
+	 * @param stringOneLength number of characters of stringOne to use
+	 * @param stringTwo Second String's characters
+	 * @param stringTwoLength number of characters of stringTwo to use
+	 * @param minimumMatches matches needed for the result to matter
+	 * @return number of matches in the high 32 bits, number of
+	 * transposes in the low 32 bits
+	 */
+	static long matchesAndTransposes(
+			char[] stringOne, int stringOneLength, 
+			char[] stringTwo, int stringTwoLength, int minimumMatches){
+		//We iterate over the shortest string and look for
+		//matches in the longest
+		if(stringOneLength > stringTwoLength){
+			return matchesAndTransposes(
+				stringTwo, stringTwoLength, stringOne, stringOneLength, minimumMatches);
+		}
 		//Find the matching window (how far left and right to
-		//look for matches)
-		int window = matchingWindow(stringOne, stringTwo);
-		//We need to find the shortest and longest character string
-		//because we iterate over the shortest
-		char[] shortest, longest;
-		//If string one is less than or equal to string two
-		if(stringOne.length() <= stringTwo.length()){
-			//use string one as the shortest
-			shortest = stringOne.toCharArray();
-			longest = stringTwo.toCharArray();
-		} else {
-			//otherwise use string two as the shortest
-			shortest = stringTwo.toCharArray();
-			longest = stringOne.toCharArray();
-		}
-		//we need to find the number of times we find a match
-		//out of position (ex: the 4th character of string one
-		//matches the 5th character of string two
-		int matchedOutOfPosition = 0;
-		//Iterate over the shortest string
-		for(int i = 0; i < shortest.length; i++){
-			//If we have an in-position match
-			if(shortest[i] == longest[i]){
-				//increment the number of matches
-				matchResults.numberOfMatches++;
-				//go to the next iteration
-				continue;
+		//look for matches); strings of one character get 0
+		int window = Math.max(0, 
+			matchingWindow(stringOneLength, stringTwoLength));
+		Scratch scratch = SCRATCH.get();
+		if(stringTwoLength <= 64){
+			return bitParallelMatches(scratch, 
+				stringOne, stringOneLength, stringTwo, stringTwoLength, 
+				window, minimumMatches);
+		}
+		return flaggedMatches(scratch, 
+			stringOne, stringOneLength, stringTwo, stringTwoLength, 
+			window, minimumMatches);
+	}
+	
+	/**
+	 * Matching for a longest string of at most 64 characters.  Each
+	 * position of the longest string is a bit: for every character we
+	 * keep a mask of the positions it occurs at, so finding the first
+	 * unmatched occurrence within the window is a couple of ANDs and
+	 * a lowest-set-bit.
+	 */
+	private static long bitParallelMatches(Scratch scratch,
+			char[] shortest, int shortestLength, 
+			char[] longest, int longestLength, int window, int minimumMatches){
+		//Build the occurrence masks of the Latin-1 characters
+		long[] occurrences = scratch.occurrences;
+		for(int j = 0; j < longestLength; j++){
+			char c = longest[j];
+			if(c < OCCURRENCE_TABLE_SIZE){
+				occurrences[c] |= 1L << j;
+			}
+		}
+		//Bits of the matched positions in each string
+		long matchedShortest = 0;
+		long matchedLongest = 0;
+		int matches = 0;
+		for(int i = 0; i < shortestLength; i++){
+			//Set the boundaries of the window in the longest string
+			int backwardBoundary = Math.max(0, i - window);
+			int forwardBoundary = Math.min(longestLength - 1, i + window);
+			if(backwardBoundary > forwardBoundary){
+				break;
+			}
+			char c = shortest[i];
+			long occurrence = (c < OCCURRENCE_TABLE_SIZE)? 
+				occurrences[c] : 
+				occurrenceMask(longest, c, backwardBoundary, forwardBoundary);
+			long available = occurrence & 
+				windowMask(backwardBoundary, forwardBoundary) & ~matchedLongest;
+			if(available != 0){
+				//Take the first available position
+				matchedLongest |= available & -available;
+				matchedShortest |= 1L << i;
+				matches++;
+			} else if(matches + (shortestLength - i - 1) < minimumMatches){
+				//Even matching everything left won't be enough
+				matches = 0;
+				break;
+			}
+		}
+		for(int j = 0; j < longestLength; j++){
+			char c = longest[j];
+			if(c < OCCURRENCE_TABLE_SIZE){
+				occurrences[c] = 0;
+			}
+		}
+		if(matches == 0){
+			return 0L;
+		}
+		return pack(matches, 
+			transposes(shortest, matchedShortest, longest, matchedLongest));
+	}
+	
+	/**
+	 * Count the transposes between two strings from the bit masks of
+	 * their matched positions (both masks hold the same number of bits)
+	 * @param stringOne First string's characters
+	 * @param matchedOne matched positions of stringOne
+	 * @param stringTwo Second string's characters
+	 * @param matchedTwo matched positions of stringTwo
+	 * @return half the number of matched characters that are out of order
+	 */
+	static int transposes(char[] stringOne, long matchedOne, 
+			char[] stringTwo, long matchedTwo){
+		//Walk the matched positions of both strings in order,
+		//counting the characters that are out of order
+		int outOfOrder = 0;
+		while(matchedOne != 0){
+			int i = Long.numberOfTrailingZeros(matchedOne);
+			int j = Long.numberOfTrailingZeros(matchedTwo);
+			if(stringOne[i] != stringTwo[j]){
+				outOfOrder++;
+			}
+			matchedOne &= matchedOne - 1;
+			matchedTwo &= matchedTwo - 1;
+		}
+		return outOfOrder / 2;
+	}
+	
+	/**
+	 * Positions from one index to another, inclusive (both below 64)
+	 */
+	static long windowMask(int from, int to){
+		return (-1L >>> (63 - (to - from))) << from;
+	}
+	
+	/**
+	 * Build the occurrence mask of a character outside of Latin-1 by
+	 * scanning the window (there's no table for these)
+	 */
+	static long occurrenceMask(char[] characters, char c, int from, int to){
+		long mask = 0;
+		for(int j = from; j <= to; j++){
+			if(characters[j] == c){
+				mask |= 1L << j;
 			}
-			//Set the boundary of how far back we
-			//can look at the longest string
-			//given the string's size and the
-			//window size
-			int backwardBoundary = 
-				((i - window) < 0)? 
-					0 : i - window;
-			//Set the boundary of how far we
-			//can look ahead at the longest string
-			//given the string's size and the
-			//window size
-			int forwardBoundary = 
-				((i + window) > (longest.length - 1))? 
-					longest.length - 1 : i + window;
-			//Starting at the back-most point, and
-			//moving to the forward-most point of the
-			//longest string, iterate looking for matches
-			//of our current character on the shortest 
-			//string
-			for(int b = backwardBoundary; 
-			        b <= forwardBoundary; 
-			        b++){
-				//If theres a match within our window
-				if(longest[b] == shortest[i]){
-					//increment the number of matches
-					matchResults.numberOfMatches++;
-					//but note that this is out of
-					//position
-					matchedOutOfPosition++;
-					//break out of this inner loop if we
-					//aren't on the last element
+		}
+		return mask;
+	}
+	
+	/**
+	 * Matching for strings of any length, marking matched positions
+	 * in this thread's boolean flag arrays.
+	 */
+	private static long flaggedMatches(Scratch scratch,
+			char[] shortest, int shortestLength, 
+			char[] longest, int longestLength, int window, int minimumMatches){
+		boolean[] matchedShortest = scratch.flagsOne(shortestLength);
+		boolean[] matchedLongest = scratch.flagsTwo(longestLength);
+		int matches = 0;
+		//Index of the last shortest character examined
+		int last = shortestLength;
+		for(int i = 0; i < shortestLength; i++){
+			//Even matching everything left won't be enough
+			if(matches + (shortestLength - i) < minimumMatches){
+				last = i;
+				break;
+			}
+			//Set the boundaries of the window in the longest string
+			int backwardBoundary = Math.max(0, i - window);
+			int forwardBoundary = Math.min(longestLength - 1, i + window);
+			char c = shortest[i];
+			for(int j = backwardBoundary; j <= forwardBoundary; j++){
+				//Only characters that haven't been consumed can match
+				if(!matchedLongest[j] && longest[j] == c){
+					matchedLongest[j] = true;
+					matchedShortest[i] = true;
+					matches++;
 					break;
 				}
 			}
 		}
-		//Determine the number of transposes by halving
-		//the number of out-of-position matches.
-		//This works because if we had two strings:
-		//"martha" and "marhta", the 'th' and 'ht' are
-		//transposed, but would be counted twice in the
-		//process above.
-		matchResults.numberOfTransposes = matchedOutOfPosition / 2;
-		//return the match result
-		return matchResults;
+		//Walk the matched positions of both strings in order, counting
+		//the characters that are out of order, and reset the flags
+		int outOfOrder = 0;
+		int j = 0;
+		for(int i = 0; i < last; i++){
+			if(!matchedShortest[i]){
+				continue;
+			}
+			matchedShortest[i] = false;
+			while(!matchedLongest[j]){ j++; }
+			matchedLongest[j] = false;
+			if(shortest[i] != longest[j]){
+				outOfOrder++;
+			}
+			j++;
+		}
+		//Every flag was cleared above, since there are exactly as
+		//many matched characters in each string
+		return (last < shortestLength)? 0L : pack(matches, outOfOrder / 2);
+	}
+	
+	private static long pack(int matches, int transposes){
+		return ((long) matches << 32) | transposes;
+	}
+	
+	private static int matches(long matchesAndTransposes){
+		return (int) (matchesAndTransposes >>> 32);
+	}
+	
+	private static int transposes(long matchesAndTransposes){
+		return (int) matchesAndTransposes;
 	}
 	
 	/**
@@ -150,8 +572,19 @@ public class JaroWinklerSimilarity implements ISimilarityCalculator {
 	 * @return Max window size
 	 */
 	public static int matchingWindow(String stringOne, String stringTwo){
+		return matchingWindow(stringOne.length(), stringTwo.length());
+	}
+	
+	/**
+	 * Determine the maximum window size to use when looking for matches.
+	 * Equation: [ Max(A, B) / 2 ] -1
+	 * @param stringOneLength Length of String one
+	 * @param stringTwoLength Length of String two
+	 * @return Max window size
+	 */
+	public static int matchingWindow(int stringOneLength, int stringTwoLength){
 		return 
-			(Math.max(stringOne.length(), stringTwo.length()) / 2) - 1;
+			(Math.max(stringOneLength, stringTwoLength) / 2) - 1;
 	}
 	
 	/**
@@ -164,6 +597,7 @@ public class JaroWinklerSimilarity implements ISimilarityCalculator {
 	 *        |B| = length of second string
 	 *         m  = number of matches
 	 *         t  = number of transposes
+	 * Strings without any matches have a distance of 0.
 	 * @param numMatches Number of matches
 	 * @param numTransposes Number of transposes
 	 * @param stringOneLength Length of String one
@@ -173,6 +607,10 @@ public class JaroWinklerSimilarity implements ISimilarityCalculator {
 	public static double jaroDistance(
 			int numMatches, int numTransposes, int stringOneLength, 
 			int stringTwoLength){
+		//Nothing in common (and no dividing by zero matches)
+		if(numMatches == 0){
+			return 0d;
+		}
 		//I hate Java's facility for math.  We have to cast these int's as doubles to
 		//be able to properly retrieve the decimal result
 		double third = 1d / 3d;
@@ -200,31 +638,106 @@ public class JaroWinklerSimilarity implements ISimilarityCalculator {
 	 */
 	public static int winklerCommonPrefix(
 			String stringOne, String stringTwo){
+		return winklerCommonPrefix(
+			stringOne.toCharArray(), stringTwo.toCharArray());
+	}
+	
+	/**
+	 * Find the Winkler Common Prefix of two character arrays
+	 * (maximum of 4).
+	 * @param stringOne First string's characters
+	 * @param stringTwo Second string's characters
+	 * @return Integer between 0 and 4 representing the number of
+	 * matching characters at the beginning of both strings.
+	 */
+	public static int winklerCommonPrefix(
+			char[] stringOne, char[] stringTwo){
+		return winklerCommonPrefix(
+			stringOne, stringOne.length, stringTwo, stringTwo.length, 
+			MAX_PREFIX_LENGTH);
+	}
+	
+	/**
+	 * Find the Winkler Common Prefix of the first characters of two
+	 * character arrays, up to a maximum length.
+	 */
+	private static int winklerCommonPrefix(
+			char[] stringOne, int stringOneLength, 
+			char[] stringTwo, int stringTwoLength, int maxPrefixLength){
 		
 		int commonPrefix = 0;
 		//Find the shortest string (we don't want an index out of bounds
 		//exception).
-		int boundary = (stringOne.length() <= stringTwo.length())? 
-						stringOne.length() : stringTwo.length();
+		int boundary = (stringOneLength <= stringTwoLength)? 
+						stringOneLength : stringTwoLength;
+		//We never need to look past the max number of matches
+		boundary = Math.min(boundary, maxPrefixLength);
 		//iterate until the boundary is hit (shortest string length)
 		for(int i = 0; 
 		        i < boundary;
 		        i++){
 			//If the character at the current position matches
-			if(stringOne.charAt(i) == stringTwo.charAt(i)){
+			if(stringOne[i] == stringTwo[i]){
 				//increment the common prefix
 				commonPrefix++;
 			} else {
 				//otherwise, continue no further, we are done.
 				break;
 			}
-			//If we hit our max number of matches, bust out
-			//of the loop.
-			if(commonPrefix == 4){ break; }
 		}
 		//return the number of matches at the beginning of 
 		//both strings
 		return commonPrefix;
 	}
 
+	//Characters below this value get a precomputed occurrence mask
+	static final int OCCURRENCE_TABLE_SIZE = 256;
+	
+	/**
+	 * Per-thread buffers, so the kernel never allocates (once they
+	 * have grown to the longest strings seen)
+	 */
+	private static final class Scratch {
+		final long[] occurrences = new long[OCCURRENCE_TABLE_SIZE];
+		char[] charactersOne = new char[64];
+		char[] charactersTwo = new char[64];
+		boolean[] flagsOne = new boolean[64];
+		boolean[] flagsTwo = new boolean[64];
+		
+		char[] charactersOne(int capacity){
+			if(charactersOne.length < capacity){
+				charactersOne = new char[capacity];
+			}
+			return charactersOne;
+		}
+		
+		char[] charactersTwo(int capacity){
+			if(charactersTwo.length < capacity){
+				charactersTwo = new char[capacity];
+			}
+			return charactersTwo;
+		}
+		
+		boolean[] flagsOne(int capacity){
+			if(flagsOne.length < capacity){
+				flagsOne = new boolean[capacity];
+			}
+			return flagsOne;
+		}
+		
+		boolean[] flagsTwo(int capacity){
+			if(flagsTwo.length < capacity){
+				flagsTwo = new boolean[capacity];
+			}
+			return flagsTwo;
+		}
+	}
+	
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
+
 }
@@ -0,0 +1,31 @@
+package com.berico.similarity;
+
+/**
+ * Find the similarity of two strings from their Levenshtein distance:
+ * the fewest insertions, deletions and substitutions of single characters
+ * turning one into the other.
+ * http://en.wikipedia.org/wiki/Levenshtein_distance
+ * @author Richard C (Berico Technologies)
+ */
+public class LevenshteinSimilarity extends EditDistanceSimilarity {
+
+	/**
+	 * Score every pair
+	 */
+	public LevenshteinSimilarity(){
+		this(0d);
+	}
+
+	/**
+	 * @param minimumScore pairs that can't reach this score are
+	 * abandoned as early as possible and score 0
+	 */
+	public LevenshteinSimilarity(double minimumScore){
+		super(minimumScore);
+	}
+
+	@Override
+	int distance(char[] one, int oneLength, char[] two, int twoLength, int maxDistance){
+		return EditDistance.levenshtein(one, oneLength, two, twoLength, maxDistance);
+	}
+}
@@ -0,0 +1,142 @@
+package com.berico.similarity;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A concurrent histogram of non-negative longs (latencies, lengths) with
+ * log-linear buckets, in the style of HdrHistogram: values below 16 get
+ * a bucket each, and every power of two above that is split into 16
+ * equal buckets, so any recorded value is known to within 1/16 (6.25%).
+ * Recording is a few shifts and two LongAdder increments, so threads
+ * rarely contend.
+ * @author Richard C (Berico Technologies)
+ */
+public final class LogHistogram {
+
+	//Buckets per power of two, as a shift
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	//Enough buckets for every non-negative long
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(new LongBinaryOperator(){
+		@Override
+		public long applyAsLong(long left, long right){
+			return Math.max(left, right);
+		}
+	}, 0);
+
+	public LogHistogram(){
+		for(int i = 0; i < BUCKETS; i++){
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record a value
+	 * @param value value to record (negative values count as 0)
+	 */
+	public void record(long value){
+		if(value < 0){
+			value = 0;
+		}
+		buckets[index(value)].increment();
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Get the number of recorded values
+	 * @return count
+	 */
+	public long count(){
+		return count.sum();
+	}
+
+	/**
+	 * Get the mean of the recorded values
+	 * @return mean, or 0 if nothing was recorded
+	 */
+	public double mean(){
+		long count = this.count.sum();
+		return (count == 0)? 0d : (double) sum.sum() / count;
+	}
+
+	/**
+	 * Get the largest recorded value
+	 * @return maximum, or 0 if nothing was recorded
+	 */
+	public long max(){
+		return max.get();
+	}
+
+	/**
+	 * Get a percentile of the recorded values, to within a bucket
+	 * @param percentile between 0 and 100
+	 * @return the highest value in the bucket holding the percentile
+	 * (never more than max()), or 0 if nothing was recorded
+	 */
+	public long percentile(double percentile){
+		long total = count.sum();
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += buckets[i].sum();
+			if(seen >= rank){
+				return Math.min(highestValue(i), max());
+			}
+		}
+		return max();
+	}
+
+	/**
+	 * Forget everything recorded.  Values recorded concurrently with a
+	 * reset may or may not survive it.
+	 */
+	public void reset(){
+		for(LongAdder bucket : buckets){
+			bucket.reset();
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * Find the bucket of a value: values below SUB_BUCKETS map to
+	 * themselves, larger ones to their power of two and their next
+	 * SUB_BUCKET_BITS bits
+	 */
+	static int index(long value){
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Get the largest value that falls in a bucket
+	 */
+	static long highestValue(int index){
+		if(index < SUB_BUCKETS){
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long lowest = (SUB_BUCKETS + subBucket) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
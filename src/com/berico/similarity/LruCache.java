@@ -0,0 +1,154 @@
+package com.berico.similarity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded, least-recently-used cache that is safe to share between
+ * threads.  Keys are spread over a fixed number of independently locked
+ * stripes (each an access-ordered LinkedHashMap), so threads only contend
+ * when they touch the same stripe.  Eviction is LRU within a stripe.
+ * @author Richard C (Berico Technologies)
+ */
+public class LruCache<K, V> {
+
+	private final Stripe<K, V>[] stripes;
+	private final int mask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param capacity maximum number of entries (split as evenly as
+	 * possible over the stripes, which always add up to exactly this)
+	 * @param concurrency expected number of concurrent threads; rounded up
+	 * to a power of two to give the number of stripes (but never more
+	 * stripes than entries)
+	 */
+	public LruCache(int capacity, int concurrency){
+		if(capacity < 1){
+			throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+		}
+		int stripesWanted = Math.min(concurrency, capacity);
+		int count = (stripesWanted <= 1)? 1 : Integer.highestOneBit(stripesWanted - 1) << 1;
+		if(count > capacity){
+			count = Integer.highestOneBit(capacity);
+		}
+		//Generic arrays can't be created, only cast to
+		@SuppressWarnings("unchecked")
+		Stripe<K, V>[] stripes = (Stripe<K, V>[]) new Stripe<?, ?>[count];
+		this.stripes = stripes;
+		this.mask = count - 1;
+		//The first capacity % count stripes take one of the leftover entries
+		int perStripe = capacity / count, extra = capacity % count;
+		for(int i = 0; i < count; i++){
+			stripes[i] = new Stripe<K, V>((i < extra)? perStripe + 1 : perStripe, evictions);
+		}
+	}
+
+	/**
+	 * Look up a value, counting a hit or a miss
+	 * @param key key
+	 * @return cached value, or null
+	 */
+	public V get(K key){
+		Stripe<K, V> stripe = stripeFor(key);
+		V value;
+		synchronized(stripe){
+			value = stripe.get(key);
+		}
+		if(value == null){
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * Store a value, evicting the stripe's least recently used entry if
+	 * the stripe is full
+	 * @param key key
+	 * @param value value (must not be null)
+	 */
+	public void put(K key, V value){
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized(stripe){
+			stripe.put(key, value);
+		}
+	}
+
+	/**
+	 * Get the number of entries currently cached
+	 * @return number of entries
+	 */
+	public int size(){
+		int size = 0;
+		for(Stripe<K, V> stripe : stripes){
+			synchronized(stripe){
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Remove every entry.  Counters are left alone.
+	 */
+	public void clear(){
+		for(Stripe<K, V> stripe : stripes){
+			synchronized(stripe){
+				stripe.clear();
+			}
+		}
+	}
+
+	public long hits(){
+		return hits.sum();
+	}
+
+	public long misses(){
+		return misses.sum();
+	}
+
+	public long evictions(){
+		return evictions.sum();
+	}
+
+	private Stripe<K, V> stripeFor(K key){
+		//Spread the hash so stripes are chosen by more than the low bits
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		hash *= 0x85EBCA6B;
+		hash ^= (hash >>> 13);
+		return stripes[hash & mask];
+	}
+
+	/**
+	 * One access-ordered map, bounded by removeEldestEntry
+	 */
+	private static final class Stripe<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final transient LongAdder evictions;
+
+		Stripe(int capacity, LongAdder evictions){
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest){
+			if(size() > capacity){
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
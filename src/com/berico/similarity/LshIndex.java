@@ -0,0 +1,267 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Banded locality-sensitive hashing over MinHash signatures, for finding
+ * the similar pairs in a large set of strings without comparing every
+ * pair.
+ *
+ * Each signature is cut into b bands of r entries.  Two strings become a
+ * candidate pair if any band agrees in full, which happens with
+ * probability 1 - (1 - J^r)^b for Jaccard Similarity J: an S-curve that
+ * rises steeply around J = (1/b)^(1/r).  Pairs well above that point are
+ * almost always found, and pairs well below it are almost never
+ * compared.  See candidateProbability.
+ *
+ * Every band is kept as a sorted array of (band hash, string id) longs,
+ * so buckets are runs of that array and building the index takes
+ * O(b n log n) time and 8 bytes per string per band, plus 4 bytes per
+ * signature entry.
+ * @author Richard C (Berico Technologies)
+ */
+public class LshIndex {
+
+	//Strings signed in a single fork/join task
+	private static final int SIGN_THRESHOLD = 256;
+
+	private final MinHash minHash;
+	private final List<String> strings;
+	private final int bands, rows, permutations;
+
+	//Signatures of all strings, back to back
+	private final int[] signatures;
+
+	//Per band: (band hash << 32 | string id), sorted
+	private final long[][] buckets;
+
+	/**
+	 * Sign and index a set of strings on the common fork/join pool
+	 * @param minHash signature generator; bands * rows entries of its
+	 * signatures are used
+	 * @param bands number of bands, b
+	 * @param rows number of signature entries per band, r
+	 * @param strings strings to index
+	 */
+	public LshIndex(MinHash minHash, int bands, int rows, List<String> strings){
+		this(minHash, bands, rows, strings, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Sign and index a set of strings
+	 * @param minHash signature generator; bands * rows entries of its
+	 * signatures are used
+	 * @param bands number of bands, b
+	 * @param rows number of signature entries per band, r
+	 * @param strings strings to index
+	 * @param pool pool signatures are computed on
+	 */
+	public LshIndex(final MinHash minHash, int bands, int rows, final List<String> strings,
+			ForkJoinPool pool){
+		if(bands < 1 || rows < 1 || (long) bands * rows > minHash.permutations()){
+			throw new IllegalArgumentException("Need 1 <= bands * rows <= "
+				+ minHash.permutations() + ": bands = " + bands + ", rows = " + rows);
+		}
+		this.minHash = minHash;
+		this.strings = strings;
+		this.bands = bands;
+		this.rows = rows;
+		this.permutations = minHash.permutations();
+		final int n = strings.size();
+		if((long) n * permutations > Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException(
+				"Signatures exceed the maximum array size: " + n + " x " + permutations);
+		}
+		this.signatures = new int[n * permutations];
+		pool.invoke(new BatchScorer.RangeTask(new BatchScorer.RangeBody(){
+			@Override
+			public void compute(int from, int to){
+				for(int id = from; id < to; id++){
+					minHash.signature(strings.get(id), signatures, id * permutations);
+				}
+			}
+		}, 0, n, SIGN_THRESHOLD));
+
+		this.buckets = new long[bands][];
+		for(int band = 0; band < bands; band++){
+			long[] bucket = new long[n];
+			for(int id = 0; id < n; id++){
+				bucket[id] = ((long) bandHash(signatures, id * permutations, band) << 32) | id;
+			}
+			Arrays.parallelSort(bucket);
+			buckets[band] = bucket;
+		}
+	}
+
+	/**
+	 * Get the number of indexed strings
+	 * @return number of strings
+	 */
+	public int size(){
+		return strings.size();
+	}
+
+	/**
+	 * Get the Jaccard Similarity at which a pair becomes a candidate with
+	 * probability of about one half: (1/b)^(1/r)
+	 * @return approximate threshold of the S-curve
+	 */
+	public double threshold(){
+		return Math.pow(1d / bands, 1d / rows);
+	}
+
+	/**
+	 * Get the probability that a pair becomes a candidate
+	 * @param jaccard Jaccard Similarity of the pair
+	 * @param bands number of bands, b
+	 * @param rows number of signature entries per band, r
+	 * @return 1 - (1 - J^r)^b
+	 */
+	public static double candidateProbability(double jaccard, int bands, int rows){
+		return 1 - Math.pow(1 - Math.pow(jaccard, rows), bands);
+	}
+
+	/**
+	 * Estimate the Jaccard Similarity of two indexed strings from their
+	 * full signatures
+	 * @param one id of the first string
+	 * @param two id of the second string
+	 * @return estimated Jaccard Similarity
+	 */
+	public double estimate(int one, int two){
+		return MinHash.estimate(
+			signatures, one * permutations, signatures, two * permutations, permutations);
+	}
+
+	/**
+	 * Report every candidate pair once, with its estimated Jaccard
+	 * Similarity.  A pair is reported from the first band it shares, so
+	 * pairs agreeing in several bands are not repeated.
+	 * @param listener receives (lower id, higher id, estimate) per pair
+	 */
+	public void candidatePairs(IScoreListener listener){
+		for(int band = 0; band < bands; band++){
+			long[] bucket = buckets[band];
+			for(int start = 0; start < bucket.length; ){
+				int end = start + 1;
+				while(end < bucket.length && (bucket[end] >>> 32) == (bucket[start] >>> 32)){
+					end++;
+				}
+				for(int i = start; i < end; i++){
+					//Ids within a bucket are ascending
+					int one = (int) bucket[i];
+					for(int j = i + 1; j < end; j++){
+						int two = (int) bucket[j];
+						if(!sharesEarlierBand(one, two, band)){
+							listener.score(one, two, estimate(one, two));
+						}
+					}
+				}
+				start = end;
+			}
+		}
+	}
+
+	/**
+	 * Report every candidate pair whose exact Jaccard Similarity, as
+	 * scored by the MinHash's calculator, reaches a threshold.  Pairs
+	 * the index never proposes are not found, whatever their score.
+	 * @param threshold minimum exact score
+	 * @param listener receives (lower id, higher id, exact score) per pair
+	 */
+	public void similarPairs(final double threshold, final IScoreListener listener){
+		final JaccardSimilarity calculator = minHash.getCalculator();
+		candidatePairs(new IScoreListener(){
+			@Override
+			public void score(int one, int two, double estimate){
+				double score = calculator.calculate(strings.get(one), strings.get(two));
+				if(score >= threshold){
+					listener.score(one, two, score);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Find the indexed strings sharing at least one band with a query
+	 * @param query query string
+	 * @return ascending ids of the candidates
+	 */
+	public int[] candidates(String query){
+		int[] signature = minHash.signature(query);
+		int[] candidates = new int[16];
+		int count = 0;
+		for(int band = 0; band < bands; band++){
+			long[] bucket = buckets[band];
+			long hash = bandHash(signature, 0, band);
+			//First entry of the bucket: ids are non-negative, so hash << 32
+			//sorts at or before every entry with that hash
+			int index = Arrays.binarySearch(bucket, hash << 32);
+			if(index < 0){
+				index = -index - 1;
+			}
+			for(; index < bucket.length && (bucket[index] >> 32) == hash; index++){
+				if(count == candidates.length){
+					candidates = Arrays.copyOf(candidates, count * 2);
+				}
+				candidates[count++] = (int) bucket[index];
+			}
+		}
+		Arrays.sort(candidates, 0, count);
+		int unique = 0;
+		for(int i = 0; i < count; i++){
+			if(unique == 0 || candidates[i] != candidates[unique - 1]){
+				candidates[unique++] = candidates[i];
+			}
+		}
+		return Arrays.copyOf(candidates, unique);
+	}
+
+	/**
+	 * Find the best matches for a query among its candidates, scored
+	 * exactly
+	 * @param query query string
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum exact score of a match
+	 * @return up to k matches, best first
+	 */
+	public SearchResults search(String query, int k, double threshold){
+		int[] candidates = candidates(query);
+		JaccardSimilarity calculator = minHash.getCalculator();
+		TopKHeap heap = new TopKHeap(k);
+		for(int id : candidates){
+			double score = calculator.calculate(query, strings.get(id));
+			if(score >= threshold){
+				heap.offer(id, score);
+			}
+		}
+		return heap.toResults(candidates.length, strings.size() - candidates.length);
+	}
+
+	/**
+	 * Check whether a pair already collided in a band before this one
+	 */
+	private boolean sharesEarlierBand(int one, int two, int band){
+		for(int earlier = 0; earlier < band; earlier++){
+			if(bandHash(signatures, one * permutations, earlier)
+					== bandHash(signatures, two * permutations, earlier)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Hash the entries of one band of a signature
+	 */
+	private int bandHash(int[] signatures, int offset, int band){
+		int hash = TokenHash.START;
+		for(int i = band * rows, end = i + rows; i < end; i++){
+			int value = signatures[offset + i];
+			hash = (hash ^ value) * 0x01000193;
+		}
+		return TokenHash.finish(hash);
+	}
+}
@@ -0,0 +1,234 @@
+package com.berico.similarity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A newline-delimited UTF-8 file read through memory mappings.  The file
+ * is cut into chunks of roughly equal size that always end on a line
+ * boundary, so files of any size can be mapped (one chunk at a time) and
+ * chunks can be processed independently and in parallel.  The number of
+ * the first line in every chunk is known up front.
+ *
+ * Lines are handed out as byte ranges of the mapping by a Cursor and are
+ * only decoded into Strings on request.
+ * @author Richard C (Berico Technologies)
+ */
+public class MappedLineFile implements Closeable {
+
+	//Default chunk size
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+
+	//Byte offset of the start of each chunk, plus the file size at the end
+	private final long[] chunkStarts;
+
+	//Line number of the first line of each chunk, plus the line count at the end
+	private final long[] firstLines;
+
+	/**
+	 * Map a file using the default chunk size
+	 * @param path file to read
+	 * @throws IOException if the file can't be read
+	 */
+	public MappedLineFile(Path path) throws IOException {
+		this(path, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Map a file
+	 * @param path file to read
+	 * @param chunkSize target chunk size in bytes (chunks run on to
+	 * the end of the line they would otherwise cut)
+	 * @throws IOException if the file can't be read
+	 */
+	public MappedLineFile(Path path, int chunkSize) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		long size = channel.size();
+		int estimate = (int) (size / chunkSize) + 2;
+		long[] starts = new long[estimate];
+		int chunks = 0;
+		long start = 0;
+		while(start < size){
+			starts[chunks++] = start;
+			start = lineBoundaryAfter(Math.min(size, start + chunkSize), size);
+		}
+		starts[chunks] = size;
+		this.chunkStarts = Arrays.copyOf(starts, chunks + 1);
+
+		//Count the lines of every chunk
+		this.firstLines = new long[chunks + 1];
+		for(int chunk = 0; chunk < chunks; chunk++){
+			Cursor cursor = cursor(chunk);
+			long lines = 0;
+			while(cursor.next()){
+				lines++;
+			}
+			firstLines[chunk + 1] = firstLines[chunk] + lines;
+		}
+	}
+
+	/**
+	 * Get the number of chunks
+	 * @return number of chunks
+	 */
+	public int chunks(){
+		return chunkStarts.length - 1;
+	}
+
+	/**
+	 * Get the number of lines in the file
+	 * @return number of lines
+	 */
+	public long lines(){
+		return firstLines[firstLines.length - 1];
+	}
+
+	/**
+	 * Get the line number of the first line of a chunk
+	 * @param chunk chunk number
+	 * @return zero-based line number
+	 */
+	public long firstLine(int chunk){
+		return firstLines[chunk];
+	}
+
+	/**
+	 * Map a chunk and open a cursor over its lines.  Cursors are not
+	 * thread-safe, but any number of them may be open at once.
+	 * @param chunk chunk number
+	 * @return cursor positioned before the chunk's first line
+	 * @throws IOException if the chunk can't be mapped
+	 */
+	public Cursor cursor(int chunk) throws IOException {
+		long start = chunkStarts[chunk];
+		MappedByteBuffer buffer = channel.map(
+			FileChannel.MapMode.READ_ONLY, start, chunkStarts[chunk + 1] - start);
+		return new Cursor(buffer, firstLines[chunk]);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Find the position just past the first newline at or after a
+	 * position (or the end of the file)
+	 */
+	private long lineBoundaryAfter(long position, long size) throws IOException {
+		ByteBuffer window = ByteBuffer.allocate(8192);
+		while(position < size){
+			window.clear();
+			int read = channel.read(window, position);
+			if(read <= 0){
+				break;
+			}
+			for(int i = 0; i < read; i++){
+				if(window.get(i) == '\n'){
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Iterates over the lines of one mapped chunk.  The current line is
+	 * available as a byte range (without its line terminator), and can
+	 * be decoded into a reusable buffer or a String.
+	 */
+	public static final class Cursor {
+
+		private final ByteBuffer buffer;
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private CharBuffer characters = CharBuffer.allocate(256);
+
+		private long line;
+		private int start = 0, end = 0, next = 0;
+
+		Cursor(ByteBuffer buffer, long firstLine){
+			this.buffer = buffer;
+			this.line = firstLine - 1;
+		}
+
+		/**
+		 * Advance to the next line
+		 * @return false once the chunk is exhausted
+		 */
+		public boolean next(){
+			int limit = buffer.limit();
+			if(next >= limit){
+				return false;
+			}
+			start = next;
+			int position = start;
+			while(position < limit && buffer.get(position) != '\n'){
+				position++;
+			}
+			next = position + 1;
+			end = (position > start && buffer.get(position - 1) == '\r')?
+				position - 1 : position;
+			line++;
+			return true;
+		}
+
+		/**
+		 * Get the zero-based line number of the current line
+		 * @return line number within the whole file
+		 */
+		public long line(){
+			return line;
+		}
+
+		/**
+		 * Get the size of the current line in UTF-8 bytes, which is
+		 * never less than its length in chars
+		 * @return byte length
+		 */
+		public int byteLength(){
+			return end - start;
+		}
+
+		/**
+		 * Decode the current line into a buffer owned by the cursor.
+		 * The buffer is overwritten by the next call.
+		 * @return the line's characters, positioned at 0
+		 */
+		public CharBuffer decode(){
+			if(characters.capacity() < byteLength()){
+				characters = CharBuffer.allocate(byteLength());
+			}
+			ByteBuffer bytes = buffer.duplicate();
+			bytes.limit(end).position(start);
+			characters.clear();
+			decoder.reset();
+			decoder.decode(bytes, characters, true);
+			decoder.flush(characters);
+			characters.flip();
+			return characters;
+		}
+
+		/**
+		 * Decode the current line into a String
+		 * @return the line
+		 */
+		public String string(){
+			return decode().toString();
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Computes MinHash signatures, which estimate the Jaccard Similarity of
+ * two strings in time proportional to the signature length rather than
+ * the strings' lengths.  Signatures are built from exactly the characters
+ * (or tokens) a given JaccardSimilarity compares, so any estimate can be
+ * checked against that calculator.
+ *
+ * Each of the k signature entries is the minimum, over the string's
+ * tokens, of an independent hash function.  Two strings agree on an
+ * entry with probability equal to their Jaccard Similarity J, so the
+ * fraction of agreeing entries is an unbiased estimate of J with standard
+ * error sqrt(J(1 - J) / k), at most 1 / (2 sqrt(k)).  By Hoeffding's
+ * inequality the estimate is within epsilon of J with probability at
+ * least 1 - 2exp(-2k epsilon^2); see errorBound.  For example, 128
+ * permutations give a standard error of at most 0.044, and an error of
+ * at most 0.12 with 95% confidence.
+ *
+ * The empty string has no tokens: its signature is all
+ * Integer.MAX_VALUE, which agrees with no non-empty string's signature.
+ * @author Richard C (Berico Technologies)
+ */
+public class MinHash {
+
+	private final JaccardSimilarity calculator;
+	private final ITokenizer tokenizer;
+
+	//Multiplier (odd) and offset of each hash function
+	private final int[] multipliers;
+	private final int[] offsets;
+
+	/**
+	 * @param calculator calculator whose score the signatures estimate
+	 * @param permutations number of hash functions (signature length)
+	 * @param seed seed the hash functions are drawn from; signatures are
+	 * only comparable if made with the same seed
+	 */
+	public MinHash(JaccardSimilarity calculator, int permutations, long seed){
+		if(permutations < 1){
+			throw new IllegalArgumentException("Need at least one permutation: " + permutations);
+		}
+		this.calculator = calculator;
+		this.tokenizer = (calculator.getTokenizer() == null)?
+			CharacterNGramTokenizer.UNIGRAMS : calculator.getTokenizer();
+		this.multipliers = new int[permutations];
+		this.offsets = new int[permutations];
+		Random random = new Random(seed);
+		for(int i = 0; i < permutations; i++){
+			multipliers[i] = random.nextInt() | 1;
+			offsets[i] = random.nextInt();
+		}
+	}
+
+	/**
+	 * Get the calculator the signatures estimate
+	 * @return exact calculator
+	 */
+	public JaccardSimilarity getCalculator(){
+		return calculator;
+	}
+
+	/**
+	 * Get the signature length
+	 * @return number of permutations
+	 */
+	public int permutations(){
+		return multipliers.length;
+	}
+
+	/**
+	 * Compute the signature of a string
+	 * @param string string to sign
+	 * @return signature of permutations() entries
+	 */
+	public int[] signature(String string){
+		int[] signature = new int[multipliers.length];
+		signature(string, signature, 0);
+		return signature;
+	}
+
+	/**
+	 * Compute the signature of a string into part of a larger array, so
+	 * that many signatures can share one flat int[]
+	 * @param string string to sign
+	 * @param signatures destination array
+	 * @param offset index of the signature's first entry
+	 */
+	public void signature(String string, int[] signatures, int offset){
+		int k = multipliers.length;
+		Arrays.fill(signatures, offset, offset + k, Integer.MAX_VALUE);
+		int[] tokens = tokenizer.tokenize(string);
+		for(int t = 0; t < tokens.length; t++){
+			int token = tokens[t];
+			//Multiplying by an odd number and adding are both bijections on
+			//the ints, as is the avalanche, so each hash is a permutation
+			for(int i = 0; i < k; i++){
+				int hash = TokenHash.finish(token * multipliers[i] + offsets[i]);
+				if(hash < signatures[offset + i]){
+					signatures[offset + i] = hash;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Estimate the Jaccard Similarity of two signed strings
+	 * @param signatureOne signature of the first string
+	 * @param signatureTwo signature of the second string
+	 * @return fraction of signature entries that agree
+	 */
+	public static double estimate(int[] signatureOne, int[] signatureTwo){
+		return estimate(signatureOne, 0, signatureTwo, 0, signatureOne.length);
+	}
+
+	/**
+	 * Estimate the Jaccard Similarity of two signatures stored in larger
+	 * arrays
+	 * @param signaturesOne array holding the first signature
+	 * @param offsetOne index of the first signature's first entry
+	 * @param signaturesTwo array holding the second signature
+	 * @param offsetTwo index of the second signature's first entry
+	 * @param permutations signature length
+	 * @return fraction of signature entries that agree
+	 */
+	public static double estimate(int[] signaturesOne, int offsetOne,
+			int[] signaturesTwo, int offsetTwo, int permutations){
+		int agree = 0;
+		for(int i = 0; i < permutations; i++){
+			if(signaturesOne[offsetOne + i] == signaturesTwo[offsetTwo + i]){
+				agree++;
+			}
+		}
+		return (double) agree / (double) permutations;
+	}
+
+	/**
+	 * Get the largest error an estimate makes with some confidence
+	 * (Hoeffding's inequality): sqrt(ln(2 / (1 - confidence)) / 2k)
+	 * @param permutations signature length, k
+	 * @param confidence probability that the error is within the bound,
+	 * strictly between 0 and 1
+	 * @return bound on |estimate - J|
+	 */
+	public static double errorBound(int permutations, double confidence){
+		return Math.sqrt(Math.log(2 / (1 - confidence)) / (2d * permutations));
+	}
+}
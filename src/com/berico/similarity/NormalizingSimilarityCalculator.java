@@ -0,0 +1,173 @@
+package com.berico.similarity;
+
+/**
+ * Decorates a calculator to compare strings by their canonical forms
+ * under a StringNormalizer, so "M\u00fcller" and "MULLER " can match.
+ *
+ * Profiles are prepared from the canonical form (which getString
+ * returns), so a string that is prepared once is normalized once.
+ * Comparing raw strings normalizes both into per-thread buffers; the
+ * Jaro-Winkler and edit distance calculators, and the character-level
+ * Jaccard, Sorensen and Cosine calculators, score those buffers
+ * directly, and other calculators are handed one new String per side.
+ *
+ * Use wrap to decorate: the result keeps the decorated calculator's
+ * bounds (it is an IBoundedSimilarityCalculator whenever the decorated
+ * calculator is).
+ * @author Richard C (Berico Technologies)
+ */
+public class NormalizingSimilarityCalculator implements ISimilarityCalculator {
+
+	private final ISimilarityCalculator calculator;
+	private final StringNormalizer normalizer;
+
+	private NormalizingSimilarityCalculator(ISimilarityCalculator calculator,
+			StringNormalizer normalizer){
+		this.calculator = calculator;
+		this.normalizer = normalizer;
+	}
+
+	/**
+	 * Decorate a calculator
+	 * @param calculator calculator comparing canonical forms
+	 * @param normalizer normalizer producing them
+	 * @return the normalizing calculator, bounded if calculator is
+	 */
+	public static NormalizingSimilarityCalculator wrap(ISimilarityCalculator calculator,
+			StringNormalizer normalizer){
+		if(calculator instanceof IBoundedSimilarityCalculator){
+			return new Bounded((IBoundedSimilarityCalculator) calculator, normalizer);
+		}
+		return new NormalizingSimilarityCalculator(calculator, normalizer);
+	}
+
+	/**
+	 * Get the decorated calculator
+	 * @return calculator
+	 */
+	public ISimilarityCalculator getCalculator(){
+		return calculator;
+	}
+
+	/**
+	 * Get the normalizer strings pass through
+	 * @return normalizer
+	 */
+	public StringNormalizer getNormalizer(){
+		return normalizer;
+	}
+
+	/**
+	 * Calculate the similarity of two strings' canonical forms
+	 * @param stringOne First String
+	 * @param stringTwo Second String
+	 * @return the decorated calculator's score of the canonical forms
+	 */
+	@Override
+	public double calculate(String stringOne, String stringTwo) {
+		Scratch scratch = SCRATCH.get();
+		char[] one = scratch.charactersOne(normalizer.maximumLength(stringOne.length()));
+		char[] two = scratch.charactersTwo(normalizer.maximumLength(stringTwo.length()));
+		int oneLength = normalizer.normalize(stringOne, one);
+		int twoLength = normalizer.normalize(stringTwo, two);
+		//Exact classes only: a subclass may have overridden calculate
+		Class<?> type = calculator.getClass();
+		if(type == JaroWinklerSimilarity.class){
+			return ((JaroWinklerSimilarity) calculator).calculate(one, oneLength, two, twoLength);
+		} else if(type == LevenshteinSimilarity.class
+				|| type == OptimalStringAlignmentSimilarity.class){
+			return ((EditDistanceSimilarity) calculator).calculate(one, oneLength, two, twoLength);
+		} else if(type == JaccardSimilarity.class
+				&& ((JaccardSimilarity) calculator).getTokenizer() == null){
+			return ((JaccardSimilarity) calculator).calculate(one, oneLength, two, twoLength);
+		} else if(type == SorensenSimilarity.class
+				&& ((SorensenSimilarity) calculator).getTokenizer() == null){
+			return ((SorensenSimilarity) calculator).calculate(one, oneLength, two, twoLength);
+		} else if(type == CosineSimilarity.class
+				&& ((CosineSimilarity) calculator).getTokenizer() == null){
+			return ((CosineSimilarity) calculator).calculate(one, oneLength, two, twoLength);
+		}
+		return calculator.calculate(new String(one, 0, oneLength), new String(two, 0, twoLength));
+	}
+
+	/**
+	 * Profile a string's canonical form
+	 * @param string String to profile
+	 * @return the decorated calculator's profile of the canonical form
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		return calculator.prepare(normalizer.normalize(string));
+	}
+
+	/**
+	 * Calculate the similarity of two profiles (already canonical)
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return the decorated calculator's score
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		return calculator.calculate(profileOne, profileTwo);
+	}
+
+	/**
+	 * Normalizing bounded calculator: bounds are those of the canonical
+	 * forms, which can be up to MAX_EXPANSION times longer than the raw
+	 * strings
+	 */
+	private static final class Bounded extends NormalizingSimilarityCalculator
+			implements IBoundedSimilarityCalculator {
+
+		private final IBoundedSimilarityCalculator bounded;
+
+		Bounded(IBoundedSimilarityCalculator calculator, StringNormalizer normalizer){
+			super(calculator, normalizer);
+			this.bounded = calculator;
+		}
+
+		@Override
+		public int boundKey(IProfile profile) {
+			return bounded.boundKey(profile);
+		}
+
+		@Override
+		public int maximumKey(int length) {
+			return bounded.maximumKey(getNormalizer().maximumLength(length));
+		}
+
+		@Override
+		public double upperBound(IProfile query, int key) {
+			return bounded.upperBound(query, key);
+		}
+	}
+
+	/**
+	 * Per-thread buffers for the canonical forms being compared
+	 */
+	private static final class Scratch {
+		char[] charactersOne = new char[64];
+		char[] charactersTwo = new char[64];
+
+		char[] charactersOne(int capacity){
+			if(charactersOne.length < capacity){
+				charactersOne = new char[capacity];
+			}
+			return charactersOne;
+		}
+
+		char[] charactersTwo(int capacity){
+			if(charactersTwo.length < capacity){
+				charactersTwo = new char[capacity];
+			}
+			return charactersTwo;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
+}
@@ -0,0 +1,618 @@
+package com.berico.similarity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only store of reference strings, pre-profiled and laid out
+ * contiguously outside of the Java heap (direct buffers, or a memory
+ * mapped file), so that millions of references cost the garbage collector
+ * nothing.  Queries are scored against an entry where it lies, by id,
+ * without materializing the entry as a String.
+ *
+ * Every entry is an 8-byte aligned record holding what the character
+ * based calculators need:
+ *
+ *   int    length (UTF-16 code units)
+ *   int    number of unique characters
+ *   long   sum of squared character counts (squared norm)
+ *   long[4] bitmask of the Latin-1 characters present
+ *   int    number of unique characters above Latin-1
+ *   int    (padding)
+ *   char[length] the string's code units
+ *   char[] its unique characters above Latin-1, sorted
+ *
+ * Records live in segments of at most segmentSize bytes (no record spans
+ * two), found through a table of (segment, offset) addresses.  A store
+ * can be saved to a file and later opened by mapping that file, which
+ * takes time proportional to the number of segments, not entries.
+ *
+ * All multi-byte values are little-endian.  Stores are safe to read from
+ * many threads.
+ * @author Richard C (Berico Technologies)
+ */
+public class OffHeapReferenceStore {
+
+	//Default (and largest) segment size
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+	//File header: magic, version, entry count, segment count
+	private static final int MAGIC = 0x42535253;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	//Record layout
+	private static final int LENGTH = 0;
+	private static final int SET_SIZE = 4;
+	private static final int SQUARED_NORM = 8;
+	private static final int LATIN1_MASK = 16;
+	private static final int WIDE_COUNT = 48;
+	private static final int CHARACTERS = 56;
+
+	private static final int LATIN1_LIMIT = 256;
+
+	private final ByteBuffer table;
+	private final ByteBuffer[] segments;
+	private final int size;
+
+	private OffHeapReferenceStore(ByteBuffer table, ByteBuffer[] segments, int size){
+		this.table = table;
+		this.segments = segments;
+		this.size = size;
+	}
+
+	/**
+	 * Store a list of strings in direct buffers
+	 * @param strings strings to store
+	 * @return a new store
+	 */
+	public static OffHeapReferenceStore of(List<String> strings){
+		Builder builder = new Builder();
+		for(String string : strings){
+			builder.add(string);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Open a store saved with save, by memory mapping it
+	 * @param path file to open
+	 * @return a store backed by the file
+	 * @throws IOException if the file can't be read or is not a store
+	 */
+	public static OffHeapReferenceStore open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+				throw new IOException("Not a reference store: " + path);
+			}
+			int size = header.getInt(8);
+			int segmentCount = header.getInt(12);
+			ByteBuffer lengths = ByteBuffer.allocate(segmentCount * 8).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, lengths, HEADER_SIZE);
+			long position = HEADER_SIZE + segmentCount * 8L;
+			ByteBuffer table = map(channel, position, size * 8L);
+			position += size * 8L;
+			ByteBuffer[] segments = new ByteBuffer[segmentCount];
+			for(int segment = 0; segment < segmentCount; segment++){
+				long length = lengths.getLong(segment * 8);
+				segments[segment] = map(channel, position, length);
+				position += length;
+			}
+			return new OffHeapReferenceStore(table, segments, size);
+		} finally {
+			//Mappings stay valid after the channel is closed
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write the store to a file that open can map
+	 * @param path file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + segments.length * 8)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(segments.length);
+			for(ByteBuffer segment : segments){
+				header.putLong(segment.limit());
+			}
+			header.flip();
+			writeFully(channel, header);
+			writeFully(channel, table.duplicate());
+			for(ByteBuffer segment : segments){
+				writeFully(channel, segment.duplicate());
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Get the number of stored strings
+	 * @return number of entries
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Get the length of a stored string
+	 * @param id entry id
+	 * @return length in UTF-16 code units
+	 */
+	public int length(int id){
+		long address = address(id);
+		return segment(address).getInt(offset(address) + LENGTH);
+	}
+
+	/**
+	 * Get the number of unique characters in a stored string
+	 * @param id entry id
+	 * @return size of its character set
+	 */
+	public int setSize(int id){
+		long address = address(id);
+		return segment(address).getInt(offset(address) + SET_SIZE);
+	}
+
+	/**
+	 * Materialize a stored string
+	 * @param id entry id
+	 * @return the string
+	 */
+	public String string(int id){
+		long address = address(id);
+		ByteBuffer segment = segment(address);
+		int offset = offset(address);
+		char[] characters = new char[segment.getInt(offset + LENGTH)];
+		readCharacters(segment, offset, characters);
+		return new String(characters);
+	}
+
+	/**
+	 * Profile a query for scoring against stored entries
+	 * @param query query string
+	 * @return a profile of the query
+	 */
+	public static Query prepare(String query){
+		return new Query(query);
+	}
+
+	/**
+	 * Score a query against a stored entry with a CosineSimilarity,
+	 * JaccardSimilarity, SorensenSimilarity (comparing characters) or
+	 * JaroWinklerSimilarity, or an instrumented one.  Scores are identical
+	 * to calling the calculator on the two strings.
+	 * @param calculator calculator to score with
+	 * @param query profiled query
+	 * @param id entry id
+	 * @return similarity of the query and the entry
+	 */
+	public double score(ISimilarityCalculator calculator, Query query, int id){
+		calculator = InstrumentedSimilarityCalculator.unwrap(calculator);
+		switch(metric(calculator)){
+			case COSINE:
+				return cosine(query, id);
+			case JACCARD:
+				return jaccard(query, id);
+			case SORENSEN:
+				return sorensen(query, id);
+			default:
+				return jaroWinkler((JaroWinklerSimilarity) calculator, query, id);
+		}
+	}
+
+	/**
+	 * Find the best matching entries for a query.  Entries whose length
+	 * or character set size rule them out are skipped without being read.
+	 * @param calculator calculator to score with (see score)
+	 * @param query profiled query
+	 * @param k maximum number of matches
+	 * @param threshold minimum score of a match
+	 * @return up to k matches, best first
+	 */
+	public SearchResults search(ISimilarityCalculator calculator, Query query, int k,
+			double threshold){
+		//Entries are scored here, not by the calculator: an instrumented
+		//one only records the search
+		ISimilarityCalculator scorer = InstrumentedSimilarityCalculator.unwrap(calculator);
+		int metric = metric(scorer);
+		IBoundedSimilarityCalculator bounded = (metric == COSINE)?
+			null : (IBoundedSimilarityCalculator) scorer;
+		IProfile profile = (bounded == null)? null : bounded.prepare(query.string);
+		TopKHeap heap = new TopKHeap(k);
+		int comparisons = 0;
+		for(int id = 0; id < size; id++){
+			if(bounded != null){
+				int key = (metric == JARO_WINKLER)? length(id) : setSize(id);
+				double bound = bounded.upperBound(profile, key);
+				if(bound < threshold || !heap.accepts(bound)){
+					continue;
+				}
+			}
+			comparisons++;
+			double score = score(scorer, query, id);
+			if(score >= threshold){
+				heap.offer(id, score);
+			}
+		}
+		//Every entry is bound-checked: the scan never stops early
+		return SimilarityMetrics.recordSearch(calculator,
+			heap.toResults(comparisons, size - comparisons), false);
+	}
+
+	/**
+	 * Cosine Similarity of a query and an entry: every occurrence of a
+	 * character in the entry adds the query's count of it to the dot product
+	 */
+	private double cosine(Query query, int id){
+		long address = address(id);
+		ByteBuffer segment = segment(address);
+		int offset = offset(address);
+		int length = segment.getInt(offset + LENGTH);
+		long dotProduct = 0;
+		for(int i = 0, position = offset + CHARACTERS; i < length; i++, position += 2){
+			char c = segment.getChar(position);
+			dotProduct += (c < LATIN1_LIMIT)? query.latin1Counts[c] : query.wideCount(c);
+		}
+		double entryMagnitude = Math.sqrt(segment.getLong(offset + SQUARED_NORM));
+		return dotProduct / (query.magnitude * entryMagnitude);
+	}
+
+	private double jaccard(Query query, int id){
+		long address = address(id);
+		ByteBuffer segment = segment(address);
+		int offset = offset(address);
+		int intersection = intersectionSize(query, segment, offset);
+		return (double) intersection /
+			   (double) (query.setSize + segment.getInt(offset + SET_SIZE) - intersection);
+	}
+
+	private double sorensen(Query query, int id){
+		long address = address(id);
+		ByteBuffer segment = segment(address);
+		int offset = offset(address);
+		return (double) (2 * intersectionSize(query, segment, offset)) /
+			   (double) (query.characters.length + segment.getInt(offset + LENGTH));
+	}
+
+	private double jaroWinkler(JaroWinklerSimilarity calculator, Query query, int id){
+		long address = address(id);
+		ByteBuffer segment = segment(address);
+		int offset = offset(address);
+		int length = segment.getInt(offset + LENGTH);
+		char[] characters = SCRATCH.get();
+		if(characters.length < length){
+			characters = new char[length];
+			SCRATCH.set(characters);
+		}
+		readCharacters(segment, offset, characters);
+		return calculator.calculate(query.characters, query.characters.length, characters, length);
+	}
+
+	/**
+	 * Count the unique characters a query shares with an entry: a
+	 * popcount over the Latin-1 masks, then a merge of the sorted wide
+	 * characters
+	 */
+	private static int intersectionSize(Query query, ByteBuffer segment, int offset){
+		int intersection = 0;
+		for(int w = 0; w < 4; w++){
+			intersection += Long.bitCount(
+				query.latin1Mask[w] & segment.getLong(offset + LATIN1_MASK + w * 8));
+		}
+		int wideCount = segment.getInt(offset + WIDE_COUNT);
+		if(wideCount > 0 && query.wide.length > 0){
+			int position = offset + CHARACTERS + 2 * segment.getInt(offset + LENGTH);
+			char[] wide = query.wide;
+			int i = 0, j = 0;
+			while(i < wide.length && j < wideCount){
+				char c = segment.getChar(position + 2 * j);
+				if(wide[i] < c){
+					i++;
+				} else if(wide[i] > c){
+					j++;
+				} else {
+					intersection++;
+					i++;
+					j++;
+				}
+			}
+		}
+		return intersection;
+	}
+
+	private static void readCharacters(ByteBuffer segment, int offset, char[] characters){
+		int length = segment.getInt(offset + LENGTH);
+		for(int i = 0, position = offset + CHARACTERS; i < length; i++, position += 2){
+			characters[i] = segment.getChar(position);
+		}
+	}
+
+	private long address(int id){
+		if(id < 0 || id >= size){
+			throw new IndexOutOfBoundsException("No entry " + id + " in a store of " + size);
+		}
+		return table.getLong(id * 8);
+	}
+
+	private ByteBuffer segment(long address){
+		return segments[(int) (address >>> 32)];
+	}
+
+	private static int offset(long address){
+		return (int) address;
+	}
+
+	private static final int COSINE = 0, JACCARD = 1, SORENSEN = 2, JARO_WINKLER = 3;
+
+	private static int metric(ISimilarityCalculator calculator){
+		//Exact classes only: a subclass may have overridden calculate
+		Class<?> type = calculator.getClass();
+		if(type == CosineSimilarity.class
+				&& ((CosineSimilarity) calculator).getTokenizer() == null){
+			return COSINE;
+		} else if(type == JaccardSimilarity.class
+				&& ((JaccardSimilarity) calculator).getTokenizer() == null){
+			return JACCARD;
+		} else if(type == SorensenSimilarity.class
+				&& ((SorensenSimilarity) calculator).getTokenizer() == null){
+			return SORENSEN;
+		} else if(type == JaroWinklerSimilarity.class){
+			return JARO_WINKLER;
+		}
+		throw new IllegalArgumentException(
+			"Stored entries can only be scored by character-level Cosine, Jaccard, Sorensen "
+			+ "or Jaro-Winkler calculators: " + calculator);
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long length)
+			throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+			.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+			throws IOException {
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				throw new IOException("Unexpected end of reference store.");
+			}
+			position += read;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+
+	//Per-thread buffer entries are copied into for Jaro-Winkler
+	private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>(){
+		@Override
+		protected char[] initialValue(){
+			return new char[64];
+		}
+	};
+
+	/**
+	 * A query profiled for scoring against stored entries: its characters,
+	 * Latin-1 counts and mask, and its sorted unique wide characters with
+	 * their counts.  Immutable.
+	 */
+	public static final class Query {
+
+		private final String string;
+		private final char[] characters;
+		private final int[] latin1Counts = new int[LATIN1_LIMIT];
+		private final long[] latin1Mask = new long[4];
+		private final char[] wide;
+		private final int[] wideCounts;
+		private final int setSize;
+		private final double magnitude;
+
+		private Query(String string){
+			this.string = string;
+			this.characters = string.toCharArray();
+			char[] sorted = characters.clone();
+			Arrays.sort(sorted);
+			char[] wide = new char[sorted.length];
+			int[] wideCounts = new int[sorted.length];
+			int wideDistinct = 0;
+			int setSize = 0;
+			long squaredNorm = 0;
+			for(int i = 0; i < sorted.length; ){
+				int start = i;
+				while(i < sorted.length && sorted[i] == sorted[start]){ i++; }
+				char c = sorted[start];
+				long count = i - start;
+				squaredNorm += count * count;
+				setSize++;
+				if(c < LATIN1_LIMIT){
+					latin1Counts[c] = (int) count;
+					latin1Mask[c >>> 6] |= 1L << c;
+				} else {
+					wide[wideDistinct] = c;
+					wideCounts[wideDistinct++] = (int) count;
+				}
+			}
+			this.wide = Arrays.copyOf(wide, wideDistinct);
+			this.wideCounts = Arrays.copyOf(wideCounts, wideDistinct);
+			this.setSize = setSize;
+			this.magnitude = Math.sqrt(squaredNorm);
+		}
+
+		/**
+		 * Get the query string
+		 * @return original string
+		 */
+		public String getString(){
+			return string;
+		}
+
+		private int wideCount(char c){
+			int index = Arrays.binarySearch(wide, c);
+			return (index < 0)? 0 : wideCounts[index];
+		}
+	}
+
+	/**
+	 * Appends entries to direct buffers, then freezes them into a store.
+	 * Not thread-safe.
+	 */
+	public static class Builder {
+
+		//First allocation of each segment, doubled as it fills
+		private static final int INITIAL_SEGMENT_SIZE = 1 << 20;
+
+		private final int segmentSize;
+		private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+		private ByteBuffer current;
+		private long[] addresses = new long[1024];
+		private int size = 0;
+
+		public Builder(){
+			this(DEFAULT_SEGMENT_SIZE);
+		}
+
+		/**
+		 * @param segmentSize largest segment, in bytes (entries longer than
+		 * this get a segment of their own)
+		 */
+		public Builder(int segmentSize){
+			if(segmentSize < CHARACTERS + 8){
+				throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+			}
+			this.segmentSize = segmentSize;
+		}
+
+		/**
+		 * Profile and append a string
+		 * @param string string to store
+		 * @return the entry's id
+		 */
+		public int add(String string){
+			int length = string.length();
+			char[] sorted = string.toCharArray();
+			Arrays.sort(sorted);
+			long[] mask = new long[4];
+			int setSize = 0;
+			int wideDistinct = 0;
+			long squaredNorm = 0;
+			for(int i = 0; i < sorted.length; ){
+				int start = i;
+				while(i < sorted.length && sorted[i] == sorted[start]){ i++; }
+				char c = sorted[start];
+				long count = i - start;
+				squaredNorm += count * count;
+				setSize++;
+				if(c < LATIN1_LIMIT){
+					mask[c >>> 6] |= 1L << c;
+				} else {
+					//Wide characters sort after Latin-1: compact them to the front
+					sorted[wideDistinct++] = c;
+				}
+			}
+			long recordSize = (CHARACTERS + 2L * (length + wideDistinct) + 7) & ~7L;
+			if(recordSize > Integer.MAX_VALUE - 8){
+				throw new IllegalArgumentException("String too long to store: " + length);
+			}
+			ByteBuffer segment = reserve((int) recordSize);
+			int offset = segment.position();
+			segment.putInt(offset + LENGTH, length);
+			segment.putInt(offset + SET_SIZE, setSize);
+			segment.putLong(offset + SQUARED_NORM, squaredNorm);
+			for(int w = 0; w < 4; w++){
+				segment.putLong(offset + LATIN1_MASK + w * 8, mask[w]);
+			}
+			segment.putInt(offset + WIDE_COUNT, wideDistinct);
+			segment.putInt(offset + WIDE_COUNT + 4, 0);
+			int position = offset + CHARACTERS;
+			for(int i = 0; i < length; i++, position += 2){
+				segment.putChar(position, string.charAt(i));
+			}
+			for(int i = 0; i < wideDistinct; i++, position += 2){
+				segment.putChar(position, sorted[i]);
+			}
+			//Zero the padding so saved files are deterministic
+			for(; position < offset + recordSize; position++){
+				segment.put(position, (byte) 0);
+			}
+			segment.position((int) (offset + recordSize));
+
+			if(size == addresses.length){
+				addresses = Arrays.copyOf(addresses, size * 2);
+			}
+			addresses[size] = ((long) segments.size() << 32) | offset;
+			return size++;
+		}
+
+		/**
+		 * Freeze the entries added so far into a store.  The builder
+		 * must not be used afterwards.
+		 * @return a new store
+		 */
+		public OffHeapReferenceStore build(){
+			if(current != null){
+				finishSegment();
+			}
+			if((long) size * 8 > Integer.MAX_VALUE){
+				throw new IllegalStateException("Too many entries for one store: " + size);
+			}
+			ByteBuffer table = ByteBuffer.allocateDirect(size * 8).order(ByteOrder.LITTLE_ENDIAN);
+			for(int id = 0; id < size; id++){
+				table.putLong(id * 8, addresses[id]);
+			}
+			return new OffHeapReferenceStore(
+				table, segments.toArray(new ByteBuffer[segments.size()]), size);
+		}
+
+		/**
+		 * Make room for a record in the current segment, growing it or
+		 * starting a new one as needed
+		 */
+		private ByteBuffer reserve(int recordSize){
+			if(current != null && current.remaining() < recordSize){
+				long needed = (long) current.position() + recordSize;
+				if(needed <= segmentSize){
+					int capacity = (int) Math.min(segmentSize,
+						Math.max(needed, 2L * current.capacity()));
+					ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+					current.flip();
+					grown.put(current);
+					current = grown;
+				} else {
+					finishSegment();
+				}
+			}
+			if(current == null){
+				int capacity = Math.max(recordSize, Math.min(segmentSize, INITIAL_SEGMENT_SIZE));
+				current = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			return current;
+		}
+
+		private void finishSegment(){
+			current.limit(current.position());
+			current.position(0);
+			segments.add(current);
+			current = null;
+		}
+	}
+}
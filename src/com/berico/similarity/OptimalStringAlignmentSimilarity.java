@@ -0,0 +1,33 @@
+package com.berico.similarity;
+
+/**
+ * Find the similarity of two strings from their optimal string alignment
+ * distance (the restricted Damerau-Levenshtein distance): Levenshtein
+ * edits plus transpositions of two adjacent characters, with no
+ * substring edited more than once.  "ca" and "abc" are 3 apart, not 2 as
+ * under the unrestricted Damerau-Levenshtein distance.
+ * http://en.wikipedia.org/wiki/Damerau%E2%80%93Levenshtein_distance
+ * @author Richard C (Berico Technologies)
+ */
+public class OptimalStringAlignmentSimilarity extends EditDistanceSimilarity {
+
+	/**
+	 * Score every pair
+	 */
+	public OptimalStringAlignmentSimilarity(){
+		this(0d);
+	}
+
+	/**
+	 * @param minimumScore pairs that can't reach this score are
+	 * abandoned as early as possible and score 0
+	 */
+	public OptimalStringAlignmentSimilarity(double minimumScore){
+		super(minimumScore);
+	}
+
+	@Override
+	int distance(char[] one, int oneLength, char[] two, int twoLength, int maxDistance){
+		return EditDistance.optimalStringAlignment(one, oneLength, two, twoLength, maxDistance);
+	}
+}
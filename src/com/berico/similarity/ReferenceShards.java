@@ -0,0 +1,300 @@
+package com.berico.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * A reference dictionary split into shards on disk, so that each shard
+ * can be loaded and searched by its own process (see ShardWorker and
+ * ShardedSearcher) and no single heap has to hold all of it.
+ *
+ * A dictionary is a newline-delimited UTF-8 file; an entry's id is its
+ * zero-based line number.  Entries are assigned to shards either by a
+ * hash of the string (even shard sizes, and duplicates land together)
+ * or by length range (shards of similar lengths, with boundaries chosen
+ * from a first pass so that the shards hold about as many entries each).
+ *
+ * Shard n is two files in the shard directory: shard-n.txt holds its
+ * entries, one per line, and shard-n.ids holds their ids in the same
+ * order (big-endian ints).  A manifest, shards.properties, records the
+ * partitioning and the number of entries of the dictionary and of each
+ * shard.
+ * @author Richard C (Berico Technologies)
+ */
+public class ReferenceShards {
+
+	/**
+	 * How entries are assigned to shards
+	 */
+	public enum Partitioning {
+		HASH, LENGTH
+	}
+
+	private static final String MANIFEST = "shards.properties";
+
+	private final Path directory;
+	private final Partitioning partitioning;
+	private final int size;
+	private final int[] sizes;
+
+	private ReferenceShards(Path directory, Partitioning partitioning, int size, int[] sizes){
+		this.directory = directory;
+		this.partitioning = partitioning;
+		this.size = size;
+		this.sizes = sizes;
+	}
+
+	/**
+	 * Split a dictionary into shards
+	 * @param dictionary dictionary file
+	 * @param directory directory the shards are written to (created if
+	 * need be; existing shards in it are overwritten)
+	 * @param shards number of shards
+	 * @param partitioning how entries are assigned to shards
+	 * @return the shards
+	 * @throws IOException if the dictionary can't be read or the shards
+	 * can't be written
+	 */
+	public static ReferenceShards split(MappedLineFile dictionary, Path directory, int shards,
+			Partitioning partitioning) throws IOException {
+		if(shards < 1){
+			throw new IllegalArgumentException("Need at least one shard: " + shards);
+		}
+		if(dictionary.lines() > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Too many entries: " + dictionary.lines());
+		}
+		Files.createDirectories(directory);
+		//Upper length of each shard's range (length partitioning only)
+		int[] upperLengths = (partitioning == Partitioning.LENGTH)?
+			lengthRanges(dictionary, shards) : null;
+		OutputStream[] strings = new OutputStream[shards];
+		DataOutputStream[] ids = new DataOutputStream[shards];
+		int[] sizes = new int[shards];
+		try {
+			for(int shard = 0; shard < shards; shard++){
+				strings[shard] = new BufferedOutputStream(
+					Files.newOutputStream(strings(directory, shard)), 1 << 16);
+				ids[shard] = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(ids(directory, shard)), 1 << 16));
+			}
+			byte[] newline = new byte[]{ '\n' };
+			for(int chunk = 0; chunk < dictionary.chunks(); chunk++){
+				MappedLineFile.Cursor cursor = dictionary.cursor(chunk);
+				while(cursor.next()){
+					String entry = cursor.string();
+					int shard = (upperLengths == null)?
+						hashShard(entry, shards) : lengthShard(upperLengths, entry.length());
+					strings[shard].write(entry.getBytes(StandardCharsets.UTF_8));
+					strings[shard].write(newline);
+					ids[shard].writeInt((int) cursor.line());
+					sizes[shard]++;
+				}
+			}
+		} finally {
+			for(int shard = 0; shard < shards; shard++){
+				if(strings[shard] != null){
+					strings[shard].close();
+				}
+				if(ids[shard] != null){
+					ids[shard].close();
+				}
+			}
+		}
+		ReferenceShards split = new ReferenceShards(
+			directory, partitioning, (int) dictionary.lines(), sizes);
+		split.writeManifest();
+		return split;
+	}
+
+	/**
+	 * Open shards written by split
+	 * @param directory shard directory
+	 * @return the shards
+	 * @throws IOException if the manifest can't be read
+	 */
+	public static ReferenceShards open(Path directory) throws IOException {
+		Properties manifest = new Properties();
+		InputStream input = Files.newInputStream(directory.resolve(MANIFEST));
+		try {
+			manifest.load(input);
+		} finally {
+			input.close();
+		}
+		try {
+			int[] sizes = new int[Integer.parseInt(manifest.getProperty("shards"))];
+			for(int shard = 0; shard < sizes.length; shard++){
+				sizes[shard] = Integer.parseInt(manifest.getProperty("shard." + shard + ".entries"));
+			}
+			return new ReferenceShards(directory,
+				Partitioning.valueOf(manifest.getProperty("partitioning")),
+				Integer.parseInt(manifest.getProperty("entries")), sizes);
+		} catch(RuntimeException e){
+			throw new IOException("Not a shard manifest: " + directory.resolve(MANIFEST), e);
+		}
+	}
+
+	/**
+	 * Get the number of shards
+	 * @return number of shards
+	 */
+	public int count(){
+		return sizes.length;
+	}
+
+	/**
+	 * Get the number of entries in the dictionary
+	 * @return number of entries
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Get the number of entries in a shard
+	 * @param shard shard number
+	 * @return number of entries
+	 */
+	public int size(int shard){
+		return sizes[shard];
+	}
+
+	/**
+	 * Get how entries were assigned to shards
+	 * @return partitioning
+	 */
+	public Partitioning getPartitioning(){
+		return partitioning;
+	}
+
+	/**
+	 * Get the file holding a shard's entries
+	 * @param shard shard number
+	 * @return path of the entries
+	 */
+	public Path strings(int shard){
+		return strings(directory, shard);
+	}
+
+	/**
+	 * Get the file holding a shard's entry ids
+	 * @param shard shard number
+	 * @return path of the ids
+	 */
+	public Path ids(int shard){
+		return ids(directory, shard);
+	}
+
+	private static Path strings(Path directory, int shard){
+		return directory.resolve("shard-" + shard + ".txt");
+	}
+
+	private static Path ids(Path directory, int shard){
+		return directory.resolve("shard-" + shard + ".ids");
+	}
+
+	private void writeManifest() throws IOException {
+		Properties manifest = new Properties();
+		manifest.setProperty("partitioning", partitioning.name());
+		manifest.setProperty("entries", Integer.toString(size));
+		manifest.setProperty("shards", Integer.toString(sizes.length));
+		for(int shard = 0; shard < sizes.length; shard++){
+			manifest.setProperty("shard." + shard + ".entries", Integer.toString(sizes[shard]));
+		}
+		OutputStream output = Files.newOutputStream(directory.resolve(MANIFEST));
+		try {
+			manifest.store(output, "Reference shards");
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Spread hash codes over the shards (the multiply mixes the low
+	 * bits, which String.hashCode leaves poorly distributed)
+	 */
+	private static int hashShard(String entry, int shards){
+		int hash = entry.hashCode() * 0x9E3779B1;
+		return (int) (((hash & 0xFFFFFFFFL) * shards) >>> 32);
+	}
+
+	private static int lengthShard(int[] upperLengths, int length){
+		int shard = Arrays.binarySearch(upperLengths, length);
+		if(shard < 0){
+			shard = -shard - 1;
+		} else {
+			//Several shards may end at the same length: take the first
+			while(shard > 0 && upperLengths[shard - 1] == length){
+				shard--;
+			}
+		}
+		return Math.min(shard, upperLengths.length - 1);
+	}
+
+	/**
+	 * Count the entries of every length and cut the lengths into ranges
+	 * holding about the same number of entries
+	 * @return the longest length of each shard's range (ascending)
+	 */
+	private static int[] lengthRanges(MappedLineFile dictionary, int shards) throws IOException {
+		long[] counts = new long[64];
+		int longest = 0;
+		for(int chunk = 0; chunk < dictionary.chunks(); chunk++){
+			MappedLineFile.Cursor cursor = dictionary.cursor(chunk);
+			while(cursor.next()){
+				int length = cursor.decode().remaining();
+				if(length >= counts.length){
+					counts = Arrays.copyOf(counts, Math.max(length + 1, counts.length * 2));
+				}
+				counts[length]++;
+				longest = Math.max(longest, length);
+			}
+		}
+		int[] upperLengths = new int[shards];
+		long total = dictionary.lines(), seen = 0;
+		int shard = 0;
+		for(int length = 0; length <= longest && shard < shards - 1; length++){
+			seen += counts[length];
+			//Close every shard whose share of the entries has been reached
+			while(shard < shards - 1 && seen >= total * (shard + 1) / shards){
+				upperLengths[shard++] = length;
+			}
+		}
+		for(; shard < shards; shard++){
+			upperLengths[shard] = Integer.MAX_VALUE;
+		}
+		return upperLengths;
+	}
+
+	/**
+	 * Usage: ReferenceShards dictionary directory shards [hash|length]
+	 * @param args see usage
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3){
+			System.err.println(
+				"Usage: ReferenceShards <dictionary file> <shard directory> <shards> [hash|length]");
+			System.exit(2);
+		}
+		Partitioning partitioning = (args.length > 3)?
+			Partitioning.valueOf(args[3].toUpperCase()) : Partitioning.HASH;
+		MappedLineFile dictionary = new MappedLineFile(Paths.get(args[0]));
+		try {
+			ReferenceShards shards = split(dictionary, Paths.get(args[1]),
+				Integer.parseInt(args[2]), partitioning);
+			for(int shard = 0; shard < shards.count(); shard++){
+				System.out.println(shards.strings(shard) + "\t" + shards.size(shard));
+			}
+		} finally {
+			dictionary.close();
+		}
+	}
+}
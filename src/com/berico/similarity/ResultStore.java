@@ -0,0 +1,652 @@
+package com.berico.similarity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * A compact, resumable on-disk store of (left id, right id, score)
+ * results, for all-pairs jobs too long to restart from scratch and too
+ * large for one record per pair.
+ *
+ * Results are written as segment files of a fixed number of pairs (only
+ * the last may be short).  Within a segment the pairs are sorted by left then right id
+ * and stored in columns: the distinct left ids (delta-encoded) with the
+ * number of pairs of each, the right ids (delta-encoded within each
+ * left id), and the scores quantized to 8 or 16 bits over [minimum
+ * score, 1].  Ids are variable-length unsigned ints (7 bits per byte),
+ * so a pair typically takes 3 to 5 bytes rather than 24.  A quantized
+ * score is within half a step, (1 - minimum score) / (2^bits - 1) / 2,
+ * of the original.
+ *
+ * A checkpoint file, checkpoint.properties, records how many segments
+ * are complete and the left line the job has finished up to.  The writer
+ * rewrites it (atomically, after syncing the segment) each time a
+ * segment fills, recording the last block of left lines finished before
+ * then, so segment size and block size are independent.  A job that dies
+ * resumes from that block: segments written after the checkpoint are
+ * discarded, and SimilarityJoin starts again at the checkpointed line.
+ * The last segments may already hold some pairs of the lines past it;
+ * the resumed writer skips those pairs rather than storing them twice.
+ *
+ * Segments and the checkpoint are little-endian.  A segment is a 40 byte
+ * header (magic, version, pairs, left ids, score bits, padding, minimum
+ * score, left column bytes, right column bytes) followed by the three
+ * columns.
+ * @author Richard C (Berico Technologies)
+ */
+public class ResultStore {
+
+	//Default number of pairs per segment
+	public static final int DEFAULT_SEGMENT_PAIRS = 1 << 20;
+
+	private static final String CHECKPOINT = "checkpoint.properties";
+
+	private static final int MAGIC = 0x42535245;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 40;
+
+	private final ByteBuffer[] segments;
+	private final long pairs;
+	private final long nextLine;
+	private final int scoreBits;
+	private final double minimumScore;
+
+	private ResultStore(ByteBuffer[] segments, long pairs, long nextLine, int scoreBits,
+			double minimumScore){
+		this.segments = segments;
+		this.pairs = pairs;
+		this.nextLine = nextLine;
+		this.scoreBits = scoreBits;
+		this.minimumScore = minimumScore;
+	}
+
+	/**
+	 * Open the completed segments of a store by memory mapping them
+	 * @param directory store directory
+	 * @return the store as of its last checkpoint
+	 * @throws IOException if the store can't be read
+	 */
+	public static ResultStore open(Path directory) throws IOException {
+		Properties checkpoint = readCheckpoint(directory);
+		if(checkpoint == null){
+			throw new IOException("No checkpoint in " + directory);
+		}
+		ByteBuffer[] segments = new ByteBuffer[Integer.parseInt(checkpoint.getProperty("segments"))];
+		for(int segment = 0; segment < segments.length; segment++){
+			FileChannel channel = FileChannel.open(segment(directory, segment), StandardOpenOption.READ);
+			try {
+				segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+					.order(ByteOrder.LITTLE_ENDIAN);
+			} finally {
+				//Mappings stay valid after the channel is closed
+				channel.close();
+			}
+			if(segments[segment].getInt(0) != MAGIC || segments[segment].getInt(4) != VERSION){
+				throw new IOException("Not a result segment: " + segment(directory, segment));
+			}
+		}
+		return new ResultStore(segments,
+			Long.parseLong(checkpoint.getProperty("pairs")),
+			Long.parseLong(checkpoint.getProperty("nextLine")),
+			Integer.parseInt(checkpoint.getProperty("scoreBits")),
+			Double.parseDouble(checkpoint.getProperty("minimumScore")));
+	}
+
+	/**
+	 * Open a store for writing, resuming from its last checkpoint if it
+	 * has one
+	 * @param directory store directory (created if need be)
+	 * @param scoreBits bits per quantized score, 8 or 16
+	 * @param minimumScore lowest score that will be written (typically
+	 * the join threshold)
+	 * @return a writer
+	 * @throws IOException if the store can't be opened, or was started
+	 * with different settings
+	 */
+	public static Writer writer(Path directory, int scoreBits, double minimumScore)
+			throws IOException {
+		return new Writer(directory, scoreBits, minimumScore, DEFAULT_SEGMENT_PAIRS);
+	}
+
+	/**
+	 * Open a store for writing, resuming from its last checkpoint if it
+	 * has one
+	 * @param directory store directory (created if need be)
+	 * @param scoreBits bits per quantized score, 8 or 16
+	 * @param minimumScore lowest score that will be written
+	 * @param segmentPairs largest number of pairs per segment
+	 * @return a writer
+	 * @throws IOException if the store can't be opened, or was started
+	 * with different settings
+	 */
+	public static Writer writer(Path directory, int scoreBits, double minimumScore,
+			int segmentPairs) throws IOException {
+		return new Writer(directory, scoreBits, minimumScore, segmentPairs);
+	}
+
+	/**
+	 * Get the number of segments
+	 * @return number of segments
+	 */
+	public int segments(){
+		return segments.length;
+	}
+
+	/**
+	 * Get the number of pairs stored
+	 * @return number of pairs
+	 */
+	public long pairs(){
+		return pairs;
+	}
+
+	/**
+	 * Get the first left line the job had not finished at its last
+	 * checkpoint
+	 * @return next left line
+	 */
+	public long nextLine(){
+		return nextLine;
+	}
+
+	/**
+	 * Get the size of the quantization step of the scores
+	 * @return difference between consecutive representable scores
+	 */
+	public double scoreStep(){
+		return (1d - minimumScore) / ((1 << scoreBits) - 1);
+	}
+
+	/**
+	 * Open a cursor over a segment's pairs (left id, then right id,
+	 * ascending).  Cursors are not thread-safe, but any number of them may
+	 * be open at once, so segments can be read in parallel.
+	 * @param segment segment number
+	 * @return cursor positioned before the segment's first pair
+	 */
+	public Cursor cursor(int segment){
+		return new Cursor(segments[segment]);
+	}
+
+	/**
+	 * Reads the pairs of one segment, decoding the three columns in step
+	 */
+	public static final class Cursor {
+
+		private final ByteBuffer buffer;
+		private final int pairs;
+		private final boolean wide;
+		private final double minimumScore, step;
+
+		//Read positions in the left, right and score columns
+		private int leftPosition, rightPosition, scorePosition;
+
+		private int read = 0, remainingInRun = 0;
+		private int left = 0, right = 0;
+		private double score;
+
+		Cursor(ByteBuffer buffer){
+			this.buffer = buffer;
+			this.pairs = buffer.getInt(8);
+			int scoreBits = buffer.getInt(16);
+			this.wide = (scoreBits == 16);
+			this.minimumScore = buffer.getDouble(24);
+			this.step = (1d - minimumScore) / ((1 << scoreBits) - 1);
+			this.leftPosition = HEADER_SIZE;
+			this.rightPosition = leftPosition + buffer.getInt(32);
+			this.scorePosition = rightPosition + buffer.getInt(36);
+		}
+
+		/**
+		 * Advance to the next pair
+		 * @return false once the segment is exhausted
+		 */
+		public boolean next(){
+			if(read == pairs){
+				return false;
+			}
+			if(remainingInRun == 0){
+				//Next left id: its delta, then its number of pairs
+				left += readVarint(true);
+				remainingInRun = readVarint(true);
+				right = 0;
+			}
+			right += readVarint(false);
+			int quantized = wide?
+				buffer.getChar(scorePosition + 2 * read) : buffer.get(scorePosition + read) & 0xFF;
+			score = minimumScore + quantized * step;
+			remainingInRun--;
+			read++;
+			return true;
+		}
+
+		/**
+		 * Get the left id of the current pair
+		 * @return left id
+		 */
+		public int left(){
+			return left;
+		}
+
+		/**
+		 * Get the right id of the current pair
+		 * @return right id
+		 */
+		public int right(){
+			return right;
+		}
+
+		/**
+		 * Get the (quantized) score of the current pair
+		 * @return score
+		 */
+		public double score(){
+			return score;
+		}
+
+		private int readVarint(boolean leftColumn){
+			int position = leftColumn? leftPosition : rightPosition;
+			int value = 0;
+			for(int shift = 0; ; shift += 7){
+				byte b = buffer.get(position++);
+				value |= (b & 0x7F) << shift;
+				if(b >= 0){
+					break;
+				}
+			}
+			if(leftColumn){
+				leftPosition = position;
+			} else {
+				rightPosition = position;
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Buffers pairs into segments and checkpoints them.  Written to by
+	 * SimilarityJoin from many threads at once, a batch at a time;
+	 * checkpoint is called between blocks.
+	 */
+	public static final class Writer
+			implements SimilarityJoin.IResumablePairWriter, SimilarityJoin.IBatchPairWriter {
+
+		private final Path directory;
+		private final int scoreBits;
+		private final double minimumScore;
+		private final int maximumQuantized;
+
+		//Pending pairs: (left << 32 | right) and the quantized score
+		private final long[] keys;
+		private final char[] quantized;
+		private int pending = 0;
+
+		//Segments written (some possibly after the last checkpoint)
+		private int written;
+		private long pairs;
+
+		//Left line recorded by the last checkpoint, and the first left
+		//line not yet finished (pairs may be pending)
+		private long durableLine;
+		private long finishedLine;
+
+		//Sorted keys of the pairs past durableLine that the segments
+		//already hold, when resuming (null once every one is behind us)
+		private long[] stored;
+		private long lastStoredLeft;
+
+		Writer(Path directory, int scoreBits, double minimumScore, int segmentPairs)
+				throws IOException {
+			if(scoreBits != 8 && scoreBits != 16){
+				throw new IllegalArgumentException("Scores take 8 or 16 bits: " + scoreBits);
+			}
+			if(!(minimumScore < 1)){
+				throw new IllegalArgumentException("Minimum score must be below 1: " + minimumScore);
+			}
+			if(segmentPairs < 1){
+				throw new IllegalArgumentException("Segments need room for a pair: " + segmentPairs);
+			}
+			this.directory = directory;
+			this.scoreBits = scoreBits;
+			this.minimumScore = minimumScore;
+			this.maximumQuantized = (1 << scoreBits) - 1;
+			this.keys = new long[segmentPairs];
+			this.quantized = new char[segmentPairs];
+			Files.createDirectories(directory);
+			Properties checkpoint = readCheckpoint(directory);
+			if(checkpoint != null){
+				if(Integer.parseInt(checkpoint.getProperty("scoreBits")) != scoreBits
+						|| Double.parseDouble(checkpoint.getProperty("minimumScore")) != minimumScore){
+					throw new IOException("Store " + directory + " was started with "
+						+ checkpoint.getProperty("scoreBits") + " bit scores from "
+						+ checkpoint.getProperty("minimumScore"));
+				}
+				this.written = Integer.parseInt(checkpoint.getProperty("segments"));
+				this.pairs = Long.parseLong(checkpoint.getProperty("pairs"));
+				this.durableLine = Long.parseLong(checkpoint.getProperty("nextLine"));
+				this.finishedLine = durableLine;
+			}
+			//Anything past the checkpoint is from a job that died
+			DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*");
+			try {
+				for(Path file : files){
+					String name = file.getFileName().toString();
+					if(!name.endsWith(".bin")
+							|| Integer.parseInt(name.substring(8, name.length() - 4)) >= written){
+						Files.delete(file);
+					}
+				}
+			} finally {
+				files.close();
+			}
+			findStored();
+		}
+
+		/**
+		 * Get the left line to resume from
+		 * @return the first left line not yet checkpointed
+		 */
+		@Override
+		public synchronized long resumeLine(){
+			return durableLine;
+		}
+
+		/**
+		 * Add a pair
+		 * @param leftLine left id (at most Integer.MAX_VALUE)
+		 * @param rightLine right id (at most Integer.MAX_VALUE)
+		 * @param score score, clamped to [minimum score, 1]
+		 */
+		@Override
+		public synchronized void write(long leftLine, long rightLine, double score)
+				throws IOException {
+			add(leftLine, rightLine, score);
+		}
+
+		/**
+		 * Add a batch of pairs under one lock
+		 * @param leftLines left ids (at most Integer.MAX_VALUE)
+		 * @param rightLines right ids (at most Integer.MAX_VALUE)
+		 * @param scores scores, clamped to [minimum score, 1]
+		 * @param count number of pairs
+		 */
+		@Override
+		public synchronized void write(long[] leftLines, long[] rightLines, double[] scores,
+				int count) throws IOException {
+			for(int i = 0; i < count; i++){
+				add(leftLines[i], rightLines[i], scores[i]);
+			}
+		}
+
+		/**
+		 * Record that the job has finished every left line before
+		 * nextLeftLine.  This is made durable with the next full segment.
+		 * @param nextLeftLine first left line not yet finished
+		 */
+		@Override
+		public synchronized void checkpoint(long nextLeftLine){
+			finishedLine = nextLeftLine;
+			if(stored != null && nextLeftLine > lastStoredLeft){
+				stored = null;
+			}
+		}
+
+		/**
+		 * Write the pending pairs as the last segment and checkpoint the
+		 * finished job
+		 * @param leftLines number of left lines
+		 */
+		@Override
+		public synchronized void finish(long leftLines) throws IOException {
+			if(pending > 0){
+				writeSegment();
+			}
+			finishedLine = leftLines;
+			stored = null;
+			writeCheckpoint();
+		}
+
+		/**
+		 * Close the writer.  Pairs not yet in a segment are discarded: a
+		 * resumed job recomputes them.
+		 */
+		@Override
+		public synchronized void close(){
+			pending = 0;
+		}
+
+		private void add(long leftLine, long rightLine, double score) throws IOException {
+			if(leftLine < 0 || leftLine > Integer.MAX_VALUE
+					|| rightLine < 0 || rightLine > Integer.MAX_VALUE){
+				throw new IllegalArgumentException(
+					"Ids out of range: " + leftLine + ", " + rightLine);
+			}
+			long key = (leftLine << 32) | rightLine;
+			if(stored != null && leftLine <= lastStoredLeft
+					&& Arrays.binarySearch(stored, key) >= 0){
+				return;
+			}
+			double position = (score - minimumScore) / (1d - minimumScore) * maximumQuantized;
+			keys[pending] = key;
+			quantized[pending++] = (char) Math.max(0, Math.min(maximumQuantized, Math.round(position)));
+			if(pending == keys.length){
+				writeSegment();
+				writeCheckpoint();
+			}
+		}
+
+		/**
+		 * Atomically record the segments written and the last finished line
+		 */
+		private void writeCheckpoint() throws IOException {
+			Properties checkpoint = new Properties();
+			checkpoint.setProperty("segments", Integer.toString(written));
+			checkpoint.setProperty("pairs", Long.toString(pairs));
+			checkpoint.setProperty("nextLine", Long.toString(finishedLine));
+			checkpoint.setProperty("scoreBits", Integer.toString(scoreBits));
+			checkpoint.setProperty("minimumScore", Double.toString(minimumScore));
+			Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+			FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				OutputStream output = Channels.newOutputStream(channel);
+				checkpoint.store(output, "Result store checkpoint");
+				output.flush();
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+			Files.move(temporary, directory.resolve(CHECKPOINT),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			durableLine = finishedLine;
+		}
+
+		/**
+		 * Gather the pairs past the checkpointed line that the segments
+		 * already hold.  Blocks are finished in order, so they are all in
+		 * the last segments: walk back until a segment has none.
+		 */
+		private void findStored() throws IOException {
+			long[] found = new long[0];
+			int count = 0;
+			for(int segment = written - 1; segment >= 0; segment--){
+				int before = count;
+				FileChannel channel = FileChannel.open(segment(directory, segment), StandardOpenOption.READ);
+				ByteBuffer buffer;
+				try {
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+						.order(ByteOrder.LITTLE_ENDIAN);
+				} finally {
+					channel.close();
+				}
+				Cursor cursor = new Cursor(buffer);
+				while(cursor.next()){
+					if(cursor.left() >= durableLine){
+						if(count == found.length){
+							found = Arrays.copyOf(found, Math.max(16, count * 2));
+						}
+						found[count++] = ((long) cursor.left() << 32) | cursor.right();
+						lastStoredLeft = Math.max(lastStoredLeft, cursor.left());
+					}
+				}
+				if(count == before){
+					break;
+				}
+			}
+			if(count > 0){
+				stored = Arrays.copyOf(found, count);
+				Arrays.sort(stored);
+			}
+		}
+
+		/**
+		 * Sort the pending pairs and write them as the next segment,
+		 * synced to disk before it gets its final name
+		 */
+		private void writeSegment() throws IOException {
+			sort(keys, quantized, 0, pending - 1);
+			ByteBuffer lefts = ByteBuffer.allocate(pending * 10);
+			ByteBuffer rights = ByteBuffer.allocate(pending * 5);
+			int runs = 0;
+			long previousLeft = 0;
+			for(int i = 0; i < pending; ){
+				long left = keys[i] >>> 32;
+				int start = i;
+				long previousRight = 0;
+				while(i < pending && (keys[i] >>> 32) == left){
+					long right = keys[i] & 0xFFFFFFFFL;
+					writeVarint(rights, right - previousRight);
+					previousRight = right;
+					i++;
+				}
+				writeVarint(lefts, left - previousLeft);
+				writeVarint(lefts, i - start);
+				previousLeft = left;
+				runs++;
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(pending).putInt(runs)
+				.putInt(scoreBits).putInt(0).putDouble(minimumScore)
+				.putInt(lefts.position()).putInt(rights.position());
+			ByteBuffer scores = ByteBuffer.allocate(pending * (scoreBits / 8))
+				.order(ByteOrder.LITTLE_ENDIAN);
+			for(int i = 0; i < pending; i++){
+				if(scoreBits == 16){
+					scores.putChar(quantized[i]);
+				} else {
+					scores.put((byte) quantized[i]);
+				}
+			}
+			header.flip();
+			lefts.flip();
+			rights.flip();
+			scores.flip();
+			Path temporary = directory.resolve("segment-" + written + ".tmp");
+			FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				ByteBuffer[] buffers = new ByteBuffer[]{ header, lefts, rights, scores };
+				while(scores.hasRemaining()){
+					channel.write(buffers);
+				}
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+			Files.move(temporary, segment(directory, written), StandardCopyOption.ATOMIC_MOVE);
+			written++;
+			pairs += pending;
+			pending = 0;
+		}
+	}
+
+	private static Path segment(Path directory, int segment){
+		return directory.resolve("segment-" + segment + ".bin");
+	}
+
+	private static Properties readCheckpoint(Path directory) throws IOException {
+		Path path = directory.resolve(CHECKPOINT);
+		if(!Files.exists(path)){
+			return null;
+		}
+		Properties checkpoint = new Properties();
+		InputStream input = Files.newInputStream(path);
+		try {
+			checkpoint.load(input);
+		} finally {
+			input.close();
+		}
+		return checkpoint;
+	}
+
+	private static void writeVarint(ByteBuffer buffer, long value){
+		while(value >= 0x80){
+			buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Sort keys ascending, carrying the values along (quicksort with a
+	 * median of three pivot, insertion sort for short ranges)
+	 */
+	private static void sort(long[] keys, char[] values, int low, int high){
+		while(high - low > 16){
+			int middle = (low + high) >>> 1;
+			if(keys[middle] < keys[low]){ swap(keys, values, middle, low); }
+			if(keys[high] < keys[low]){ swap(keys, values, high, low); }
+			if(keys[high] < keys[middle]){ swap(keys, values, high, middle); }
+			long pivot = keys[middle];
+			int i = low, j = high;
+			while(i <= j){
+				while(keys[i] < pivot){ i++; }
+				while(keys[j] > pivot){ j--; }
+				if(i <= j){
+					swap(keys, values, i++, j--);
+				}
+			}
+			//Recurse into the smaller side, loop on the larger
+			if(j - low < high - i){
+				sort(keys, values, low, j);
+				low = i;
+			} else {
+				sort(keys, values, i, high);
+				high = j;
+			}
+		}
+		for(int i = low + 1; i <= high; i++){
+			long key = keys[i];
+			char value = values[i];
+			int j = i - 1;
+			while(j >= low && keys[j] > key){
+				keys[j + 1] = keys[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			values[j + 1] = value;
+		}
+	}
+
+	private static void swap(long[] keys, char[] values, int i, int j){
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		char value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+}
@@ -0,0 +1,37 @@
+package com.berico.similarity;
+
+/**
+ * The best matches found by a search, best first, along with how much
+ * work it took to find them.
+ * @author Richard C (Berico Technologies)
+ */
+public class SearchResults {
+
+	//Index of each matching reference string, best match first
+	public final int[] indexes;
+	
+	//Score of the reference at the same position in indexes
+	public final double[] scores;
+	
+	//Number of references that were fully scored
+	public final int comparisons;
+	
+	//Number of references skipped because they could not qualify
+	public final int pruned;
+	
+	public SearchResults(int[] indexes, double[] scores, int comparisons, int pruned){
+		this.indexes = indexes;
+		this.scores = scores;
+		this.comparisons = comparisons;
+		this.pruned = pruned;
+	}
+	
+	/**
+	 * Get the number of matches found
+	 * @return number of matches
+	 */
+	public int size(){
+		return indexes.length;
+	}
+	
+}
@@ -0,0 +1,223 @@
+package com.berico.similarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Serves searches of one shard of a ReferenceShards dictionary, as a
+ * process of its own: the shard is loaded into a TopKSearcher, and
+ * requests are then read from standard input and answered on standard
+ * output until the coordinator asks it to stop (or closes the stream).
+ *
+ * The protocol is a plain exchange of big-endian values over a pair of
+ * byte streams, so the same worker can be served over a socket instead
+ * of pipes:
+ *
+ *   worker, once loaded:  int READY, int number of entries
+ *   request:              byte SEARCH, string query, int k, double threshold
+ *                         byte STOP
+ *   response:             byte RESULTS, int comparisons, int pruned,
+ *                           int n, n x (int id, double score)
+ *                         byte ERROR, string message
+ *
+ * where a string is an int byte count followed by that many UTF-8
+ * bytes.  Ids are the dictionary's, not the shard's, so responses from
+ * every shard can be merged directly.
+ * @author Richard C (Berico Technologies)
+ */
+public class ShardWorker {
+
+	static final int READY = 0x42535752;
+	static final byte SEARCH = 1;
+	static final byte STOP = 2;
+	static final byte RESULTS = 3;
+	static final byte ERROR = 4;
+
+	private final TopKSearcher searcher;
+	private final int[] ids;
+
+	/**
+	 * Load a shard
+	 * @param calculator calculator used to score candidates
+	 * @param strings file of the shard's entries
+	 * @param ids file of the shard's entry ids
+	 * @throws IOException if the shard can't be read
+	 */
+	public ShardWorker(ISimilarityCalculator calculator, Path strings, Path ids)
+			throws IOException {
+		List<String> entries = new ArrayList<String>();
+		MappedLineFile file = new MappedLineFile(strings);
+		try {
+			for(int chunk = 0; chunk < file.chunks(); chunk++){
+				MappedLineFile.Cursor cursor = file.cursor(chunk);
+				while(cursor.next()){
+					entries.add(cursor.string());
+				}
+			}
+		} finally {
+			file.close();
+		}
+		this.ids = new int[entries.size()];
+		DataInputStream input = new DataInputStream(
+			new BufferedInputStream(Files.newInputStream(ids), 1 << 16));
+		try {
+			for(int i = 0; i < this.ids.length; i++){
+				this.ids[i] = input.readInt();
+			}
+		} catch(EOFException e){
+			throw new IOException("Fewer ids than entries in " + ids, e);
+		} finally {
+			input.close();
+		}
+		this.searcher = new TopKSearcher(calculator, entries);
+	}
+
+	/**
+	 * Get the number of entries in the shard
+	 * @return number of entries
+	 */
+	public int size(){
+		return ids.length;
+	}
+
+	/**
+	 * Search the shard
+	 * @param query query string
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum score of a match
+	 * @return up to k matches, best first, identified by dictionary id
+	 */
+	public SearchResults search(String query, int k, double threshold){
+		SearchResults results = searcher.search(query, k, threshold);
+		int[] indexes = new int[results.size()];
+		for(int i = 0; i < indexes.length; i++){
+			indexes[i] = ids[results.indexes[i]];
+		}
+		return new SearchResults(indexes, results.scores, results.comparisons, results.pruned);
+	}
+
+	/**
+	 * Answer requests until told to stop or the input ends
+	 * @param input stream requests are read from
+	 * @param output stream responses are written to
+	 * @throws IOException if either stream fails
+	 */
+	public void serve(InputStream input, OutputStream output) throws IOException {
+		DataInputStream requests = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+		DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+		responses.writeInt(READY);
+		responses.writeInt(size());
+		responses.flush();
+		while(true){
+			int type = requests.read();
+			if(type < 0 || type == STOP){
+				return;
+			}
+			if(type != SEARCH){
+				throw new IOException("Unknown request type: " + type);
+			}
+			String query = readString(requests);
+			int k = requests.readInt();
+			double threshold = requests.readDouble();
+			SearchResults results;
+			try {
+				results = search(query, k, threshold);
+			} catch(RuntimeException e){
+				//A bad request fails, not the worker
+				responses.writeByte(ERROR);
+				writeString(responses, String.valueOf(e));
+				responses.flush();
+				continue;
+			}
+			responses.writeByte(RESULTS);
+			responses.writeInt(results.comparisons);
+			responses.writeInt(results.pruned);
+			responses.writeInt(results.size());
+			for(int i = 0; i < results.size(); i++){
+				responses.writeInt(results.indexes[i]);
+				responses.writeDouble(results.scores[i]);
+			}
+			responses.flush();
+		}
+	}
+
+	static void writeString(DataOutputStream output, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	static String readString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create a calculator from its specification.  Workers are separate
+	 * JVMs, so a calculator can't be handed to them: each builds its own
+	 * from the specification, which is one of
+	 *
+	 *   a name SimilarityJoin.calculator knows (e.g. "jarowinkler");
+	 *   the class name of a factory, a public class with a public
+	 *     no-argument constructor implementing
+	 *     Callable&lt;ISimilarityCalculator&gt;, which can build any
+	 *     calculator (a configured builder, a tokenizer, a decorator);
+	 *   the class name of a calculator with a public no-argument
+	 *     constructor.
+	 *
+	 * Factories and calculators must be on the worker's classpath (the
+	 * coordinator's, by default).
+	 * @param specification name or class name
+	 * @return a new calculator
+	 */
+	public static ISimilarityCalculator calculator(String specification){
+		if(specification.indexOf('.') < 0){
+			return SimilarityJoin.calculator(specification);
+		}
+		Object created;
+		try {
+			created = Class.forName(specification).getConstructor().newInstance();
+			if(created instanceof Callable){
+				created = ((Callable<?>) created).call();
+			}
+		} catch(ReflectiveOperationException e){
+			throw new IllegalArgumentException("Unknown calculator: " + specification, e);
+		} catch(Exception e){
+			throw new IllegalArgumentException("Calculator factory failed: " + specification, e);
+		}
+		if(!(created instanceof ISimilarityCalculator)){
+			throw new IllegalArgumentException(
+				"Neither a calculator nor a calculator factory: " + specification);
+		}
+		return (ISimilarityCalculator) created;
+	}
+
+	/**
+	 * Usage: ShardWorker calculator strings ids
+	 * @param args see usage
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3){
+			System.err.println(
+				"Usage: ShardWorker <calculator or factory class> <shard strings> <shard ids>");
+			System.exit(2);
+		}
+		ShardWorker worker = new ShardWorker(
+			calculator(args[0]), Paths.get(args[1]), Paths.get(args[2]));
+		worker.serve(System.in, System.out);
+	}
+}
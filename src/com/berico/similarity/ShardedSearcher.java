@@ -0,0 +1,261 @@
+package com.berico.similarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches a ReferenceShards dictionary with one worker process per
+ * shard, so each process only ever holds its own shard's entries and
+ * profiles.  Workers are local JVMs running ShardWorker on this JVM's
+ * classpath, spoken to over their standard input and output.  Each
+ * worker builds its own calculator from a specification: a calculator
+ * name, or the class name of a Callable&lt;ISimilarityCalculator&gt;
+ * factory for calculators that need configuring (see
+ * ShardWorker.calculator).
+ *
+ * A search sends the query to every worker before reading any answer,
+ * so the shards are searched in parallel, then merges each worker's top
+ * k into the overall top k.  Scores are those of the calculator on the
+ * whole dictionary; comparisons and pruned are summed over the shards.
+ *
+ * Searches are serialized: a searcher keeps one request in flight per
+ * worker.  If a worker fails or dies, the searcher is unusable and
+ * every later search throws.
+ * @author Richard C (Berico Technologies)
+ */
+public class ShardedSearcher implements AutoCloseable {
+
+	//Time workers are given to exit before they are killed
+	private static final long STOP_TIMEOUT_SECONDS = 10;
+
+	private final ReferenceShards shards;
+	private final Worker[] workers;
+	private IOException failure;
+
+	/**
+	 * Start one worker per shard with default JVM options
+	 * @param shards dictionary shards
+	 * @param calculator calculator name or factory class (see ShardWorker.calculator)
+	 * @throws IOException if a worker can't be started or can't load its shard
+	 */
+	public ShardedSearcher(ReferenceShards shards, String calculator) throws IOException {
+		this(shards, calculator, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Start one worker per shard
+	 * @param shards dictionary shards
+	 * @param calculator calculator name or factory class (see ShardWorker.calculator)
+	 * @param jvmOptions options for each worker JVM (e.g. "-Xmx512m")
+	 * @throws IOException if a worker can't be started or can't load its shard
+	 */
+	public ShardedSearcher(ReferenceShards shards, String calculator, List<String> jvmOptions)
+			throws IOException {
+		//Fail here rather than in every worker
+		ShardWorker.calculator(calculator);
+		this.shards = shards;
+		this.workers = new Worker[shards.count()];
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		try {
+			//Start them all before waiting for any, so shards load in parallel
+			for(int shard = 0; shard < workers.length; shard++){
+				List<String> command = new ArrayList<String>();
+				command.add(java);
+				command.addAll(jvmOptions);
+				command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+					ShardWorker.class.getName(), calculator,
+					shards.strings(shard).toString(), shards.ids(shard).toString()));
+				workers[shard] = new Worker(shard, new ProcessBuilder(command)
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start());
+			}
+			for(Worker worker : workers){
+				worker.awaitReady();
+			}
+		} catch(IOException e){
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the number of entries in the dictionary
+	 * @return number of entries
+	 */
+	public int size(){
+		return shards.size();
+	}
+
+	/**
+	 * Find the best matches for a query across every shard
+	 * @param query query string
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum score of a match
+	 * @return up to k matches (dictionary ids), best first
+	 * @throws IOException if a worker fails
+	 */
+	public synchronized SearchResults search(String query, int k, double threshold)
+			throws IOException {
+		if(failure != null){
+			throw new IOException("A shard worker has failed", failure);
+		}
+		//The heap rejects a bad k before any worker sees it
+		TopKHeap heap = new TopKHeap(k);
+		int comparisons = 0, pruned = 0;
+		String error = null;
+		try {
+			for(Worker worker : workers){
+				worker.request(query, k, threshold);
+			}
+			for(Worker worker : workers){
+				//Read every response, even after an error, to stay in step
+				DataInputStream input = worker.input;
+				int type = input.readByte();
+				if(type == ShardWorker.ERROR){
+					error = ShardWorker.readString(input);
+					continue;
+				}
+				if(type != ShardWorker.RESULTS){
+					throw new IOException("Unexpected response from shard " + worker.shard
+						+ ": " + type);
+				}
+				comparisons += input.readInt();
+				pruned += input.readInt();
+				int n = input.readInt();
+				for(int i = 0; i < n; i++){
+					int id = input.readInt();
+					heap.offer(id, input.readDouble());
+				}
+			}
+		} catch(IOException e){
+			failure = e;
+			throw e;
+		}
+		if(error != null){
+			throw new IllegalArgumentException(error);
+		}
+		return heap.toResults(comparisons, pruned);
+	}
+
+	/**
+	 * Ask the workers to stop, killing any that don't
+	 */
+	@Override
+	public synchronized void close(){
+		for(Worker worker : workers){
+			if(worker != null){
+				worker.stop();
+			}
+		}
+		for(Worker worker : workers){
+			if(worker != null){
+				worker.awaitExit();
+			}
+		}
+		if(failure == null){
+			failure = new IOException("Searcher closed");
+		}
+	}
+
+	/**
+	 * One worker process and its streams
+	 */
+	private static final class Worker {
+
+		final int shard;
+		final Process process;
+		final DataInputStream input;
+		final DataOutputStream output;
+
+		Worker(int shard, Process process){
+			this.shard = shard;
+			this.process = process;
+			this.input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		}
+
+		void awaitReady() throws IOException {
+			try {
+				if(input.readInt() != ShardWorker.READY){
+					throw new IOException("Shard " + shard + " worker did not start correctly");
+				}
+				input.readInt();
+			} catch(EOFException e){
+				throw new IOException("Shard " + shard + " worker exited while loading", e);
+			}
+		}
+
+		void request(String query, int k, double threshold) throws IOException {
+			output.writeByte(ShardWorker.SEARCH);
+			ShardWorker.writeString(output, query);
+			output.writeInt(k);
+			output.writeDouble(threshold);
+			output.flush();
+		}
+
+		void stop(){
+			try {
+				output.writeByte(ShardWorker.STOP);
+				output.close();
+			} catch(IOException e){
+				//Already gone
+			}
+		}
+
+		void awaitExit(){
+			try {
+				if(!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)){
+					process.destroyForcibly();
+				}
+			} catch(InterruptedException e){
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Usage: ShardedSearcher directory calculator k threshold [jvm options]
+	 * Reads queries from standard input, one per line, and writes "query
+	 * line TAB id TAB score" per match.
+	 * @param args see usage
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 4){
+			System.err.println("Usage: ShardedSearcher <shard directory> <calculator or factory class> <k> "
+				+ "<threshold> [worker JVM options]");
+			System.exit(2);
+		}
+		ReferenceShards shards = ReferenceShards.open(Paths.get(args[0]));
+		int k = Integer.parseInt(args[2]);
+		double threshold = Double.parseDouble(args[3]);
+		ShardedSearcher searcher = new ShardedSearcher(shards, args[1],
+			Arrays.asList(args).subList(4, args.length));
+		try {
+			BufferedReader queries = new BufferedReader(
+				new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			long line = 0;
+			for(String query = queries.readLine(); query != null; query = queries.readLine(), line++){
+				SearchResults results = searcher.search(query, k, threshold);
+				for(int i = 0; i < results.size(); i++){
+					System.out.println(line + "\t" + results.indexes[i] + "\t" + results.scores[i]);
+				}
+			}
+		} finally {
+			searcher.close();
+		}
+	}
+}
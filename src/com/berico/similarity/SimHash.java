@@ -0,0 +1,200 @@
+package com.berico.similarity;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes SimHash fingerprints (Charikar's random-hyperplane sketches),
+ * which estimate the Cosine Similarity of two strings from the Hamming
+ * distance between two 64 or 128 bit fingerprints.  Fingerprints are
+ * built from exactly the character (or token) frequency vector a given
+ * CosineSimilarity compares.
+ *
+ * Every token is hashed to a pseudo-random vector of +1 / -1 entries, one
+ * per bit.  A string's fingerprint has bit i set when the sum of those
+ * vectors' i-th entries, weighted by token frequency, is positive: each
+ * bit records which side of a random hyperplane the frequency vector lies
+ * on.  Two vectors at angle theta disagree on a bit with probability
+ * about theta / pi, so a Hamming distance of h out of b bits estimates
+ * the cosine as cos(pi h / b).  The estimate of theta has a standard
+ * deviation of about pi sqrt(p (1 - p) / b) with p = theta / pi: at most
+ * 0.2 radians for 64 bits and 0.14 radians for 128 bits, so fingerprints
+ * are a pre-filter and scores that matter should be checked exactly.
+ *
+ * Fingerprints are stored as longs: one for 64 bits, two for 128.
+ * @author Richard C (Berico Technologies)
+ */
+public class SimHash {
+
+	//Strings fingerprinted in a single fork/join task
+	private static final int FINGERPRINT_THRESHOLD = 256;
+
+	private final CosineSimilarity calculator;
+	private final ITokenizer tokenizer;
+	private final int bits;
+	private final int words;
+
+	//Seeds of the hash giving each word of a token's +1 / -1 vector
+	private final long[] seeds;
+
+	/**
+	 * @param calculator calculator whose score the fingerprints estimate
+	 * @param bits fingerprint size, 64 or 128
+	 * @param seed seed the hyperplanes are drawn from; fingerprints are
+	 * only comparable if made with the same seed
+	 */
+	public SimHash(CosineSimilarity calculator, int bits, long seed){
+		if(bits != 64 && bits != 128){
+			throw new IllegalArgumentException("Fingerprints are 64 or 128 bits: " + bits);
+		}
+		this.calculator = calculator;
+		this.tokenizer = (calculator.getTokenizer() == null)?
+			CharacterNGramTokenizer.UNIGRAMS : calculator.getTokenizer();
+		this.bits = bits;
+		this.words = bits / 64;
+		this.seeds = new long[words];
+		for(int word = 0; word < words; word++){
+			seeds[word] = mix(seed + (word + 1) * 0x9E3779B97F4A7C15L);
+		}
+	}
+
+	/**
+	 * Get the calculator the fingerprints estimate
+	 * @return exact calculator
+	 */
+	public CosineSimilarity getCalculator(){
+		return calculator;
+	}
+
+	/**
+	 * Get the fingerprint size
+	 * @return 64 or 128
+	 */
+	public int bits(){
+		return bits;
+	}
+
+	/**
+	 * Get the number of longs per fingerprint
+	 * @return 1 or 2
+	 */
+	public int words(){
+		return words;
+	}
+
+	/**
+	 * Fingerprint a string
+	 * @param string string to fingerprint
+	 * @return words() longs
+	 */
+	public long[] fingerprint(String string){
+		long[] fingerprint = new long[words];
+		fingerprint(string, fingerprint, 0);
+		return fingerprint;
+	}
+
+	/**
+	 * Fingerprint a string into part of a larger array, so that many
+	 * fingerprints can share one flat long[]
+	 * @param string string to fingerprint
+	 * @param fingerprints destination array
+	 * @param offset index of the fingerprint's first word
+	 */
+	public void fingerprint(String string, long[] fingerprints, int offset){
+		TokenProfile profile = new TokenProfile(string, tokenizer);
+		int[] tokens = profile.tokens();
+		int[] counts = profile.counts();
+		long[] weights = new long[bits];
+		for(int t = 0; t < tokens.length; t++){
+			int count = counts[t];
+			for(int word = 0; word < words; word++){
+				long hash = mix(tokens[t] ^ seeds[word]);
+				int base = word << 6;
+				for(int bit = 0; bit < 64; bit++){
+					//Bit set: +count, clear: -count
+					weights[base + bit] += ((hash >>> bit) & 1L) == 0? -count : count;
+				}
+			}
+		}
+		for(int word = 0; word < words; word++){
+			long value = 0;
+			int base = word << 6;
+			for(int bit = 0; bit < 64; bit++){
+				if(weights[base + bit] > 0){
+					value |= 1L << bit;
+				}
+			}
+			fingerprints[offset + word] = value;
+		}
+	}
+
+	/**
+	 * Fingerprint many strings on the common fork/join pool
+	 * @param strings strings to fingerprint
+	 * @return fingerprints back to back, words() longs each
+	 */
+	public long[] fingerprints(final List<String> strings){
+		if((long) strings.size() * words > Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException(
+				"Fingerprints exceed the maximum array size: " + strings.size());
+		}
+		final long[] fingerprints = new long[strings.size() * words];
+		ForkJoinPool.commonPool().invoke(new BatchScorer.RangeTask(new BatchScorer.RangeBody(){
+			@Override
+			public void compute(int from, int to){
+				for(int i = from; i < to; i++){
+					fingerprint(strings.get(i), fingerprints, i * words);
+				}
+			}
+		}, 0, strings.size(), FINGERPRINT_THRESHOLD));
+		return fingerprints;
+	}
+
+	/**
+	 * Estimate the Cosine Similarity of two fingerprinted strings
+	 * @param fingerprintOne fingerprint of the first string
+	 * @param fingerprintTwo fingerprint of the second string
+	 * @return cos(pi * hamming distance / bits)
+	 */
+	public double estimate(long[] fingerprintOne, long[] fingerprintTwo){
+		return estimate(distance(fingerprintOne, 0, fingerprintTwo, 0, words), bits);
+	}
+
+	/**
+	 * Turn a Hamming distance into an estimated Cosine Similarity
+	 * @param distance number of differing bits
+	 * @param bits fingerprint size
+	 * @return cos(pi * distance / bits)
+	 */
+	public static double estimate(int distance, int bits){
+		return Math.cos(Math.PI * distance / bits);
+	}
+
+	/**
+	 * Count the bits two fingerprints differ in
+	 * @param fingerprintsOne array holding the first fingerprint
+	 * @param offsetOne index of its first word
+	 * @param fingerprintsTwo array holding the second fingerprint
+	 * @param offsetTwo index of its first word
+	 * @param words longs per fingerprint
+	 * @return Hamming distance
+	 */
+	public static int distance(long[] fingerprintsOne, int offsetOne,
+			long[] fingerprintsTwo, int offsetTwo, int words){
+		int distance = 0;
+		for(int word = 0; word < words; word++){
+			distance += Long.bitCount(
+				fingerprintsOne[offsetOne + word] ^ fingerprintsTwo[offsetTwo + word]);
+		}
+		return distance;
+	}
+
+	/**
+	 * SplitMix64 finalizer
+	 */
+	private static long mix(long value){
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+}
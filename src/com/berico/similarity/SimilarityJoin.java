@@ -0,0 +1,485 @@
+package com.berico.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Joins two newline-delimited UTF-8 files, emitting every (left line,
+ * right line) pair that scores at least a threshold, as it is found.
+ * Neither file is loaded onto the heap: both are read through a
+ * MappedLineFile.
+ *
+ * The join is a block nested loop.  Lines of the left file are prepared
+ * a block at a time; for every block, the chunks of the right file are
+ * streamed in parallel and each right line is scored against the whole
+ * block.  With an IBoundedSimilarityCalculator, right lines too short
+ * (in UTF-8 bytes) to have any bound key that could reach the threshold
+ * are skipped without being decoded, and the remaining pairs are
+ * bound-checked before they are scored.
+ *
+ * Output is either TSV ("left line number TAB right line number TAB
+ * score" per pair), binary (big-endian long, long, double per pair) or
+ * a ResultStore.  Line numbers are zero-based.
+ *
+ * Pairs are buffered per task and handed to IBatchPairWriters a batch
+ * at a time, so the workers do not contend for the writer on every pair.
+ *
+ * Writers that are IResumablePairWriters are told after every block of
+ * left lines that the block is finished, and a join with such a writer
+ * starts at the left line it reports as durable, so a job that dies can
+ * be rerun to pick up where it left off.
+ *
+ * With an instrumented calculator, each join is recorded as one search:
+ * the pairs scored are its comparisons, and the pairs skipped by the
+ * byte-length filter or the bound check are pruned.
+ * @author Richard C (Berico Technologies)
+ */
+public class SimilarityJoin {
+
+	//Default number of left lines prepared at once
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	//Pairs a task buffers before handing them to a batch writer
+	private static final int BATCH_SIZE = 1024;
+
+	private final ISimilarityCalculator calculator;
+	private final IBoundedSimilarityCalculator bounded;
+	private final double threshold;
+	private final int blockSize;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param calculator calculator used to score pairs
+	 * @param threshold minimum score of an emitted pair
+	 */
+	public SimilarityJoin(ISimilarityCalculator calculator, double threshold){
+		this(calculator, threshold, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param calculator calculator used to score pairs
+	 * @param threshold minimum score of an emitted pair
+	 * @param blockSize number of left lines scored per pass over the right file
+	 * @param pool pool the right file's chunks are scored on
+	 */
+	public SimilarityJoin(ISimilarityCalculator calculator, double threshold,
+			int blockSize, ForkJoinPool pool){
+		this.calculator = calculator;
+		this.bounded = (calculator instanceof IBoundedSimilarityCalculator)?
+			(IBoundedSimilarityCalculator) calculator : null;
+		this.threshold = threshold;
+		this.blockSize = blockSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Receives the pairs a join finds.  Called from many threads at once.
+	 */
+	public interface IPairWriter extends Closeable {
+		void write(long leftLine, long rightLine, double score) throws IOException;
+	}
+
+	/**
+	 * A pair writer that takes pairs a batch at a time
+	 */
+	public interface IBatchPairWriter extends IPairWriter {
+
+		/**
+		 * Write the first count pairs of the arrays
+		 * @param leftLines left line of each pair
+		 * @param rightLines right line of each pair
+		 * @param scores score of each pair
+		 * @param count number of pairs
+		 * @throws IOException if the pairs can't be written
+		 */
+		void write(long[] leftLines, long[] rightLines, double[] scores, int count)
+			throws IOException;
+	}
+
+	/**
+	 * A pair writer that can make a join's progress durable
+	 */
+	public interface IResumablePairWriter extends IPairWriter {
+
+		/**
+		 * Get the left line a join should start at
+		 * @return first left line whose pairs are not all durable
+		 */
+		long resumeLine();
+
+		/**
+		 * Note that every pair of the left lines before nextLeftLine has
+		 * been written.  Called between blocks, never concurrently with
+		 * write.  The writer decides when to make them durable.
+		 * @param nextLeftLine first left line whose pairs are not all written
+		 * @throws IOException if the writer fails
+		 */
+		void checkpoint(long nextLeftLine) throws IOException;
+
+		/**
+		 * Make every pair written durable: the join is complete
+		 * @param leftLines number of left lines
+		 * @throws IOException if the pairs can't be made durable
+		 */
+		void finish(long leftLines) throws IOException;
+	}
+
+	/**
+	 * Join two files
+	 * @param left file whose lines are prepared a block at a time
+	 * @param right file streamed once per block
+	 * @param writer receives every qualifying pair
+	 * @throws IOException if either file can't be read or the writer fails
+	 */
+	public void join(MappedLineFile left, MappedLineFile right, IPairWriter writer)
+			throws IOException {
+		IResumablePairWriter resumable = (writer instanceof IResumablePairWriter)?
+			(IResumablePairWriter) writer : null;
+		long resumeLine = (resumable == null)? 0 : resumable.resumeLine();
+		Counts counts = new Counts();
+		String[] strings = new String[blockSize];
+		IProfile[] profiles = new IProfile[blockSize];
+		long[] lines = new long[blockSize];
+		int count = 0;
+		for(int chunk = 0; chunk < left.chunks(); chunk++){
+			//Skip chunks already done without mapping them
+			if(chunk + 1 < left.chunks() && left.firstLine(chunk + 1) <= resumeLine){
+				continue;
+			}
+			MappedLineFile.Cursor cursor = left.cursor(chunk);
+			while(cursor.next()){
+				if(cursor.line() < resumeLine){
+					continue;
+				}
+				strings[count] = cursor.string();
+				lines[count++] = cursor.line();
+				if(count == blockSize){
+					joinBlock(strings, profiles, lines, count, right, writer, counts);
+					count = 0;
+					if(resumable != null){
+						resumable.checkpoint(cursor.line() + 1);
+					}
+				}
+			}
+		}
+		if(count > 0){
+			joinBlock(strings, profiles, lines, count, right, writer, counts);
+		}
+		if(resumable != null){
+			resumable.finish(Math.max(resumeLine, left.lines()));
+		}
+		SimilarityMetrics metrics = SimilarityMetrics.of(calculator);
+		if(metrics != null){
+			//Every right line is visited for every block: nothing stops early
+			metrics.recordSearch(counts.comparisons.sum(), counts.pruned.sum(), false);
+		}
+	}
+
+	/**
+	 * Score one block of left lines against the whole right file
+	 */
+	private void joinBlock(String[] strings, IProfile[] profiles, long[] lines,
+			int count, MappedLineFile right, IPairWriter writer, Counts counts)
+			throws IOException {
+		//The smallest bound key any right line needs to be worth scoring
+		//against something in the block
+		int minimumKey = Integer.MAX_VALUE;
+		for(int i = 0; i < count; i++){
+			profiles[i] = calculator.prepare(strings[i]);
+			if(bounded != null){
+				minimumKey = Math.min(minimumKey, minimumKey(profiles[i]));
+			}
+		}
+		if(bounded == null){
+			minimumKey = 0;
+		}
+		try {
+			pool.invoke(new ChunkTask(
+				profiles, lines, count, minimumKey, right, writer, counts, 0, right.chunks()));
+		} catch(UncheckedIOException e){
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Find the smallest bound key at which a reference could reach the
+	 * threshold against a query, walking down from the query's own key
+	 * (where the bound peaks)
+	 */
+	private int minimumKey(IProfile query){
+		int key = bounded.boundKey(query);
+		if(bounded.upperBound(query, key) < threshold){
+			return Integer.MAX_VALUE;
+		}
+		while(key > 0 && bounded.upperBound(query, key - 1) >= threshold){
+			key--;
+		}
+		return key;
+	}
+
+	/**
+	 * Pairs a join has scored and skipped
+	 */
+	private static final class Counts {
+		final LongAdder comparisons = new LongAdder();
+		final LongAdder pruned = new LongAdder();
+	}
+
+	/**
+	 * Scores a range of the right file's chunks against a block,
+	 * splitting down to a single chunk per task
+	 */
+	private final class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IProfile[] profiles;
+		private final long[] lines;
+		private final int count, minimumKey;
+		private final MappedLineFile right;
+		private final IPairWriter writer;
+		private final Counts counts;
+		private final int fromChunk, toChunk;
+
+		ChunkTask(IProfile[] profiles, long[] lines, int count, int minimumKey,
+				MappedLineFile right, IPairWriter writer, Counts counts,
+				int fromChunk, int toChunk){
+			this.profiles = profiles;
+			this.lines = lines;
+			this.count = count;
+			this.minimumKey = minimumKey;
+			this.right = right;
+			this.writer = writer;
+			this.counts = counts;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected void compute(){
+			if(toChunk - fromChunk > 1){
+				int middle = (fromChunk + toChunk) >>> 1;
+				invokeAll(
+					new ChunkTask(profiles, lines, count, minimumKey, right, writer, counts,
+						fromChunk, middle),
+					new ChunkTask(profiles, lines, count, minimumKey, right, writer, counts,
+						middle, toChunk));
+				return;
+			}
+			if(toChunk == fromChunk){
+				return;
+			}
+			try {
+				scoreChunk(right.cursor(fromChunk));
+			} catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void scoreChunk(MappedLineFile.Cursor cursor) throws IOException {
+			long comparisons = 0, pruned = 0;
+			IBatchPairWriter batchWriter = (writer instanceof IBatchPairWriter)?
+				(IBatchPairWriter) writer : null;
+			long[] leftLines = null, rightLines = null;
+			double[] scores = null;
+			int batched = 0;
+			if(batchWriter != null){
+				leftLines = new long[BATCH_SIZE];
+				rightLines = new long[BATCH_SIZE];
+				scores = new double[BATCH_SIZE];
+			}
+			while(cursor.next()){
+				//A string has no more chars than UTF-8 bytes, so its bound
+				//key is at most maximumKey(bytes): skip without decoding
+				if(bounded != null && bounded.maximumKey(cursor.byteLength()) < minimumKey){
+					pruned += count;
+					continue;
+				}
+				IProfile profile = calculator.prepare(cursor.string());
+				int key = (bounded == null)? 0 : bounded.boundKey(profile);
+				for(int i = 0; i < count; i++){
+					if(bounded != null && bounded.upperBound(profiles[i], key) < threshold){
+						pruned++;
+						continue;
+					}
+					comparisons++;
+					double score = calculator.calculate(profiles[i], profile);
+					if(score < threshold){
+						continue;
+					}
+					if(batchWriter == null){
+						writer.write(lines[i], cursor.line(), score);
+						continue;
+					}
+					leftLines[batched] = lines[i];
+					rightLines[batched] = cursor.line();
+					scores[batched++] = score;
+					if(batched == BATCH_SIZE){
+						batchWriter.write(leftLines, rightLines, scores, batched);
+						batched = 0;
+					}
+				}
+			}
+			if(batched > 0){
+				batchWriter.write(leftLines, rightLines, scores, batched);
+			}
+			counts.comparisons.add(comparisons);
+			counts.pruned.add(pruned);
+		}
+	}
+
+	/**
+	 * Writes pairs as "left TAB right TAB score" lines
+	 */
+	public static class TsvPairWriter implements IBatchPairWriter {
+
+		private final OutputStream output;
+
+		public TsvPairWriter(OutputStream output){
+			this.output = new BufferedOutputStream(output, 1 << 16);
+		}
+
+		@Override
+		public synchronized void write(long leftLine, long rightLine, double score)
+				throws IOException {
+			output.write((leftLine + "\t" + rightLine + "\t" + score + "\n")
+				.getBytes(StandardCharsets.US_ASCII));
+		}
+
+		@Override
+		public synchronized void write(long[] leftLines, long[] rightLines, double[] scores,
+				int count) throws IOException {
+			for(int i = 0; i < count; i++){
+				write(leftLines[i], rightLines[i], scores[i]);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			output.close();
+		}
+	}
+
+	/**
+	 * Writes pairs as 24 byte records: left line (long), right line
+	 * (long), score (double), all big-endian
+	 */
+	public static class BinaryPairWriter implements IBatchPairWriter {
+
+		private final DataOutputStream output;
+
+		public BinaryPairWriter(OutputStream output){
+			this.output = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+		}
+
+		@Override
+		public synchronized void write(long leftLine, long rightLine, double score)
+				throws IOException {
+			output.writeLong(leftLine);
+			output.writeLong(rightLine);
+			output.writeDouble(score);
+		}
+
+		@Override
+		public synchronized void write(long[] leftLines, long[] rightLines, double[] scores,
+				int count) throws IOException {
+			for(int i = 0; i < count; i++){
+				write(leftLines[i], rightLines[i], scores[i]);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			output.close();
+		}
+	}
+
+	/**
+	 * Get a calculator by name
+	 * @param name cosine, jaccard, sorensen, jarowinkler, levenshtein or osa
+	 * @return a new calculator
+	 */
+	public static ISimilarityCalculator calculator(String name){
+		if("cosine".equals(name)){
+			return new CosineSimilarity();
+		} else if("jaccard".equals(name)){
+			return new JaccardSimilarity();
+		} else if("sorensen".equals(name)){
+			return new SorensenSimilarity();
+		} else if("jarowinkler".equals(name)){
+			return new JaroWinklerSimilarity();
+		} else if("levenshtein".equals(name)){
+			return new LevenshteinSimilarity();
+		} else if("osa".equals(name)){
+			return new OptimalStringAlignmentSimilarity();
+		}
+		throw new IllegalArgumentException("Unknown calculator: " + name);
+	}
+
+	/**
+	 * Usage: SimilarityJoin calculator threshold left right output [-binary | -store]
+	 * [-bits 8|16] [-block n]
+	 * @param args see usage
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 5){
+			System.err.println(
+				"Usage: SimilarityJoin <cosine|jaccard|sorensen|jarowinkler|levenshtein|osa> "
+				+ "<threshold> <left file> <right file> <output file or store directory> "
+				+ "[-binary | -store] [-bits 8|16] [-block n]");
+			System.exit(2);
+		}
+		boolean binary = false, store = false;
+		int scoreBits = 16;
+		int blockSize = DEFAULT_BLOCK_SIZE;
+		for(int i = 5; i < args.length; i++){
+			if("-binary".equals(args[i])){
+				binary = true;
+			} else if("-store".equals(args[i])){
+				store = true;
+			} else if("-bits".equals(args[i])){
+				scoreBits = Integer.parseInt(args[++i]);
+			} else if("-block".equals(args[i])){
+				blockSize = Integer.parseInt(args[++i]);
+			}
+		}
+		double threshold = Double.parseDouble(args[1]);
+		SimilarityJoin join = new SimilarityJoin(
+			calculator(args[0]), threshold, blockSize, ForkJoinPool.commonPool());
+		//Map the inputs before creating the output, and close whatever
+		//was opened should a later step fail
+		MappedLineFile left = new MappedLineFile(Paths.get(args[2]));
+		try {
+			MappedLineFile right = new MappedLineFile(Paths.get(args[3]));
+			try {
+				IPairWriter writer;
+				if(store){
+					//Resumes from the store's last checkpoint, if any
+					writer = ResultStore.writer(Paths.get(args[4]), scoreBits, threshold);
+				} else {
+					FileOutputStream output = new FileOutputStream(args[4]);
+					writer = binary? new BinaryPairWriter(output) : new TsvPairWriter(output);
+				}
+				try {
+					join.join(left, right, writer);
+				} finally {
+					writer.close();
+				}
+			} finally {
+				right.close();
+			}
+		} finally {
+			left.close();
+		}
+	}
+}
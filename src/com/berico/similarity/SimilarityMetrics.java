@@ -0,0 +1,421 @@
+package com.berico.similarity;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and distributions describing what a calculator is doing:
+ * call counts, latencies, input lengths and scores of individual calls,
+ * and how much work searches avoid by pruning.  Filled in by an
+ * InstrumentedSimilarityCalculator (and the searches using one) and
+ * exposed over JMX as a SimilarityMetricsMXBean.
+ *
+ * Call counts are exact.  Latency, length and score are only recorded
+ * for one call in sampleEvery, chosen at random, to keep the cost of
+ * timing off most calls.  Lengths of prepared strings are kept apart
+ * from the lengths of calculate's inputs, which they would otherwise
+ * skew (a search prepares its references once and compares them often).
+ *
+ * Every search records how many references it compared and pruned, and
+ * whether it stopped early: whether its bound told it that nothing left
+ * could qualify and it quit the walk there.  A search can prune without
+ * stopping early (a filter that skips candidates one by one) or stop
+ * early having pruned next to nothing.
+ * @author Richard C (Berico Technologies)
+ */
+public class SimilarityMetrics implements SimilarityMetricsMXBean {
+
+	//Default sampling rate: one call in this many is timed
+	public static final int DEFAULT_SAMPLE_EVERY = 16;
+
+	//JMX domain metrics are registered under
+	public static final String DOMAIN = "com.berico.similarity";
+
+	//Scores are bucketed to the nearest 1/SCORE_BUCKETS
+	private static final int SCORE_BUCKETS = 1000;
+
+	private final int sampleEvery;
+	private final int sampleMask;
+
+	private final LongAdder calculateCalls = new LongAdder();
+	private final LongAdder prepareCalls = new LongAdder();
+	private final LongAdder sampledCalls = new LongAdder();
+	private final LogHistogram latencies = new LogHistogram();
+	private final LogHistogram inputLengths = new LogHistogram();
+	private final LogHistogram prepareLengths = new LogHistogram();
+
+	//Scores in [0, 1], bucketed linearly; NaN scores are not recorded
+	private final LongAdder[] scores = new LongAdder[SCORE_BUCKETS + 1];
+	private final LongAdder scoreCount = new LongAdder();
+	private final DoubleAdder scoreSum = new DoubleAdder();
+
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder earlyExits = new LongAdder();
+	private final LongAdder comparisons = new LongAdder();
+	private final LongAdder pruned = new LongAdder();
+
+	private volatile ObjectName objectName;
+
+	/**
+	 * Sample one call in DEFAULT_SAMPLE_EVERY
+	 */
+	public SimilarityMetrics(){
+		this(DEFAULT_SAMPLE_EVERY);
+	}
+
+	/**
+	 * @param sampleEvery record details for one call in this many (a
+	 * power of two; 1 records every call)
+	 */
+	public SimilarityMetrics(int sampleEvery){
+		if(sampleEvery < 1 || Integer.bitCount(sampleEvery) != 1){
+			throw new IllegalArgumentException(
+				"Sampling rate must be a power of two: " + sampleEvery);
+		}
+		this.sampleEvery = sampleEvery;
+		this.sampleMask = sampleEvery - 1;
+		for(int i = 0; i < scores.length; i++){
+			scores[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Register these metrics with the platform MBean server as
+	 * com.berico.similarity:type=SimilarityMetrics,name=(name)
+	 * @param name name distinguishing these metrics from others
+	 * @return the name they were registered under
+	 * @throws JMException if the name is taken or invalid
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName(
+			DOMAIN + ":type=SimilarityMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Remove these metrics from the platform MBean server, if registered
+	 * @throws JMException if they could not be removed
+	 */
+	public void unregister() throws JMException {
+		ObjectName objectName = this.objectName;
+		if(objectName != null){
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(objectName)){
+				server.unregisterMBean(objectName);
+			}
+			this.objectName = null;
+		}
+	}
+
+	/**
+	 * Decide whether the current call should be recorded in detail
+	 * @return true for about one call in sampleEvery
+	 */
+	boolean sample(){
+		return sampleMask == 0 || (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+	}
+
+	/**
+	 * Count a call to calculate, and record its details if sampled
+	 * @param latencyNanos duration, or -1 if the call was not sampled
+	 * @param lengthOne length of the first input
+	 * @param lengthTwo length of the second input
+	 * @param score result of the call
+	 */
+	void recordCalculate(long latencyNanos, int lengthOne, int lengthTwo, double score){
+		calculateCalls.increment();
+		if(latencyNanos < 0){
+			return;
+		}
+		sampledCalls.increment();
+		latencies.record(latencyNanos);
+		inputLengths.record(lengthOne);
+		inputLengths.record(lengthTwo);
+		if(score == score){
+			int bucket = (int) Math.round(Math.max(0d, Math.min(1d, score)) * SCORE_BUCKETS);
+			scores[bucket].increment();
+			scoreCount.increment();
+			scoreSum.add(score);
+		}
+	}
+
+	/**
+	 * Count a call to prepare
+	 * @param length length of the prepared string, or -1 if not sampled
+	 */
+	void recordPrepare(int length){
+		prepareCalls.increment();
+		if(length >= 0){
+			prepareLengths.record(length);
+		}
+	}
+
+	/**
+	 * Record how much of the reference set a search compared and pruned
+	 * @param comparisons number of references (or pairs) scored
+	 * @param pruned number skipped without being scored
+	 * @param stoppedEarly whether the search quit its walk on a bound,
+	 * leaving references it never looked at
+	 */
+	public void recordSearch(long comparisons, long pruned, boolean stoppedEarly){
+		searches.increment();
+		this.comparisons.add(comparisons);
+		this.pruned.add(pruned);
+		if(stoppedEarly){
+			earlyExits.increment();
+		}
+	}
+
+	/**
+	 * Record a search's statistics
+	 * @param results results of the search
+	 * @param stoppedEarly whether the search quit its walk on a bound
+	 */
+	public void recordSearch(SearchResults results, boolean stoppedEarly){
+		recordSearch(results.comparisons, results.pruned, stoppedEarly);
+	}
+
+	/**
+	 * Get the metrics a calculator records into
+	 * @param calculator calculator
+	 * @return its metrics if it is instrumented, otherwise null
+	 */
+	static SimilarityMetrics of(ISimilarityCalculator calculator){
+		return (calculator instanceof InstrumentedSimilarityCalculator)?
+			((InstrumentedSimilarityCalculator) calculator).getMetrics() : null;
+	}
+
+	/**
+	 * Record a search's statistics if its calculator is instrumented
+	 * @param calculator calculator the search scored with
+	 * @param results results of the search
+	 * @param stoppedEarly whether the search quit its walk on a bound
+	 * @return the results
+	 */
+	static SearchResults recordSearch(ISimilarityCalculator calculator, SearchResults results,
+			boolean stoppedEarly){
+		SimilarityMetrics metrics = of(calculator);
+		if(metrics != null){
+			metrics.recordSearch(results, stoppedEarly);
+		}
+		return results;
+	}
+
+	/**
+	 * Get the latency histogram (nanoseconds, sampled calls)
+	 * @return latencies
+	 */
+	public LogHistogram getLatencies(){
+		return latencies;
+	}
+
+	/**
+	 * Get the input length histogram (characters, sampled calls)
+	 * @return input lengths
+	 */
+	public LogHistogram getInputLengths(){
+		return inputLengths;
+	}
+
+	/**
+	 * Get the prepared string length histogram (characters, sampled calls)
+	 * @return prepared lengths
+	 */
+	public LogHistogram getPrepareLengths(){
+		return prepareLengths;
+	}
+
+	@Override
+	public long getCalculateCalls(){
+		return calculateCalls.sum();
+	}
+
+	@Override
+	public long getPrepareCalls(){
+		return prepareCalls.sum();
+	}
+
+	@Override
+	public int getSampleEvery(){
+		return sampleEvery;
+	}
+
+	@Override
+	public long getSampledCalls(){
+		return sampledCalls.sum();
+	}
+
+	@Override
+	public double getMeanLatencyNanos(){
+		return latencies.mean();
+	}
+
+	@Override
+	public long getLatencyP50Nanos(){
+		return latencies.percentile(50);
+	}
+
+	@Override
+	public long getLatencyP99Nanos(){
+		return latencies.percentile(99);
+	}
+
+	@Override
+	public long getLatencyP999Nanos(){
+		return latencies.percentile(99.9);
+	}
+
+	@Override
+	public long getMaxLatencyNanos(){
+		return latencies.max();
+	}
+
+	@Override
+	public double getMeanInputLength(){
+		return inputLengths.mean();
+	}
+
+	@Override
+	public long getInputLengthP50(){
+		return inputLengths.percentile(50);
+	}
+
+	@Override
+	public long getInputLengthP99(){
+		return inputLengths.percentile(99);
+	}
+
+	@Override
+	public long getMaxInputLength(){
+		return inputLengths.max();
+	}
+
+	@Override
+	public double getMeanPrepareLength(){
+		return prepareLengths.mean();
+	}
+
+	@Override
+	public long getPrepareLengthP50(){
+		return prepareLengths.percentile(50);
+	}
+
+	@Override
+	public long getPrepareLengthP99(){
+		return prepareLengths.percentile(99);
+	}
+
+	@Override
+	public long getMaxPrepareLength(){
+		return prepareLengths.max();
+	}
+
+	@Override
+	public double getMeanScore(){
+		long count = scoreCount.sum();
+		return (count == 0)? 0d : scoreSum.sum() / count;
+	}
+
+	@Override
+	public double getScoreP10(){
+		return scorePercentile(10);
+	}
+
+	@Override
+	public double getScoreP50(){
+		return scorePercentile(50);
+	}
+
+	@Override
+	public double getScoreP90(){
+		return scorePercentile(90);
+	}
+
+	@Override
+	public double getScoreP99(){
+		return scorePercentile(99);
+	}
+
+	@Override
+	public long getSearches(){
+		return searches.sum();
+	}
+
+	@Override
+	public long getSearchComparisons(){
+		return comparisons.sum();
+	}
+
+	@Override
+	public long getSearchPruned(){
+		return pruned.sum();
+	}
+
+	/**
+	 * Get the fraction of references searches skipped without scoring
+	 * @return pruned / (compared + pruned), or 0 before any search
+	 */
+	@Override
+	public double getPruneRate(){
+		long pruned = this.pruned.sum();
+		long total = comparisons.sum() + pruned;
+		return (total == 0)? 0d : (double) pruned / total;
+	}
+
+	/**
+	 * Get the fraction of searches that quit their walk on a bound,
+	 * leaving references they never looked at
+	 * @return early exits / searches, or 0 before any search
+	 */
+	@Override
+	public double getEarlyExitRate(){
+		long searches = this.searches.sum();
+		return (searches == 0)? 0d : (double) earlyExits.sum() / searches;
+	}
+
+	@Override
+	public void reset(){
+		calculateCalls.reset();
+		prepareCalls.reset();
+		sampledCalls.reset();
+		latencies.reset();
+		inputLengths.reset();
+		prepareLengths.reset();
+		for(LongAdder bucket : scores){
+			bucket.reset();
+		}
+		scoreCount.reset();
+		scoreSum.reset();
+		searches.reset();
+		earlyExits.reset();
+		comparisons.reset();
+		pruned.reset();
+	}
+
+	/**
+	 * Get a percentile of the sampled scores, to the nearest bucket
+	 */
+	private double scorePercentile(double percentile){
+		long total = scoreCount.sum();
+		if(total == 0){
+			return 0d;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+		long seen = 0;
+		for(int i = 0; i < scores.length; i++){
+			seen += scores[i].sum();
+			if(seen >= rank){
+				return (double) i / SCORE_BUCKETS;
+			}
+		}
+		return 1d;
+	}
+}
@@ -0,0 +1,66 @@
+package com.berico.similarity;
+
+/**
+ * JMX view of a SimilarityMetrics.  Latencies are in nanoseconds and
+ * lengths in characters; both, and scores, come from sampled calls.
+ * @author Richard C (Berico Technologies)
+ */
+public interface SimilarityMetricsMXBean {
+
+	long getCalculateCalls();
+
+	long getPrepareCalls();
+
+	int getSampleEvery();
+
+	long getSampledCalls();
+
+	double getMeanLatencyNanos();
+
+	long getLatencyP50Nanos();
+
+	long getLatencyP99Nanos();
+
+	long getLatencyP999Nanos();
+
+	long getMaxLatencyNanos();
+
+	double getMeanInputLength();
+
+	long getInputLengthP50();
+
+	long getInputLengthP99();
+
+	long getMaxInputLength();
+
+	double getMeanPrepareLength();
+
+	long getPrepareLengthP50();
+
+	long getPrepareLengthP99();
+
+	long getMaxPrepareLength();
+
+	double getMeanScore();
+
+	double getScoreP10();
+
+	double getScoreP50();
+
+	double getScoreP90();
+
+	double getScoreP99();
+
+	long getSearches();
+
+	long getSearchComparisons();
+
+	long getSearchPruned();
+
+	double getPruneRate();
+
+	double getEarlyExitRate();
+
+	void reset();
+
+}
@@ -0,0 +1,109 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Tokenizes a string into its character k-skip-n-grams: every
+ * subsequence of n characters, in order, that starts anywhere in the
+ * string and skips at most k characters in total between its first and
+ * last character.  With k = 0 these are plain n-grams.  Skip-grams are
+ * more forgiving than n-grams of insertions and deletions, since a gram
+ * can step over the extra character.
+ *
+ * A gram's id depends only on the characters taken, not on how many
+ * were skipped, so "ab" taken from "ab" and from "axb" are the same token.
+ * @author Richard C (Berico Technologies)
+ */
+public class SkipGramTokenizer implements ITokenizer {
+
+	private final int n;
+	private final int maxSkip;
+
+	//Number of ways to place at most maxSkip skips in the n - 1 gaps
+	private final int placements;
+
+	/**
+	 * @param n number of characters per gram
+	 * @param maxSkip most characters skipped within one gram
+	 */
+	public SkipGramTokenizer(int n, int maxSkip){
+		if(n < 1 || maxSkip < 0){
+			throw new IllegalArgumentException(
+				"Need n >= 1 and maxSkip >= 0: n = " + n + ", maxSkip = " + maxSkip);
+		}
+		this.n = n;
+		this.maxSkip = maxSkip;
+		//C(n - 1 + maxSkip, n - 1)
+		long placements = 1;
+		for(int i = 1; i <= n - 1; i++){
+			placements = placements * (maxSkip + i) / i;
+			if(placements > Integer.MAX_VALUE){
+				throw new IllegalArgumentException(
+					"Too many skip-grams per position: n = " + n + ", maxSkip = " + maxSkip);
+			}
+		}
+		this.placements = (int) placements;
+	}
+
+	/**
+	 * Get the number of characters per gram
+	 * @return n
+	 */
+	public int getN(){
+		return n;
+	}
+
+	/**
+	 * Get the most characters skipped within one gram
+	 * @return k
+	 */
+	public int getMaxSkip(){
+		return maxSkip;
+	}
+
+	@Override
+	public int[] tokenize(String string){
+		int[] tokens = new int[maximumTokens(string.length())];
+		int count = 0;
+		for(int start = 0; start + n <= string.length(); start++){
+			count = emit(string, start + 1, 1,
+				TokenHash.add(TokenHash.START, string.charAt(start)), maxSkip, tokens, count);
+		}
+		return (count == tokens.length)? tokens : Arrays.copyOf(tokens, count);
+	}
+
+	/**
+	 * Extend a partial gram with each character it may take next
+	 * @param string source string
+	 * @param position earliest position of the next character
+	 * @param taken number of characters in the gram so far
+	 * @param hash running hash of the gram so far
+	 * @param skipsLeft characters that may still be skipped
+	 * @param tokens output
+	 * @param count tokens written so far
+	 * @return tokens written after this gram's completions
+	 */
+	private int emit(String string, int position, int taken, int hash, int skipsLeft,
+			int[] tokens, int count){
+		if(taken == n){
+			tokens[count++] = TokenHash.finish(hash);
+			return count;
+		}
+		for(int skip = 0; skip <= skipsLeft; skip++){
+			int next = position + skip;
+			//Leave room for the characters still to be taken
+			if(next + (n - taken - 1) >= string.length()){
+				break;
+			}
+			count = emit(string, next + 1, taken + 1,
+				TokenHash.add(hash, string.charAt(next)), skipsLeft - skip, tokens, count);
+		}
+		return count;
+	}
+
+	@Override
+	public int maximumTokens(int length){
+		long maximum = (long) Math.max(0, length - n + 1) * placements;
+		return (int) Math.min(maximum, Integer.MAX_VALUE - 8);
+	}
+}
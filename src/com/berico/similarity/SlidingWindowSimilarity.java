@@ -0,0 +1,300 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scores a sliding window over a stream of characters against a fixed set
+ * of target strings.  Rather than rescoring the window from scratch, the
+ * window's character histogram is kept along with, for every target, the
+ * running sums each metric is built from (dot product and squared norm
+ * for CosineSimilarity, intersection and unique character counts for
+ * JaccardSimilarity and SorensenSimilarity).  Sliding the window by one
+ * character touches only the targets containing the characters that
+ * entered and left it, and any target's score can be read in O(1).
+ *
+ * Scores are identical to calling the calculator on the window's text
+ * and the target.
+ *
+ * The window histogram and the character lookup table are dense over all
+ * 65536 char values (about 512KB per instance), which is what makes every
+ * update constant time.  Instances are not thread-safe.
+ * @author Richard C (Berico Technologies)
+ */
+public class SlidingWindowSimilarity {
+
+	//Number of distinct char values
+	private static final int ALPHABET = Character.MAX_VALUE + 1;
+
+	//Which metric the running sums are combined into
+	private static final int COSINE = 0, JACCARD = 1, SORENSEN = 2;
+
+	private final int metric;
+	private final int targetCount;
+
+	//Ring buffer holding the window's characters
+	private final char[] window;
+	private int head = 0;
+	private int length = 0;
+
+	//Occurrences of each character in the window, and the number of
+	//distinct characters / sum of squared counts that follow from it
+	private final int[] windowCounts = new int[ALPHABET];
+	private int windowUnique = 0;
+	private long windowSquaredNorm = 0;
+
+	//For every character appearing in some target, slot + 1 (0 if none)
+	private final int[] slots = new int[ALPHABET];
+
+	//Postings per slot: the targets containing the character and how
+	//often, stored from postingStarts[slot] to postingStarts[slot + 1]
+	private final int[] postingStarts;
+	private final int[] postingTargets;
+	private final int[] postingCounts;
+
+	//Fixed statistics of every target
+	private final int[] targetLengths;
+	private final int[] targetUnique;
+	private final long[] targetSquaredNorms;
+
+	//Running sums for every target against the current window
+	private final long[] dotProducts;
+	private final int[] intersections;
+
+	/**
+	 * @param calculator a CosineSimilarity, JaccardSimilarity or
+	 * SorensenSimilarity without a tokenizer, naming the metric to keep
+	 * up to date
+	 * @param windowSize number of most recent characters scored
+	 * @param targets strings the window is scored against
+	 */
+	public SlidingWindowSimilarity(ISimilarityCalculator calculator, int windowSize,
+			List<String> targets){
+		ITokenizer tokenizer;
+		if(calculator instanceof CosineSimilarity){
+			this.metric = COSINE;
+			tokenizer = ((CosineSimilarity) calculator).getTokenizer();
+		} else if(calculator instanceof JaccardSimilarity){
+			this.metric = JACCARD;
+			tokenizer = ((JaccardSimilarity) calculator).getTokenizer();
+		} else if(calculator instanceof SorensenSimilarity){
+			this.metric = SORENSEN;
+			tokenizer = ((SorensenSimilarity) calculator).getTokenizer();
+		} else {
+			throw new IllegalArgumentException(
+				"Incremental scoring is only defined for the Cosine, Jaccard and Sorensen calculators: "
+				+ calculator.getClass().getSimpleName());
+		}
+		if(tokenizer != null){
+			throw new IllegalArgumentException(
+				"Incremental scoring is only defined for calculators comparing characters.");
+		}
+		if(windowSize <= 0){
+			throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+		}
+		this.window = new char[windowSize];
+		this.targetCount = targets.size();
+		this.targetLengths = new int[targetCount];
+		this.targetUnique = new int[targetCount];
+		this.targetSquaredNorms = new long[targetCount];
+		this.dotProducts = new long[targetCount];
+		this.intersections = new int[targetCount];
+
+		//Histogram each target (sorted chars, counted as runs), assigning
+		//slots to characters as they are first seen and counting postings
+		char[][] sorted = new char[targetCount][];
+		int slotCount = 0;
+		int postingCount = 0;
+		for(int t = 0; t < targetCount; t++){
+			char[] characters = targets.get(t).toCharArray();
+			Arrays.sort(characters);
+			sorted[t] = characters;
+			targetLengths[t] = characters.length;
+			for(int i = 0; i < characters.length; ){
+				int start = i;
+				while(i < characters.length && characters[i] == characters[start]){ i++; }
+				long count = i - start;
+				targetSquaredNorms[t] += count * count;
+				targetUnique[t]++;
+				postingCount++;
+				if(slots[characters[start]] == 0){
+					slots[characters[start]] = ++slotCount;
+				}
+			}
+		}
+
+		//Lay the postings out slot by slot
+		this.postingStarts = new int[slotCount + 1];
+		for(int t = 0; t < targetCount; t++){
+			char[] characters = sorted[t];
+			for(int i = 0; i < characters.length; ){
+				int start = i;
+				while(i < characters.length && characters[i] == characters[start]){ i++; }
+				postingStarts[slots[characters[start]]]++;
+			}
+		}
+		for(int slot = 1; slot <= slotCount; slot++){
+			postingStarts[slot] += postingStarts[slot - 1];
+		}
+		this.postingTargets = new int[postingCount];
+		this.postingCounts = new int[postingCount];
+		int[] cursor = Arrays.copyOf(postingStarts, slotCount);
+		for(int t = 0; t < targetCount; t++){
+			char[] characters = sorted[t];
+			for(int i = 0; i < characters.length; ){
+				int start = i;
+				while(i < characters.length && characters[i] == characters[start]){ i++; }
+				int position = cursor[slots[characters[start]] - 1]++;
+				postingTargets[position] = t;
+				postingCounts[position] = i - start;
+			}
+		}
+	}
+
+	/**
+	 * Slide one character into the window, dropping the oldest character
+	 * once the window is full
+	 * @param c next character of the stream
+	 */
+	public void push(char c){
+		if(length == window.length){
+			remove(window[head]);
+		} else {
+			length++;
+		}
+		window[head] = c;
+		head = (head + 1 == window.length)? 0 : head + 1;
+		add(c);
+	}
+
+	/**
+	 * Slide every character of some text into the window, in order
+	 * @param text next characters of the stream
+	 */
+	public void push(CharSequence text){
+		for(int i = 0; i < text.length(); i++){
+			push(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Empty the window
+	 */
+	public void clear(){
+		while(length > 0){
+			int tail = head - length;
+			remove(window[(tail < 0)? tail + window.length : tail]);
+			length--;
+		}
+		head = 0;
+	}
+
+	/**
+	 * Get the number of characters currently in the window
+	 * @return window length, at most the window size
+	 */
+	public int length(){
+		return length;
+	}
+
+	/**
+	 * Get the number of targets
+	 * @return number of targets
+	 */
+	public int targets(){
+		return targetCount;
+	}
+
+	/**
+	 * Get the current contents of the window, oldest character first
+	 * @return the window's text
+	 */
+	public String window(){
+		int tail = head - length;
+		if(tail >= 0){
+			return new String(window, tail, length);
+		}
+		tail += window.length;
+		return new String(window, tail, window.length - tail) + new String(window, 0, head);
+	}
+
+	/**
+	 * Score the window against one target
+	 * @param target index of the target
+	 * @return the same score the calculator gives the window and target
+	 */
+	public double score(int target){
+		switch(metric){
+			case COSINE:
+				return dotProducts[target] /
+					(Math.sqrt(windowSquaredNorm) * Math.sqrt(targetSquaredNorms[target]));
+			case JACCARD:
+				return (double) intersections[target] /
+					   (double) (windowUnique + targetUnique[target] - intersections[target]);
+			default:
+				return (double) (2 * intersections[target]) /
+					   (double) (length + targetLengths[target]);
+		}
+	}
+
+	/**
+	 * Score the window against every target
+	 * @param scores array of at least targets() entries to fill, or null
+	 * @return the scores, indexed by target
+	 */
+	public double[] scores(double[] scores){
+		if(scores == null){
+			scores = new double[targetCount];
+		}
+		for(int t = 0; t < targetCount; t++){
+			scores[t] = score(t);
+		}
+		return scores;
+	}
+
+	/**
+	 * Count a character into the window.  Raising a count from k to k + 1
+	 * adds 2k + 1 to the squared norm and each target's count of the
+	 * character to its dot product.
+	 */
+	private void add(char c){
+		int k = windowCounts[c]++;
+		windowSquaredNorm += (k << 1) + 1;
+		if(k == 0){
+			windowUnique++;
+		}
+		int slot = slots[c];
+		if(slot == 0){
+			return;
+		}
+		for(int p = postingStarts[slot - 1]; p < postingStarts[slot]; p++){
+			int t = postingTargets[p];
+			dotProducts[t] += postingCounts[p];
+			if(k == 0){
+				intersections[t]++;
+			}
+		}
+	}
+
+	/**
+	 * Count a character out of the window, undoing add
+	 */
+	private void remove(char c){
+		int k = --windowCounts[c];
+		windowSquaredNorm -= (k << 1) + 1;
+		if(k == 0){
+			windowUnique--;
+		}
+		int slot = slots[c];
+		if(slot == 0){
+			return;
+		}
+		for(int p = postingStarts[slot - 1]; p < postingStarts[slot]; p++){
+			int t = postingTargets[p];
+			dotProducts[t] -= postingCounts[p];
+			if(k == 0){
+				intersections[t]--;
+			}
+		}
+	}
+}
@@ -1,14 +1,39 @@
 package com.berico.similarity;
 
-import static com.berico.similarity.CharacterVectorUtils.*;
-
 /**
  * From Wikipedia, Sorensen Similarity calculates the similarity of two samples
  * by taking twice the size of the shared population of two species divided by
- * the sum of both populations.
+ * the sum of both populations.  By default the populations are a string's
+ * characters; given a tokenizer, they are its tokens instead.
  * @author Richard C (Berico Technologies)
  */
-public class SorensenSimilarity implements ISimilarityCalculator {
+public class SorensenSimilarity implements IBoundedSimilarityCalculator {
+
+	//Null to compare characters
+	private final ITokenizer tokenizer;
+
+	/**
+	 * Compare strings by character
+	 */
+	public SorensenSimilarity(){
+		this(null);
+	}
+
+	/**
+	 * Compare strings by token
+	 * @param tokenizer tokenizer to split strings with, or null for characters
+	 */
+	public SorensenSimilarity(ITokenizer tokenizer){
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Get the tokenizer strings are split with
+	 * @return tokenizer, or null if strings are compared by character
+	 */
+	public ITokenizer getTokenizer(){
+		return tokenizer;
+	}
 
 	/**
 	 * Calculate the Sorensen Similarity of two strings.
@@ -19,8 +44,111 @@ public class SorensenSimilarity implements ISimilarityCalculator {
 	 */
 	@Override
 	public double calculate(String stringOne, String stringTwo) {
-		return  (double) (2 * intersect(stringOne, stringTwo).size()) /
+		if(tokenizer != null){
+			return calculate(prepare(stringOne), prepare(stringTwo));
+		}
+		return  (double) (2 * CharacterSet.intersectionSize(stringOne, stringTwo)) /
 		        (double) (stringOne.length() + stringTwo.length());
 	}
 
+	/**
+	 * Calculate the Sorensen Similarity of the first characters of two
+	 * arrays (characters only: the tokenizer is not consulted)
+	 * @param one first characters
+	 * @param oneLength number of characters of one to use
+	 * @param two second characters
+	 * @param twoLength number of characters of two to use
+	 * @return The Sorensen similarity of the two strings.
+	 */
+	double calculate(char[] one, int oneLength, char[] two, int twoLength){
+		int intersection = CharacterSet.intersection(
+			CharacterSet.intersectionAndUnion(one, oneLength, two, twoLength));
+		return  (double) (2 * intersection) / (double) (oneLength + twoLength);
+	}
+
+	/**
+	 * Profile a string as its character (or token) set and length
+	 * @param string the string to profile
+	 * @return a CharacterSetProfile, or a TokenProfile if tokenized
+	 */
+	@Override
+	public IProfile prepare(String string) {
+		if(tokenizer != null){
+			return new TokenProfile(string, tokenizer);
+		}
+		return new CharacterSetProfile(string);
+	}
+
+	/**
+	 * Calculate the Sorensen Similarity of two profiled strings.
+	 * Equation: (2 * intersect(A, B)) / (|A| + |B|)
+	 * @param profileOne First profile
+	 * @param profileTwo Second profile
+	 * @return The Sorensen similarity of the two strings.
+	 */
+	@Override
+	public double calculate(IProfile profileOne, IProfile profileTwo) {
+		if(tokenizer != null){
+			TokenProfile one = TokenProfile.cast(profileOne);
+			TokenProfile two = TokenProfile.cast(profileTwo);
+			return  (double) (2 * one.intersectionSize(two)) /
+			        (double) (one.length() + two.length());
+		}
+		CharacterSetProfile one = CharacterSetProfile.cast(profileOne);
+		CharacterSetProfile two = CharacterSetProfile.cast(profileTwo);
+		return  (double) (2 * one.getCharacterSet().intersectionSize(two.getCharacterSet())) /
+		        (double) (one.length() + two.length());
+	}
+
+	/**
+	 * The bound key is the number of unique characters (or tokens) in
+	 * the string
+	 * @param profile profile prepared by this calculator
+	 * @return size of the profile's character or token set
+	 */
+	@Override
+	public int boundKey(IProfile profile) {
+		if(tokenizer != null){
+			return TokenProfile.cast(profile).size();
+		}
+		return CharacterSetProfile.cast(profile).getCharacterSet().size();
+	}
+
+	/**
+	 * A string has no more unique characters than characters, or unique
+	 * tokens than tokens
+	 * @param length length of a string
+	 * @return most unique characters or tokens it can have
+	 */
+	@Override
+	public int maximumKey(int length) {
+		return (tokenizer != null)? tokenizer.maximumTokens(length) : length;
+	}
+
+	/**
+	 * The intersection can be no larger than the smaller set, and a
+	 * string is at least as long as its set of unique characters.
+	 * Equation: (2 * min(|set(A)|, |set(B)|)) / (|A| + |set(B)|)
+	 * @param query profile of the query
+	 * @param key number of unique characters (or tokens) in a reference
+	 * @return upper bound on the Sorensen Similarity
+	 */
+	@Override
+	public double upperBound(IProfile query, int key) {
+		int length, size;
+		if(tokenizer != null){
+			TokenProfile profile = TokenProfile.cast(query);
+			length = profile.length();
+			size = profile.size();
+		} else {
+			CharacterSetProfile profile = CharacterSetProfile.cast(query);
+			length = profile.length();
+			size = profile.getCharacterSet().size();
+		}
+		int denominator = length + key;
+		return (denominator == 0)? 1d :
+			(double) (2 * Math.min(size, key)) /
+			(double) denominator;
+	}
+
 }
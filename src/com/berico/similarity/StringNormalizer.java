@@ -0,0 +1,464 @@
+package com.berico.similarity;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Puts strings into a canonical form before they are compared, so that
+ * "M\u00fcller", "MULLER" and "muller " can score as equal.  Depending on
+ * configuration it folds case, strips diacritics, collapses runs of
+ * whitespace (trimming the ends), removes punctuation or turns it into
+ * whitespace, and keeps, removes or rewrites digits.
+ *
+ * What happens to each character of the Basic Multilingual Plane is
+ * worked out once per configuration (with java.text.Normalizer and the
+ * Character class) into a lookup table shared by every normalizer with
+ * that configuration.  Normalizing is then a table lookup per character
+ * into a caller's buffer, with no intermediate Strings.  A character can
+ * become up to MAX_EXPANSION characters ("\u00df" folds to "ss", the
+ * ligature "\ufb01" to "fi"); longer decompositions are left alone.
+ *
+ * Surrogate pairs are handled as the code point they encode: they are
+ * never split, and are classified and case folded as a whole (diacritics
+ * outside the BMP are not stripped).  Unpaired surrogates are kept as
+ * they are.
+ *
+ * Instances are immutable (and so safe to share between threads); use
+ * the Builder to configure one.
+ * @author Richard C (Berico Technologies)
+ */
+public final class StringNormalizer {
+
+	//Most characters one character can become
+	public static final int MAX_EXPANSION = 3;
+
+	/**
+	 * What to do with punctuation
+	 */
+	public enum Punctuation {
+		//Leave it in place
+		KEEP,
+		//Drop it
+		REMOVE,
+		//Treat it as whitespace ("o'neil" becomes "o neil")
+		SPACE
+	}
+
+	/**
+	 * What to do with decimal digits
+	 */
+	public enum Digits {
+		//Leave them in place
+		KEEP,
+		//Rewrite every script's digits as 0-9
+		ASCII,
+		//Rewrite every digit as 0, so numbers only match in shape
+		MASK,
+		//Drop them
+		REMOVE
+	}
+
+	//Tables already built, by configuration
+	private static final ConcurrentHashMap<Integer, Table> TABLES =
+		new ConcurrentHashMap<Integer, Table>();
+
+	private final boolean foldCase;
+	private final boolean stripDiacritics;
+	private final boolean collapseWhitespace;
+	private final Punctuation punctuation;
+	private final Digits digits;
+	private final Table table;
+
+	private StringNormalizer(Builder builder){
+		this.foldCase = builder.foldCase;
+		this.stripDiacritics = builder.stripDiacritics;
+		this.collapseWhitespace = builder.collapseWhitespace;
+		this.punctuation = builder.punctuation;
+		this.digits = builder.digits;
+		Integer key = (foldCase? 1 : 0) | (stripDiacritics? 2 : 0) | (collapseWhitespace? 4 : 0)
+			| (punctuation.ordinal() << 3) | (digits.ordinal() << 5);
+		Table table = TABLES.get(key);
+		if(table == null){
+			Table built = new Table(this);
+			table = TABLES.putIfAbsent(key, built);
+			if(table == null){
+				table = built;
+			}
+		}
+		this.table = table;
+	}
+
+	/**
+	 * Start configuring a normalizer
+	 * @return a Builder that changes nothing until configured
+	 */
+	public static Builder builder(){
+		return new Builder();
+	}
+
+	/**
+	 * Get the normalizer most matching wants: case folded, diacritics
+	 * stripped, punctuation turned into whitespace and whitespace
+	 * collapsed, digits kept
+	 * @return a normalizer
+	 */
+	public static StringNormalizer standard(){
+		return builder()
+			.foldCase(true)
+			.stripDiacritics(true)
+			.collapseWhitespace(true)
+			.punctuation(Punctuation.SPACE)
+			.build();
+	}
+
+	/**
+	 * Collects the parameters of an (immutable) StringNormalizer
+	 */
+	public static class Builder {
+
+		private boolean foldCase = false;
+		private boolean stripDiacritics = false;
+		private boolean collapseWhitespace = false;
+		private Punctuation punctuation = Punctuation.KEEP;
+		private Digits digits = Digits.KEEP;
+
+		/**
+		 * @param foldCase compare without regard to case (false by default)
+		 * @return this builder
+		 */
+		public Builder foldCase(boolean foldCase){
+			this.foldCase = foldCase;
+			return this;
+		}
+
+		/**
+		 * @param stripDiacritics drop accents and other combining marks, and
+		 * replace compatibility characters (ligatures, full-width forms) by
+		 * their plain equivalents (false by default)
+		 * @return this builder
+		 */
+		public Builder stripDiacritics(boolean stripDiacritics){
+			this.stripDiacritics = stripDiacritics;
+			return this;
+		}
+
+		/**
+		 * @param collapseWhitespace turn every run of whitespace into one
+		 * space and drop it from the ends (false by default)
+		 * @return this builder
+		 */
+		public Builder collapseWhitespace(boolean collapseWhitespace){
+			this.collapseWhitespace = collapseWhitespace;
+			return this;
+		}
+
+		/**
+		 * @param punctuation what to do with punctuation (KEEP by default)
+		 * @return this builder
+		 */
+		public Builder punctuation(Punctuation punctuation){
+			this.punctuation = punctuation;
+			return this;
+		}
+
+		/**
+		 * @param digits what to do with decimal digits (KEEP by default)
+		 * @return this builder
+		 */
+		public Builder digits(Digits digits){
+			this.digits = digits;
+			return this;
+		}
+
+		/**
+		 * @return a normalizer with these parameters
+		 */
+		public StringNormalizer build(){
+			return new StringNormalizer(this);
+		}
+	}
+
+	public boolean getFoldCase(){
+		return foldCase;
+	}
+
+	public boolean getStripDiacritics(){
+		return stripDiacritics;
+	}
+
+	public boolean getCollapseWhitespace(){
+		return collapseWhitespace;
+	}
+
+	public Punctuation getPunctuation(){
+		return punctuation;
+	}
+
+	public Digits getDigits(){
+		return digits;
+	}
+
+	/**
+	 * Get the longest a string of some length can become
+	 * @param length length of a string
+	 * @return capacity a destination buffer needs
+	 */
+	public int maximumLength(int length){
+		return length * table.maxExpansion;
+	}
+
+	/**
+	 * Normalize a string
+	 * @param string string to normalize
+	 * @return the canonical form (the string itself if already canonical)
+	 */
+	public String normalize(String string){
+		char[] buffer = BUFFER.get();
+		int capacity = maximumLength(string.length());
+		if(buffer.length < capacity){
+			buffer = new char[capacity];
+			BUFFER.set(buffer);
+		}
+		int length = normalize(string, buffer);
+		if(length == string.length()){
+			int i = 0;
+			while(i < length && buffer[i] == string.charAt(i)){
+				i++;
+			}
+			if(i == length){
+				return string;
+			}
+		}
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Normalize a string into a buffer
+	 * @param string string to normalize
+	 * @param destination buffer of at least maximumLength(string.length())
+	 * characters
+	 * @return number of characters written
+	 */
+	public int normalize(CharSequence string, char[] destination){
+		char[] single = table.single;
+		byte[] lengths = table.lengths;
+		char[] expansions = table.expansions;
+		int length = string.length();
+		int written = 0;
+		boolean pendingSpace = false;
+		for(int i = 0; i < length; i++){
+			char c = string.charAt(i);
+			if(Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(string.charAt(i + 1))){
+				int codePoint = Character.toCodePoint(c, string.charAt(++i));
+				codePoint = supplementary(codePoint);
+				if(codePoint < 0){
+					if(codePoint == SPACE){
+						pendingSpace = written > 0;
+					}
+					continue;
+				}
+				if(pendingSpace){
+					destination[written++] = ' ';
+					pendingSpace = false;
+				}
+				written += Character.toChars(codePoint, destination, written);
+				continue;
+			}
+			int count = lengths[c];
+			if(count == 1){
+				char mapped = single[c];
+				if(mapped == ' ' && collapseWhitespace){
+					pendingSpace = written > 0;
+					continue;
+				}
+				if(pendingSpace){
+					destination[written++] = ' ';
+					pendingSpace = false;
+				}
+				destination[written++] = mapped;
+			} else {
+				for(int e = single[c], end = e + count; e < end; e++){
+					char mapped = expansions[e];
+					if(mapped == ' ' && collapseWhitespace){
+						pendingSpace = written > 0;
+						continue;
+					}
+					if(pendingSpace){
+						destination[written++] = ' ';
+						pendingSpace = false;
+					}
+					destination[written++] = mapped;
+				}
+			}
+		}
+		return written;
+	}
+
+	//Codes supplementary returns instead of a code point
+	private static final int DROP = -1;
+	private static final int SPACE = -2;
+
+	/**
+	 * Normalize a code point outside the BMP
+	 * @return the code point to write, DROP or SPACE
+	 */
+	private int supplementary(int codePoint){
+		int type = Character.getType(codePoint);
+		if(Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)){
+			return collapseWhitespace? SPACE : codePoint;
+		}
+		if(isPunctuation(type)){
+			switch(punctuation){
+			case REMOVE:
+				return DROP;
+			case SPACE:
+				return collapseWhitespace? SPACE : ' ';
+			default:
+				return codePoint;
+			}
+		}
+		if(type == Character.DECIMAL_DIGIT_NUMBER){
+			switch(digits){
+			case ASCII:
+				return '0' + Character.digit(codePoint, 10);
+			case MASK:
+				return '0';
+			case REMOVE:
+				return DROP;
+			default:
+				return codePoint;
+			}
+		}
+		if(stripDiacritics && isMark(type)){
+			return DROP;
+		}
+		return foldCase? Character.toLowerCase(Character.toUpperCase(codePoint)) : codePoint;
+	}
+
+	/**
+	 * Work out the canonical form of one BMP character (building tables)
+	 */
+	private String canonical(char c){
+		String string = String.valueOf(c);
+		if(stripDiacritics){
+			String special = SPECIAL_LETTERS.get(c);
+			string = (special != null)? special : Normalizer.normalize(string, Normalizer.Form.NFKD);
+		}
+		if(foldCase){
+			string = string.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+		}
+		StringBuilder canonical = new StringBuilder();
+		for(int i = 0; i < string.length(); i++){
+			char part = string.charAt(i);
+			if(Character.isSurrogate(part)){
+				//A BMP character never decomposes into a pair; keep it whole
+				return String.valueOf(c);
+			}
+			int type = Character.getType(part);
+			if(Character.isWhitespace(part) || Character.isSpaceChar(part)){
+				canonical.append(collapseWhitespace? ' ' : part);
+			} else if(isPunctuation(type)){
+				if(punctuation == Punctuation.KEEP){
+					canonical.append(part);
+				} else if(punctuation == Punctuation.SPACE){
+					canonical.append(' ');
+				}
+			} else if(type == Character.DECIMAL_DIGIT_NUMBER){
+				if(digits == Digits.KEEP){
+					canonical.append(part);
+				} else if(digits == Digits.ASCII){
+					canonical.append((char) ('0' + Character.digit(part, 10)));
+				} else if(digits == Digits.MASK){
+					canonical.append('0');
+				}
+			} else if(!(stripDiacritics && isMark(type))){
+				canonical.append(part);
+			}
+		}
+		if(canonical.length() > MAX_EXPANSION){
+			return String.valueOf(c);
+		}
+		return canonical.toString();
+	}
+
+	private static boolean isPunctuation(int type){
+		return type == Character.CONNECTOR_PUNCTUATION
+			|| type == Character.DASH_PUNCTUATION
+			|| type == Character.START_PUNCTUATION
+			|| type == Character.END_PUNCTUATION
+			|| type == Character.INITIAL_QUOTE_PUNCTUATION
+			|| type == Character.FINAL_QUOTE_PUNCTUATION
+			|| type == Character.OTHER_PUNCTUATION;
+	}
+
+	private static boolean isMark(int type){
+		return type == Character.NON_SPACING_MARK
+			|| type == Character.COMBINING_SPACING_MARK
+			|| type == Character.ENCLOSING_MARK;
+	}
+
+	//Letters with no decomposition that still read as plain Latin letters
+	private static final Map<Character, String> SPECIAL_LETTERS =
+		new HashMap<Character, String>();
+	static {
+		String[] pairs = {
+			"\u00c6", "AE", "\u00e6", "ae", "\u00d0", "D", "\u00f0", "d",
+			"\u00d8", "O", "\u00f8", "o", "\u00de", "TH", "\u00fe", "th",
+			"\u00df", "ss", "\u0110", "D", "\u0111", "d", "\u0131", "i",
+			"\u0141", "L", "\u0142", "l", "\u0152", "OE", "\u0153", "oe"
+		};
+		for(int i = 0; i < pairs.length; i += 2){
+			SPECIAL_LETTERS.put(pairs[i].charAt(0), pairs[i + 1]);
+		}
+	}
+
+	/**
+	 * The canonical form of every BMP character under one configuration.
+	 * Characters becoming exactly one character map straight to it;
+	 * others map to a run of the expansions array.
+	 */
+	private static final class Table {
+
+		//Canonical character, or offset into expansions
+		final char[] single = new char[Character.MAX_VALUE + 1];
+		//Number of canonical characters (0 to MAX_EXPANSION)
+		final byte[] lengths = new byte[Character.MAX_VALUE + 1];
+		final char[] expansions;
+		final int maxExpansion;
+
+		Table(StringNormalizer normalizer){
+			StringBuilder expansions = new StringBuilder();
+			int maxExpansion = 1;
+			for(int c = 0; c <= Character.MAX_VALUE; c++){
+				String canonical = Character.isSurrogate((char) c)?
+					String.valueOf((char) c) : normalizer.canonical((char) c);
+				//Offsets into expansions must fit in a char
+				if(canonical.length() != 1
+						&& expansions.length() + canonical.length() > Character.MAX_VALUE){
+					canonical = String.valueOf((char) c);
+				}
+				lengths[c] = (byte) canonical.length();
+				if(canonical.length() == 1){
+					single[c] = canonical.charAt(0);
+				} else {
+					single[c] = (char) expansions.length();
+					expansions.append(canonical);
+					maxExpansion = Math.max(maxExpansion, canonical.length());
+				}
+			}
+			this.expansions = expansions.toString().toCharArray();
+			this.maxExpansion = maxExpansion;
+		}
+	}
+
+	private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>(){
+		@Override
+		protected char[] initialValue(){
+			return new char[256];
+		}
+	};
+}
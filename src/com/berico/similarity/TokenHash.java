@@ -0,0 +1,55 @@
+package com.berico.similarity;
+
+/**
+ * Hashing shared by the tokenizers: FNV-1a over the token's chars,
+ * finished with the MurmurHash3 avalanche so that nearby tokens spread
+ * across the whole int range.
+ * @author Richard C (Berico Technologies)
+ */
+final class TokenHash {
+
+	//FNV-1a offset basis and prime
+	static final int START = 0x811C9DC5;
+	private static final int PRIME = 0x01000193;
+
+	private TokenHash(){}
+
+	/**
+	 * Fold one char into a running hash
+	 * @param hash running hash, START for a new token
+	 * @param c next char of the token
+	 * @return updated hash
+	 */
+	static int add(int hash, char c){
+		return (hash ^ c) * PRIME;
+	}
+
+	/**
+	 * Turn a running hash into a token id
+	 * @param hash running hash
+	 * @return token id
+	 */
+	static int finish(int hash){
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * Hash a whole range of a string as one token
+	 * @param string source string
+	 * @param from first char of the token
+	 * @param to one past the last char of the token
+	 * @return token id
+	 */
+	static int hash(CharSequence string, int from, int to){
+		int hash = START;
+		for(int i = from; i < to; i++){
+			hash = add(hash, string.charAt(i));
+		}
+		return finish(hash);
+	}
+}
@@ -0,0 +1,176 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Profile used by the set and vector based calculators when they are
+ * given a tokenizer: the string's token ids as a sparse histogram
+ * (sorted distinct ids with their counts), the total number of tokens,
+ * and the histogram's precomputed magnitude.
+ * @author Richard C (Berico Technologies)
+ */
+public final class TokenProfile implements IProfile {
+
+	private final String string;
+
+	//Total number of tokens, repeats included
+	private final int length;
+
+	//Sorted, distinct token ids
+	private final int[] tokens;
+
+	//Number of occurrences of the token at the same index
+	private final int[] counts;
+
+	private final long squaredNorm;
+	private final double magnitude;
+
+	/**
+	 * Tokenize and profile a string
+	 * @param string string to profile
+	 * @param tokenizer tokenizer to split it with
+	 */
+	public TokenProfile(String string, ITokenizer tokenizer){
+		this.string = string;
+		int[] sorted = tokenizer.tokenize(string);
+		this.length = sorted.length;
+		Arrays.sort(sorted);
+		//Collapse the sorted ids into (id, count) runs, in place
+		int[] counts = new int[sorted.length];
+		int distinct = 0;
+		long squaredNorm = 0;
+		for(int i = 0; i < sorted.length; ){
+			int start = i;
+			while(i < sorted.length && sorted[i] == sorted[start]){ i++; }
+			long count = i - start;
+			sorted[distinct] = sorted[start];
+			counts[distinct++] = (int) count;
+			squaredNorm += count * count;
+		}
+		this.tokens = Arrays.copyOf(sorted, distinct);
+		this.counts = Arrays.copyOf(counts, distinct);
+		this.squaredNorm = squaredNorm;
+		this.magnitude = Math.sqrt(squaredNorm);
+	}
+
+	@Override
+	public String getString(){
+		return string;
+	}
+
+	/**
+	 * Get the number of tokens (not unique tokens) in the string
+	 * @return token count
+	 */
+	public int length(){
+		return length;
+	}
+
+	/**
+	 * Get the number of unique tokens in the string
+	 * @return size of the token set
+	 */
+	public int size(){
+		return tokens.length;
+	}
+
+	/**
+	 * Get the number of times a token occurs in the string
+	 * @param token token id
+	 * @return frequency of occurrence
+	 */
+	public int count(int token){
+		int index = Arrays.binarySearch(tokens, token);
+		return (index < 0)? 0 : counts[index];
+	}
+
+	/**
+	 * Get the sorted, distinct token ids.  Not a copy: do not modify.
+	 */
+	int[] tokens(){
+		return tokens;
+	}
+
+	/**
+	 * Get the counts parallel to tokens().  Not a copy: do not modify.
+	 */
+	int[] counts(){
+		return counts;
+	}
+
+	/**
+	 * Get the sum of the squared token frequencies
+	 * @return squared magnitude
+	 */
+	public long squaredNorm(){
+		return squaredNorm;
+	}
+
+	/**
+	 * Get the magnitude (Euclidean norm) of the token frequency vector
+	 * @return magnitude
+	 */
+	public double magnitude(){
+		return magnitude;
+	}
+
+	/**
+	 * Count the tokens two profiles have in common by walking their
+	 * sorted ids side by side
+	 * @param other other profile
+	 * @return size of the intersection of the token sets
+	 */
+	public int intersectionSize(TokenProfile other){
+		int[] otherTokens = other.tokens;
+		int intersection = 0;
+		int i = 0, j = 0;
+		while(i < tokens.length && j < otherTokens.length){
+			if(tokens[i] < otherTokens[j]){
+				i++;
+			} else if(tokens[i] > otherTokens[j]){
+				j++;
+			} else {
+				intersection++;
+				i++;
+				j++;
+			}
+		}
+		return intersection;
+	}
+
+	/**
+	 * Calculate the dot product of two token frequency vectors by walking
+	 * their sorted ids side by side
+	 * @param other other profile
+	 * @return dot product of the frequency vectors
+	 */
+	public long dotProduct(TokenProfile other){
+		int[] otherTokens = other.tokens;
+		int[] otherCounts = other.counts;
+		long dotProduct = 0;
+		int i = 0, j = 0;
+		while(i < tokens.length && j < otherTokens.length){
+			if(tokens[i] < otherTokens[j]){
+				i++;
+			} else if(tokens[i] > otherTokens[j]){
+				j++;
+			} else {
+				dotProduct += (long) counts[i++] * otherCounts[j++];
+			}
+		}
+		return dotProduct;
+	}
+
+	/**
+	 * Ensure a profile is a TokenProfile
+	 * @param profile profile handed to a tokenized calculator
+	 * @return the profile, cast
+	 */
+	static TokenProfile cast(IProfile profile){
+		if(!(profile instanceof TokenProfile)){
+			throw new IllegalArgumentException(
+				"Profile was not prepared by a tokenized calculator: " + profile);
+		}
+		return (TokenProfile) profile;
+	}
+}
@@ -0,0 +1,134 @@
+package com.berico.similarity;
+
+/**
+ * A bounded min-heap of (index, score) pairs kept in parallel primitive
+ * arrays.  It retains the k highest scores offered to it; the lowest of
+ * those sits at the root, so checking whether a new score gets in is a
+ * single comparison.
+ * @author Richard C (Berico Technologies)
+ */
+public final class TopKHeap {
+
+	private final int[] indexes;
+	private final double[] scores;
+	private int size = 0;
+
+	/**
+	 * @param k maximum number of entries to retain
+	 */
+	public TopKHeap(int k){
+		if(k < 1){
+			throw new IllegalArgumentException("k must be at least 1: " + k);
+		}
+		this.indexes = new int[k];
+		this.scores = new double[k];
+	}
+
+	/**
+	 * Get the number of entries retained so far
+	 * @return size of the heap
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Determine whether the heap holds k entries
+	 * @return true if a new entry must beat the minimum to get in
+	 */
+	public boolean isFull(){
+		return size == indexes.length;
+	}
+
+	/**
+	 * Get the lowest retained score
+	 * @return the minimum score, or negative infinity if the heap is empty
+	 */
+	public double minScore(){
+		return (size == 0)? Double.NEGATIVE_INFINITY : scores[0];
+	}
+
+	/**
+	 * Determine whether a score would be retained if offered
+	 * @param score candidate score
+	 * @return true if the heap has room, or the score beats the minimum
+	 */
+	public boolean accepts(double score){
+		return !isFull() || score > scores[0];
+	}
+
+	/**
+	 * Offer an entry, evicting the current minimum if the heap is full
+	 * and the new score is higher.  NaN scores are never retained.
+	 * @param index index of the entry
+	 * @param score score of the entry
+	 * @return true if the entry was retained
+	 */
+	public boolean offer(int index, double score){
+		if(score != score){
+			return false;
+		}
+		if(!isFull()){
+			//Sift the new entry up from the bottom
+			int child = size++;
+			while(child > 0){
+				int parent = (child - 1) >>> 1;
+				if(scores[parent] <= score){ break; }
+				indexes[child] = indexes[parent];
+				scores[child] = scores[parent];
+				child = parent;
+			}
+			indexes[child] = index;
+			scores[child] = score;
+			return true;
+		}
+		if(score <= scores[0]){
+			return false;
+		}
+		siftDown(index, score);
+		return true;
+	}
+
+	/**
+	 * Replace the root with a new entry and sift it down into place
+	 */
+	private void siftDown(int index, double score){
+		int parent = 0;
+		while(true){
+			int child = (parent << 1) + 1;
+			if(child >= size){ break; }
+			if(child + 1 < size && scores[child + 1] < scores[child]){
+				child++;
+			}
+			if(score <= scores[child]){ break; }
+			indexes[parent] = indexes[child];
+			scores[parent] = scores[child];
+			parent = child;
+		}
+		indexes[parent] = index;
+		scores[parent] = score;
+	}
+
+	/**
+	 * Drain the heap into results ordered from the highest to the lowest
+	 * score.  The heap is empty afterwards.
+	 * @param comparisons number of full comparisons made
+	 * @param pruned number of candidates skipped
+	 * @return search results
+	 */
+	public SearchResults toResults(int comparisons, int pruned){
+		int count = size;
+		int[] sortedIndexes = new int[count];
+		double[] sortedScores = new double[count];
+		//Repeatedly pop the minimum into the back of the arrays
+		for(int i = count - 1; i >= 0; i--){
+			sortedIndexes[i] = indexes[0];
+			sortedScores[i] = scores[0];
+			size--;
+			if(size > 0){
+				siftDown(indexes[size], scores[size]);
+			}
+		}
+		return new SearchResults(sortedIndexes, sortedScores, comparisons, pruned);
+	}
+}
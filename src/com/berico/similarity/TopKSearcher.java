@@ -0,0 +1,160 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the k reference strings most similar to a query, among those
+ * scoring at least a threshold.  The references are prepared once, up
+ * front.
+ *
+ * When the calculator is an IBoundedSimilarityCalculator the references
+ * are also sorted by their bound key.  A search then starts at the
+ * query's own key and walks outward, always taking the side with the
+ * higher bound; candidates are therefore met in order of decreasing
+ * bound, and the search stops the moment the best remaining bound cannot
+ * reach the threshold (or beat the k-th best score found so far).  Other
+ * calculators fall back to scoring every reference.
+ * @author Richard C (Berico Technologies)
+ */
+public class TopKSearcher {
+
+	//Slack added to bounds so floating point rounding in the bound
+	//arithmetic can never prune a genuine match
+	private static final double BOUND_TOLERANCE = 1e-9;
+
+	private final ISimilarityCalculator calculator;
+	private final IBoundedSimilarityCalculator bounded;
+
+	//Reference profiles in bound-key order (original order if unbounded)
+	private final IProfile[] profiles;
+
+	//Original index of the reference at the same position in profiles
+	private final int[] indexes;
+
+	//Bound key of the reference at the same position (ascending)
+	private final int[] keys;
+
+	/**
+	 * @param calculator calculator used to score candidates
+	 * @param references strings to search
+	 */
+	public TopKSearcher(ISimilarityCalculator calculator, List<String> references){
+		this.calculator = calculator;
+		this.bounded = (calculator instanceof IBoundedSimilarityCalculator)?
+				(IBoundedSimilarityCalculator) calculator : null;
+
+		int n = references.size();
+		IProfile[] prepared = new IProfile[n];
+		for(int i = 0; i < n; i++){
+			prepared[i] = calculator.prepare(references.get(i));
+		}
+		this.profiles = new IProfile[n];
+		this.indexes = new int[n];
+		this.keys = new int[n];
+		if(bounded == null){
+			for(int i = 0; i < n; i++){
+				profiles[i] = prepared[i];
+				indexes[i] = i;
+			}
+			return;
+		}
+		//Sort by bound key: pack (key, index) into longs so the sort
+		//is a primitive one
+		long[] order = new long[n];
+		for(int i = 0; i < n; i++){
+			order[i] = ((long) bounded.boundKey(prepared[i]) << 32) | i;
+		}
+		Arrays.sort(order);
+		for(int i = 0; i < n; i++){
+			int index = (int) order[i];
+			profiles[i] = prepared[index];
+			indexes[i] = index;
+			keys[i] = (int) (order[i] >>> 32);
+		}
+	}
+
+	/**
+	 * Get the number of reference strings
+	 * @return number of references
+	 */
+	public int size(){
+		return profiles.length;
+	}
+
+	/**
+	 * Find the best matches for a query
+	 * @param query query string
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum score of a match
+	 * @return up to k matches, best first
+	 */
+	public SearchResults search(String query, int k, double threshold){
+		return search(calculator.prepare(query), k, threshold);
+	}
+
+	/**
+	 * Find the best matches for an already prepared query
+	 * @param query query profile (prepared by this searcher's calculator)
+	 * @param k maximum number of matches to return
+	 * @param threshold minimum score of a match
+	 * @return up to k matches, best first
+	 */
+	public SearchResults search(IProfile query, int k, double threshold){
+		TopKHeap heap = new TopKHeap(k);
+		int comparisons = 0;
+		if(bounded == null){
+			for(int i = 0; i < profiles.length; i++){
+				double score = calculator.calculate(query, profiles[i]);
+				comparisons++;
+				if(score >= threshold){
+					heap.offer(indexes[i], score);
+				}
+			}
+			return SimilarityMetrics.recordSearch(calculator, heap.toResults(comparisons, 0), false);
+		}
+
+		//Start either side of the query's own key, where the bound peaks
+		int right = lowerBound(keys, bounded.boundKey(query));
+		int left = right - 1;
+		boolean stopped = false;
+		while(left >= 0 || right < profiles.length){
+			double leftBound = (left >= 0)?
+				bounded.upperBound(query, keys[left]) : Double.NEGATIVE_INFINITY;
+			double rightBound = (right < profiles.length)?
+				bounded.upperBound(query, keys[right]) : Double.NEGATIVE_INFINITY;
+			boolean takeLeft = leftBound > rightBound;
+			double bound = (takeLeft? leftBound : rightBound) + BOUND_TOLERANCE;
+			//Every remaining candidate is bounded by this one, so if it
+			//cannot qualify, we are done
+			if(bound < threshold || !heap.accepts(bound)){
+				stopped = true;
+				break;
+			}
+			int position = takeLeft? left-- : right++;
+			double score = calculator.calculate(query, profiles[position]);
+			comparisons++;
+			if(score >= threshold){
+				heap.offer(indexes[position], score);
+			}
+		}
+		return SimilarityMetrics.recordSearch(calculator,
+			heap.toResults(comparisons, profiles.length - comparisons), stopped);
+	}
+
+	/**
+	 * Find the first position whose key is at least the given key
+	 */
+	private static int lowerBound(int[] keys, int key){
+		int low = 0, high = keys.length;
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(keys[middle] < key){
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -89,9 +89,274 @@ public class VectorMath {
 	public static double magnitude(Integer[] vector){
 		double magnitude = 0;
 		for(int i = 0; i < vector.length; i++){
-			magnitude += Math.pow(vector[i], 2);
+			magnitude += (double) vector[i] * vector[i];
 		}
 		return Math.sqrt(magnitude);
 	}
 	
+	/*
+	 * Primitive overloads.  Each loop is unrolled by four into independent
+	 * accumulators, which breaks the dependency chain on a single sum and
+	 * leaves the JIT free to vectorize the int kernels.
+	 */
+
+	/**
+	 * Calculate the Dot Product (inner product) of two vectors
+	 * @param vectorOne Vector
+	 * @param vectorTwo Vector
+	 * @return Dot Product, accumulated in a long so it cannot overflow
+	 * @throws VectorMathException Thrown if vectors are not of equal length
+	 */
+	public static long dotp(int[] vectorOne, int[] vectorTwo) throws VectorMathException {
+		checkDimensions(vectorOne.length, vectorTwo.length);
+		long sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for(int end = vectorOne.length & ~3; i < end; i += 4){
+			sum0 += (long) vectorOne[i] * vectorTwo[i];
+			sum1 += (long) vectorOne[i + 1] * vectorTwo[i + 1];
+			sum2 += (long) vectorOne[i + 2] * vectorTwo[i + 2];
+			sum3 += (long) vectorOne[i + 3] * vectorTwo[i + 3];
+		}
+		for(; i < vectorOne.length; i++){
+			sum0 += (long) vectorOne[i] * vectorTwo[i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Calculate the Dot Product (inner product) of two vectors
+	 * @param vectorOne Vector
+	 * @param vectorTwo Vector
+	 * @return Dot Product, accumulated in doubles
+	 * @throws VectorMathException Thrown if vectors are not of equal length
+	 */
+	public static double dotp(float[] vectorOne, float[] vectorTwo) throws VectorMathException {
+		checkDimensions(vectorOne.length, vectorTwo.length);
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for(int end = vectorOne.length & ~3; i < end; i += 4){
+			sum0 += (double) vectorOne[i] * vectorTwo[i];
+			sum1 += (double) vectorOne[i + 1] * vectorTwo[i + 1];
+			sum2 += (double) vectorOne[i + 2] * vectorTwo[i + 2];
+			sum3 += (double) vectorOne[i + 3] * vectorTwo[i + 3];
+		}
+		for(; i < vectorOne.length; i++){
+			sum0 += (double) vectorOne[i] * vectorTwo[i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Calculate the Dot Product (inner product) of two vectors
+	 * @param vectorOne Vector
+	 * @param vectorTwo Vector
+	 * @return Dot Product
+	 * @throws VectorMathException Thrown if vectors are not of equal length
+	 */
+	public static double dotp(double[] vectorOne, double[] vectorTwo) throws VectorMathException {
+		checkDimensions(vectorOne.length, vectorTwo.length);
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for(int end = vectorOne.length & ~3; i < end; i += 4){
+			sum0 += vectorOne[i] * vectorTwo[i];
+			sum1 += vectorOne[i + 1] * vectorTwo[i + 1];
+			sum2 += vectorOne[i + 2] * vectorTwo[i + 2];
+			sum3 += vectorOne[i + 3] * vectorTwo[i + 3];
+		}
+		for(; i < vectorOne.length; i++){
+			sum0 += vectorOne[i] * vectorTwo[i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Calculate the squared Magnitude of a vector (its dot product
+	 * with itself)
+	 * @param vector Vector
+	 * @return Sum of the squared components
+	 */
+	public static long squaredNorm(int[] vector){
+		long sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for(int end = vector.length & ~3; i < end; i += 4){
+			sum0 += (long) vector[i] * vector[i];
+			sum1 += (long) vector[i + 1] * vector[i + 1];
+			sum2 += (long) vector[i + 2] * vector[i + 2];
+			sum3 += (long) vector[i + 3] * vector[i + 3];
+		}
+		for(; i < vector.length; i++){
+			sum0 += (long) vector[i] * vector[i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Calculate the squared Magnitude of a vector
+	 * @param vector Vector
+	 * @return Sum of the squared components, accumulated in doubles
+	 */
+	public static double squaredNorm(float[] vector){
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for(int end = vector.length & ~3; i < end; i += 4){
+			sum0 += (double) vector[i] * vector[i];
+			sum1 += (double) vector[i + 1] * vector[i + 1];
+			sum2 += (double) vector[i + 2] * vector[i + 2];
+			sum3 += (double) vector[i + 3] * vector[i + 3];
+		}
+		for(; i < vector.length; i++){
+			sum0 += (double) vector[i] * vector[i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Calculate the squared Magnitude of a vector
+	 * @param vector Vector
+	 * @return Sum of the squared components
+	 */
+	public static double squaredNorm(double[] vector){
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for(int end = vector.length & ~3; i < end; i += 4){
+			sum0 += vector[i] * vector[i];
+			sum1 += vector[i + 1] * vector[i + 1];
+			sum2 += vector[i + 2] * vector[i + 2];
+			sum3 += vector[i + 3] * vector[i + 3];
+		}
+		for(; i < vector.length; i++){
+			sum0 += vector[i] * vector[i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Calculate the Magnitude of a vector
+	 * @param vector Vector
+	 * @return Magnitude of the Vector
+	 */
+	public static double magnitude(int[] vector){
+		return Math.sqrt(squaredNorm(vector));
+	}
+
+	/**
+	 * Calculate the Magnitude of a vector
+	 * @param vector Vector
+	 * @return Magnitude of the Vector
+	 */
+	public static double magnitude(float[] vector){
+		return Math.sqrt(squaredNorm(vector));
+	}
+
+	/**
+	 * Calculate the Magnitude of a vector
+	 * @param vector Vector
+	 * @return Magnitude of the Vector
+	 */
+	public static double magnitude(double[] vector){
+		return Math.sqrt(squaredNorm(vector));
+	}
+
+	/**
+	 * Calculate the cosine of the angle between two vectors, taking the
+	 * dot product and both squared norms in a single pass.  Integer
+	 * vectors give exactly dotp / (magnitude * magnitude).
+	 * @param vectorOne Vector
+	 * @param vectorTwo Vector
+	 * @return Cosine of the angle between the vectors
+	 * @throws VectorMathException Thrown if vectors are not of equal length
+	 */
+	public static double cosine(int[] vectorOne, int[] vectorTwo) throws VectorMathException {
+		checkDimensions(vectorOne.length, vectorTwo.length);
+		long dot0 = 0, dot1 = 0, one0 = 0, one1 = 0, two0 = 0, two1 = 0;
+		int i = 0;
+		for(int end = vectorOne.length & ~1; i < end; i += 2){
+			long a0 = vectorOne[i], b0 = vectorTwo[i];
+			long a1 = vectorOne[i + 1], b1 = vectorTwo[i + 1];
+			dot0 += a0 * b0;
+			dot1 += a1 * b1;
+			one0 += a0 * a0;
+			one1 += a1 * a1;
+			two0 += b0 * b0;
+			two1 += b1 * b1;
+		}
+		if(i < vectorOne.length){
+			long a = vectorOne[i], b = vectorTwo[i];
+			dot0 += a * b;
+			one0 += a * a;
+			two0 += b * b;
+		}
+		return (dot0 + dot1) /
+			(Math.sqrt(one0 + one1) * Math.sqrt(two0 + two1));
+	}
+
+	/**
+	 * Calculate the cosine of the angle between two vectors in a single pass
+	 * @param vectorOne Vector
+	 * @param vectorTwo Vector
+	 * @return Cosine of the angle between the vectors
+	 * @throws VectorMathException Thrown if vectors are not of equal length
+	 */
+	public static double cosine(float[] vectorOne, float[] vectorTwo) throws VectorMathException {
+		checkDimensions(vectorOne.length, vectorTwo.length);
+		double dot0 = 0, dot1 = 0, one0 = 0, one1 = 0, two0 = 0, two1 = 0;
+		int i = 0;
+		for(int end = vectorOne.length & ~1; i < end; i += 2){
+			double a0 = vectorOne[i], b0 = vectorTwo[i];
+			double a1 = vectorOne[i + 1], b1 = vectorTwo[i + 1];
+			dot0 += a0 * b0;
+			dot1 += a1 * b1;
+			one0 += a0 * a0;
+			one1 += a1 * a1;
+			two0 += b0 * b0;
+			two1 += b1 * b1;
+		}
+		if(i < vectorOne.length){
+			double a = vectorOne[i], b = vectorTwo[i];
+			dot0 += a * b;
+			one0 += a * a;
+			two0 += b * b;
+		}
+		return (dot0 + dot1) /
+			(Math.sqrt(one0 + one1) * Math.sqrt(two0 + two1));
+	}
+
+	/**
+	 * Calculate the cosine of the angle between two vectors in a single pass
+	 * @param vectorOne Vector
+	 * @param vectorTwo Vector
+	 * @return Cosine of the angle between the vectors
+	 * @throws VectorMathException Thrown if vectors are not of equal length
+	 */
+	public static double cosine(double[] vectorOne, double[] vectorTwo) throws VectorMathException {
+		checkDimensions(vectorOne.length, vectorTwo.length);
+		double dot0 = 0, dot1 = 0, one0 = 0, one1 = 0, two0 = 0, two1 = 0;
+		int i = 0;
+		for(int end = vectorOne.length & ~1; i < end; i += 2){
+			double a0 = vectorOne[i], b0 = vectorTwo[i];
+			double a1 = vectorOne[i + 1], b1 = vectorTwo[i + 1];
+			dot0 += a0 * b0;
+			dot1 += a1 * b1;
+			one0 += a0 * a0;
+			one1 += a1 * a1;
+			two0 += b0 * b0;
+			two1 += b1 * b1;
+		}
+		if(i < vectorOne.length){
+			double a = vectorOne[i], b = vectorTwo[i];
+			dot0 += a * b;
+			one0 += a * a;
+			two0 += b * b;
+		}
+		return (dot0 + dot1) /
+			(Math.sqrt(one0 + one1) * Math.sqrt(two0 + two1));
+	}
+
+	private static void checkDimensions(int lengthOne, int lengthTwo) throws VectorMathException {
+		if(lengthOne != lengthTwo){
+			throw new VectorMathException(
+					"Input Vectors do not have the same number of dimensions.");
+		}
+	}
+
 }
@@ -0,0 +1,64 @@
+package com.berico.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Tokenizes a string into words: maximal runs of letters and digits.
+ * Everything else (whitespace, punctuation) separates words.
+ * @author Richard C (Berico Technologies)
+ */
+public class WordTokenizer implements ITokenizer {
+
+	private final boolean lowerCase;
+
+	/**
+	 * Create a case-sensitive word tokenizer
+	 */
+	public WordTokenizer(){
+		this(false);
+	}
+
+	/**
+	 * @param lowerCase whether to fold words to lower case before hashing
+	 */
+	public WordTokenizer(boolean lowerCase){
+		this.lowerCase = lowerCase;
+	}
+
+	/**
+	 * Get whether words are folded to lower case
+	 * @return true if case-insensitive
+	 */
+	public boolean isLowerCase(){
+		return lowerCase;
+	}
+
+	@Override
+	public int[] tokenize(String string){
+		int[] tokens = new int[maximumTokens(string.length())];
+		int count = 0;
+		int i = 0;
+		while(i < string.length()){
+			//Skip separators
+			while(i < string.length() && !Character.isLetterOrDigit(string.charAt(i))){ i++; }
+			if(i == string.length()){
+				break;
+			}
+			int hash = TokenHash.START;
+			while(i < string.length() && Character.isLetterOrDigit(string.charAt(i))){
+				char c = string.charAt(i++);
+				hash = TokenHash.add(hash, lowerCase? Character.toLowerCase(c) : c);
+			}
+			tokens[count++] = TokenHash.finish(hash);
+		}
+		return (count == tokens.length)? tokens : Arrays.copyOf(tokens, count);
+	}
+
+	/**
+	 * Words are separated by at least one character
+	 */
+	@Override
+	public int maximumTokens(int length){
+		return (length + 1) / 2;
+	}
+}
@@ -0,0 +1,131 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.berico.similarity.AsyncSimilarityScorer;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.IProfile;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.SorensenSimilarity;
+
+public class AsyncSimilarityScorerTest {
+
+	@Test
+	public void Pairs_are_scored_by_every_calculator() throws Exception {
+		AsyncSimilarityScorer scorer = new AsyncSimilarityScorer();
+		try {
+			double[] scores = scorer.score("martha", "marhta", 10, TimeUnit.SECONDS).get();
+			assertEquals(4, scores.length);
+			assertEquals(new CosineSimilarity().calculate("martha", "marhta"), scores[0], 0);
+			assertEquals(new JaccardSimilarity().calculate("martha", "marhta"), scores[1], 0);
+			assertEquals(new SorensenSimilarity().calculate("martha", "marhta"), scores[2], 0);
+			assertEquals(new JaroWinklerSimilarity().calculate("martha", "marhta"), scores[3], 0);
+		} finally {
+			scorer.close();
+		}
+	}
+
+	@Test
+	public void Batches_are_row_major() throws Exception {
+		List<String> ones = new ArrayList<String>();
+		List<String> twos = new ArrayList<String>();
+		for(int i = 0; i < 1000; i++){
+			ones.add("string" + i);
+			twos.add("strung" + (i * 7));
+		}
+		ISimilarityCalculator jaroWinkler = new JaroWinklerSimilarity();
+		ISimilarityCalculator jaccard = new JaccardSimilarity();
+		AsyncSimilarityScorer scorer = new AsyncSimilarityScorer(jaroWinkler, jaccard);
+		try {
+			double[] scores = scorer.score(ones, twos, 10, TimeUnit.SECONDS).get();
+			assertEquals(2000, scores.length);
+			for(int i = 0; i < 1000; i++){
+				assertEquals(jaroWinkler.calculate(ones.get(i), twos.get(i)), scores[i * 2], 0);
+				assertEquals(jaccard.calculate(ones.get(i), twos.get(i)), scores[i * 2 + 1], 0);
+			}
+		} finally {
+			scorer.close();
+		}
+	}
+
+	@Test
+	public void Missed_deadlines_fail_and_cancel_stragglers() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		ISimilarityCalculator slow = new JaroWinklerSimilarity(){
+			@Override
+			public double calculate(String stringOne, String stringTwo){
+				calls.incrementAndGet();
+				try {
+					release.await();
+				} catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+				return super.calculate(stringOne, stringTwo);
+			}
+		};
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < 1000; i++){
+			strings.add("string" + i);
+		}
+		//One thread, so the slices queue up behind the first
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			AsyncSimilarityScorer scorer = new AsyncSimilarityScorer(executor, slow);
+			CompletableFuture<double[]> future =
+				scorer.score(strings, strings, 50, TimeUnit.MILLISECONDS);
+			try {
+				future.get();
+				fail();
+			} catch(ExecutionException e){
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			release.countDown();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			//The running slice stops after its current pair; the others never start
+			assertEquals(1, calls.get());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void Calculator_failures_fail_the_request() throws Exception {
+		ISimilarityCalculator broken = new JaroWinklerSimilarity(){
+			@Override
+			public IProfile prepare(String string){
+				throw new IllegalStateException();
+			}
+			@Override
+			public double calculate(String stringOne, String stringTwo){
+				throw new IllegalStateException("broken");
+			}
+		};
+		AsyncSimilarityScorer scorer = new AsyncSimilarityScorer(broken);
+		try {
+			scorer.score("a", "b", 10, TimeUnit.SECONDS).get();
+			fail();
+		} catch(ExecutionException e){
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		} finally {
+			scorer.close();
+		}
+	}
+}
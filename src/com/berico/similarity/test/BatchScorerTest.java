@@ -0,0 +1,84 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.berico.similarity.BatchScorer;
+import com.berico.similarity.IScoreListener;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaroWinklerSimilarity;
+
+public class BatchScorerTest {
+
+	ISimilarityCalculator calculator = new JaroWinklerSimilarity();
+	BatchScorer scorer = new BatchScorer(calculator);
+
+	//Deliberately not a multiple of the block size
+	List<String> queries = randomStrings(new Random(1), 150);
+	List<String> references = randomStrings(new Random(2), 97);
+
+	@Test
+	public void Score_one_matches_serial_scoring(){
+		double[] scores = scorer.scoreOne("martha", references);
+		assertEquals(references.size(), scores.length);
+		for(int j = 0; j < references.size(); j++){
+			assertEquals(calculator.calculate("martha", references.get(j)), scores[j], 0);
+		}
+	}
+
+	@Test
+	public void Cross_product_matches_serial_scoring(){
+		double[] scores = scorer.scoreCrossProduct(queries, references);
+		assertEquals(queries.size() * references.size(), scores.length);
+		for(int i = 0; i < queries.size(); i++){
+			for(int j = 0; j < references.size(); j++){
+				assertEquals(
+					calculator.calculate(queries.get(i), references.get(j)),
+					scores[i * references.size() + j], 0);
+			}
+		}
+	}
+
+	@Test
+	public void All_pairs_scores_each_distinct_pair_once(){
+		int n = queries.size();
+		double[] scores = scorer.scoreAllPairs(queries);
+		assertEquals(n * (n - 1) / 2, scores.length);
+		for(int i = 0; i < n; i++){
+			for(int j = i + 1; j < n; j++){
+				assertEquals(
+					calculator.calculate(queries.get(i), queries.get(j)),
+					scores[BatchScorer.triangleIndex(i, j, n)], 0);
+			}
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		scorer.scoreAllPairs(queries, new IScoreListener(){
+			@Override
+			public void score(int one, int two, double score){
+				assertTrue(one < two);
+				count.incrementAndGet();
+			}
+		});
+		assertEquals(n * (n - 1) / 2, count.get());
+	}
+
+	private static List<String> randomStrings(Random random, int count){
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			StringBuilder builder = new StringBuilder();
+			int length = 3 + random.nextInt(12);
+			for(int c = 0; c < length; c++){
+				builder.append((char) ('a' + random.nextInt(8)));
+			}
+			strings.add(builder.toString());
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,59 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.berico.similarity.CachingSimilarityCalculator;
+import com.berico.similarity.IProfile;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.LruCache;
+
+public class CachingSimilarityCalculatorTest {
+
+	@Test
+	public void Reversed_pairs_hit_the_same_entry(){
+		CachingSimilarityCalculator cache =
+			new CachingSimilarityCalculator(new JaroWinklerSimilarity(), 100, 100);
+		double score = cache.calculate("martha", "marhta");
+		assertEquals(score, cache.calculate("marhta", "martha"), 0);
+		assertEquals(score, new JaroWinklerSimilarity().calculate("martha", "marhta"), 0);
+		assertEquals(1, cache.getScoreCache().hits());
+		assertEquals(1, cache.getScoreCache().misses());
+	}
+
+	@Test
+	public void Profiles_are_reused(){
+		CachingSimilarityCalculator cache =
+			new CachingSimilarityCalculator(new JaroWinklerSimilarity(), 0, 100);
+		IProfile profile = cache.prepare("martha");
+		assertSame(profile, cache.prepare("martha"));
+		assertNull(cache.getScoreCache());
+	}
+
+	@Test
+	public void Caches_are_bounded_and_evict_least_recently_used(){
+		LruCache<String, String> cache = new LruCache<String, String>(2, 1);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.get("a");
+		cache.put("c", "3");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.evictions());
+		assertEquals("1", cache.get("a"));
+		assertNull(cache.get("b"));
+	}
+
+	@Test
+	public void Stripes_add_up_to_the_capacity(){
+		//Capacities that don't divide evenly, and one too small for
+		//the stripes asked for
+		for(int[] sizing : new int[][]{ { 10, 4 }, { 1001, 16 }, { 3, 3 }, { 5, 8 } }){
+			LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(sizing[0], sizing[1]);
+			for(int i = 0; i < 100 * sizing[0]; i++){
+				cache.put(i, i);
+			}
+			assertEquals(sizing[0], cache.size());
+		}
+	}
+}
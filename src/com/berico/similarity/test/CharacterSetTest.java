@@ -0,0 +1,82 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterSet;
+import com.berico.similarity.CharacterVectorUtils;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.SorensenSimilarity;
+
+public class CharacterSetTest {
+
+	String testString1 = "unicorn giggles";
+	String testString2 = "clown shoe";
+
+	//Mixes Latin-1 with Greek, CJK and a surrogate pair
+	String wideString1 = "\u00e9t\u00e9 \u03b1\u03b2\u03b3 \u4e2d\u6587 \ud83d\ude00";
+	String wideString2 = "\u03b3\u03b1\u03bc\u03b1 \u4e2d \u00e9 \ud83d\ude01";
+
+	@Test
+	public void Set_sizes_match_the_collection_based_utilities(){
+		assertEquals(13, CharacterSet.unionSize(testString1, testString2));
+		assertEquals(7, CharacterSet.intersectionSize(testString1, testString2));
+		assertEquals(11, CharacterSet.of(testString1).size());
+	}
+
+	@Test
+	public void Wide_characters_use_the_sorted_fallback(){
+		assertEquals(
+			CharacterVectorUtils.union(wideString1, wideString2).size(),
+			CharacterSet.unionSize(wideString1, wideString2));
+		assertEquals(
+			CharacterVectorUtils.intersect(wideString1, wideString2).size(),
+			CharacterSet.intersectionSize(wideString1, wideString2));
+
+		CharacterSet set = CharacterSet.of(wideString1);
+		assertTrue(set.contains('\u4e2d'));
+		assertTrue(set.contains('\u00e9'));
+		assertFalse(set.contains('\u03bc'));
+		assertEquals(
+			CharacterSet.intersectionSize(wideString1, wideString2),
+			set.intersectionSize(CharacterSet.of(wideString2)));
+	}
+
+	@Test
+	public void Random_strings_agree_with_the_collection_based_utilities(){
+		Random random = new Random(42);
+		for(int i = 0; i < 500; i++){
+			String one = randomString(random);
+			String two = randomString(random);
+			int union = CharacterVectorUtils.union(one, two).size();
+			int intersect = CharacterVectorUtils.intersect(one, two).size();
+
+			assertEquals(union, CharacterSet.unionSize(one, two));
+			assertEquals(intersect, CharacterSet.intersectionSize(one, two));
+			assertEquals(union, CharacterSet.of(one).unionSize(CharacterSet.of(two)));
+			assertEquals(
+				(double) intersect / union,
+				new JaccardSimilarity().calculate(one, two), 0);
+			assertEquals(
+				(double) (2 * intersect) / (one.length() + two.length()),
+				new SorensenSimilarity().calculate(one, two), 0);
+		}
+	}
+
+	private static String randomString(Random random){
+		StringBuilder builder = new StringBuilder();
+		int length = 1 + random.nextInt(40);
+		for(int i = 0; i < length; i++){
+			//Mostly ASCII, with the occasional character well outside Latin-1
+			if(random.nextInt(5) == 0){
+				builder.append((char) (0x100 + random.nextInt(0x300)));
+			} else {
+				builder.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -82,5 +82,21 @@ public class CharacterVectorUtilsTest {
 				sortAlphabetically(testStringToCharacterSet).toArray(), 
 				sortAlphabetically(stringToCharacterSetExpected).toArray());
 	}
+
+	@Test
+	public void testStringToCodePointSet(){
+		//Two emoji sharing a high surrogate are three members as chars
+		//(one high, two low surrogates), but two as code points
+		String emoji = new StringBuilder().appendCodePoint(0x1F600)
+			.appendCodePoint(0x1F601).appendCodePoint(0x1F600).append('a').toString();
+		assertEquals(4, stringToCharacterSet(emoji).size());
+		Collection<Integer> codePoints = stringToCodePointSet(emoji);
+		assertEquals(3, codePoints.size());
+		assertTrue(codePoints.contains(0x1F600));
+		assertTrue(codePoints.contains(0x1F601));
+		assertTrue(codePoints.contains((int) 'a'));
+		//A lone surrogate is kept
+		assertTrue(stringToCodePointSet("x\uD83D").contains(0xD83D));
+	}
 	
 }
@@ -0,0 +1,120 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CompositeSimilarityCalculator;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.IProfile;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+
+public class CompositeSimilarityCalculatorTest {
+
+	ISimilarityCalculator[] calculators = new ISimilarityCalculator[]{
+		new JaroWinklerSimilarity(), new JaccardSimilarity(), new CosineSimilarity()
+	};
+
+	double[] weights = new double[]{ 0.5, 0.3, 0.2 };
+
+	@Test
+	public void Score_is_the_weighted_mean(){
+		CompositeSimilarityCalculator composite =
+			new CompositeSimilarityCalculator(calculators, weights, 0.8);
+		double expected = 0;
+		for(int i = 0; i < calculators.length; i++){
+			expected += weights[i] * calculators[i].calculate("martha", "marhta");
+		}
+		assertEquals(expected, composite.calculate("martha", "marhta"), 1e-12);
+		assertEquals(expected, composite.calculate(
+			composite.prepare("martha"), composite.prepare("marhta")), 1e-12);
+	}
+
+	@Test
+	public void Pairs_below_the_threshold_score_zero(){
+		Random random = new Random(11);
+		//Weights that don't sum to one, so scaling differences would show
+		double[] weights = new double[]{ 5, 3, 2 };
+		for(double threshold : new double[]{ 0.3, 0.6, 0.85 }){
+			CompositeSimilarityCalculator composite =
+				new CompositeSimilarityCalculator(calculators, weights, threshold);
+			for(int i = 0; i < 20000; i++){
+				String one = randomString(random);
+				String two = (random.nextInt(4) == 0)? mutate(random, one) : randomString(random);
+				double exact = 0;
+				for(int c = 0; c < calculators.length; c++){
+					exact += weights[c] * calculators[c].calculate(one, two);
+				}
+				exact /= 10;
+				double score = composite.calculate(one, two);
+				if(exact >= threshold + 1e-12){
+					assertEquals(exact, score, 1e-12);
+				} else if(exact < threshold - 1e-12){
+					assertEquals(0d, score, 0);
+				}
+				boolean accepted = score > 0;
+				assertEquals(accepted, composite.accepts(one, two));
+				IProfile profileOne = composite.prepare(one);
+				IProfile profileTwo = composite.prepare(two);
+				assertEquals(accepted, composite.accepts(profileOne, profileTwo));
+				assertEquals(score, composite.calculate(profileOne, profileTwo), 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void Scores_exactly_at_the_threshold_are_accepted_everywhere(){
+		double[] weights = new double[]{ 0.7, 0.2, 0.3 };
+		CompositeSimilarityCalculator exact =
+			new CompositeSimilarityCalculator(calculators, weights, 0);
+		for(String[] pair : new String[][]{ { "martha", "marhta" }, { "dwayne", "duane" },
+				{ "abcd", "bcda" } }){
+			double score = exact.calculate(pair[0], pair[1]);
+			CompositeSimilarityCalculator composite =
+				new CompositeSimilarityCalculator(calculators, weights, score);
+			assertEquals(score, composite.calculate(pair[0], pair[1]), 0);
+			assertTrue(composite.accepts(pair[0], pair[1]));
+			assertTrue(composite.accepts(composite.prepare(pair[0]), composite.prepare(pair[1])));
+		}
+	}
+
+	@Test
+	public void Order_is_learned_from_costs(){
+		ISimilarityCalculator slow = new JaccardSimilarity(){
+			@Override
+			public double calculate(String stringOne, String stringTwo){
+				long start = System.nanoTime();
+				while(System.nanoTime() - start < 20000){
+					//Burn time
+				}
+				return super.calculate(stringOne, stringTwo);
+			}
+		};
+		CompositeSimilarityCalculator composite = new CompositeSimilarityCalculator(
+			new ISimilarityCalculator[]{ slow, new JaroWinklerSimilarity() },
+			new double[]{ 0.5, 0.5 }, 0.9);
+		assertArrayEquals(new int[]{ 0, 1 }, composite.getOrder());
+		for(int i = 0; i < 100000; i++){
+			composite.calculate("martha", "marhta");
+		}
+		assertArrayEquals(new int[]{ 1, 0 }, composite.getOrder());
+	}
+
+	private static String randomString(Random random){
+		char[] chars = new char[3 + random.nextInt(12)];
+		for(int i = 0; i < chars.length; i++){
+			chars[i] = (char) ('a' + random.nextInt(8));
+		}
+		return new String(chars);
+	}
+
+	private static String mutate(Random random, String string){
+		char[] chars = string.toCharArray();
+		chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(8));
+		return new String(chars);
+	}
+}
@@ -0,0 +1,83 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterVectorUtils;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.VectorMath;
+
+public class CosineSimilarityTest {
+
+	CosineSimilarity cosine = new CosineSimilarity();
+
+	@Test
+	public void Identical_strings_are_completely_similar(){
+		assertEquals(1d, cosine.calculate("martha", "martha"), 1e-12);
+		assertEquals(1d, cosine.calculate("string", "gnirts"), 1e-12);
+	}
+
+	@Test
+	public void Disjoint_strings_are_not_similar(){
+		assertEquals(0d, cosine.calculate("abc", "xyz"), 0);
+	}
+
+	@Test
+	public void Histograms_match_the_frequency_vector_implementation_exactly(){
+		Random random = new Random(7);
+		for(int i = 0; i < 500; i++){
+			String one = randomString(random, 1 + random.nextInt(300));
+			String two = randomString(random, 1 + random.nextInt(300));
+			assertEquals(
+				frequencyVectorCosine(one, two), cosine.calculate(one, two), 0);
+		}
+	}
+
+	/**
+	 * The original union / frequency-of-occurrence vector formulation,
+	 * kept here as the reference the primitive version must agree with.
+	 */
+	private static double frequencyVectorCosine(String one, String two){
+		Collection<Character> union =
+			CharacterVectorUtils.sortAlphabetically(CharacterVectorUtils.union(one, two));
+		Collection<Integer> vectorOne = new ArrayList<Integer>();
+		Collection<Integer> vectorTwo = new ArrayList<Integer>();
+		for(Character c : union){
+			vectorOne.add(count(one, c));
+			vectorTwo.add(count(two, c));
+		}
+		try {
+			return VectorMath.dotp(vectorOne, vectorTwo) /
+				(VectorMath.magnitude(vectorOne) * VectorMath.magnitude(vectorTwo));
+		} catch (Exception e){
+			throw new AssertionError(e);
+		}
+	}
+
+	private static int count(String string, char character){
+		int count = 0;
+		for(int i = 0; i < string.length(); i++){
+			if(string.charAt(i) == character){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static String randomString(Random random, int length){
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < length; i++){
+			if(random.nextInt(6) == 0){
+				builder.append((char) (0x400 + random.nextInt(40)));
+			} else {
+				builder.append((char) ('a' + random.nextInt(12)));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,149 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.EditDistanceSimilarity;
+import com.berico.similarity.LevenshteinSimilarity;
+import com.berico.similarity.OptimalStringAlignmentSimilarity;
+
+public class EditDistanceSimilarityTest {
+
+	@Test
+	public void Known_distances(){
+		LevenshteinSimilarity levenshtein = new LevenshteinSimilarity();
+		OptimalStringAlignmentSimilarity osa = new OptimalStringAlignmentSimilarity();
+		assertEquals(3, levenshtein.distance("kitten", "sitting"));
+		assertEquals(2, levenshtein.distance("ca", "ac"));
+		assertEquals(1, osa.distance("ca", "ac"));
+		assertEquals(3, osa.distance("ca", "abc"));
+		assertEquals(0, osa.distance("", ""));
+		assertEquals(5, osa.distance("", "abcde"));
+		assertEquals(1 - 3d / 7d, levenshtein.calculate("kitten", "sitting"), 1e-12);
+		assertEquals(1d, levenshtein.calculate("", ""), 0);
+		assertEquals(levenshtein.calculate("kitten", "sitting"), levenshtein.calculate(
+			levenshtein.prepare("kitten"), levenshtein.prepare("sitting")), 0);
+	}
+
+	@Test
+	public void Distances_match_dynamic_programming(){
+		Random random = new Random(17);
+		LevenshteinSimilarity levenshtein = new LevenshteinSimilarity();
+		OptimalStringAlignmentSimilarity osa = new OptimalStringAlignmentSimilarity();
+		//Lengths either side of one and several 64-character words
+		for(int i = 0; i < 3000; i++){
+			String one = randomString(random, random.nextInt(200), 4);
+			String two = (random.nextBoolean())? mutate(random, one)
+				: randomString(random, random.nextInt(200), 4);
+			assertEquals(dynamicProgramming(one, two, false), levenshtein.distance(one, two));
+			assertEquals(dynamicProgramming(one, two, true), osa.distance(one, two));
+		}
+	}
+
+	@Test
+	public void Bounded_distances_are_exact_within_the_bound(){
+		Random random = new Random(19);
+		EditDistanceSimilarity[] calculators = new EditDistanceSimilarity[]{
+			new LevenshteinSimilarity(), new OptimalStringAlignmentSimilarity()
+		};
+		for(int i = 0; i < 3000; i++){
+			String one = randomString(random, random.nextInt(400), 3);
+			String two = mutate(random, one);
+			int k = random.nextInt(40);
+			for(int c = 0; c < calculators.length; c++){
+				int exact = dynamicProgramming(one, two, c == 1);
+				assertEquals(Math.min(exact, k + 1), calculators[c].distance(one, two, k));
+			}
+		}
+	}
+
+	@Test
+	public void Minimum_scores_zero_out_distant_pairs(){
+		Random random = new Random(23);
+		LevenshteinSimilarity exact = new LevenshteinSimilarity();
+		LevenshteinSimilarity bounded = new LevenshteinSimilarity(0.8);
+		for(int i = 0; i < 2000; i++){
+			String one = randomString(random, 1 + random.nextInt(300), 26);
+			String two = mutate(random, one);
+			double score = exact.calculate(one, two);
+			assertEquals((score >= 0.8)? score : 0d, bounded.calculate(one, two), 0);
+		}
+	}
+
+	@Test
+	public void Long_patterns_need_masks_only_per_distinct_character(){
+		Random random = new Random(29);
+		String one = randomString(random, 100000, 26);
+		//Substitutions far enough apart that each costs exactly one edit
+		StringBuilder builder = new StringBuilder(one);
+		for(int position = 50; position < builder.length(); position += 1000){
+			builder.setCharAt(position, '#');
+		}
+		String two = builder.toString();
+		assertEquals(100, new LevenshteinSimilarity().distance(one, two));
+		assertEquals(100, new OptimalStringAlignmentSimilarity().distance(one, two, 500));
+		assertEquals(1 - 100 / 100000d, new LevenshteinSimilarity(0.9).calculate(one, two), 1e-12);
+		//Unrelated strings are rejected by the bound, not scored in full
+		assertEquals(0d, new LevenshteinSimilarity(0.9).calculate(one,
+			randomString(random, 100000, 26)), 0);
+	}
+
+	private static int dynamicProgramming(String one, String two, boolean transpositions){
+		int n = one.length(), m = two.length();
+		int[][] d = new int[n + 1][m + 1];
+		for(int i = 0; i <= n; i++){
+			d[i][0] = i;
+		}
+		for(int j = 0; j <= m; j++){
+			d[0][j] = j;
+		}
+		for(int i = 1; i <= n; i++){
+			for(int j = 1; j <= m; j++){
+				int cost = (one.charAt(i - 1) == two.charAt(j - 1))? 0 : 1;
+				d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+				if(transpositions && i > 1 && j > 1 && one.charAt(i - 1) == two.charAt(j - 2)
+						&& one.charAt(i - 2) == two.charAt(j - 1)){
+					d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+				}
+			}
+		}
+		return d[n][m];
+	}
+
+	private static String randomString(Random random, int length, int alphabet){
+		char[] chars = new char[length];
+		for(int i = 0; i < length; i++){
+			//Mix in characters beyond Latin-1
+			chars[i] = (random.nextInt(8) == 0)? (char) (0x4E00 + random.nextInt(alphabet))
+				: (char) ('a' + random.nextInt(alphabet));
+		}
+		return new String(chars);
+	}
+
+	private static String mutate(Random random, String string){
+		StringBuilder builder = new StringBuilder(string);
+		int edits = random.nextInt(1 + string.length() / 4);
+		for(int e = 0; e < edits && builder.length() > 1; e++){
+			int position = random.nextInt(builder.length() - 1);
+			switch(random.nextInt(4)){
+			case 0:
+				builder.deleteCharAt(position);
+				break;
+			case 1:
+				builder.insert(position, (char) ('a' + random.nextInt(26)));
+				break;
+			case 2:
+				builder.setCharAt(position, (char) ('a' + random.nextInt(26)));
+				break;
+			default:
+				char c = builder.charAt(position);
+				builder.setCharAt(position, builder.charAt(position + 1));
+				builder.setCharAt(position + 1, c);
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,149 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.berico.similarity.BatchScorer;
+import com.berico.similarity.IBoundedSimilarityCalculator;
+import com.berico.similarity.InstrumentedSimilarityCalculator;
+import com.berico.similarity.InvertedIndex;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerDictionary;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.LogHistogram;
+import com.berico.similarity.SearchResults;
+import com.berico.similarity.SimilarityMetrics;
+import com.berico.similarity.TopKSearcher;
+
+public class InstrumentedSimilarityCalculatorTest {
+
+	@Test
+	public void Calls_are_counted_and_scores_unchanged(){
+		SimilarityMetrics metrics = new SimilarityMetrics(1);
+		InstrumentedSimilarityCalculator calculator =
+			InstrumentedSimilarityCalculator.wrap(new JaroWinklerSimilarity(), metrics);
+		assertTrue(calculator instanceof IBoundedSimilarityCalculator);
+		assertEquals(new JaroWinklerSimilarity().calculate("martha", "marhta"),
+			calculator.calculate("martha", "marhta"), 0);
+		calculator.calculate(calculator.prepare("dwayne"), calculator.prepare("duane"));
+		calculator.prepare("a much longer string that was only prepared");
+		assertEquals(2, metrics.getCalculateCalls());
+		assertEquals(3, metrics.getPrepareCalls());
+		assertEquals(2, metrics.getSampledCalls());
+		assertEquals(6, metrics.getMaxInputLength());
+		assertEquals(43, metrics.getMaxPrepareLength());
+		assertTrue(metrics.getScoreP99() > 0.8);
+		metrics.reset();
+		assertEquals(0, metrics.getCalculateCalls());
+	}
+
+	@Test
+	public void Sampling_times_a_fraction_of_calls(){
+		SimilarityMetrics metrics = new SimilarityMetrics(16);
+		InstrumentedSimilarityCalculator calculator =
+			InstrumentedSimilarityCalculator.wrap(new JaroWinklerSimilarity(), metrics);
+		for(int i = 0; i < 16000; i++){
+			calculator.calculate("martha", "marhta");
+		}
+		assertEquals(16000, metrics.getCalculateCalls());
+		assertTrue(metrics.getSampledCalls() > 500 && metrics.getSampledCalls() < 1500);
+	}
+
+	@Test
+	public void Histogram_percentiles_are_within_a_bucket(){
+		LogHistogram histogram = new LogHistogram();
+		for(int value = 1; value <= 100000; value++){
+			histogram.record(value);
+		}
+		assertEquals(100000, histogram.count());
+		assertEquals(100000, histogram.max());
+		assertEquals(50000.5, histogram.mean(), 1e-9);
+		for(double percentile : new double[]{ 1, 50, 90, 99, 99.9 }){
+			double exact = percentile * 1000;
+			long estimate = histogram.percentile(percentile);
+			assertTrue(estimate >= exact && estimate <= exact * 1.0625);
+		}
+		assertEquals(100000, histogram.percentile(100));
+	}
+
+	@Test
+	public void Searches_record_pruning(){
+		Random random = new Random(5);
+		List<String> references = new ArrayList<String>();
+		for(int i = 0; i < 2000; i++){
+			char[] chars = new char[5 + random.nextInt(30)];
+			for(int c = 0; c < chars.length; c++){
+				chars[c] = (char) ('a' + random.nextInt(26));
+			}
+			references.add(new String(chars));
+		}
+		SimilarityMetrics metrics = new SimilarityMetrics();
+		TopKSearcher searcher = new TopKSearcher(
+			InstrumentedSimilarityCalculator.wrap(new JaroWinklerSimilarity(), metrics), references);
+		SearchResults results = searcher.search("abcdefghijklmnopqrstuvwxy", 10, 0.95);
+		assertEquals(1, metrics.getSearches());
+		assertEquals(results.comparisons, metrics.getSearchComparisons());
+		assertEquals(results.pruned, metrics.getSearchPruned());
+		assertEquals((double) results.pruned / references.size(), metrics.getPruneRate(), 1e-12);
+		assertTrue(results.pruned > 0);
+		assertEquals(1d, metrics.getEarlyExitRate(), 0);
+	}
+
+	@Test
+	public void Every_search_path_records(){
+		List<String> references = new ArrayList<String>();
+		for(String name : new String[]{ "martha", "marhta", "dwayne", "duane", "dixon",
+				"dicksonx", "jellyfish", "smellyfish", "a", "an entirely different string" }){
+			references.add(name);
+		}
+		SimilarityMetrics metrics = new SimilarityMetrics();
+		InstrumentedSimilarityCalculator jaccard =
+			InstrumentedSimilarityCalculator.wrap(new JaccardSimilarity(), metrics);
+		SearchResults results = new InvertedIndex(jaccard, references).search("martha", 3, 0.9);
+		//The prefix filter prunes without stopping early
+		assertEquals(1, metrics.getSearches());
+		assertEquals(results.pruned, metrics.getSearchPruned());
+		assertTrue(results.pruned > 0);
+		assertEquals(0d, metrics.getEarlyExitRate(), 0);
+
+		metrics.reset();
+		InstrumentedSimilarityCalculator jaroWinkler =
+			InstrumentedSimilarityCalculator.wrap(new JaroWinklerSimilarity(), metrics);
+		results = new JaroWinklerDictionary(jaroWinkler, references).search("martha", 3, 0.9);
+		assertEquals(1, metrics.getSearches());
+		assertEquals(results.comparisons, metrics.getSearchComparisons());
+		assertEquals(1d, metrics.getEarlyExitRate(), 0);
+
+		metrics.reset();
+		new BatchScorer(jaroWinkler).scoreAllPairs(references);
+		assertEquals(1, metrics.getSearches());
+		assertEquals(45, metrics.getSearchComparisons());
+		assertEquals(45, metrics.getCalculateCalls());
+	}
+
+	@Test
+	public void Metrics_are_readable_over_JMX() throws Exception {
+		SimilarityMetrics metrics = new SimilarityMetrics(1);
+		InstrumentedSimilarityCalculator calculator =
+			InstrumentedSimilarityCalculator.wrap(new JaroWinklerSimilarity(), metrics);
+		ObjectName name = metrics.register("jmx-test");
+		try {
+			calculator.calculate("martha", "marhta");
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1L, server.getAttribute(name, "CalculateCalls"));
+			assertEquals(6L, server.getAttribute(name, "MaxInputLength"));
+		} finally {
+			metrics.unregister();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+}
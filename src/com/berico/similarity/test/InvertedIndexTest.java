@@ -0,0 +1,85 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterNGramTokenizer;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.InvertedIndex;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.SearchResults;
+import com.berico.similarity.SkipGramTokenizer;
+import com.berico.similarity.SorensenSimilarity;
+
+public class InvertedIndexTest {
+
+	ISimilarityCalculator[] calculators = new ISimilarityCalculator[]{
+		new CosineSimilarity(),
+		new JaccardSimilarity(),
+		new SorensenSimilarity(),
+		new CosineSimilarity(new CharacterNGramTokenizer(2, true)),
+		new JaccardSimilarity(new CharacterNGramTokenizer(3, true)),
+		new SorensenSimilarity(new SkipGramTokenizer(2, 1))
+	};
+
+	@Test
+	public void Candidates_include_every_qualifying_reference(){
+		Random random = new Random(11);
+		List<String> references = randomStrings(random, 3000);
+		for(ISimilarityCalculator calculator : calculators){
+			InvertedIndex index = new InvertedIndex(calculator, references);
+			for(int q = 0; q < 30; q++){
+				String query = randomStrings(random, 1).get(0);
+				for(double threshold : new double[]{ 0.3, 0.6, 0.9 }){
+					int[] candidates = index.candidates(query, threshold);
+					for(int id = 0; id < references.size(); id++){
+						if(calculator.calculate(query, references.get(id)) >= threshold){
+							assertTrue(
+								calculator.getClass().getSimpleName() + " missed " + references.get(id),
+								Arrays.binarySearch(candidates, id) >= 0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void Search_returns_scored_matches_above_the_threshold(){
+		List<String> references = Arrays.asList(
+			"berico technologies", "berico tech", "acme corporation", "zzz");
+		InvertedIndex index = new InvertedIndex(new JaccardSimilarity(), references);
+		SearchResults results = index.search("berico technology", 10, 0.65);
+		assertEquals(2, results.size());
+		assertEquals(0, results.indexes[0]);
+		assertTrue(results.pruned > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Unsupported_calculators_are_rejected(){
+		new InvertedIndex(new JaroWinklerSimilarity(), Arrays.asList("martha"));
+	}
+
+	private static List<String> randomStrings(Random random, int count){
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			StringBuilder builder = new StringBuilder();
+			int length = 1 + random.nextInt(25);
+			for(int c = 0; c < length; c++){
+				//Skewed so that some characters are much rarer than others
+				int letter = (int) (26 * Math.pow(random.nextDouble(), 2));
+				builder.append((char) ('a' + letter));
+			}
+			strings.add(builder.toString());
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,184 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.JaroWinklerDictionary;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.SearchResults;
+
+public class JaroWinklerDictionaryTest {
+
+	JaroWinklerSimilarity[] calculators = new JaroWinklerSimilarity[]{
+		new JaroWinklerSimilarity(),
+		JaroWinklerSimilarity.builder().boostThreshold(0.7).build(),
+		JaroWinklerSimilarity.builder().minimumScore(0.6).maxPrefixLength(6).build()
+	};
+
+	@Test
+	public void Search_matches_brute_force(){
+		Random random = new Random(7);
+		List<String> entries = names(random, 3000);
+		for(JaroWinklerSimilarity calculator : calculators){
+			JaroWinklerDictionary dictionary = new JaroWinklerDictionary(calculator, entries);
+			for(int q = 0; q < 30; q++){
+				String query = (q % 2 == 0)? names(random, 1).get(0)
+					: mutate(random, entries.get(random.nextInt(entries.size())));
+				for(double threshold : new double[]{ 0, 0.7, 0.85, 0.95 }){
+					assertMatchesBruteForce(calculator, dictionary, entries, query, 10, threshold);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void Long_entries_and_queries_are_compared_directly(){
+		Random random = new Random(11);
+		List<String> entries = names(random, 500);
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < 90; i++){
+			builder.append((char) ('a' + random.nextInt(6)));
+		}
+		String longest = builder.toString();
+		entries.add(longest);
+		entries.add(longest.substring(0, 70) + "x");
+		JaroWinklerSimilarity calculator = new JaroWinklerSimilarity();
+		JaroWinklerDictionary dictionary = new JaroWinklerDictionary(calculator, entries);
+		for(String query : new String[]{ longest, longest.substring(0, 66), "abcabc", "" }){
+			for(double threshold : new double[]{ 0, 0.8 }){
+				assertMatchesBruteForce(calculator, dictionary, entries, query, 5, threshold);
+			}
+		}
+		SearchResults results = dictionary.search(longest, 1, 0.9);
+		assertEquals(entries.size() - 2, results.indexes[0]);
+		assertEquals(1d, results.scores[0], 0);
+	}
+
+	@Test
+	public void Shared_prefixes_share_nodes(){
+		List<String> entries = new ArrayList<String>();
+		for(String first : new String[]{ "JOHN", "JOHNNY", "JON", "JONATHAN" }){
+			for(String last : new String[]{ " SMITH", " SMYTHE", " SMITHSON" }){
+				entries.add(first + last);
+			}
+		}
+		entries.add("JOHN SMITH");
+		JaroWinklerDictionary dictionary =
+			new JaroWinklerDictionary(new JaroWinklerSimilarity(), entries);
+		int characters = 0;
+		for(String entry : entries){
+			characters += entry.length();
+		}
+		assertTrue(dictionary.nodes() < characters);
+		SearchResults results = dictionary.search("JOHN SMITH", 2, 0.99);
+		assertEquals(2, results.size());
+		assertEquals(1d, results.scores[0], 0);
+		assertEquals(1d, results.scores[1], 0);
+	}
+
+	@Test
+	public void High_thresholds_prune_most_entries(){
+		Random random = new Random(13);
+		List<String> entries = names(random, 5000);
+		JaroWinklerDictionary dictionary =
+			new JaroWinklerDictionary(new JaroWinklerSimilarity(), entries);
+		SearchResults results = dictionary.search(entries.get(42), 5, 0.95);
+		assertTrue(results.pruned > results.comparisons);
+		assertEquals(entries.size(), results.comparisons + results.pruned);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Subclassed_calculators_are_rejected(){
+		new JaroWinklerDictionary(new JaroWinklerSimilarity(){
+			@Override
+			public double calculate(String stringOne, String stringTwo){
+				return 1d;
+			}
+		}, names(new Random(3), 10));
+	}
+
+	private static void assertMatchesBruteForce(JaroWinklerSimilarity calculator,
+			JaroWinklerDictionary dictionary, List<String> entries, String query, int k,
+			double threshold){
+		SearchResults results = dictionary.search(query, k, threshold);
+		double[] expected = bruteForce(calculator, entries, query, k, threshold);
+		assertEquals(expected.length, results.size());
+		for(int i = 0; i < expected.length; i++){
+			assertEquals(expected[i], results.scores[i], 0);
+			assertEquals(results.scores[i],
+				calculator.calculate(query, entries.get(results.indexes[i])), 0);
+		}
+		assertEquals(entries.size(), results.comparisons + results.pruned);
+	}
+
+	/**
+	 * Score everything, keep the qualifying scores and return the best k
+	 */
+	private static double[] bruteForce(JaroWinklerSimilarity calculator,
+			List<String> entries, String query, int k, double threshold){
+		List<Double> scores = new ArrayList<Double>();
+		for(String entry : entries){
+			double score = calculator.calculate(query, entry);
+			if(score >= threshold){
+				scores.add(score);
+			}
+		}
+		Collections.sort(scores, Collections.reverseOrder());
+		double[] best = new double[Math.min(k, scores.size())];
+		for(int i = 0; i < best.length; i++){
+			best[i] = scores.get(i);
+		}
+		return best;
+	}
+
+	/**
+	 * Names over a small alphabet with a few common prefixes, so tries
+	 * share a lot and scores tie often
+	 */
+	private static List<String> names(Random random, int count){
+		String[] prefixes = new String[]{ "", "ab", "abc", "ba", "cab" };
+		List<String> names = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			StringBuilder builder = new StringBuilder(prefixes[random.nextInt(prefixes.length)]);
+			int length = random.nextInt(16);
+			for(int c = 0; c < length; c++){
+				builder.append((char) ('a' + random.nextInt(6)));
+			}
+			if(random.nextInt(20) == 0){
+				builder.append('\u00e9').append('\u4e2d');
+			}
+			names.add(builder.toString());
+		}
+		return names;
+	}
+
+	/**
+	 * Swap, drop or change a character
+	 */
+	private static String mutate(Random random, String string){
+		if(string.length() < 2){
+			return string + "a";
+		}
+		StringBuilder builder = new StringBuilder(string);
+		int i = random.nextInt(string.length() - 1);
+		switch(random.nextInt(3)){
+		case 0:
+			char c = builder.charAt(i);
+			builder.setCharAt(i, builder.charAt(i + 1));
+			builder.setCharAt(i + 1, c);
+			break;
+		case 1:
+			builder.deleteCharAt(i);
+			break;
+		default:
+			builder.setCharAt(i, 'f');
+		}
+		return builder.toString();
+	}
+}
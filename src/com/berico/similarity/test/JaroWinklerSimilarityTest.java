@@ -2,6 +2,8 @@ package com.berico.similarity.test;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import com.berico.similarity.JaroWinklerSimilarity;
 import com.berico.similarity.JaroWinklerSimilarity.MatchResults;
 
@@ -114,4 +116,128 @@ public class JaroWinklerSimilarityTest {
 		
 	}
 	
+	@Test
+	public void Jaro_winkler_similarity_matches_published_values(){
+		JaroWinklerSimilarity jaroWinkler = new JaroWinklerSimilarity();
+		
+		assertEquals(.961d, jaroWinkler.calculate("MARTHA", "MARHTA"), 0.001);
+		assertEquals(.840d, jaroWinkler.calculate("DWAYNE", "DUANE"), 0.001);
+		assertEquals(.813d, jaroWinkler.calculate("DIXON", "DICKSONX"), 0.001);
+	}
+	
+	@Test
+	public void Repeated_letters_are_only_matched_once(){
+		//Without consuming matched characters, every 'a' of the first
+		//string would match the single 'a' of the second
+		MatchResults mr = JaroWinklerSimilarity.determineMatchesAndTransposes("aaaa", "abcd");
+		
+		assertEquals(1, mr.numberOfMatches);
+		assertEquals(0, mr.numberOfTransposes);
+	}
+	
+	@Test
+	public void Strings_without_matches_are_not_similar(){
+		assertEquals(0d, (new JaroWinklerSimilarity()).calculate("abc", "xyz"), 0);
+		assertEquals(0d, (new JaroWinklerSimilarity()).calculate("", "xyz"), 0);
+	}
+	
+	@Test
+	public void Short_and_long_strings_agree_with_the_textbook_algorithm(){
+		Random random = new Random(17);
+		for(int i = 0; i < 2000; i++){
+			//Lengths straddle the 64 character bit-parallel limit
+			String one = randomString(random, 1 + random.nextInt(100));
+			String two = randomString(random, 1 + random.nextInt(100));
+			
+			MatchResults mr = JaroWinklerSimilarity.determineMatchesAndTransposes(one, two);
+			int[] expected = textbookMatchesAndTransposes(one, two);
+			
+			assertEquals(one + "/" + two, expected[0], mr.numberOfMatches);
+			assertEquals(one + "/" + two, expected[1], mr.numberOfTransposes);
+		}
+	}
+	
+	@Test
+	public void Builder_parameters_change_the_prefix_bonus(){
+		JaroWinklerSimilarity jaro = 
+			JaroWinklerSimilarity.builder().prefixScale(0).build();
+		JaroWinklerSimilarity boosted = 
+			JaroWinklerSimilarity.builder().boostThreshold(0.95).build();
+		JaroWinklerSimilarity shortPrefix = 
+			JaroWinklerSimilarity.builder().maxPrefixLength(2).build();
+		
+		//martha / marhta: Jaro of .944, common prefix of 3
+		assertEquals(.944d, jaro.calculate("martha", "marhta"), 0.001);
+		assertEquals(.944d, boosted.calculate("martha", "marhta"), 0.001);
+		assertEquals(.944d + 2 * 0.1 * (1 - .944d), 
+			shortPrefix.calculate("martha", "marhta"), 0.001);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void Builder_rejects_bonuses_that_exceed_one(){
+		JaroWinklerSimilarity.builder().prefixScale(0.3).maxPrefixLength(4).build();
+	}
+	
+	@Test
+	public void Minimum_score_only_zeroes_pairs_below_it(){
+		JaroWinklerSimilarity plain = new JaroWinklerSimilarity();
+		Random random = new Random(23);
+		for(double minimum : new double[]{ 0.5, 0.8, 0.9 }){
+			JaroWinklerSimilarity cutoff = 
+				JaroWinklerSimilarity.builder().minimumScore(minimum).build();
+			for(int i = 0; i < 2000; i++){
+				String one = randomString(random, 1 + random.nextInt(100));
+				String two = randomString(random, 1 + random.nextInt(100));
+				double score = plain.calculate(one, two);
+				
+				assertEquals(score < minimum? 0d : score, cutoff.calculate(one, two), 0);
+			}
+		}
+	}
+	
+	/**
+	 * The usual flag-array formulation of Jaro matching, iterating over
+	 * the shorter string
+	 */
+	private static int[] textbookMatchesAndTransposes(String one, String two){
+		if(one.length() > two.length()){
+			return textbookMatchesAndTransposes(two, one);
+		}
+		int window = Math.max(0, Math.max(one.length(), two.length()) / 2 - 1);
+		boolean[] oneMatched = new boolean[one.length()];
+		boolean[] twoMatched = new boolean[two.length()];
+		int matches = 0;
+		for(int i = 0; i < one.length(); i++){
+			int end = Math.min(two.length(), i + window + 1);
+			for(int j = Math.max(0, i - window); j < end; j++){
+				if(!twoMatched[j] && one.charAt(i) == two.charAt(j)){
+					oneMatched[i] = twoMatched[j] = true;
+					matches++;
+					break;
+				}
+			}
+		}
+		int halfTransposes = 0;
+		int k = 0;
+		for(int i = 0; i < one.length(); i++){
+			if(oneMatched[i]){
+				while(!twoMatched[k]){ k++; }
+				if(one.charAt(i) != two.charAt(k)){ halfTransposes++; }
+				k++;
+			}
+		}
+		return new int[]{ matches, halfTransposes / 2 };
+	}
+	
+	private static String randomString(Random random, int length){
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < length; i++){
+			//A small alphabet forces plenty of repeated letters, with
+			//the occasional character from outside Latin-1
+			builder.append(random.nextInt(10) == 0? 
+				(char) (0x3B1 + random.nextInt(3)) : (char) ('a' + random.nextInt(5)));
+		}
+		return builder.toString();
+	}
+	
 }
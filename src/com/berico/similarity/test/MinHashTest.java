@@ -0,0 +1,131 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterNGramTokenizer;
+import com.berico.similarity.IScoreListener;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.LshIndex;
+import com.berico.similarity.MinHash;
+import com.berico.similarity.SearchResults;
+
+public class MinHashTest {
+
+	JaccardSimilarity jaccard = new JaccardSimilarity(new CharacterNGramTokenizer(3, true));
+	MinHash minHash = new MinHash(jaccard, 128, 42L);
+
+	@Test
+	public void Estimates_are_within_the_documented_error_bound(){
+		Random random = new Random(5);
+		//Hoeffding at 99.9% confidence: with 200 pairs we expect no misses
+		double bound = MinHash.errorBound(minHash.permutations(), 0.999);
+		for(int i = 0; i < 200; i++){
+			String one = randomString(random, 40);
+			String two = mutate(random, one, random.nextInt(20));
+			double estimate = MinHash.estimate(minHash.signature(one), minHash.signature(two));
+			assertEquals(jaccard.calculate(one, two), estimate, bound);
+		}
+	}
+
+	@Test
+	public void Identical_strings_have_identical_signatures(){
+		assertEquals(1d, MinHash.estimate(
+			minHash.signature("berico technologies"), minHash.signature("berico technologies")), 0);
+		assertEquals(0d, MinHash.estimate(
+			minHash.signature(""), minHash.signature("berico")), 0);
+	}
+
+	@Test
+	public void Candidate_pairs_are_unique_and_catch_near_duplicates(){
+		Random random = new Random(9);
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < 500; i++){
+			String original = randomString(random, 50);
+			strings.add(original);
+			//A near duplicate of every other string
+			if(i % 2 == 0){
+				strings.add(mutate(random, original, 1));
+			}
+		}
+		LshIndex index = new LshIndex(minHash, 32, 4, strings);
+		final Set<Long> seen = new HashSet<Long>();
+		index.candidatePairs(new IScoreListener(){
+			@Override
+			public synchronized void score(int one, int two, double estimate){
+				assertTrue(one < two);
+				assertTrue(seen.add(((long) one << 32) | two));
+			}
+		});
+		final List<Double> found = new ArrayList<Double>();
+		index.similarPairs(0.8, new IScoreListener(){
+			@Override
+			public synchronized void score(int one, int two, double score){
+				found.add(score);
+			}
+		});
+		int expected = 0;
+		for(int i = 0; i < strings.size(); i++){
+			for(int j = i + 1; j < strings.size(); j++){
+				if(jaccard.calculate(strings.get(i), strings.get(j)) >= 0.8){
+					expected++;
+				}
+			}
+		}
+		assertTrue(expected >= 250);
+		//The S-curve is near 1 well above the threshold, so at most a
+		//handful of true pairs may be missed
+		assertTrue(found.size() >= expected - 3);
+		assertTrue(found.size() <= expected);
+		//Far fewer candidates than pairs
+		assertTrue(seen.size() < strings.size() * 10);
+	}
+
+	@Test
+	public void Search_finds_a_near_duplicate(){
+		List<String> strings = new ArrayList<String>();
+		strings.add("the quick brown fox jumps over the lazy dog");
+		strings.add("lorem ipsum dolor sit amet consectetur");
+		strings.add("pack my box with five dozen liquor jugs");
+		LshIndex index = new LshIndex(minHash, 16, 8, strings);
+		SearchResults results = index.search("the quick brown fox jumped over the lazy dog", 1, 0.5);
+		assertEquals(1, results.size());
+		assertEquals(0, results.indexes[0]);
+	}
+
+	@Test
+	public void Candidate_probability_follows_the_s_curve(){
+		assertEquals(1 - Math.pow(1 - Math.pow(0.5, 4), 32),
+			LshIndex.candidateProbability(0.5, 32, 4), 1e-12);
+		assertTrue(LshIndex.candidateProbability(0.9, 32, 4) > 0.999);
+		assertTrue(LshIndex.candidateProbability(0.2, 32, 4) < 0.05);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Bands_cannot_use_more_entries_than_the_signature_has(){
+		new LshIndex(minHash, 33, 4, new ArrayList<String>());
+	}
+
+	private static String randomString(Random random, int length){
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < length; i++){
+			builder.append((char) ('a' + random.nextInt(26)));
+		}
+		return builder.toString();
+	}
+
+	private static String mutate(Random random, String string, int edits){
+		StringBuilder builder = new StringBuilder(string);
+		for(int i = 0; i < edits; i++){
+			builder.setCharAt(random.nextInt(builder.length()), (char) ('a' + random.nextInt(26)));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,137 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterNGramTokenizer;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.OffHeapReferenceStore;
+import com.berico.similarity.SearchResults;
+import com.berico.similarity.SorensenSimilarity;
+
+public class OffHeapReferenceStoreTest {
+
+	ISimilarityCalculator[] calculators = new ISimilarityCalculator[]{
+		new CosineSimilarity(),
+		new JaccardSimilarity(),
+		new SorensenSimilarity(),
+		new JaroWinklerSimilarity()
+	};
+
+	List<String> strings = randomStrings(new Random(1), 400);
+
+	@Test
+	public void Scores_match_the_calculators(){
+		OffHeapReferenceStore store = smallSegmentStore();
+		List<String> queries = randomStrings(new Random(2), 20);
+		for(ISimilarityCalculator calculator : calculators){
+			for(String query : queries){
+				OffHeapReferenceStore.Query prepared = OffHeapReferenceStore.prepare(query);
+				for(int id = 0; id < strings.size(); id++){
+					assertEquals(calculator.getClass().getSimpleName(),
+						calculator.calculate(query, strings.get(id)),
+						store.score(calculator, prepared, id), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void Entries_round_trip(){
+		OffHeapReferenceStore store = smallSegmentStore();
+		assertEquals(strings.size(), store.size());
+		for(int id = 0; id < strings.size(); id++){
+			assertEquals(strings.get(id), store.string(id));
+			assertEquals(strings.get(id).length(), store.length(id));
+		}
+	}
+
+	@Test
+	public void Saved_stores_can_be_mapped_back() throws IOException {
+		OffHeapReferenceStore store = smallSegmentStore();
+		Path path = Files.createTempFile("store", ".bin");
+		path.toFile().deleteOnExit();
+		store.save(path);
+		OffHeapReferenceStore mapped = OffHeapReferenceStore.open(path);
+		assertEquals(store.size(), mapped.size());
+		OffHeapReferenceStore.Query query = OffHeapReferenceStore.prepare(strings.get(7));
+		for(int id = 0; id < strings.size(); id++){
+			assertEquals(strings.get(id), mapped.string(id));
+			assertEquals(store.score(calculators[0], query, id), mapped.score(calculators[0], query, id), 0);
+		}
+	}
+
+	@Test
+	public void Search_matches_a_full_scan(){
+		OffHeapReferenceStore store = OffHeapReferenceStore.of(strings);
+		for(ISimilarityCalculator calculator : calculators){
+			String query = strings.get(3);
+			SearchResults results = store.search(calculator, OffHeapReferenceStore.prepare(query), 5, 0.3);
+			assertTrue(results.size() > 0);
+			assertEquals(3, results.indexes[0]);
+			assertEquals(1d, results.scores[0], 1e-12);
+			int qualifying = 0;
+			double fifth = results.scores[results.size() - 1];
+			for(String reference : strings){
+				if(calculator.calculate(query, reference) > fifth){
+					qualifying++;
+				}
+			}
+			assertTrue(qualifying < results.size());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Tokenized_calculators_are_rejected(){
+		OffHeapReferenceStore store = OffHeapReferenceStore.of(strings);
+		store.score(new JaccardSimilarity(new CharacterNGramTokenizer(2, true)),
+			OffHeapReferenceStore.prepare("abc"), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Subclassed_calculators_are_rejected(){
+		OffHeapReferenceStore store = OffHeapReferenceStore.of(strings);
+		//The built-in kernel would ignore the override
+		store.score(new JaccardSimilarity(){
+			@Override
+			public double calculate(String stringOne, String stringTwo){
+				return 1d;
+			}
+		}, OffHeapReferenceStore.prepare("abc"), 0);
+	}
+
+	private OffHeapReferenceStore smallSegmentStore(){
+		//Small segments force entries across many of them
+		OffHeapReferenceStore.Builder builder = new OffHeapReferenceStore.Builder(512);
+		for(String string : strings){
+			builder.add(string);
+		}
+		return builder.build();
+	}
+
+	private static List<String> randomStrings(Random random, int count){
+		String alphabet = "abcdefgh\u00e9\u00ff\u0100\u65e5\u672c";
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			StringBuilder builder = new StringBuilder();
+			//Occasionally longer than a segment
+			int length = (i % 97 == 0)? 300 : random.nextInt(20);
+			for(int c = 0; c < length; c++){
+				builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			strings.add(builder.toString());
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,52 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.IProfile;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.SorensenSimilarity;
+
+public class ProfileTest {
+
+	ISimilarityCalculator[] calculators = new ISimilarityCalculator[]{
+		new CosineSimilarity(),
+		new JaccardSimilarity(),
+		new SorensenSimilarity(),
+		new JaroWinklerSimilarity()
+	};
+
+	String[] strings = new String[]{
+		"martha", "marhta", "unicorn giggles", "clown shoe",
+		"joe", "joseph", "Stra\u00dfe", "\u4e2d\u6587\u5b57", "a"
+	};
+
+	@Test
+	public void Profiled_scores_match_string_scores(){
+		for(ISimilarityCalculator calculator : calculators){
+			IProfile[] profiles = new IProfile[strings.length];
+			for(int i = 0; i < strings.length; i++){
+				profiles[i] = calculator.prepare(strings[i]);
+				assertEquals(strings[i], profiles[i].getString());
+			}
+			for(int i = 0; i < strings.length; i++){
+				for(int j = 0; j < strings.length; j++){
+					assertEquals(
+						calculator.getClass().getSimpleName() + " " + strings[i] + "/" + strings[j],
+						calculator.calculate(strings[i], strings[j]),
+						calculator.calculate(profiles[i], profiles[j]), 1e-15);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Profiles_from_another_calculator_are_rejected(){
+		IProfile histogram = new CosineSimilarity().prepare("martha");
+		new JaroWinklerSimilarity().calculate(histogram, histogram);
+	}
+}
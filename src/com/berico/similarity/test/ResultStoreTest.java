@@ -0,0 +1,337 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.MappedLineFile;
+import com.berico.similarity.ResultStore;
+import com.berico.similarity.SimilarityJoin;
+
+public class ResultStoreTest {
+
+	@Test
+	public void Pairs_round_trip_with_quantized_scores() throws IOException {
+		for(int bits : new int[]{ 8, 16 }){
+			Random random = new Random(bits);
+			Path directory = Files.createTempDirectory("results");
+			ResultStore.Writer writer = ResultStore.writer(directory, bits, 0.5, 1000);
+			double step = 0.5 / ((1 << bits) - 1);
+			Map<Long, Double> expected = pairs(random, 5000, 0.5, step);
+			long lines = 0;
+			for(Map.Entry<Long, Double> pair : expected.entrySet()){
+				long left = pair.getKey() >>> 32;
+				writer.write(left, pair.getKey() & 0xFFFFFFFFL, pair.getValue());
+				lines = Math.max(lines, left + 1);
+			}
+			writer.finish(lines);
+			writer.close();
+
+			ResultStore store = ResultStore.open(directory);
+			assertEquals(step, store.scoreStep(), 0);
+			assertEquals(expected.size(), store.pairs());
+			assertEquals(lines, store.nextLine());
+			assertTrue(store.segments() > 1);
+			int read = 0;
+			for(int segment = 0; segment < store.segments(); segment++){
+				ResultStore.Cursor cursor = store.cursor(segment);
+				long previous = -1;
+				while(cursor.next()){
+					long key = ((long) cursor.left() << 32) | cursor.right();
+					//Sorted within the segment
+					assertTrue(key > previous);
+					previous = key;
+					double score = expected.get(key);
+					assertEquals(score, cursor.score(), step / 2 + 1e-12);
+					//Scores on a step come back as they went in
+					double steps = (score - 0.5) / step;
+					if(Math.abs(steps - Math.rint(steps)) < 1e-6){
+						assertEquals(score, cursor.score(), 1e-12);
+					}
+					read++;
+				}
+			}
+			assertEquals(expected.size(), read);
+		}
+	}
+
+	@Test
+	public void Pairs_take_a_few_bytes_each() throws IOException {
+		Path directory = Files.createTempDirectory("results");
+		ResultStore.Writer writer = ResultStore.writer(directory, 8, 0.8);
+		int pairs = 0;
+		for(int left = 0; left < 1000; left++){
+			for(int right = left; right < 100000; right += 997){
+				writer.write(left, right, 0.9);
+				pairs++;
+			}
+		}
+		writer.finish(1000);
+		writer.close();
+		long bytes = 0;
+		for(int segment = 0; segment < ResultStore.open(directory).segments(); segment++){
+			bytes += Files.size(directory.resolve("segment-" + segment + ".bin"));
+		}
+		assertTrue(bytes < 4L * pairs);
+	}
+
+	@Test
+	public void Segments_fill_regardless_of_checkpoints() throws IOException {
+		Path directory = Files.createTempDirectory("results");
+		ResultStore.Writer writer = ResultStore.writer(directory, 16, 0, 10);
+		for(int line = 0; line < 95; line++){
+			writer.write(line, line, 1);
+			writer.checkpoint(line + 1);
+		}
+		writer.finish(95);
+		writer.close();
+		ResultStore store = ResultStore.open(directory);
+		assertEquals(10, store.segments());
+		for(int segment = 0; segment < store.segments(); segment++){
+			assertEquals((segment < 9)? 10 : 5, count(store, segment));
+		}
+	}
+
+	@Test
+	public void Resumed_writers_neither_lose_nor_repeat_pairs() throws IOException {
+		Path directory = Files.createTempDirectory("results");
+		ResultStore.Writer writer = ResultStore.writer(directory, 16, 0, 10);
+		for(int i = 0; i < 25; i++){
+			writer.write(i, i, 1);
+		}
+		writer.checkpoint(25);
+		//Fills four more segments while lines 25 on are unfinished, then
+		//dies with five pairs pending
+		for(int i = 25; i < 65; i++){
+			writer.write(i, i, 1);
+		}
+		writer.close();
+
+		writer = ResultStore.writer(directory, 16, 0, 10);
+		assertEquals(25, writer.resumeLine());
+		ResultStore store = ResultStore.open(directory);
+		assertEquals(60, store.pairs());
+		assertEquals(6, store.segments());
+		assertFalse(Files.exists(directory.resolve("segment-6.bin")));
+
+		//The job redoes lines 25 on; the 35 pairs already stored are skipped
+		for(int i = 25; i < 70; i++){
+			writer.write(i, i, 1);
+		}
+		writer.finish(70);
+		writer.close();
+		store = ResultStore.open(directory);
+		assertEquals(70, store.pairs());
+		assertEquals(70, store.nextLine());
+		Set<Long> seen = new HashSet<Long>();
+		for(int segment = 0; segment < store.segments(); segment++){
+			ResultStore.Cursor cursor = store.cursor(segment);
+			while(cursor.next()){
+				assertEquals(cursor.left(), cursor.right());
+				assertTrue(seen.add((long) cursor.left()));
+			}
+		}
+		assertEquals(70, seen.size());
+
+		try {
+			ResultStore.writer(directory, 8, 0);
+			fail();
+		} catch(IOException e){
+			//expected: started with different settings
+		}
+	}
+
+	@Test
+	public void Interrupted_join_resumes_without_losing_or_repeating_pairs() throws IOException {
+		List<String> left = joinStrings(new Random(1), 300);
+		List<String> right = joinStrings(new Random(2), 200);
+		double threshold = 0.6;
+		MappedLineFile leftFile = new MappedLineFile(write(left), 512);
+		MappedLineFile rightFile = new MappedLineFile(write(right), 512);
+		SimilarityJoin join = new SimilarityJoin(new JaccardSimilarity(), threshold, 32,
+			ForkJoinPool.commonPool());
+		Path directory = Files.createTempDirectory("results");
+
+		//The job dies after writing its fourth block, before checkpointing it
+		final ResultStore.Writer first = ResultStore.writer(directory, 16, threshold, 50);
+		try {
+			join.join(leftFile, rightFile, new SimilarityJoin.IResumablePairWriter(){
+				int checkpoints = 0;
+				@Override
+				public long resumeLine(){
+					return first.resumeLine();
+				}
+				@Override
+				public void checkpoint(long nextLeftLine) throws IOException {
+					if(++checkpoints == 4){
+						throw new IOException("killed");
+					}
+					first.checkpoint(nextLeftLine);
+				}
+				@Override
+				public void finish(long leftLines) throws IOException {
+					first.finish(leftLines);
+				}
+				@Override
+				public void write(long leftLine, long rightLine, double score) throws IOException {
+					first.write(leftLine, rightLine, score);
+				}
+				@Override
+				public void close(){
+					first.close();
+				}
+			});
+			fail();
+		} catch(IOException e){
+			first.close();
+		}
+		//Segments fill mid-block, so pairs of the block that died are
+		//stored past the checkpointed line; the resumed writer skips them
+		ResultStore interrupted = ResultStore.open(directory);
+		assertEquals(96, interrupted.nextLine());
+		int ahead = 0;
+		for(int segment = 0; segment < interrupted.segments(); segment++){
+			ResultStore.Cursor cursor = interrupted.cursor(segment);
+			while(cursor.next()){
+				if(cursor.left() >= interrupted.nextLine()){
+					ahead++;
+				}
+			}
+		}
+		assertTrue(ahead > 0);
+
+		ResultStore.Writer second = ResultStore.writer(directory, 16, threshold, 50);
+		join.join(leftFile, rightFile, second);
+		second.close();
+		leftFile.close();
+		rightFile.close();
+
+		ResultStore store = ResultStore.open(directory);
+		assertEquals(left.size(), store.nextLine());
+		Map<Long, Double> found = new HashMap<Long, Double>();
+		for(int segment = 0; segment < store.segments(); segment++){
+			ResultStore.Cursor cursor = store.cursor(segment);
+			while(cursor.next()){
+				assertNull(found.put(((long) cursor.left() << 32) | cursor.right(), cursor.score()));
+			}
+		}
+		JaccardSimilarity calculator = new JaccardSimilarity();
+		int expected = 0;
+		for(int i = 0; i < left.size(); i++){
+			for(int j = 0; j < right.size(); j++){
+				double score = calculator.calculate(left.get(i), right.get(j));
+				if(score >= threshold){
+					expected++;
+					assertEquals(score, found.get(((long) i << 32) | j), store.scoreStep() / 2 + 1e-12);
+				}
+			}
+		}
+		assertTrue(expected > 0);
+		assertEquals(expected, found.size());
+		assertEquals(expected, store.pairs());
+		for(int segment = 0; segment < store.segments() - 1; segment++){
+			assertEquals(50, count(store, segment));
+		}
+	}
+
+	private static int count(ResultStore store, int segment){
+		ResultStore.Cursor cursor = store.cursor(segment);
+		int count = 0;
+		while(cursor.next()){
+			count++;
+		}
+		return count;
+	}
+
+	private static Path write(List<String> lines) throws IOException {
+		Path path = Files.createTempFile("join", ".txt");
+		path.toFile().deleteOnExit();
+		Files.write(path, lines, StandardCharsets.UTF_8);
+		return path;
+	}
+
+	//Gaps between ids whose deltas take 1 to 5 varint bytes
+	private static final int[] ID_GAPS = { 1, 127, 128, 16383, 16384, 2097152, 268435456 };
+
+	/**
+	 * Pairs that stress the encoding: dense runs of right ids under a
+	 * left id, id gaps of every varint width (up to the largest id), and
+	 * scores at the minimum, at 1, on quantization steps and just either
+	 * side of the halfway point between two steps
+	 * @return scores by (left << 32 | right), in writing order
+	 */
+	private static Map<Long, Double> pairs(Random random, int count,
+			double minimumScore, double step){
+		Map<Long, Double> pairs = new LinkedHashMap<Long, Double>();
+		long left = 0;
+		while(pairs.size() < count){
+			//Runs of up to 200 right ids, most of them adjacent
+			int run = 1 + random.nextInt(200);
+			long right = random.nextInt(4);
+			for(int i = 0; i < run && right <= Integer.MAX_VALUE && pairs.size() < count; i++){
+				pairs.put((left << 32) | right, score(random, minimumScore, step));
+				right += (random.nextInt(4) == 0)? ID_GAPS[random.nextInt(ID_GAPS.length)] : 1;
+			}
+			if(random.nextInt(50) == 0){
+				pairs.put((left << 32) | Integer.MAX_VALUE, score(random, minimumScore, step));
+			}
+			left += (random.nextInt(3) == 0)? ID_GAPS[random.nextInt(ID_GAPS.length)] : 1;
+			if(left > Integer.MAX_VALUE){
+				left = random.nextInt(1000);
+			}
+		}
+		return pairs;
+	}
+
+	private static double score(Random random, double minimumScore, double step){
+		int steps = (int) Math.round((1d - minimumScore) / step);
+		int k = random.nextInt(steps);
+		switch(random.nextInt(5)){
+			case 0: return minimumScore;
+			case 1: return 1d;
+			case 2: return minimumScore + k * step;
+			case 3: return minimumScore + (k + 0.5) * step - 1e-9;
+			default: return minimumScore + (k + 0.5) * step + 1e-9;
+		}
+	}
+
+	/**
+	 * Lines for the join: about a third from a few families of similar
+	 * strings, which match each other in dense runs, and the rest unlike
+	 * anything, leaving gaps between the left ids with matches
+	 */
+	private static List<String> joinStrings(Random random, int count){
+		String[] families = { "abcdef", "cdefgh", "aceg", "bdfh" };
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			StringBuilder builder = new StringBuilder();
+			if(random.nextInt(3) == 0){
+				builder.append(families[random.nextInt(families.length)]);
+				for(int extra = random.nextInt(3); extra > 0; extra--){
+					builder.append((char) ('a' + random.nextInt(8)));
+				}
+			} else {
+				for(int length = 6 + random.nextInt(6); length > 0; length--){
+					builder.append((char) ('i' + random.nextInt(18)));
+				}
+			}
+			strings.add(builder.toString());
+		}
+		return strings;
+	}
+}
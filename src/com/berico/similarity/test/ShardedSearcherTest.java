@@ -0,0 +1,274 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.MappedLineFile;
+import com.berico.similarity.NormalizingSimilarityCalculator;
+import com.berico.similarity.ReferenceShards;
+import com.berico.similarity.SearchResults;
+import com.berico.similarity.ShardedSearcher;
+import com.berico.similarity.SimilarityJoin;
+import com.berico.similarity.StringNormalizer;
+import com.berico.similarity.TopKSearcher;
+
+public class ShardedSearcherTest {
+
+	//Most entries share one length, so no even length cut exists
+	static final int COMMON_LENGTH = 5;
+
+	List<String> strings = dictionary(new Random(17), 3000);
+
+	@Test
+	public void Every_entry_lands_in_exactly_one_shard() throws IOException {
+		for(ReferenceShards.Partitioning partitioning : ReferenceShards.Partitioning.values()){
+			ReferenceShards shards = split(partitioning, 4);
+			assertEquals(strings.size(), shards.size());
+			assertEquals(4, shards.count());
+			boolean[] seen = new boolean[strings.size()];
+			int lastLongest = -1;
+			for(int shard = 0; shard < shards.count(); shard++){
+				List<String> lines = Files.readAllLines(shards.strings(shard), StandardCharsets.UTF_8);
+				assertEquals(shards.size(shard), lines.size());
+				DataInputStream ids = new DataInputStream(Files.newInputStream(shards.ids(shard)));
+				int shortest = Integer.MAX_VALUE, longest = -1;
+				for(String line : lines){
+					int id = ids.readInt();
+					assertFalse(seen[id]);
+					seen[id] = true;
+					assertEquals(strings.get(id), line);
+					shortest = Math.min(shortest, line.length());
+					longest = Math.max(longest, line.length());
+				}
+				ids.close();
+				if(partitioning == ReferenceShards.Partitioning.LENGTH && !lines.isEmpty()){
+					//Length ranges don't overlap
+					assertTrue(shortest > lastLongest);
+					lastLongest = longest;
+				}
+			}
+			for(boolean entry : seen){
+				assertTrue(entry);
+			}
+			ReferenceShards opened = ReferenceShards.open(shards.strings(0).getParent());
+			assertEquals(partitioning, opened.getPartitioning());
+			assertEquals(shards.size(2), opened.size(2));
+		}
+	}
+
+	@Test
+	public void Length_shards_are_cut_at_whole_lengths() throws IOException {
+		ReferenceShards shards = split(ReferenceShards.Partitioning.LENGTH, 3);
+		int[] lengths = new int[shards.count()];
+		int smallest = Integer.MAX_VALUE, largest = 0;
+		long before = 0;
+		for(int shard = 0; shard < shards.count(); shard++){
+			int longest = -1, atLongest = 0;
+			for(String line : Files.readAllLines(shards.strings(shard), StandardCharsets.UTF_8)){
+				if(line.length() > longest){
+					longest = line.length();
+					atLongest = 0;
+				}
+				if(line.length() == longest){
+					atLongest++;
+				}
+			}
+			lengths[shard] = longest;
+			long through = before + shards.size(shard);
+			if(shard < shards.count() - 1 && shards.size(shard) > 0){
+				//A shard closes at the first length reaching its share,
+				//so it's only over its share by that length's entries
+				long share = (long) strings.size() * (shard + 1) / shards.count();
+				assertTrue(through >= share);
+				assertTrue(through - atLongest < share);
+			}
+			before = through;
+			smallest = Math.min(smallest, shards.size(shard));
+			largest = Math.max(largest, shards.size(shard));
+		}
+		//The common length can't be split, so the shards are uneven
+		assertTrue(largest - smallest > strings.size() / 6);
+		boolean common = false;
+		for(int longest : lengths){
+			common |= longest == COMMON_LENGTH;
+		}
+		assertTrue(common);
+	}
+
+	@Test
+	public void Duplicates_land_in_the_same_hash_shard() throws IOException {
+		ReferenceShards shards = split(ReferenceShards.Partitioning.HASH, 4);
+		Map<String, Integer> shardOf = new HashMap<String, Integer>();
+		int duplicates = 0;
+		for(int shard = 0; shard < shards.count(); shard++){
+			for(String line : Files.readAllLines(shards.strings(shard), StandardCharsets.UTF_8)){
+				Integer previous = shardOf.put(line, shard);
+				if(previous != null){
+					assertEquals(shard, previous.intValue());
+					duplicates++;
+				}
+			}
+			//Hashing spreads the entries whatever their lengths
+			assertTrue(shards.size(shard) > strings.size() / 8);
+		}
+		assertTrue(duplicates > strings.size() / 20);
+	}
+
+	@Test
+	public void Worker_processes_match_a_single_searcher() throws IOException {
+		Random random = new Random(19);
+		for(ReferenceShards.Partitioning partitioning : ReferenceShards.Partitioning.values()){
+			ReferenceShards shards = split(partitioning, 3);
+			for(String calculator : new String[]{ "jarowinkler", "jaccard" }){
+				TopKSearcher whole = new TopKSearcher(SimilarityJoin.calculator(calculator), strings);
+				ShardedSearcher searcher = new ShardedSearcher(shards, calculator);
+				try {
+					assertEquals(strings.size(), searcher.size());
+					for(int q = 0; q < 10; q++){
+						String query = query(random);
+						SearchResults expected = whole.search(query, 10, 0.7);
+						SearchResults results = searcher.search(query, 10, 0.7);
+						assertEquals(expected.size(), results.size());
+						for(int i = 0; i < results.size(); i++){
+							assertEquals(expected.scores[i], results.scores[i], 0);
+							assertEquals(results.scores[i], SimilarityJoin.calculator(calculator)
+								.calculate(query, strings.get(results.indexes[i])), 0);
+						}
+						assertEquals(strings.size(), results.comparisons + results.pruned);
+					}
+				} finally {
+					searcher.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A configured, decorated calculator no name or no-argument
+	 * constructor could describe
+	 */
+	public static class NormalizedJaroWinkler implements Callable<ISimilarityCalculator> {
+		@Override
+		public ISimilarityCalculator call(){
+			return NormalizingSimilarityCalculator.wrap(
+				JaroWinklerSimilarity.builder().boostThreshold(0.7).maxPrefixLength(6).build(),
+				StringNormalizer.standard());
+		}
+	}
+
+	@Test
+	public void Workers_build_calculators_from_factories() throws IOException {
+		ReferenceShards shards = split(ReferenceShards.Partitioning.HASH, 2);
+		ISimilarityCalculator calculator = new NormalizedJaroWinkler().call();
+		TopKSearcher whole = new TopKSearcher(calculator, strings);
+		ShardedSearcher searcher = new ShardedSearcher(shards, NormalizedJaroWinkler.class.getName());
+		try {
+			Random random = new Random(23);
+			for(int q = 0; q < 10; q++){
+				String query = query(random).toUpperCase();
+				SearchResults expected = whole.search(query, 5, 0.8);
+				SearchResults results = searcher.search(query, 5, 0.8);
+				assertEquals(expected.size(), results.size());
+				for(int i = 0; i < results.size(); i++){
+					assertEquals(expected.scores[i], results.scores[i], 0);
+				}
+			}
+		} finally {
+			searcher.close();
+		}
+		try {
+			new ShardedSearcher(shards, String.class.getName());
+			fail();
+		} catch(IllegalArgumentException e){
+			//expected: neither a calculator nor a factory
+		}
+	}
+
+	@Test
+	public void Bad_requests_fail_without_breaking_the_workers() throws IOException {
+		ShardedSearcher searcher = new ShardedSearcher(
+			split(ReferenceShards.Partitioning.HASH, 2), "jarowinkler");
+		try {
+			try {
+				searcher.search("abc", 0, 0.5);
+				fail();
+			} catch(IllegalArgumentException e){
+				//expected
+			}
+			assertTrue(searcher.search(strings.get(5), 1, 0.5).size() == 1);
+		} finally {
+			searcher.close();
+		}
+		try {
+			searcher.search("abc", 1, 0.5);
+			fail();
+		} catch(IOException e){
+			//expected: closed
+		}
+	}
+
+	private ReferenceShards split(ReferenceShards.Partitioning partitioning, int count)
+			throws IOException {
+		Path directory = Files.createTempDirectory("shards");
+		Path dictionary = directory.resolve("dictionary.txt");
+		Files.write(dictionary, strings, StandardCharsets.UTF_8);
+		MappedLineFile file = new MappedLineFile(dictionary, 4096);
+		try {
+			return ReferenceShards.split(file, directory, count, partitioning);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Entries with skewed lengths (most of them COMMON_LENGTH long, the
+	 * rest mostly short with a long tail) and about a tenth repeating
+	 * an earlier entry
+	 */
+	private static List<String> dictionary(Random random, int count){
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			if(i > 0 && random.nextInt(10) == 0){
+				strings.add(strings.get(random.nextInt(i)));
+				continue;
+			}
+			int length = (random.nextInt(2) == 0)?
+				COMMON_LENGTH : 1 + random.nextInt(1 + random.nextInt(40));
+			strings.add(letters(random, length));
+		}
+		return strings;
+	}
+
+	/**
+	 * A query near a dictionary entry: the entry with one character
+	 * changed, so searches find it and its duplicates
+	 */
+	private String query(Random random){
+		char[] query = strings.get(random.nextInt(strings.size())).toCharArray();
+		query[random.nextInt(query.length)] = (char) ('a' + random.nextInt(6));
+		return new String(query);
+	}
+
+	private static String letters(Random random, int length){
+		StringBuilder builder = new StringBuilder();
+		for(int c = 0; c < length; c++){
+			builder.append((char) ('a' + random.nextInt(6)));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,140 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterNGramTokenizer;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.HammingIndex;
+import com.berico.similarity.IScoreListener;
+import com.berico.similarity.SimHash;
+
+public class SimHashTest {
+
+	CosineSimilarity cosine = new CosineSimilarity(new CharacterNGramTokenizer(2, true));
+
+	@Test
+	public void Estimates_track_the_exact_cosine(){
+		SimHash simHash = new SimHash(cosine, 128, 7L);
+		Random random = new Random(3);
+		double totalError = 0;
+		int pairs = 300;
+		for(int i = 0; i < pairs; i++){
+			String one = words(random, 200);
+			String two = rewrite(random, one, random.nextInt(150));
+			double error = Math.abs(cosine.calculate(one, two)
+				- simHash.estimate(simHash.fingerprint(one), simHash.fingerprint(two)));
+			//Four standard deviations of the angle at worst
+			assertTrue(error < 0.5);
+			totalError += error;
+		}
+		assertTrue(totalError / pairs < 0.1);
+	}
+
+	@Test
+	public void Identical_strings_have_identical_fingerprints(){
+		SimHash simHash = new SimHash(cosine, 64, 1L);
+		assertArrayEquals(simHash.fingerprint("berico technologies"),
+			simHash.fingerprint("berico technologies"));
+		assertEquals(1d, simHash.estimate(
+			simHash.fingerprint("berico"), simHash.fingerprint("berico")), 0);
+	}
+
+	@Test
+	public void Index_finds_exactly_the_fingerprints_within_k_bits(){
+		for(int bits : new int[]{ 64, 128 }){
+			for(int k : new int[]{ 0, 3, 6 }){
+				Random random = new Random(bits + k);
+				int words = bits / 64;
+				int n = 2000;
+				long[] fingerprints = new long[n * words];
+				for(int i = 0; i < n; i++){
+					if(i > 0 && random.nextBoolean()){
+						//Near copy of an earlier fingerprint
+						int source = random.nextInt(i);
+						System.arraycopy(fingerprints, source * words, fingerprints, i * words, words);
+						for(int flip = random.nextInt(k + 3); flip > 0; flip--){
+							int bit = random.nextInt(bits);
+							fingerprints[i * words + (bit >>> 6)] ^= 1L << bit;
+						}
+					} else {
+						for(int word = 0; word < words; word++){
+							fingerprints[i * words + word] = random.nextLong();
+						}
+					}
+				}
+				HammingIndex index = new HammingIndex(fingerprints, bits, k);
+
+				final Set<Long> found = new HashSet<Long>();
+				index.pairs(new IScoreListener(){
+					@Override
+					public void score(int one, int two, double estimate){
+						assertTrue(one < two);
+						assertTrue(found.add(((long) one << 32) | two));
+					}
+				});
+				int expected = 0;
+				for(int i = 0; i < n; i++){
+					List<Integer> within = new ArrayList<Integer>();
+					for(int j = 0; j < n; j++){
+						int distance = SimHash.distance(fingerprints, i * words, fingerprints, j * words, words);
+						if(distance <= k){
+							within.add(j);
+							if(i < j){
+								expected++;
+								assertTrue(found.contains(((long) i << 32) | j));
+							}
+						}
+					}
+					int[] matches = index.within(fingerprints, i * words);
+					assertEquals(within.size(), matches.length);
+					for(int m = 0; m < matches.length; m++){
+						assertEquals((int) within.get(m), matches[m]);
+					}
+				}
+				assertEquals(expected, found.size());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Only_64_and_128_bit_fingerprints_are_supported(){
+		new SimHash(cosine, 32, 1L);
+	}
+
+	/**
+	 * Words over a small alphabet, so bigrams repeat and their counts
+	 * (which SimHash weighs, unlike MinHash) matter
+	 */
+	private static String words(Random random, int length){
+		StringBuilder builder = new StringBuilder(length);
+		while(builder.length() < length){
+			if(builder.length() > 0 && random.nextInt(6) == 0){
+				builder.append(' ');
+			} else {
+				builder.append((char) ('a' + random.nextInt(8)));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Rewrite one run of characters, so the cosine falls with the run's
+	 * length
+	 */
+	private static String rewrite(Random random, String string, int length){
+		StringBuilder builder = new StringBuilder(string);
+		int start = random.nextInt(string.length() - length + 1);
+		for(int i = start; i < start + length; i++){
+			builder.setCharAt(i, (char) ('a' + random.nextInt(8)));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,125 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.MappedLineFile;
+import com.berico.similarity.SimilarityJoin;
+
+public class SimilarityJoinTest {
+
+	List<String> left = randomStrings(new Random(1), 300);
+	List<String> right = randomStrings(new Random(2), 200);
+
+	@Test
+	public void Chunks_cover_every_line_in_order() throws IOException {
+		//A tiny chunk size forces many chunks
+		MappedLineFile file = new MappedLineFile(write(right), 100);
+		assertTrue(file.chunks() > 1);
+		assertEquals(right.size(), file.lines());
+		int expected = 0;
+		for(int chunk = 0; chunk < file.chunks(); chunk++){
+			assertEquals(expected, file.firstLine(chunk));
+			MappedLineFile.Cursor cursor = file.cursor(chunk);
+			while(cursor.next()){
+				assertEquals(expected, cursor.line());
+				assertEquals(right.get(expected++), cursor.string());
+			}
+		}
+		assertEquals(right.size(), expected);
+		file.close();
+	}
+
+	@Test
+	public void Lines_are_decoded_as_utf8_without_terminators() throws IOException {
+		Path path = Files.createTempFile("join", ".txt");
+		path.toFile().deleteOnExit();
+		Files.write(path, "caf\u00e9\r\n\u65e5\u672c\nlast".getBytes(StandardCharsets.UTF_8));
+		MappedLineFile file = new MappedLineFile(path);
+		MappedLineFile.Cursor cursor = file.cursor(0);
+		assertTrue(cursor.next());
+		assertEquals("caf\u00e9", cursor.string());
+		assertEquals(5, cursor.byteLength());
+		assertTrue(cursor.next());
+		assertEquals("\u65e5\u672c", cursor.string());
+		assertTrue(cursor.next());
+		assertEquals("last", cursor.string());
+		assertFalse(cursor.next());
+		file.close();
+	}
+
+	@Test
+	public void Bounded_join_matches_brute_force() throws IOException {
+		assertJoinMatchesBruteForce(new JaccardSimilarity(), 0.6);
+	}
+
+	@Test
+	public void Unbounded_join_matches_brute_force() throws IOException {
+		assertJoinMatchesBruteForce(new CosineSimilarity(), 0.8);
+	}
+
+	private void assertJoinMatchesBruteForce(ISimilarityCalculator calculator, double threshold)
+			throws IOException {
+		final Map<String, Double> found = new HashMap<String, Double>();
+		SimilarityJoin join = new SimilarityJoin(calculator, threshold, 64, ForkJoinPool.commonPool());
+		MappedLineFile leftFile = new MappedLineFile(write(left), 512);
+		MappedLineFile rightFile = new MappedLineFile(write(right), 512);
+		join.join(leftFile, rightFile, new SimilarityJoin.IPairWriter(){
+			@Override
+			public synchronized void write(long leftLine, long rightLine, double score){
+				assertNull(found.put(leftLine + ":" + rightLine, score));
+			}
+			@Override
+			public void close(){}
+		});
+		leftFile.close();
+		rightFile.close();
+
+		int expected = 0;
+		for(int i = 0; i < left.size(); i++){
+			for(int j = 0; j < right.size(); j++){
+				double score = calculator.calculate(left.get(i), right.get(j));
+				if(score >= threshold){
+					expected++;
+					assertEquals(score, found.get(i + ":" + j), 1e-12);
+				}
+			}
+		}
+		assertTrue(expected > 0);
+		assertEquals(expected, found.size());
+	}
+
+	private static Path write(List<String> lines) throws IOException {
+		Path path = Files.createTempFile("join", ".txt");
+		path.toFile().deleteOnExit();
+		Files.write(path, lines, StandardCharsets.UTF_8);
+		return path;
+	}
+
+	private static List<String> randomStrings(Random random, int count){
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			char[] characters = new char[2 + random.nextInt(10)];
+			for(int j = 0; j < characters.length; j++){
+				characters[j] = (char) ('a' + random.nextInt(8));
+			}
+			strings.add(new String(characters));
+		}
+		return strings;
+	}
+}
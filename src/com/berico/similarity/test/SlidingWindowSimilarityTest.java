@@ -0,0 +1,70 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.SlidingWindowSimilarity;
+import com.berico.similarity.SorensenSimilarity;
+
+public class SlidingWindowSimilarityTest {
+
+	List<String> targets = Arrays.asList("error: disk full", "connection reset", "ok", "\u00e9t\u00e9 \u65e5\u672c");
+
+	@Test
+	public void Cosine_scores_match_rescoring_the_window(){
+		assertMatchesRescoring(new CosineSimilarity());
+	}
+
+	@Test
+	public void Jaccard_scores_match_rescoring_the_window(){
+		assertMatchesRescoring(new JaccardSimilarity());
+	}
+
+	@Test
+	public void Sorensen_scores_match_rescoring_the_window(){
+		assertMatchesRescoring(new SorensenSimilarity());
+	}
+
+	@Test
+	public void Window_keeps_only_the_most_recent_characters(){
+		SlidingWindowSimilarity scorer =
+			new SlidingWindowSimilarity(new JaccardSimilarity(), 4, targets);
+		scorer.push("abcdef");
+		assertEquals(4, scorer.length());
+		assertEquals("cdef", scorer.window());
+		scorer.clear();
+		assertEquals(0, scorer.length());
+		assertEquals("", scorer.window());
+		scorer.push("ok");
+		assertEquals(1d, scorer.score(2), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void Calculators_without_running_sums_are_rejected(){
+		new SlidingWindowSimilarity(new JaroWinklerSimilarity(), 8, targets);
+	}
+
+	private void assertMatchesRescoring(ISimilarityCalculator calculator){
+		Random random = new Random(7);
+		String alphabet = "error: diskfullconetx\u00e9\u65e5";
+		SlidingWindowSimilarity scorer = new SlidingWindowSimilarity(calculator, 12, targets);
+		double[] scores = null;
+		for(int i = 0; i < 500; i++){
+			scorer.push(alphabet.charAt(random.nextInt(alphabet.length())));
+			scores = scorer.scores(scores);
+			String window = scorer.window();
+			for(int t = 0; t < targets.size(); t++){
+				assertEquals(calculator.calculate(window, targets.get(t)), scores[t], 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.IBoundedSimilarityCalculator;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.NormalizingSimilarityCalculator;
+import com.berico.similarity.SorensenSimilarity;
+import com.berico.similarity.StringNormalizer;
+
+public class StringNormalizerTest {
+
+	@Test
+	public void Standard_form_folds_case_accents_and_spacing(){
+		StringNormalizer normalizer = StringNormalizer.standard();
+		assertEquals("muller", normalizer.normalize("M\u00fcller"));
+		assertEquals("muller", normalizer.normalize("MULLER "));
+		assertEquals("muller", normalizer.normalize("  muller"));
+		assertEquals("strasse", normalizer.normalize("Stra\u00dfe"));
+		assertEquals("o neil fish", normalizer.normalize("O'Neil\t\n \ufb01sh!"));
+		assertEquals("a1 b2", normalizer.normalize("A1 -- B2"));
+	}
+
+	@Test
+	public void Canonical_strings_are_returned_as_is(){
+		String string = "already canonical";
+		assertSame(string, StringNormalizer.standard().normalize(string));
+	}
+
+	@Test
+	public void Options_are_independent(){
+		StringNormalizer caseOnly = StringNormalizer.builder().foldCase(true).build();
+		assertEquals("m\u00fcller, 42 ", caseOnly.normalize("M\u00dcLLER, 42 "));
+		StringNormalizer digits = StringNormalizer.builder()
+			.digits(StringNormalizer.Digits.MASK)
+			.punctuation(StringNormalizer.Punctuation.REMOVE)
+			.build();
+		assertEquals("Unit 00 Floor 0", digits.normalize("Unit 12, Floor 3."));
+		StringNormalizer ascii = StringNormalizer.builder()
+			.digits(StringNormalizer.Digits.ASCII)
+			.build();
+		assertEquals("123", ascii.normalize("\u0661\u0662\u0663"));
+	}
+
+	@Test
+	public void Surrogate_pairs_stay_whole(){
+		StringNormalizer normalizer = StringNormalizer.standard();
+		//DESERET CAPITAL LETTER LONG I folds to its small letter
+		String capital = new String(Character.toChars(0x10400));
+		String small = new String(Character.toChars(0x10428));
+		assertEquals("a" + small, normalizer.normalize("A" + capital));
+		//Unpaired surrogates are kept
+		assertEquals("a\ud800b", normalizer.normalize("A\ud800B"));
+		//Supplementary punctuation (AEGEAN WORD SEPARATOR LINE) is punctuation
+		assertEquals("a b", normalizer.normalize("a" + new String(Character.toChars(0x10100)) + "b"));
+	}
+
+	@Test
+	public void Calculators_compare_canonical_forms(){
+		NormalizingSimilarityCalculator jaroWinkler = NormalizingSimilarityCalculator.wrap(
+			new JaroWinklerSimilarity(), StringNormalizer.standard());
+		assertTrue(jaroWinkler instanceof IBoundedSimilarityCalculator);
+		assertEquals(1d, jaroWinkler.calculate("M\u00fcller", "MULLER "), 0);
+		assertEquals(1d, jaroWinkler.calculate(
+			jaroWinkler.prepare("M\u00fcller"), jaroWinkler.prepare("MULLER ")), 0);
+		assertEquals("muller", jaroWinkler.prepare("M\u00fcller").getString());
+		NormalizingSimilarityCalculator cosine = NormalizingSimilarityCalculator.wrap(
+			new CosineSimilarity(), StringNormalizer.standard());
+		assertEquals(1d, cosine.calculate("M\u00fcller", "MULLER "), 1e-12);
+	}
+
+	@Test
+	public void Buffered_scores_match_scores_of_canonical_strings(){
+		StringNormalizer normalizer = StringNormalizer.standard();
+		String[] strings = new String[]{ "M\u00fcller", "MULLER ", "O'Neil \u4e2d\u6587",
+			"\u4e2d\u6587 neil", "", "Stra\u00dfe", "strasse strasse" };
+		ISimilarityCalculator[] calculators = new ISimilarityCalculator[]{
+			new JaccardSimilarity(), new SorensenSimilarity(), new CosineSimilarity() };
+		for(ISimilarityCalculator calculator : calculators){
+			NormalizingSimilarityCalculator normalizing =
+				NormalizingSimilarityCalculator.wrap(calculator, normalizer);
+			for(String one : strings){
+				for(String two : strings){
+					assertEquals(
+						calculator.calculate(normalizer.normalize(one), normalizer.normalize(two)),
+						normalizing.calculate(one, two), 0);
+				}
+			}
+		}
+	}
+}
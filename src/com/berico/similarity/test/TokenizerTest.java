@@ -0,0 +1,100 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.berico.similarity.CharacterNGramTokenizer;
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.ITokenizer;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.SkipGramTokenizer;
+import com.berico.similarity.SorensenSimilarity;
+import com.berico.similarity.WordTokenizer;
+
+public class TokenizerTest {
+
+	@Test
+	public void Padded_ngrams_cover_both_ends(){
+		ITokenizer bigrams = new CharacterNGramTokenizer(2, true);
+		int[] tokens = bigrams.tokenize("abc");
+		//#a ab bc c#
+		assertEquals(4, tokens.length);
+		assertEquals(bigrams.maximumTokens(3), tokens.length);
+		assertEquals(('a' << 16) | 'b', tokens[1]);
+		assertEquals(('b' << 16) | 'c', tokens[2]);
+		assertEquals(0, bigrams.tokenize("").length);
+	}
+
+	@Test
+	public void Unpadded_ngrams_keep_short_strings_as_one_token(){
+		ITokenizer trigrams = new CharacterNGramTokenizer(3, false);
+		assertEquals(3, trigrams.tokenize("abcde").length);
+		assertEquals(1, trigrams.tokenize("ab").length);
+		assertFalse(trigrams.tokenize("ab")[0] == trigrams.tokenize("ba")[0]);
+		//The same gram gets the same id wherever it occurs
+		assertEquals(trigrams.tokenize("xabc")[1], trigrams.tokenize("abcx")[0]);
+	}
+
+	@Test
+	public void Words_are_split_on_non_alphanumerics(){
+		ITokenizer words = new WordTokenizer(true);
+		int[] tokens = words.tokenize("  Hello, world!  hello");
+		assertEquals(3, tokens.length);
+		assertEquals(tokens[0], tokens[2]);
+		assertFalse(tokens[0] == tokens[1]);
+		assertFalse(Arrays.equals(
+			new WordTokenizer(false).tokenize("Hello"), new WordTokenizer(false).tokenize("hello")));
+		assertEquals(0, words.tokenize(" ,; ").length);
+	}
+
+	@Test
+	public void Skip_grams_step_over_inserted_characters(){
+		ITokenizer skipGrams = new SkipGramTokenizer(2, 1);
+		//ab ac bc
+		assertEquals(3, skipGrams.tokenize("abc").length);
+		int[] plain = skipGrams.tokenize("ab");
+		int[] inserted = skipGrams.tokenize("axb");
+		assertEquals(1, plain.length);
+		assertTrue(Arrays.asList(inserted[0], inserted[1], inserted[2]).contains(plain[0]));
+		//With no skips they are ordinary n-grams
+		assertEquals(3, new SkipGramTokenizer(3, 0).tokenize("abcde").length);
+		for(int length = 0; length < 12; length++){
+			assertTrue(new SkipGramTokenizer(3, 2).tokenize("abcdefghijkl".substring(0, length)).length
+				<= new SkipGramTokenizer(3, 2).maximumTokens(length));
+		}
+	}
+
+	@Test
+	public void Tokenized_metrics_compare_token_sets(){
+		ITokenizer words = new WordTokenizer();
+		//{a, b, c} vs {b, c, d}
+		assertEquals(0.5, new JaccardSimilarity(words).calculate("a b c", "b c d"), 1e-12);
+		assertEquals(2d * 2 / 6, new SorensenSimilarity(words).calculate("a b c", "c b d"), 1e-12);
+		//(1, 1, 1, 0) . (0, 2, 1, 1) / (sqrt(3) * sqrt(6))
+		assertEquals(3 / (Math.sqrt(3) * Math.sqrt(6)),
+			new CosineSimilarity(words).calculate("a b c", "b b c d"), 1e-12);
+		//Anagrams are identical character sets but not bigram sets
+		assertEquals(1d, new JaccardSimilarity().calculate("listen", "silent"), 0);
+		assertTrue(new JaccardSimilarity(new CharacterNGramTokenizer(2, true))
+			.calculate("listen", "silent") < 0.5);
+	}
+
+	@Test
+	public void Unigrams_match_the_character_metrics(){
+		ITokenizer unigrams = new CharacterNGramTokenizer(1, false);
+		String[] strings = { "martha", "marhta", "dixon", "dicksonx", "" + (char) 0x65E5 + "x" };
+		for(String one : strings){
+			for(String two : strings){
+				assertEquals(new JaccardSimilarity().calculate(one, two),
+					new JaccardSimilarity(unigrams).calculate(one, two), 0);
+				assertEquals(new SorensenSimilarity().calculate(one, two),
+					new SorensenSimilarity(unigrams).calculate(one, two), 0);
+				assertEquals(new CosineSimilarity().calculate(one, two),
+					new CosineSimilarity(unigrams).calculate(one, two), 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.CosineSimilarity;
+import com.berico.similarity.ISimilarityCalculator;
+import com.berico.similarity.JaccardSimilarity;
+import com.berico.similarity.JaroWinklerSimilarity;
+import com.berico.similarity.SearchResults;
+import com.berico.similarity.SorensenSimilarity;
+import com.berico.similarity.TopKSearcher;
+
+public class TopKSearcherTest {
+
+	ISimilarityCalculator[] calculators = new ISimilarityCalculator[]{
+		new CosineSimilarity(),
+		new JaccardSimilarity(),
+		new SorensenSimilarity(),
+		new JaroWinklerSimilarity()
+	};
+
+	@Test
+	public void Search_matches_brute_force(){
+		Random random = new Random(3);
+		List<String> references = randomStrings(random, 2000);
+		for(ISimilarityCalculator calculator : calculators){
+			TopKSearcher searcher = new TopKSearcher(calculator, references);
+			for(int q = 0; q < 20; q++){
+				String query = randomStrings(random, 1).get(0);
+				for(double threshold : new double[]{ 0.5, 0.8, 0.95 }){
+					SearchResults results = searcher.search(query, 10, threshold);
+					double[] expected = bruteForce(calculator, references, query, 10, threshold);
+					assertEquals(expected.length, results.size());
+					for(int i = 0; i < expected.length; i++){
+						assertEquals(expected[i], results.scores[i], 0);
+						assertEquals(results.scores[i],
+							calculator.calculate(query, references.get(results.indexes[i])), 0);
+					}
+					assertEquals(references.size(), results.comparisons + results.pruned);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void High_thresholds_prune_most_candidates(){
+		Random random = new Random(5);
+		List<String> references = randomStrings(random, 2000);
+		TopKSearcher searcher = new TopKSearcher(new JaroWinklerSimilarity(), references);
+		SearchResults results = searcher.search("abcdefghijklmnopqrstuvwxy", 10, 0.95);
+		assertTrue(results.pruned > results.comparisons);
+	}
+
+	/**
+	 * Score everything, keep the qualifying scores and return the best k
+	 */
+	private static double[] bruteForce(ISimilarityCalculator calculator,
+			List<String> references, String query, int k, double threshold){
+		List<Double> scores = new ArrayList<Double>();
+		for(String reference : references){
+			double score = calculator.calculate(query, reference);
+			if(score >= threshold){
+				scores.add(score);
+			}
+		}
+		Collections.sort(scores, Collections.reverseOrder());
+		double[] best = new double[Math.min(k, scores.size())];
+		for(int i = 0; i < best.length; i++){
+			best[i] = scores.get(i);
+		}
+		return best;
+	}
+
+	private static List<String> randomStrings(Random random, int count){
+		List<String> strings = new ArrayList<String>();
+		for(int i = 0; i < count; i++){
+			StringBuilder builder = new StringBuilder();
+			int length = 1 + random.nextInt(20);
+			for(int c = 0; c < length; c++){
+				builder.append((char) ('a' + random.nextInt(6)));
+			}
+			strings.add(builder.toString());
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,67 @@
+package com.berico.similarity.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.similarity.VectorMath;
+import com.berico.similarity.VectorMathException;
+
+public class VectorMathTest {
+
+	@Test
+	public void Primitive_int_overloads_match_the_boxed_versions() throws VectorMathException {
+		Random random = new Random(3);
+		//Lengths around the unrolling factor exercise the remainder loops
+		for(int length = 0; length < 40; length++){
+			int[] one = new int[length];
+			int[] two = new int[length];
+			Integer[] boxedOne = new Integer[length];
+			Integer[] boxedTwo = new Integer[length];
+			for(int i = 0; i < length; i++){
+				boxedOne[i] = one[i] = random.nextInt(20);
+				boxedTwo[i] = two[i] = random.nextInt(20);
+			}
+			assertEquals(VectorMath.dotp(boxedOne, boxedTwo), VectorMath.dotp(one, two));
+			assertEquals(VectorMath.magnitude(boxedOne), VectorMath.magnitude(one), 0);
+			assertEquals(
+				VectorMath.dotp(boxedOne, boxedTwo) /
+					(VectorMath.magnitude(boxedOne) * VectorMath.magnitude(boxedTwo)),
+				VectorMath.cosine(one, two), 0);
+		}
+	}
+
+	@Test
+	public void Floating_point_overloads_agree_with_a_simple_loop() throws VectorMathException {
+		Random random = new Random(4);
+		for(int length = 1; length < 40; length++){
+			double[] one = new double[length];
+			double[] two = new double[length];
+			float[] floatOne = new float[length];
+			float[] floatTwo = new float[length];
+			double dot = 0, normOne = 0, normTwo = 0;
+			for(int i = 0; i < length; i++){
+				one[i] = floatOne[i] = random.nextFloat();
+				two[i] = floatTwo[i] = random.nextFloat();
+				dot += one[i] * two[i];
+				normOne += one[i] * one[i];
+				normTwo += two[i] * two[i];
+			}
+			double cosine = dot / (Math.sqrt(normOne) * Math.sqrt(normTwo));
+			assertEquals(dot, VectorMath.dotp(one, two), 1e-12);
+			assertEquals(dot, VectorMath.dotp(floatOne, floatTwo), 1e-12);
+			assertEquals(normOne, VectorMath.squaredNorm(one), 1e-12);
+			assertEquals(normOne, VectorMath.squaredNorm(floatOne), 1e-12);
+			assertEquals(Math.sqrt(normTwo), VectorMath.magnitude(floatTwo), 1e-12);
+			assertEquals(cosine, VectorMath.cosine(one, two), 1e-12);
+			assertEquals(cosine, VectorMath.cosine(floatOne, floatTwo), 1e-12);
+		}
+	}
+
+	@Test(expected = VectorMathException.class)
+	public void Mismatched_dimensions_are_rejected() throws VectorMathException {
+		VectorMath.cosine(new int[3], new int[4]);
+	}
+}